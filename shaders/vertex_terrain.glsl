@@ -0,0 +1,41 @@
+#version 330 core
+// Define the shader version as OpenGL 3.3, in the core profile
+
+// The only vertex input is the height, as a fraction of the tile's height range (a normalized unsigned short)
+layout (location = 0) in float aHeight;
+
+//  A vec2 to be sent to the next shader stage which is the texture cords
+out vec2 oTex;
+
+// Our perspective matrix
+uniform mat4 projection;
+
+// Our view matrix
+uniform mat4 view;
+
+// Our model matrix
+uniform mat4 model;
+
+// The number of vertices along each side of the tile
+uniform int resolution;
+
+// The height a packed height of 0 is (x) and the height a packed height of 1 adds to it (y)
+uniform vec2 heightRange;
+
+// Main function
+void main(){
+    // The vertices go south then east, so the index gives the column (east) and row (south) of the vertex
+    int column = gl_VertexID / resolution;
+    int row = gl_VertexID - (column * resolution);
+
+    // How far east (u) and south (v) through the tile this vertex is
+    float u = float(column) / float(resolution - 1);
+    float v = float(row) / float(resolution - 1);
+
+    // The image is flipped on load so the bottom row, the south edge, is the start of the texture
+    oTex = vec2(u, 1.0 - v);
+
+    // The mesh spans -0.5 to 0.5 on X and Z, the same as the full vertex layout
+    float height = heightRange.x + (aHeight * heightRange.y);
+    gl_Position = projection * view * model * vec4(u - 0.5, height, v - 0.5, 1.0);
+}
@@ -0,0 +1,218 @@
+package App;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Builds an adaptive triangulation of a heightmap, a right triangulated irregular network (RTIN) as in Martini. The
+ * grid is split into two right triangles which are split in half along their hypotenuse, again and again, but only
+ * where the terrain isn't already flat enough: each split adds the vertex at the middle of a hypotenuse, and a
+ * triangle is only split if the height there is further than the allowed error from the line the triangle draws.
+ * Flat ground ends up as a few large triangles while rough ground keeps the whole grid.
+ * <p>
+ * Every vertex along the edge of the grid is always kept, so tiles meet their neighbours along the same vertices
+ * they would as a full grid and HeightmapMesh can still stitch them to coarser neighbours without cracks.
+ * <p>
+ * The triangle layout only depends on the resolution, it's worked out once in the constructor, so a mesher can be
+ * shared by any number of threads.
+ */
+public class AdaptiveMesher {
+    /**
+     * The number of vertices along each side of the grid, a power of two plus one
+     */
+    private final int resolution;
+
+    /**
+     * The number of triangles in the full hierarchy, and how many of them have children
+     */
+    private final int num_triangles;
+    private final int num_parents;
+
+    /**
+     * The first two corners (the ends of the hypotenuse) of every triangle of the hierarchy, 4 values each:
+     * ax, ay, bx, by. The right angled corner is worked out from these.
+     */
+    private final short[] coordinates;
+
+    /**
+     * Construct a mesher for grids of a resolution
+     * @param resolution The number of vertices along each side, must be a power of two plus one
+     * @throws InvalidParameterException If resolution - 1 isn't a power of two
+     */
+    public AdaptiveMesher(int resolution){
+        if (resolution < 3 || Integer.bitCount(resolution - 1) != 1 || resolution > Short.MAX_VALUE){
+            throw new InvalidParameterException("An adaptive mesh needs a resolution of a power of two plus one!");
+        }
+        this.resolution = resolution;
+        int tile = resolution - 1;
+        this.num_triangles = (tile * tile * 2) - 2;
+        this.num_parents = num_triangles - (tile * tile);
+        this.coordinates = new short[num_triangles * 4];
+
+        // Triangle i has id i + 2, the bits of which are the path of left and right splits down from a root
+        for (int i = 0; i < num_triangles; i++){
+            int id = i + 2;
+            int ax = 0, ay = 0, bx = 0, by = 0, cx = 0, cy = 0;
+            if ((id & 1) != 0){
+                // The root below the diagonal
+                bx = tile;
+                by = tile;
+                cx = tile;
+            } else {
+                // The root above the diagonal
+                ax = tile;
+                ay = tile;
+                cy = tile;
+            }
+            while ((id >>= 1) > 1){
+                int mx = (ax + bx) >> 1;
+                int my = (ay + by) >> 1;
+                if ((id & 1) != 0){
+                    // The left half
+                    bx = ax;
+                    by = ay;
+                    ax = cx;
+                    ay = cy;
+                } else {
+                    // The right half
+                    ax = bx;
+                    ay = by;
+                    bx = cx;
+                    by = cy;
+                }
+                cx = mx;
+                cy = my;
+            }
+            coordinates[i * 4] = (short) ax;
+            coordinates[(i * 4) + 1] = (short) ay;
+            coordinates[(i * 4) + 2] = (short) bx;
+            coordinates[(i * 4) + 3] = (short) by;
+        }
+    }
+
+    /**
+     * Work out how far each vertex is from the surface of the triangles which would be drawn without it. The error
+     * of a vertex includes the errors of every vertex below it in the hierarchy, so a triangle is split whenever
+     * anything inside it is too far off. Vertices along the edge of the grid have an infinite error so they're
+     * always kept.
+     * @param heights The height of every vertex of the grid, indexed (x * resolution) + y like HeightmapMesh
+     * @return The error of every vertex, in the same units and order as the heights
+     * @throws InvalidParameterException If there isn't a height for every vertex
+     */
+    public float[] computeErrors(float[] heights){
+        if (heights == null || heights.length != resolution * resolution){
+            throw new InvalidParameterException("An adaptive mesh needs a height for every vertex!");
+        }
+        float[] errors = new float[heights.length];
+        int last = resolution - 1;
+        for (int k = 0; k < resolution; k++){
+            errors[vertex(k, 0)] = Float.POSITIVE_INFINITY;
+            errors[vertex(k, last)] = Float.POSITIVE_INFINITY;
+            errors[vertex(0, k)] = Float.POSITIVE_INFINITY;
+            errors[vertex(last, k)] = Float.POSITIVE_INFINITY;
+        }
+
+        // Smallest triangles first, so every child's error is known before its parent's
+        for (int i = num_triangles - 1; i >= 0; i--){
+            int ax = coordinates[i * 4];
+            int ay = coordinates[(i * 4) + 1];
+            int bx = coordinates[(i * 4) + 2];
+            int by = coordinates[(i * 4) + 3];
+            int mx = (ax + bx) >> 1;
+            int my = (ay + by) >> 1;
+            int cx = mx + my - ay;
+            int cy = my + ax - mx;
+
+            int middle = vertex(mx, my);
+            float interpolated = (heights[vertex(ax, ay)] + heights[vertex(bx, by)]) * 0.5f;
+            float error = Math.max(errors[middle], Math.abs(interpolated - heights[middle]));
+
+            if (i < num_parents){
+                error = Math.max(error, errors[vertex((ax + cx) >> 1, (ay + cy) >> 1)]);
+                error = Math.max(error, errors[vertex((bx + cx) >> 1, (by + cy) >> 1)]);
+            }
+            errors[middle] = error;
+        }
+
+        return errors;
+    }
+
+    /**
+     * Triangulate a grid, splitting each triangle until the vertex it would add is within the error allowed
+     * @param errors The error of every vertex, see computeErrors
+     * @param max_error The furthest the mesh may be from the grid's heights, in the same units. Errors are measured
+     *                  where each hypotenuse would be split, so between those points the mesh can be slightly further.
+     * @return The indices of the triangles, 3 a triangle, of the grid's vertices indexed like the heights
+     * @throws InvalidParameterException If there isn't an error for every vertex or max_error is negative
+     */
+    public int[] triangulate(float[] errors, float max_error){
+        if (errors == null || errors.length != resolution * resolution){
+            throw new InvalidParameterException("An adaptive mesh needs an error for every vertex!");
+        }
+        if (max_error < 0.0f){
+            throw new InvalidParameterException("The error of an adaptive mesh can't be negative!");
+        }
+        int last = resolution - 1;
+
+        // Count first so the indices are allocated once at the right size
+        int count = countTriangles(errors, max_error, 0, 0, last, last, last, 0)
+                + countTriangles(errors, max_error, last, last, 0, 0, 0, last);
+        int[] indices = new int[count * 3];
+
+        int written = emitTriangles(errors, max_error, 0, 0, last, last, last, 0, indices, 0);
+        emitTriangles(errors, max_error, last, last, 0, 0, 0, last, indices, written);
+        return indices;
+    }
+
+    /**
+     * Count the triangles a triangle becomes, a is the start and b the end of the hypotenuse and c the right angle
+     */
+    private int countTriangles(float[] errors, float max_error, int ax, int ay, int bx, int by, int cx, int cy){
+        int mx = (ax + bx) >> 1;
+        int my = (ay + by) >> 1;
+        if (shouldSplit(errors, max_error, ax, ay, cx, cy, mx, my)){
+            return countTriangles(errors, max_error, cx, cy, ax, ay, mx, my)
+                    + countTriangles(errors, max_error, bx, by, cx, cy, mx, my);
+        }
+        return 1;
+    }
+
+    /**
+     * Write the triangles a triangle becomes to indices, see countTriangles
+     * @return The index after the last one written
+     */
+    private int emitTriangles(float[] errors, float max_error, int ax, int ay, int bx, int by, int cx, int cy,
+                              int[] indices, int offset){
+        int mx = (ax + bx) >> 1;
+        int my = (ay + by) >> 1;
+        if (shouldSplit(errors, max_error, ax, ay, cx, cy, mx, my)){
+            offset = emitTriangles(errors, max_error, cx, cy, ax, ay, mx, my, indices, offset);
+            return emitTriangles(errors, max_error, bx, by, cx, cy, mx, my, indices, offset);
+        }
+        indices[offset] = vertex(ax, ay);
+        indices[offset + 1] = vertex(bx, by);
+        indices[offset + 2] = vertex(cx, cy);
+        return offset + 3;
+    }
+
+    /**
+     * Check whether a triangle is split, it must be larger than a single cell and the vertex it adds too far off
+     */
+    private boolean shouldSplit(float[] errors, float max_error, int ax, int ay, int cx, int cy, int mx, int my){
+        return Math.abs(ax - cx) + Math.abs(ay - cy) > 1 && errors[vertex(mx, my)] > max_error;
+    }
+
+    /**
+     * The index of a vertex of the grid, x east and y south, laid out like HeightmapMesh
+     */
+    private int vertex(int x, int y){
+        return (x * resolution) + y;
+    }
+
+    /**
+     * Get the resolution this mesher triangulates
+     * @return The number of vertices along each side of the grid
+     */
+    public int getResolution(){
+        return resolution;
+    }
+}
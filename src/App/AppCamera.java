@@ -4,13 +4,14 @@ import Graphics.GLCamera;
 import Graphics.GLObject;
 import org.lwjgl.glfw.GLFW;
 
+import Math.Transform;
 import Math.Vector;
 
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
 
 /**
- * This process manages the camera of this app.
+ * This process manages the camera of this app. The camera is moved on the simulation thread with its own transform,
+ * each snapshot carries a copy of it which the render thread gives to the GLCamera.
  */
 public class AppCamera implements AppProcess{
     /**
@@ -18,6 +19,16 @@ public class AppCamera implements AppProcess{
      */
     private GLCamera camera;
 
+    /**
+     * The transform the simulation moves, only touched on the simulation thread once it starts
+     */
+    private Transform transform;
+
+    /**
+     * The transform as it was before the last tick, so the render thread can blend between the two
+     */
+    private Transform previous;
+
     /**
      * The speed of movement for the camera
      */
@@ -28,6 +39,16 @@ public class AppCamera implements AppProcess{
      */
     private float rotation_speed;
 
+    /**
+     * The recent velocity of the camera in world units per second, smoothed so single frames don't jerk it around
+     */
+    private Vector velocity;
+
+    /**
+     * The time, in seconds, over which the velocity is smoothed
+     */
+    private static final double VELOCITY_SMOOTHING = 0.25;
+
     /**
      * An empty constructor, nothing can be initialized yet without context
      * @param speed The speed the camera moves
@@ -36,6 +57,9 @@ public class AppCamera implements AppProcess{
     public AppCamera(float speed, float rotation_speed){
         this.speed = speed;
         this.rotation_speed = rotation_speed;
+        this.velocity = new Vector();
+        this.transform = new Transform();
+        this.previous = new Transform();
     }
 
     /**
@@ -64,15 +88,18 @@ public class AppCamera implements AppProcess{
      */
     @Override
     public void frame(double dt, AppContext context) throws InvalidParameterException {
+        // Remember where this tick started so it can be drawn in between
+        copyTransform(transform, previous);
+
         // This method is for calculating movement of the camera
         // Take the current forward vector of the camera
-        Vector forward = camera.getForward();
+        Vector forward = GLCamera.getForward(transform.getRotation());
 
         // The direction to move the camera, added to the position vector. Should be normalized.
         Vector movement_delta = new Vector();
 
-        ArrayList<Integer> keylist = context.getGraphicsDriver().getWindow().getKeyList();
-        for (Integer key : keylist){
+        int[] keys = context.getGraphicsDriver().getWindow().getKeysDown();
+        for (int key : keys){
             switch (key){
                 case GLFW.GLFW_KEY_W: {
                     movement_delta = movement_delta.plus(forward.mul(1.0f));
@@ -95,27 +122,27 @@ public class AppCamera implements AppProcess{
                     break;
                 }
                 case GLFW.GLFW_KEY_UP:{
-                    double x =camera.getTransform().getRotation().getX();
+                    double x =transform.getRotation().getX();
                     x += rotation_speed * dt;
-                    camera.getTransform().getRotation().setX(x);
+                    transform.getRotation().setX(x);
                     break;
                 }
                 case GLFW.GLFW_KEY_DOWN:{
-                    double x =camera.getTransform().getRotation().getX();
+                    double x =transform.getRotation().getX();
                     x -= rotation_speed * dt;
-                    camera.getTransform().getRotation().setX(x);
+                    transform.getRotation().setX(x);
                     break;
                 }
                 case GLFW.GLFW_KEY_RIGHT:{
-                    double x =camera.getTransform().getRotation().getY();
+                    double x =transform.getRotation().getY();
                     x += rotation_speed * dt;
-                    camera.getTransform().getRotation().setY(x);
+                    transform.getRotation().setY(x);
                     break;
                 }
                 case GLFW.GLFW_KEY_LEFT:{
-                    double x =camera.getTransform().getRotation().getY();
+                    double x =transform.getRotation().getY();
                     x -= rotation_speed * dt;
-                    camera.getTransform().getRotation().setY(x);
+                    transform.getRotation().setY(x);
                     break;
                 }
                 default: {
@@ -124,16 +151,59 @@ public class AppCamera implements AppProcess{
             }
         }
 
+        Vector sample = new Vector();
         if (movement_delta.getLength() > 0.01) {
             movement_delta.normalize();
 
+            sample = movement_delta.mul(speed);
+
             movement_delta = movement_delta.mul(speed * (float) dt);
 
-            Vector old_pos = camera.getTransform().getPos();
+            Vector old_pos = transform.getPos();
             Vector new_pos = old_pos.plus(movement_delta);
 
-            camera.getTransform().setPos(new_pos);
+            transform.setPos(new_pos);
         }
+
+        // Ease the velocity towards this frame's movement
+        double blend = Math.min(1.0, dt / VELOCITY_SMOOTHING);
+        velocity = velocity.plus(sample.plus(velocity.mul(-1.0f)).mul((float) blend));
+    }
+
+    /**
+     * Copy the camera's transform before and after this tick into its snapshot
+     * @param snapshot The snapshot of this tick
+     */
+    @Override
+    public void snapshot(SceneSnapshot snapshot){
+        snapshot.setCamera(previous, transform);
+    }
+
+    /**
+     * Move the GLCamera to where the latest snapshot has the camera, blended through the tick so it moves smoothly
+     * however the frames fall between ticks
+     * @param snapshot The newest snapshot
+     * @param fresh Whether this snapshot is new since the last frame
+     * @param alpha How far the frame is through the snapshot's tick
+     * @param context The current app context this process is running in
+     */
+    @Override
+    public void render(SceneSnapshot snapshot, boolean fresh, double alpha, AppContext context){
+        if (snapshot.hasCamera()){
+            snapshot.applyCamera(camera.getTransform(), alpha);
+        }
+    }
+
+    /**
+     * Copy the position and rotation of one transform into another
+     * @param from The transform to copy
+     * @param to The transform to overwrite
+     */
+    private static void copyTransform(Transform from, Transform to){
+        to.setPos(new Vector(from.getPos()));
+        to.getRotation().setX(from.getRotation().getX());
+        to.getRotation().setY(from.getRotation().getY());
+        to.getRotation().setZ(from.getRotation().getZ());
     }
 
     /**
@@ -152,4 +222,20 @@ public class AppCamera implements AppProcess{
     public GLCamera getGLCamera(){
         return camera;
     }
+
+    /**
+     * Get the transform the simulation moves, the camera the render thread draws from trails it by a tick or so
+     * @return The simulated transform, as a pointer, only use it on the simulation thread
+     */
+    public Transform getTransform(){
+        return transform;
+    }
+
+    /**
+     * Get the recent velocity of the camera
+     * @return The velocity in world units per second, as a pointer
+     */
+    public Vector getVelocity(){
+        return velocity;
+    }
 }
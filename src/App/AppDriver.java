@@ -7,20 +7,62 @@ import Graphics.GLTransform;
 import Graphics.GraphicsDriver;
 
 import javax.naming.ConfigurationException;
+import java.io.IOException;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
 
 import Math.Image;
 import Math.Transform;
 import Math.Vector;
+import Utils.Clock;
+import Utils.Counter;
+import Utils.FixedTimestep;
+import Utils.Gauge;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.MetricsExporter;
+import Utils.TripleBuffer;
+import Utils.Events.FrameRenderedEvent;
 
 /**
  * This class provides a driver for the app in which the main driver can call to
  * The app folder contains wrappers around various elements of this program.
  * The app driver should keep a list of all processes to run, in no particular order
+ * <p>
+ * The app runs on two threads. The thread calling loop renders: it owns the window and OpenGL context, gives each
+ * process the newest SceneSnapshot to apply and draws the scene. A simulation thread runs every process's frame at a
+ * fixed timestep and writes a snapshot after each tick. The snapshots are passed through a TripleBuffer so a slow
+ * tick never holds up a frame and a slow frame never holds up the simulation. Frames fall between ticks, so each
+ * frame blends the camera from before the newest tick to after it by how far the clock is past that tick.
+ * <p>
+ * How long each process takes to tick and to render is kept in the Metrics registry, labelled by the process's
+ * class, and the registry is exported for as long as the loop runs, see MetricsExporter. Each frame is also emitted
+ * as a FrameRenderedEvent with its phases, for JDK Flight Recorder.
  */
 public class AppDriver {
+    /**
+     * The number of simulation ticks a second
+     */
+    public static final int TICK_RATE = 60;
+
+    /**
+     * The system property which replaces TICK_RATE
+     */
+    public static final String TICK_RATE_PROPERTY = "planesim.tick.rate";
+
+    /**
+     * The most ticks the simulation runs back to back to catch up after a stall, anything more is dropped
+     */
+    public static final int MAX_CATCH_UP = 5;
+
+    /**
+     * The system property which replaces MAX_CATCH_UP
+     */
+    public static final String MAX_CATCH_UP_PROPERTY = "planesim.tick.catchup";
+
     /**
      * The current context for this driver
      */
@@ -37,16 +79,64 @@ public class AppDriver {
      */
     private ArrayList<AppProcess> appProcesses;
 
+    /**
+     * The snapshots passed from the simulation thread to the render thread
+     */
+    private TripleBuffer<SceneSnapshot> snapshots;
+
+    /**
+     * Whether the simulation thread should keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * Whatever the simulation thread died of, null while it's healthy
+     */
+    private volatile Throwable simulation_failure;
+
+    /**
+     * The clock the simulation ticks by
+     */
+    private final Clock clock;
+
+    /**
+     * The timestep of the simulation, created when the loop starts
+     */
+    private FixedTimestep timestep;
+
+    /**
+     * How long each process's frame and render take, in the same order as appProcesses, created when the loop starts
+     */
+    private LatencyHistogram[] frame_times;
+    private LatencyHistogram[] render_times;
+
     /**
      * A constructor for the App Driver which constructs objects but doesn't configure them
      * @param window_width The width of the window to construct
      * @param window_height The height of the window to construct
      */
     public AppDriver(int window_width, int window_height){
+        this(window_width, window_height, Clock.SYSTEM);
+    }
+
+    /**
+     * A constructor for the App Driver which ticks the simulation by a provided clock
+     * @param window_width The width of the window to construct
+     * @param window_height The height of the window to construct
+     * @param clock The clock the simulation ticks by
+     * @throws InvalidParameterException If the clock is null
+     */
+    public AppDriver(int window_width, int window_height, Clock clock){
+        if (clock == null){
+            throw new InvalidParameterException("The app driver needs a clock!");
+        }
+        this.clock = clock;
         try {
             // Construct the app processes array
             appProcesses = new ArrayList<>();
 
+            snapshots = new TripleBuffer<>(SceneSnapshot::new);
+
             // Create a graphics driver for our context, OpenGL 3.3 is embedded
             GraphicsDriver graphicsDriver = new GraphicsDriver(window_width, window_height, 3,3);
 
@@ -80,31 +170,135 @@ public class AppDriver {
     }
 
     /**
-     * The loop method for the app driver. This is called by the primary driver and the method takes care of the looping
+     * The loop method for the app driver. This is called by the primary driver and the method takes care of the looping.
+     * The calling thread becomes the render thread and the simulation is started on its own thread, both stop when
+     * the window is closed.
+     * @throws IllegalStateException If the simulation thread failed
      */
     public void loop(){
-        long time = System.currentTimeMillis();
+        camera.getTransform().getPos().setZ(0.0);
+
+        camera.getTransform().getPos().setX(0.0);
+
+        camera.getTransform().getPos().setY(10.0);
 
-        camera.getGLCamera().getTransform().getPos().setZ(0.0);
+        camera.getTransform().getRotation().setX(0.0);
 
-        camera.getGLCamera().getTransform().getPos().setX(0.0);
+        timestep = new FixedTimestep(clock, Integer.getInteger(TICK_RATE_PROPERTY, TICK_RATE),
+                Integer.getInteger(MAX_CATCH_UP_PROPERTY, MAX_CATCH_UP));
 
-        camera.getGLCamera().getTransform().getPos().setY(10.0);
+        frame_times = new LatencyHistogram[appProcesses.size()];
+        render_times = new LatencyHistogram[appProcesses.size()];
+        for (int i = 0; i < appProcesses.size(); i++){
+            String name = appProcesses.get(i).getClass().getSimpleName();
+            frame_times[i] = Metrics.histogram("planesim_process_frame_seconds",
+                    "Time each process takes to run a simulation tick", "process", name);
+            render_times[i] = Metrics.histogram("planesim_process_render_seconds",
+                    "Time each process takes to apply a snapshot on the render thread", "process", name);
+        }
+        LatencyHistogram loop_time = Metrics.histogram("planesim_frame_seconds",
+                "Time between frames on the render thread, including waiting for the buffer swap");
+
+        MetricsExporter exporter = MetricsExporter.fromProperties();
+        try {
+            exporter.start();
+        } catch (IOException e) {
+            System.out.printf("Failed to start exporting metrics: %s\n", e.getMessage());
+        }
 
-        camera.getGLCamera().getTransform().getRotation().setX(0.0);
+        running = true;
+        Thread simulation = new Thread(this::simulate, "Simulation");
+        simulation.setDaemon(true);
+        simulation.start();
 
-        while (context.getGraphicsDriver().loop()){
-            long current_time = System.currentTimeMillis();
+        try {
+            boolean open = true;
+            long last_frame = System.nanoTime();
+            while (open && running){
+                FrameRenderedEvent frame_event = new FrameRenderedEvent();
+                frame_event.begin();
+                long frame_start = System.nanoTime();
 
-            double dt = (double) (current_time - time) / 1000.0;
+                // Apply the newest tick, or the last one again if the simulation hasn't finished another
+                boolean fresh = snapshots.acquire();
+                SceneSnapshot snapshot = snapshots.getFront();
+                double alpha = timestep.getInterpolation(snapshot.getTime());
+                for (int i = 0; i < appProcesses.size(); i++){
+                    long start = System.nanoTime();
+                    appProcesses.get(i).render(snapshot, fresh, alpha, context);
+                    render_times[i].record(System.nanoTime() - start);
+                }
 
-            time = System.currentTimeMillis();
+                long applied = System.nanoTime();
+                GraphicsDriver graphics = context.getGraphicsDriver();
+                open = graphics.loop();
 
-            // Iterate through our processes
-            for (AppProcess process : appProcesses){
-                process.frame(dt, context);
+                long now = System.nanoTime();
+                loop_time.record(now - last_frame);
+                frame_event.end();
+                if (frame_event.shouldCommit()){
+                    frame_event.setFrame(graphics.getFrameCount() - 1, snapshot.getTick(), fresh);
+                    frame_event.setPhases(applied - frame_start, graphics.getLastDrawTime(),
+                            graphics.getLastSwapTime());
+                    frame_event.setWork(graphics.getLastDrawCalls(), graphics.getLastStateChanges());
+                    frame_event.commit();
+                }
+                last_frame = now;
             }
+        } finally {
+            running = false;
+            try {
+                simulation.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exporter.close();
+        }
+
+        if (simulation_failure != null){
+            throw new IllegalStateException("The simulation thread failed", simulation_failure);
+        }
+        if (timestep.getDroppedTicks() > 0){
+            System.out.printf("The simulation dropped %d of %d ticks to catch up\n", timestep.getDroppedTicks(),
+                    timestep.getTicks() + timestep.getDroppedTicks());
+        }
+    }
 
+    /**
+     * The simulation thread. Every process runs its frame once a tick with the same fixed dt, then writes its part
+     * of the tick's snapshot. Ticks which fell due while a tick ran long are run straight after it, up to the catch
+     * up limit, see FixedTimestep.
+     */
+    private void simulate(){
+        double dt = timestep.getStep();
+        Counter ticks = Metrics.counter("planesim_ticks_total", "Simulation ticks run");
+        Gauge dropped = Metrics.gauge("planesim_ticks_dropped", "Simulation ticks dropped to catch up after stalls");
+        try {
+            while (running){
+                timestep.update();
+                dropped.set(timestep.getDroppedTicks());
+                while (running && timestep.nextTick()){
+                    ticks.increment();
+                    for (int i = 0; i < appProcesses.size(); i++){
+                        long start = System.nanoTime();
+                        appProcesses.get(i).frame(dt, context);
+                        frame_times[i].record(System.nanoTime() - start);
+                    }
+
+                    SceneSnapshot snapshot = snapshots.getBack();
+                    snapshot.begin(timestep.getTicks(), timestep.getTickTime());
+                    for (AppProcess process : appProcesses){
+                        process.snapshot(snapshot);
+                    }
+                    snapshots.publish();
+                }
+
+                // Wait for the next tick
+                LockSupport.parkNanos(timestep.getNanosUntilNextTick());
+            }
+        } catch (Throwable e) {
+            simulation_failure = e;
+            running = false;
         }
     }
 
@@ -5,8 +5,12 @@ import java.security.InvalidParameterException;
 /**
  * This interface represents a process that the app driver will execute each frame. Each process has access to the
  * Data and Graphics Drivers and has an object that should persist across frames. All processes should act
- * independently of each other but within the same Context. Not necessarily threaded. The purpose is more so
- * to divide up each task of initialization and updating to its own class/object.
+ * independently of each other but within the same Context. The purpose is more so to divide up each task of
+ * initialization and updating to its own class/object.
+ * <p>
+ * Processes are split across two threads. init, render and destroy run on the render thread, which owns the OpenGL
+ * context. frame and snapshot run on the simulation thread at a fixed timestep and must never touch OpenGL, anything
+ * the render thread needs from a tick is written to the tick's SceneSnapshot.
  */
 public interface AppProcess {
 
@@ -18,13 +22,35 @@ public interface AppProcess {
     void init(AppContext context) throws InvalidParameterException;
 
     /**
-     * This method is called every frame on each app process.
-     * @param dt The time, in seconds, since the last call (Delta Time)
+     * This method is called every simulation tick on each app process, on the simulation thread.
+     * @param dt The time, in seconds, since the last call (Delta Time), always the fixed timestep
      * @param context The current app context this process is running in
      * @throws java.security.InvalidParameterException If context is null and/or if dt is negative
      */
     void frame(double dt, AppContext context) throws InvalidParameterException;
 
+    /**
+     * Write the state the render thread needs into this tick's snapshot, called on the simulation thread after
+     * every process has run its frame.
+     * @param snapshot The snapshot of this tick
+     */
+    default void snapshot(SceneSnapshot snapshot){
+        // Most processes have nothing to draw
+    }
+
+    /**
+     * Apply the latest snapshot before a frame is drawn, called on the render thread. This is the only place a
+     * process may use OpenGL after init.
+     * @param snapshot The newest snapshot, the same one as the last frame if no tick finished in between
+     * @param fresh Whether this snapshot is new since the last frame
+     * @param alpha How far the frame is through the snapshot's tick, 0 to 1, to blend anything which moves smoothly
+     *              from its state before the tick to its state after it
+     * @param context The current app context this process is running in
+     */
+    default void render(SceneSnapshot snapshot, boolean fresh, double alpha, AppContext context){
+        // Most processes have nothing to draw
+    }
+
     /**
      * Some processes may use unsafe objects. This method allows them to be destroyed. The process should be
      * considered useless after this is called.
@@ -1,14 +1,12 @@
 package App;
 
+import Data.ElevationGrid;
 import Data.WorldCoordinate;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 import Graphics.GLHeightMapConfig;
 import Graphics.GLPointArray;
@@ -46,22 +44,15 @@ public class HeightMapProcess implements AppProcess{
         double delta_lat = (max_lat - min_lat)  / 2.0;
         double delta_lon = (max_long - min_long) / 2.0;
 
-        // Calculate our needed coordinates
-        ArrayList<WorldCoordinate> cords = new ArrayList<>();
-
         int elevation_res = 2;
 
-        for (int x = -elevation_res; x < elevation_res; x++){
-            for (int y = -elevation_res; y < elevation_res; y++){
-                double lat_p = ((double) x * delta_lat / (double) elevation_res) + base_lat;
-                double lng_p = ((double) y * delta_lon / (double) elevation_res) + base_long;
-                cords.add(
-                        new WorldCoordinate(lat_p, lng_p)
-                );
-            }
-        }
+        // A lattice of 2 * elevation_res points each way, starting one delta south west of the base tile
+        double lat_spacing = Math.abs(delta_lat) / (double) elevation_res;
+        double lng_spacing = Math.abs(delta_lon) / (double) elevation_res;
 
-        HashMap<WorldCoordinate, Float> result_elevation = context.getDataDriver().getElevationData(cords);
+        ElevationGrid result_elevation = context.getDataDriver().getElevationGrid(
+                base_lat - Math.abs(delta_lat), base_long - Math.abs(delta_lon), lat_spacing, lng_spacing,
+                2 * elevation_res, 2 * elevation_res);
 
         try {
             GLShader map_shader = new GLShader();
@@ -82,29 +73,16 @@ public class HeightMapProcess implements AppProcess{
 
         GLPointArray mesh = new GLPointArray();
 
-        float[] vertices = new float[3 * result_elevation.size()];
+        float[] vertices = new float[3 * result_elevation.getData().length];
 
         int offset = 0;
-
-        double min_lat2 = result_elevation.entrySet().stream().findAny().get().getKey().getWorldCoordinate().getX();
-        double max_lat2 = result_elevation.entrySet().stream().findAny().get().getKey().getWorldCoordinate().getX();
-
-        double min_lng2 = result_elevation.entrySet().stream().findAny().get().getKey().getWorldCoordinate().getY();
-        double max_lng2 = result_elevation.entrySet().stream().findAny().get().getKey().getWorldCoordinate().getY();
-        for (Map.Entry<WorldCoordinate, Float> cord : result_elevation.entrySet()){
-            Vector latlng = cord.getKey().getWorldCoordinate();
-
-            min_lat2 = Math.min(min_lat2, latlng.getX());
-            max_lat2 = Math.max(max_lat2, latlng.getX());
-
-            min_lng2 = Math.min(min_lng2, latlng.getY());
-            max_lng2 = Math.max(max_lng2, latlng.getY());
-
-            System.out.printf("LAt: %f Lng: %f\n", latlng.getX(), latlng.getY());
-            vertices[offset * 3] = (float)latlng.getX();
-            vertices[(offset * 3) + 1] = (float)latlng.getY();
-            vertices[(offset * 3) + 2] = (float)cord.getValue();
-            offset++;
+        for (int row = 0; row < result_elevation.getRows(); row++){
+            for (int column = 0; column < result_elevation.getColumns(); column++){
+                vertices[offset * 3] = (float) result_elevation.getLatitude(row);
+                vertices[(offset * 3) + 1] = (float) result_elevation.getLongitude(column);
+                vertices[(offset * 3) + 2] = result_elevation.get(row, column);
+                offset++;
+            }
         }
 
         mesh.bindElementsForUse();
@@ -115,8 +93,8 @@ public class HeightMapProcess implements AppProcess{
 
         context.getGraphicsDriver().pushObject(mesh);
 
-        config.lat_bounds = new Vector(min_lat2, max_lat2, 0);
-        config.lng_bounds = new Vector(min_lng2, max_lng2, 0);
+        config.lat_bounds = new Vector(result_elevation.getSouth(), result_elevation.getNorth(), 0);
+        config.lng_bounds = new Vector(result_elevation.getWest(), result_elevation.getEast(), 0);
     }
 
     @Override
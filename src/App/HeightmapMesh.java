@@ -0,0 +1,320 @@
+package App;
+
+import Math.BatchTransform;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A class holding the heightmap mesh of a single tile. Along with generating the mesh, this class stitches the edges
+ * of the mesh to neighbouring tiles of a coarser zoom. A coarser neighbour has fewer vertices along the shared edge,
+ * so the vertices of this mesh which fall between them are moved onto the straight line the neighbour draws there.
+ * Without this, tiles of different zooms leave cracks along their shared edges.
+ */
+public class HeightmapMesh {
+    /**
+     * The sides of a mesh, used to index the levels given to stitch
+     */
+    public static final int NORTH = 0;
+    public static final int EAST = 1;
+    public static final int SOUTH = 2;
+    public static final int WEST = 3;
+
+    /**
+     * Our buffer of vertices, 5 floats per vertex: position then texture coordinate
+     */
+    private float[] vertices;
+
+    /**
+     * Our indices for our heightmaps, a triangle strip for each column unless the mesh has been simplified
+     */
+    private int[] indices;
+
+    /**
+     * Whether the indices are a list of triangles from simplify rather than triangle strips
+     */
+    private boolean triangles;
+
+    /**
+     * The resolution of the height map
+     */
+    private int resolution;
+
+    /**
+     * The height of each vertex before any stitching, kept so the mesh can be stitched again as neighbours change
+     */
+    private float[] heights;
+
+    /**
+     * The number of zoom levels coarser the neighbour on each side was when last stitched
+     */
+    private int[] stitch_levels;
+
+    /**
+     * The height of each vertex, including any stitching, as a 16 bit unsigned fraction of the mesh's height range.
+     * This is all the compact vertex layout uploads, the rest of each vertex is rebuilt from its index.
+     */
+    private short[] packed_heights;
+
+    /**
+     * The lowest height of the mesh and the distance from it to the highest, which the packed heights are
+     * fractions of
+     */
+    private float height_offset;
+    private float height_scale;
+
+    /**
+     * The largest packed height, a packed height of this is the top of the mesh's height range
+     */
+    private static final int PACKED_HEIGHT_MAX = 0xFFFF;
+
+    /**
+     * Constructor to initialize our heightmap with a specific resolution
+     * @param res The resolution of the heightmap, determines the length of vertices and indices. Must be a power of
+     *            two plus one so the vertices of coarser neighbours line up with ours.
+     * @throws InvalidParameterException If res - 1 isn't a power of two
+     */
+    public HeightmapMesh(int res){
+        if (res < 2 || Integer.bitCount(res - 1) != 1){
+            throw new InvalidParameterException("Heightmap resolution must be a power of two plus one!");
+        }
+        this.resolution = res;
+        this.indices = new int[(res - 1) * res * 2];
+        this.vertices = new float[res * res * 5];
+        this.heights = new float[res * res];
+        this.stitch_levels = new int[4];
+        this.packed_heights = new short[res * res];
+    }
+
+    /**
+     * Generate this mesh from the elevation at each of its vertices. The mesh spans -0.5 to 0.5 on X and Z,
+     * and the height is in world units divided by the tile's size so it's scaled back by the tile's
+     * transform. Heights are only taken from the vertex's own location so the shared edges of neighbouring
+     * tiles line up.
+     * @param latitudes The latitude of each vertex, going south then east, see WorldCoordinate.tileLattice
+     * @param elevations The elevation, in meters, of each vertex in the same order
+     * @param tile_size The size of the tile in world units
+     * @throws InvalidParameterException If there isn't a latitude and elevation for every vertex
+     */
+    public void generateMesh(double[] latitudes, float[] elevations, double tile_size){
+        if (latitudes.length < resolution * resolution || elevations.length != resolution * resolution){
+            throw new InvalidParameterException("A heightmap needs an elevation for every vertex!");
+        }
+        initializeElements();
+
+        // Convert every height in one pass, the same as TerrainQuadtree.metersToWorld divided by the tile's size
+        BatchTransform.metersToWorld(elevations, latitudes,
+                TerrainQuadtree.metersToWorld(1.0, 0.0) / tile_size, heights, heights.length);
+
+        int index = 0;
+        for (int i = 0; i < resolution; i++) {
+            for (int j = 0; j < resolution; j++) {
+                int vertex = (i * resolution) + j;
+
+                // How far east (u) and south (v) through the tile this vertex is
+                double u = (double) i / (double) (resolution - 1);
+                double v = (double) j / (double) (resolution - 1);
+
+                vertices[index] = (float) (u - 0.5);
+                vertices[index+1] = heights[vertex];
+                vertices[index+2] = (float) (v - 0.5);
+
+                // The image is flipped on load so the bottom row, the south edge, is the start of the texture
+                vertices[index+3] = (float) u;
+                vertices[index+4] = (float) (1.0 - v);
+
+                index += 5;
+            }
+        }
+
+        // Stitching only ever moves a vertex between two others, so the range of the unstitched heights covers it
+        float lowest = Float.POSITIVE_INFINITY;
+        float highest = Float.NEGATIVE_INFINITY;
+        for (float height : heights){
+            lowest = Math.min(lowest, height);
+            highest = Math.max(highest, height);
+        }
+        height_offset = lowest;
+        height_scale = highest - lowest;
+
+        stitch_levels = new int[4];
+        triangles = false;
+        packHeights();
+    }
+
+    /**
+     * Replace the uniform grid of this mesh with an adaptive triangulation, see AdaptiveMesher. The vertices are
+     * untouched, only the indices change, so the mesh can still be stitched and packed. Must be called after
+     * generateMesh.
+     * @param mesher The mesher for this mesh's resolution
+     * @param max_error The furthest the mesh may be from the elevation, in the same units as the heights
+     * @throws InvalidParameterException If the mesher is for another resolution
+     */
+    public void simplify(AdaptiveMesher mesher, float max_error){
+        if (mesher == null || mesher.getResolution() != resolution){
+            throw new InvalidParameterException("A mesh can only be simplified by a mesher of its resolution!");
+        }
+        indices = mesher.triangulate(mesher.computeErrors(heights), max_error);
+        triangles = true;
+    }
+
+    /**
+     * Stitch the edges of this mesh to its neighbours. On a side where the neighbour is d zoom levels coarser, only
+     * every 2^d-th vertex is shared with the neighbour, the vertices in between are moved onto the line between
+     * the shared ones. A neighbour more levels coarser than this mesh has segments is stitched to the corners,
+     * which is as close as we can get without the neighbour's heights.
+     * @param levels The number of zoom levels coarser the neighbour is on each side, indexed by NORTH, EAST, SOUTH
+     *               and WEST. Zero or less means the neighbour is the same zoom, finer or missing.
+     * @return True if the vertices changed and need to be uploaded again
+     * @throws InvalidParameterException If levels isn't 4 long
+     */
+    public boolean stitch(int[] levels){
+        if (levels == null || levels.length != 4){
+            throw new InvalidParameterException("Stitching needs a level for each of the 4 sides!");
+        }
+        boolean changed = false;
+        for (int side = 0; side < 4; side++){
+            int level = Math.max(levels[side], 0);
+            if (level != stitch_levels[side]){
+                stitch_levels[side] = level;
+                changed = true;
+            }
+        }
+        if (!changed){
+            return false;
+        }
+
+        // Start from the original heights then bring each side down to its neighbour's resolution
+        for (int vertex = 0; vertex < heights.length; vertex++){
+            vertices[(vertex * 5) + 1] = heights[vertex];
+        }
+
+        for (int side = 0; side < 4; side++){
+            if (stitch_levels[side] == 0){
+                continue;
+            }
+            int step = (int) Math.min(1L << Math.min(stitch_levels[side], 30), resolution - 1);
+
+            for (int k = 0; k < resolution; k++){
+                int a = (k / step) * step;
+                if (a == k){
+                    // This vertex is shared with the neighbour
+                    continue;
+                }
+                int b = a + step;
+                float t = (float) (k - a) / (float) step;
+
+                float height = (heights[edgeVertex(side, a)] * (1.0f - t)) + (heights[edgeVertex(side, b)] * t);
+                vertices[(edgeVertex(side, k) * 5) + 1] = height;
+            }
+        }
+
+        packHeights();
+        return true;
+    }
+
+    /**
+     * Quantize the height of every vertex, stitching included, into packed_heights
+     */
+    private void packHeights(){
+        // A flat tile has no range, every height packs to 0
+        float inverse = height_scale > 0.0f ? PACKED_HEIGHT_MAX / height_scale : 0.0f;
+        for (int vertex = 0; vertex < packed_heights.length; vertex++){
+            int packed = Math.round((vertices[(vertex * 5) + 1] - height_offset) * inverse);
+            packed_heights[vertex] = (short) Math.max(0, Math.min(packed, PACKED_HEIGHT_MAX));
+        }
+    }
+
+    /**
+     * Find the index of a vertex along an edge of this mesh
+     * @param side The side of the mesh
+     * @param k How far along the edge, going east for the north and south sides and south for the east and west
+     * @return The vertex index
+     */
+    private int edgeVertex(int side, int k){
+        switch (side){
+            case NORTH:
+                return k * resolution;
+            case SOUTH:
+                return (k * resolution) + (resolution - 1);
+            case WEST:
+                return k;
+            default:
+                return ((resolution - 1) * resolution) + k;
+        }
+    }
+
+    /**
+     * Create the list of elements for this heightmap
+     */
+    private void initializeElements(){
+        if (indices.length != (resolution - 1) * resolution * 2){
+            indices = new int[(resolution - 1) * resolution * 2];
+        }
+        for (int i = 0; i < resolution - 1; i++) {
+            for (int j = 0; j < resolution; j++) {
+                for (int k = 0; k < 2; k++) {
+                    indices[(i * resolution * 2) + (j * 2) + k] = (j + resolution * (i + k));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the vertices of this mesh, including any stitching
+     * @return The vertices, as a pointer
+     */
+    public float[] getVertices(){
+        return vertices;
+    }
+
+    /**
+     * Get the height of each vertex, stitching included, packed for VertexLayout.PACKED_HEIGHT. Vertex i is at
+     * column i / resolution (east) and row i % resolution (south), and its height is
+     * getHeightOffset() + (packed / 65535) * getHeightScale().
+     * @return The packed heights, as a pointer
+     */
+    public short[] getPackedHeights(){
+        return packed_heights;
+    }
+
+    /**
+     * Get the lowest height of this mesh, what a packed height of 0 means
+     * @return The height offset, in the same units as the vertices
+     */
+    public float getHeightOffset(){
+        return height_offset;
+    }
+
+    /**
+     * Get the distance from the lowest to the highest height of this mesh, what a packed height of 65535 adds to
+     * the offset
+     * @return The height scale, in the same units as the vertices
+     */
+    public float getHeightScale(){
+        return height_scale;
+    }
+
+    /**
+     * Get the indices of this mesh
+     * @return The indices, as a pointer
+     */
+    public int[] getIndices(){
+        return indices;
+    }
+
+    /**
+     * Check whether the indices are a list of triangles, 3 a triangle, rather than a triangle strip for each column
+     * @return True if the mesh has been simplified
+     */
+    public boolean isTriangles(){
+        return triangles;
+    }
+
+    /**
+     * Get the resolution of this mesh
+     * @return The number of vertices along each side
+     */
+    public int getResolution(){
+        return resolution;
+    }
+}
@@ -0,0 +1,220 @@
+package App;
+
+import Graphics.GLTile;
+import Math.Transform;
+import Math.Vector;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The state of one simulation tick which the render thread draws: where the camera was before and after the tick and
+ * which tiles are drawn with the levels of their coarser neighbours. Snapshots are passed from the simulation thread
+ * to the render thread through a TripleBuffer, so each one is reused and rewritten from the start every tick.
+ */
+public class SceneSnapshot {
+    /**
+     * The tick this snapshot was taken at, -1 before the first tick
+     */
+    private long tick;
+
+    /**
+     * The clock time of the tick, see Utils.FixedTimestep.getTickTime
+     */
+    private long time;
+
+    /**
+     * Whether a camera was written this tick
+     */
+    private boolean has_camera;
+
+    /**
+     * The camera's position and euler rotation after the tick
+     */
+    private final double[] camera_position;
+    private final double[] camera_rotation;
+
+    /**
+     * The camera's position and euler rotation before the tick
+     */
+    private final double[] previous_position;
+    private final double[] previous_rotation;
+
+    /**
+     * The tiles drawn this tick and the CPU meshes behind them
+     */
+    private final ArrayList<GLTile> tiles;
+    private final ArrayList<HeightmapMesh> meshes;
+
+    /**
+     * The levels of each drawn tile's coarser neighbours, 4 a tile in HeightmapMesh's NORTH, EAST, SOUTH, WEST order
+     */
+    private int[] neighbour_levels;
+
+    /**
+     * Construct an empty snapshot
+     */
+    public SceneSnapshot(){
+        tick = -1;
+        time = 0;
+        has_camera = false;
+        camera_position = new double[3];
+        camera_rotation = new double[3];
+        previous_position = new double[3];
+        previous_rotation = new double[3];
+        tiles = new ArrayList<>();
+        meshes = new ArrayList<>();
+        neighbour_levels = new int[64];
+    }
+
+    /**
+     * Clear this snapshot to start writing a tick
+     * @param tick The tick being written
+     * @param time The clock time of the tick, in nanoseconds
+     */
+    public void begin(long tick, long time){
+        this.tick = tick;
+        this.time = time;
+        has_camera = false;
+        tiles.clear();
+        meshes.clear();
+    }
+
+    /**
+     * Get the tick this snapshot was taken at
+     * @return The tick, -1 if nothing has been written yet
+     */
+    public long getTick(){
+        return tick;
+    }
+
+    /**
+     * Get the clock time of the tick this snapshot was taken at
+     * @return The time in nanoseconds, on the simulation's clock
+     */
+    public long getTime(){
+        return time;
+    }
+
+    /**
+     * Copy the camera's transform before and after the tick into this snapshot
+     * @param previous The camera's transform before the tick
+     * @param transform The camera's transform after the tick
+     * @throws InvalidParameterException If either transform is null
+     */
+    public void setCamera(Transform previous, Transform transform){
+        if (previous == null || transform == null){
+            throw new InvalidParameterException("A snapshot's camera needs a transform!");
+        }
+        copy(previous.getPos(), previous_position);
+        copy(previous.getRotation(), previous_rotation);
+        copy(transform.getPos(), camera_position);
+        copy(transform.getRotation(), camera_rotation);
+        has_camera = true;
+    }
+
+    /**
+     * Check whether a camera was written this tick
+     * @return True if there is a camera
+     */
+    public boolean hasCamera(){
+        return has_camera;
+    }
+
+    /**
+     * Move a transform to the camera of this snapshot, blended between before and after the tick
+     * @param transform The transform to move, the GLCamera's
+     * @param alpha How far through the tick to place the camera, 0 is before it and 1 after it
+     * @throws IllegalStateException If no camera was written this tick
+     */
+    public void applyCamera(Transform transform, double alpha){
+        if (!has_camera){
+            throw new IllegalStateException("No camera was written to this snapshot!");
+        }
+        Vector pos = transform.getPos();
+        pos.setX(lerp(previous_position[0], camera_position[0], alpha));
+        pos.setY(lerp(previous_position[1], camera_position[1], alpha));
+        pos.setZ(lerp(previous_position[2], camera_position[2], alpha));
+
+        Vector rotation = transform.getRotation();
+        rotation.setX(lerp(previous_rotation[0], camera_rotation[0], alpha));
+        rotation.setY(lerp(previous_rotation[1], camera_rotation[1], alpha));
+        rotation.setZ(lerp(previous_rotation[2], camera_rotation[2], alpha));
+    }
+
+    /**
+     * Add a drawn tile to this snapshot
+     * @param tile The uploaded tile
+     * @param mesh The CPU mesh of the tile, stitched on the render thread
+     * @param levels The levels of the tile's coarser neighbours, copied
+     * @throws InvalidParameterException If the tile or mesh is null or there aren't 4 levels
+     */
+    public void addTile(GLTile tile, HeightmapMesh mesh, int[] levels){
+        if (tile == null || mesh == null || levels == null || levels.length != 4){
+            throw new InvalidParameterException("A drawn tile needs a tile, a mesh and 4 neighbour levels!");
+        }
+        int index = tiles.size();
+        if ((index + 1) * 4 > neighbour_levels.length){
+            neighbour_levels = Arrays.copyOf(neighbour_levels, neighbour_levels.length * 2);
+        }
+        System.arraycopy(levels, 0, neighbour_levels, index * 4, 4);
+        tiles.add(tile);
+        meshes.add(mesh);
+    }
+
+    /**
+     * Get the number of tiles drawn this tick
+     * @return The number of tiles
+     */
+    public int getTileCount(){
+        return tiles.size();
+    }
+
+    /**
+     * Get a drawn tile
+     * @param index The tile, 0 to getTileCount()
+     * @return The tile
+     */
+    public GLTile getTile(int index){
+        return tiles.get(index);
+    }
+
+    /**
+     * Get the CPU mesh of a drawn tile
+     * @param index The tile, 0 to getTileCount()
+     * @return The mesh
+     */
+    public HeightmapMesh getMesh(int index){
+        return meshes.get(index);
+    }
+
+    /**
+     * Copy the levels of a drawn tile's coarser neighbours
+     * @param index The tile, 0 to getTileCount()
+     * @param levels The array to copy the 4 levels into
+     * @throws InvalidParameterException If the index is out of range or levels isn't 4 long
+     */
+    public void getNeighbourLevels(int index, int[] levels){
+        if (index < 0 || index >= tiles.size() || levels == null || levels.length != 4){
+            throw new InvalidParameterException("Neighbour levels need a drawn tile and an array of 4!");
+        }
+        System.arraycopy(neighbour_levels, index * 4, levels, 0, 4);
+    }
+
+    /**
+     * Blend from one value to another
+     */
+    private static double lerp(double from, double to, double alpha){
+        return from + ((to - from) * alpha);
+    }
+
+    /**
+     * Copy a vector into an array of 3
+     */
+    private static void copy(Vector vector, double[] out){
+        out[0] = vector.getX();
+        out[1] = vector.getY();
+        out[2] = vector.getZ();
+    }
+}
@@ -0,0 +1,337 @@
+package App;
+
+import Graphics.GLTile;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A single node of the TerrainQuadtree. Each node is one tile of the Web Mercator pyramid (zoom, x, y) and its four
+ * children are the tiles of zoom + 1 which cover the same area. The node holds the uploaded tile once it has loaded.
+ */
+public class TerrainNode {
+    /**
+     * The zoom level of this tile
+     */
+    private int zoom;
+
+    /**
+     * The x (west to east) and y (north to south) of this tile within its zoom level
+     */
+    private int x;
+    private int y;
+
+    /**
+     * The tile of zoom - 1 which contains this tile, null for the roots of the tree
+     */
+    private TerrainNode parent;
+
+    /**
+     * The four tiles of zoom + 1 which make up this tile, null until the node is first refined
+     */
+    private TerrainNode[] children;
+
+    /**
+     * The uploaded tile, null if this node hasn't loaded
+     */
+    private GLTile tile;
+
+    /**
+     * The CPU side mesh of the uploaded tile, kept so its edges can be stitched again as its neighbours change
+     */
+    private HeightmapMesh mesh;
+
+    /**
+     * How many zoom levels coarser the drawn neighbour on each side is, indexed by the sides of HeightmapMesh
+     */
+    private int[] neighbour_levels;
+
+    /**
+     * Whether this tile has been handed to the TilePipeline to load
+     */
+    private boolean requested;
+
+    /**
+     * The number of times in a row loading this tile has failed
+     */
+    private int failures;
+
+    /**
+     * The System.nanoTime before which this tile isn't requested again after a failure
+     */
+    private long retry_at;
+
+    /**
+     * Whether this tile was requested by the TilePrefetcher rather than because it was needed
+     */
+    private boolean prefetched;
+
+    /**
+     * Whether this tile has been selected by the quadtree since it was last unloaded
+     */
+    private boolean demanded;
+
+    /**
+     * The screen space error of this tile, in pixels, as of the last update of the tree
+     */
+    private double screen_error;
+
+    /**
+     * The frame this node was last part of the tree, either drawn or as the ancestor of something drawn
+     */
+    private long last_used;
+
+    /**
+     * Construct this node for a tile of the pyramid
+     * @param zoom The zoom level of the tile, must be >= 0
+     * @param x The x of the tile within its zoom level
+     * @param y The y of the tile within its zoom level
+     * @param parent The node which contains this one, may be null for roots
+     * @throws InvalidParameterException If zoom is negative
+     */
+    public TerrainNode(int zoom, int x, int y, TerrainNode parent){
+        if (zoom < 0){
+            throw new InvalidParameterException("A terrain node can't have a negative zoom!");
+        }
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+        this.parent = parent;
+        this.children = null;
+        this.tile = null;
+        this.mesh = null;
+        this.neighbour_levels = new int[4];
+        this.requested = false;
+        this.prefetched = false;
+        this.demanded = false;
+        this.screen_error = 0.0;
+        this.last_used = 0;
+    }
+
+    /**
+     * Get the four children of this node, creating them if this node hasn't been refined before.
+     * The order is north west, north east, south west then south east.
+     * @return An array of the four children
+     */
+    public TerrainNode[] getChildren(){
+        if (children == null){
+            children = new TerrainNode[4];
+            for (int i = 0; i < 4; i++){
+                children[i] = new TerrainNode(zoom + 1, (x * 2) + (i % 2), (y * 2) + (i / 2), this);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Check whether this node has created its children
+     * @return True if this node has been refined before and still holds its children
+     */
+    public boolean hasChildren(){
+        return children != null;
+    }
+
+    /**
+     * Drop the children of this node, they must have already been unloaded
+     */
+    public void clearChildren(){
+        children = null;
+    }
+
+    /**
+     * Get the zoom of this tile
+     * @return The zoom level
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Get the x of this tile
+     * @return The x of this tile within its zoom level
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Get the y of this tile
+     * @return The y of this tile within its zoom level
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Get the parent of this node
+     * @return The parent, null if this is a root
+     */
+    public TerrainNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Check whether this node has finished loading
+     * @return True if this node has an uploaded tile
+     */
+    public boolean isLoaded(){
+        return tile != null;
+    }
+
+    /**
+     * Check whether this node is currently being loaded
+     * @return True if the node was requested but hasn't loaded yet
+     */
+    public boolean isLoading(){
+        return requested && tile == null;
+    }
+
+    /**
+     * Get the uploaded tile
+     * @return The tile of this node, null if it hasn't loaded
+     */
+    public GLTile getTile() {
+        return tile;
+    }
+
+    /**
+     * Set the uploaded tile of this node
+     * @param tile The tile, may be null to mark this node as unloaded
+     */
+    public void setTile(GLTile tile) {
+        this.tile = tile;
+        if (tile != null){
+            failures = 0;
+        }
+    }
+
+    /**
+     * Get the CPU side mesh of the uploaded tile
+     * @return The mesh, null if this node hasn't loaded
+     */
+    public HeightmapMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Set the CPU side mesh of the uploaded tile
+     * @param mesh The mesh, may be null when unloading
+     */
+    public void setMesh(HeightmapMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    /**
+     * Get how many zoom levels coarser the drawn neighbour on each side is, as of the last update
+     * @return An array indexed by HeightmapMesh.NORTH, EAST, SOUTH and WEST, as a pointer
+     */
+    public int[] getNeighbourLevels() {
+        return neighbour_levels;
+    }
+
+    /**
+     * Check whether this node has been requested
+     * @return True if this node was handed to a thread to load
+     */
+    public boolean isRequested() {
+        return requested;
+    }
+
+    /**
+     * Set whether this node has been requested
+     * @param requested True once the node is handed to a thread to load
+     */
+    public void setRequested(boolean requested) {
+        this.requested = requested;
+    }
+
+    /**
+     * Record that loading this tile failed, it's no longer requested and won't be requested again until retry_at
+     * @param retry_at The System.nanoTime to wait until before requesting this tile again
+     */
+    public void recordFailure(long retry_at) {
+        this.requested = false;
+        this.failures++;
+        this.retry_at = retry_at;
+    }
+
+    /**
+     * Get the number of times in a row loading this tile has failed
+     * @return The number of failures since the tile last loaded
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Check whether this tile should be handed out to load
+     * @param now The current System.nanoTime
+     * @return True if the tile isn't loaded or requested, and any wait after a failure is over
+     */
+    public boolean isRequestable(long now) {
+        return tile == null && !requested && now - retry_at >= 0;
+    }
+
+    /**
+     * Check whether this node was requested by the prefetcher
+     * @return True if the prefetcher requested this node
+     */
+    public boolean isPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * Set whether this node was requested by the prefetcher
+     * @param prefetched True if the prefetcher requested this node
+     */
+    public void setPrefetched(boolean prefetched) {
+        this.prefetched = prefetched;
+    }
+
+    /**
+     * Check whether this node has been selected since it was last unloaded
+     * @return True if the quadtree has selected this node
+     */
+    public boolean isDemanded() {
+        return demanded;
+    }
+
+    /**
+     * Set whether this node has been selected since it was last unloaded
+     * @param demanded True once the quadtree selects this node
+     */
+    public void setDemanded(boolean demanded) {
+        this.demanded = demanded;
+    }
+
+    /**
+     * Get the screen space error of this node
+     * @return The error, in pixels
+     */
+    public double getScreenError() {
+        return screen_error;
+    }
+
+    /**
+     * Set the screen space error of this node
+     * @param screen_error The error, in pixels
+     */
+    public void setScreenError(double screen_error) {
+        this.screen_error = screen_error;
+    }
+
+    /**
+     * Get the frame this node was last used
+     * @return The frame number
+     */
+    public long getLastUsed() {
+        return last_used;
+    }
+
+    /**
+     * Set the frame this node was last used
+     * @param last_used The frame number
+     */
+    public void setLastUsed(long last_used) {
+        this.last_used = last_used;
+    }
+}
@@ -0,0 +1,483 @@
+package App;
+
+import Data.WorldCoordinate;
+import Graphics.GLTile;
+import Math.Vector;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class provides a level of detail quadtree over the Web Mercator tile pyramid. Each update, tiles around the
+ * camera at the lowest zoom are taken as roots and refined into their four children while their screen space error
+ * is too high, up to a maximum zoom and a maximum number of tiles. Tiles which haven't loaded yet are drawn as their
+ * nearest loaded ancestor so there are no holes while finer tiles load.
+ *
+ * World space is laid out so the X axis follows tile x (east) and the Z axis follows tile y (south), with the origin
+ * of the scene at (0, 0, 0).
+ */
+public class TerrainQuadtree {
+    /**
+     * The size, in world units, of the whole Web Mercator plane. A tile of zoom z is WORLD_SIZE / 2^z units wide,
+     * which is the 10 * 2^(16 - z) scale tiles have always been drawn at.
+     */
+    public static final double WORLD_SIZE = 10.0 * (1 << 16);
+
+    /**
+     * The circumference of the Earth at the equator, in meters
+     */
+    private static final double EARTH_CIRCUMFERENCE = 40075016.686;
+
+    /**
+     * The number of texels along each side of a tile's satellite image
+     */
+    private static final int TILE_TEXELS = 256;
+
+    /**
+     * The generic point of the scene's origin, see WorldCoordinate.fromGenericPoint
+     */
+    private double origin_x;
+    private double origin_y;
+
+    /**
+     * The zoom of the roots of the tree, the coarsest tiles drawn
+     */
+    private int min_zoom;
+
+    /**
+     * The zoom tiles won't be refined past, the finest tiles drawn
+     */
+    private int max_zoom;
+
+    /**
+     * The number of roots in each direction from the root under the camera
+     */
+    private int root_radius;
+
+    /**
+     * The maximum number of tiles to draw at once
+     */
+    private int max_tiles;
+
+    /**
+     * The screen space error, in pixels, above which a tile is refined
+     */
+    private double error_threshold;
+
+    /**
+     * The roots of the tree by their packed x and y
+     */
+    private HashMap<Long, TerrainNode> roots;
+
+    /**
+     * The tiles selected by the last update, some of which may not be loaded
+     */
+    private ArrayList<TerrainNode> leaves;
+
+    /**
+     * The number of updates so far, used to find nodes which are no longer used
+     */
+    private long frame;
+
+    /**
+     * Construct this tree around an origin
+     * @param origin The world coordinate of the origin of the scene
+     * @param min_zoom The zoom of the roots of the tree
+     * @param max_zoom The zoom to stop refining at
+     * @param root_radius The number of roots to take in each direction around the camera
+     * @param max_tiles The maximum number of tiles to select at once, must fit at least all the roots
+     * @param error_threshold The screen space error, in pixels, above which a tile is refined
+     * @throws InvalidParameterException If origin is null, the zooms are out of order or the limits can't be met
+     */
+    public TerrainQuadtree(WorldCoordinate origin, int min_zoom, int max_zoom, int root_radius, int max_tiles,
+                           double error_threshold){
+        if (origin == null){
+            throw new InvalidParameterException("The origin of a terrain quadtree can't be null!");
+        }
+        if (min_zoom < 0 || max_zoom < min_zoom || max_zoom > 30){
+            throw new InvalidParameterException("Terrain quadtree zooms must be 0 <= min <= max <= 30");
+        }
+        if (root_radius < 0 || max_tiles < ((2 * root_radius) + 1) * ((2 * root_radius) + 1)){
+            throw new InvalidParameterException("The terrain quadtree tile limit must fit all of the roots");
+        }
+
+        // Find the generic point of the origin from its latitude and longitude, whatever it was constructed from
+        double[] generic = new double[2];
+        WorldCoordinate.projectToTile(origin.getWorldCoordinate().getX(), origin.getWorldCoordinate().getY(), 0,
+                generic, 0);
+        this.origin_x = generic[0];
+        this.origin_y = generic[1];
+
+        this.min_zoom = min_zoom;
+        this.max_zoom = max_zoom;
+        this.root_radius = root_radius;
+        this.max_tiles = max_tiles;
+        this.error_threshold = error_threshold;
+        this.roots = new HashMap<>();
+        this.leaves = new ArrayList<>();
+        this.frame = 0;
+    }
+
+    /**
+     * Select the tiles to draw from the camera's position. Nodes are refined in order of their screen space error
+     * until they are within the threshold, reach the max zoom, or refining would pass the tile limit.
+     * @param camera_pos The position of the camera in world space
+     * @param projection_factor The height of the viewport divided by 2 * tan(fov / 2), converts world sizes at a
+     *                          distance of one unit into pixels
+     * @return The loaded nodes to draw this frame. Selected nodes which aren't loaded are replaced by their nearest
+     * loaded ancestor, and anything under a drawn ancestor is left out so nothing overlaps.
+     * @throws InvalidParameterException If camera_pos is null
+     */
+    public ArrayList<TerrainNode> update(Vector camera_pos, double projection_factor){
+        if (camera_pos == null){
+            throw new InvalidParameterException("Camera position for the terrain quadtree is null!");
+        }
+        frame++;
+
+        leaves = select(camera_pos, projection_factor, true);
+
+        // Fall back to the nearest loaded ancestor of anything not yet loaded
+        ArrayList<TerrainNode> drawn = new ArrayList<>();
+        for (TerrainNode leaf : leaves){
+            TerrainNode node = leaf;
+            while (node != null && !node.isLoaded()){
+                node = node.getParent();
+            }
+            if (node != null && !drawn.contains(node)){
+                drawn.add(node);
+            }
+        }
+
+        // A drawn ancestor covers everything below it
+        drawn.removeIf(node -> hasDrawnAncestor(node, drawn));
+
+        // Find the zoom of the neighbours of everything drawn so their edges can be stitched together
+        HashSet<Long> drawn_keys = new HashSet<>();
+        for (TerrainNode node : drawn){
+            drawn_keys.add(packKey(node.getZoom(), node.getX(), node.getY()));
+        }
+        for (TerrainNode node : drawn){
+            int[] levels = node.getNeighbourLevels();
+            levels[HeightmapMesh.NORTH] = findCoarserNeighbour(node, 0, -1, drawn_keys);
+            levels[HeightmapMesh.EAST] = findCoarserNeighbour(node, 1, 0, drawn_keys);
+            levels[HeightmapMesh.SOUTH] = findCoarserNeighbour(node, 0, 1, drawn_keys);
+            levels[HeightmapMesh.WEST] = findCoarserNeighbour(node, -1, 0, drawn_keys);
+        }
+
+        return drawn;
+    }
+
+    /**
+     * Select the tiles the tree would want if the camera were at a position, without changing what is drawn or which
+     * nodes count as used. This is used to find the tiles to prefetch ahead of the camera.
+     * @param camera_pos The predicted position of the camera in world space
+     * @param projection_factor The height of the viewport divided by 2 * tan(fov / 2)
+     * @return The selected tiles at that position which aren't loaded or requested, highest error first
+     * @throws InvalidParameterException If camera_pos is null
+     */
+    public ArrayList<TerrainNode> predict(Vector camera_pos, double projection_factor){
+        if (camera_pos == null){
+            throw new InvalidParameterException("Predicted camera position for the terrain quadtree is null!");
+        }
+        ArrayList<TerrainNode> predicted = select(camera_pos, projection_factor, false);
+
+        long now = System.nanoTime();
+        predicted.removeIf(node -> !node.isRequestable(now));
+
+        return predicted;
+    }
+
+    /**
+     * Get the tiles selected by the last update, some of which may not be loaded
+     * @return The selected tiles, as a pointer
+     */
+    public ArrayList<TerrainNode> getLeaves(){
+        return leaves;
+    }
+
+    /**
+     * Refine the roots around a position into the tiles to use there. Nodes are refined in order of their screen
+     * space error until they are within the threshold, reach the max zoom, or refining would pass the tile limit.
+     * @param camera_pos The position of the camera in world space
+     * @param projection_factor The height of the viewport divided by 2 * tan(fov / 2)
+     * @param touch Whether to mark the nodes as used this frame and store their screen space error
+     * @return The selected tiles, in the order they were selected
+     */
+    private ArrayList<TerrainNode> select(Vector camera_pos, double projection_factor, boolean touch){
+        HashMap<TerrainNode, Double> errors = new HashMap<>();
+        PriorityQueue<TerrainNode> queue = new PriorityQueue<>(
+                Comparator.comparingDouble((TerrainNode node) -> errors.get(node)).reversed());
+
+        // Take the roots around the camera
+        int tiles = 1 << min_zoom;
+        int camera_x = (int) Math.floor((origin_x + (camera_pos.getX() / WORLD_SIZE)) * tiles);
+        int camera_y = (int) Math.floor((origin_y + (camera_pos.getZ() / WORLD_SIZE)) * tiles);
+
+        for (int y = camera_y - root_radius; y <= camera_y + root_radius; y++){
+            for (int x = camera_x - root_radius; x <= camera_x + root_radius; x++){
+                if (x < 0 || y < 0 || x >= tiles || y >= tiles){
+                    continue;
+                }
+                TerrainNode root = roots.get(packKey(x, y));
+                if (root == null){
+                    root = new TerrainNode(min_zoom, x, y, null);
+                    roots.put(packKey(x, y), root);
+                }
+                errors.put(root, computeScreenError(root, camera_pos, projection_factor));
+                queue.add(root);
+            }
+        }
+
+        // Refine the worst tile first while we have room for its children
+        ArrayList<TerrainNode> selected = new ArrayList<>();
+        while (!queue.isEmpty()){
+            TerrainNode node = queue.poll();
+            double error = errors.get(node);
+            if (touch){
+                node.setLastUsed(frame);
+                node.setScreenError(error);
+            }
+
+            boolean refine = node.getZoom() < max_zoom && error > error_threshold
+                    && selected.size() + queue.size() + 4 <= max_tiles;
+
+            if (refine){
+                for (TerrainNode child : node.getChildren()){
+                    errors.put(child, computeScreenError(child, camera_pos, projection_factor));
+                    queue.add(child);
+                }
+            } else{
+                selected.add(node);
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Get the nodes which should start loading, these are the selected tiles and the roots around the camera which
+     * aren't loaded and haven't been requested, leaving out those waiting to retry after a failure. Roots are always
+     * loaded so there is something to fall back on.
+     * @return The nodes to load, coarsest and then highest error first
+     */
+    public ArrayList<TerrainNode> getPendingNodes(){
+        ArrayList<TerrainNode> pending = new ArrayList<>();
+        long now = System.nanoTime();
+        for (TerrainNode root : roots.values()){
+            if (root.getLastUsed() == frame && root.isRequestable(now)){
+                pending.add(root);
+            }
+        }
+        for (TerrainNode leaf : leaves){
+            if (leaf.isRequestable(now) && !pending.contains(leaf)){
+                pending.add(leaf);
+            }
+        }
+
+        pending.sort(Comparator.comparingInt(TerrainNode::getZoom)
+                .thenComparing(Comparator.comparingDouble(TerrainNode::getScreenError).reversed()));
+
+        return pending;
+    }
+
+    /**
+     * Mark a node as used by the current update, so it's kept for at least max_age more updates by evict. Nodes
+     * the quadtree selects are marked as it selects them, anything else loaded outside of that (prefetched tiles)
+     * must be marked when it's requested and again when its tile arrives or it's unloaded as soon as it loads.
+     * @param node The node to keep
+     */
+    public void touch(TerrainNode node){
+        node.setLastUsed(frame);
+    }
+
+    /**
+     * Unload every node which hasn't been used for a number of updates. Nodes still being loaded are kept.
+     * @param max_age The number of updates a node may go unused before it is unloaded
+     * @return The tiles of the unloaded nodes, these are no longer referenced by the tree and must be destroyed
+     */
+    public ArrayList<GLTile> evict(long max_age){
+        ArrayList<GLTile> evicted = new ArrayList<>();
+
+        Iterator<Map.Entry<Long, TerrainNode>> iterator = roots.entrySet().iterator();
+        while (iterator.hasNext()){
+            if (prune(iterator.next().getValue(), max_age, evicted)){
+                iterator.remove();
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Get the width of a tile in world units
+     * @param zoom The zoom of the tile
+     * @return The width and depth of a tile of that zoom
+     */
+    public double getTileSize(int zoom){
+        return WORLD_SIZE / (double) (1L << zoom);
+    }
+
+    /**
+     * Get the center of a tile in world space
+     * @param node The tile to find the center of
+     * @return The center of the tile, y is zero
+     */
+    public Vector getTileCenter(TerrainNode node){
+        double scale = (double) (1L << node.getZoom());
+        return new Vector(
+                (((node.getX() + 0.5) / scale) - origin_x) * WORLD_SIZE,
+                0.0,
+                (((node.getY() + 0.5) / scale) - origin_y) * WORLD_SIZE
+        );
+    }
+
+    /**
+     * Get the latitude and longitude of a point within a tile
+     * @param node The tile the point is in
+     * @param u How far east within the tile the point is, 0 is the west edge and 1 the east edge
+     * @param v How far south within the tile the point is, 0 is the north edge and 1 the south edge
+     * @return The world coordinate of that point
+     */
+    public WorldCoordinate getTileCoordinate(TerrainNode node, double u, double v){
+        double scale = (double) (1L << node.getZoom());
+        return WorldCoordinate.fromGenericPoint((node.getX() + u) / scale, (node.getY() + v) / scale);
+    }
+
+    /**
+     * Convert a height in meters to world units. Web Mercator stretches the ground by 1 / cos(latitude) so heights
+     * are stretched the same amount to keep the terrain in proportion.
+     * @param meters The height, in meters
+     * @param latitude The latitude the height is at
+     * @return The height in world units
+     */
+    public static double metersToWorld(double meters, double latitude){
+        return meters * WORLD_SIZE / (EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(latitude)));
+    }
+
+    /**
+     * Estimate the screen space error of drawing a tile, taken as the size a texel of the tile would appear on
+     * screen at the tile's nearest point to the camera.
+     * @param node The tile to estimate
+     * @param camera_pos The position of the camera
+     * @param projection_factor The height of the viewport divided by 2 * tan(fov / 2)
+     * @return The error, in pixels
+     */
+    private double computeScreenError(TerrainNode node, Vector camera_pos, double projection_factor){
+        double size = getTileSize(node.getZoom());
+        Vector center = getTileCenter(node);
+
+        // Distance from the camera to the nearest point of the tile
+        double dx = Math.max(Math.abs(camera_pos.getX() - center.getX()) - (size / 2.0), 0.0);
+        double dz = Math.max(Math.abs(camera_pos.getZ() - center.getZ()) - (size / 2.0), 0.0);
+        double dy = camera_pos.getY();
+        double distance = Math.max(Math.sqrt((dx * dx) + (dy * dy) + (dz * dz)), 1e-3);
+
+        double geometric_error = size / TILE_TEXELS;
+
+        return geometric_error * projection_factor / distance;
+    }
+
+    /**
+     * Check whether any ancestor of a node is in a list
+     * @param node The node to check the ancestors of
+     * @param drawn The list of drawn nodes
+     * @return True if an ancestor of the node is drawn
+     */
+    private boolean hasDrawnAncestor(TerrainNode node, ArrayList<TerrainNode> drawn){
+        TerrainNode ancestor = node.getParent();
+        while (ancestor != null){
+            if (drawn.contains(ancestor)){
+                return true;
+            }
+            ancestor = ancestor.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Find how many zoom levels coarser the drawn tile next to a node is
+     * @param node The node to look next to
+     * @param dx The direction to look in, in tiles east
+     * @param dy The direction to look in, in tiles south
+     * @param drawn_keys The packed zoom, x and y of every drawn node
+     * @return The number of levels coarser the neighbour is, zero if it's the same zoom, finer or not drawn
+     */
+    private int findCoarserNeighbour(TerrainNode node, int dx, int dy, HashSet<Long> drawn_keys){
+        int x = node.getX() + dx;
+        int y = node.getY() + dy;
+        if (x < 0 || y < 0 || x >= (1 << node.getZoom()) || y >= (1 << node.getZoom())){
+            return 0;
+        }
+
+        // The neighbour is either the tile next to us or one of its ancestors
+        for (int level = 1; level <= node.getZoom() - min_zoom; level++){
+            if (drawn_keys.contains(packKey(node.getZoom() - level, x >> level, y >> level))){
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A recursive method to unload the stale nodes of a subtree
+     * @param node The root of the subtree
+     * @param max_age The number of updates a node may go unused
+     * @param evicted The list to add unloaded tiles to
+     * @return True if the node is stale and has nothing below it, so it can be dropped from its parent
+     */
+    private boolean prune(TerrainNode node, long max_age, ArrayList<GLTile> evicted){
+        if (node.hasChildren()){
+            boolean children_pruned = true;
+            for (TerrainNode child : node.getChildren()){
+                if (!prune(child, max_age, evicted)){
+                    children_pruned = false;
+                }
+            }
+            if (children_pruned){
+                node.clearChildren();
+            }
+        }
+
+        if (frame - node.getLastUsed() <= max_age || node.isLoading()){
+            return false;
+        }
+
+        if (node.isLoaded()){
+            evicted.add(node.getTile());
+            node.setTile(null);
+            node.setMesh(null);
+            node.setRequested(false);
+            node.setPrefetched(false);
+            node.setDemanded(false);
+        }
+
+        return !node.hasChildren();
+    }
+
+    /**
+     * Pack a tile's x and y into a single key
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @return The packed key
+     */
+    private static long packKey(int x, int y){
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Pack a tile's zoom, x and y into a single key, x and y must be below 2^29
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @return The packed key
+     */
+    private static long packKey(int zoom, int x, int y){
+        return WorldCoordinate.packTile(zoom, x, y);
+    }
+}
@@ -0,0 +1,735 @@
+package App;
+
+import Data.DataDriver;
+import Data.RequestPriority;
+import Data.WorldCoordinate;
+import Math.Image;
+import Math.Vector;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.Events.MeshBuiltEvent;
+
+import javax.naming.ConfigurationException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads tiles through a pipeline of stages, each with its own threads and a bounded queue in front of it:
+ * fetch, which reads a ring's elevations in one batch then each tile's image bytes, decode, which decodes the images,
+ * and mesh, which builds the heightmaps. Finished tiles wait in the ready queue for the main thread to upload, as
+ * OpenGL can only be used there. The network bound fetch stage keeps running while the CPU bound stages work on the
+ * tiles it has already handed on, and a full queue blocks the stage before it so no stage runs far ahead.
+ * Every tile submitted comes out of the ready queue exactly once, whether it finished, failed or was cancelled.
+ * <p>
+ * The time work waits in front of each stage, the time the stage spends on it and the depth of each queue are
+ * kept in the Metrics registry, labelled by stage.
+ */
+public class TilePipeline {
+    /**
+     * The stages of the pipeline, used to index the histograms and queues
+     */
+    public static final int FETCH = 0;
+    public static final int DECODE = 1;
+    public static final int MESH = 2;
+
+    /**
+     * The name of each stage, for reports and metric labels
+     */
+    private static final String[] STAGE_NAMES = {"fetch", "decode", "mesh"};
+
+    /**
+     * The number of vertices along each side of a tile's mesh
+     */
+    private final int resolution;
+
+    /**
+     * Triangulates each tile's mesh adaptively, shared by the mesh workers
+     */
+    private final AdaptiveMesher mesher;
+
+    /**
+     * The furthest an adaptive mesh may be from the elevation, as a fraction of the tile's width. Negative keeps the
+     * uniform grid.
+     */
+    private volatile float mesh_error;
+
+    /**
+     * The rings waiting to be fetched
+     */
+    private final ArrayBlockingQueue<TileRing> fetchQueue;
+
+    /**
+     * The tiles waiting to be decoded
+     */
+    private final ArrayBlockingQueue<TileJob> decodeQueue;
+
+    /**
+     * The tiles waiting to be meshed
+     */
+    private final ArrayBlockingQueue<TileJob> meshQueue;
+
+    /**
+     * The tiles which have left the pipeline, waiting for the main thread
+     */
+    private final ArrayBlockingQueue<TileJob> readyQueue;
+
+    /**
+     * The time each stage's work waited in the queue in front of it
+     */
+    private final LatencyHistogram[] waitHistograms;
+
+    /**
+     * The time each stage spent working on a tile
+     */
+    private final LatencyHistogram[] serviceHistograms;
+
+    /**
+     * The worker threads of every stage
+     */
+    private final ArrayList<Thread> workers;
+
+    /**
+     * Cleared to stop the workers
+     */
+    private volatile boolean running;
+
+    /**
+     * Limits the number of downloads running at once
+     */
+    private final Semaphore downloads;
+
+    /**
+     * Construct and start a pipeline
+     * @param dataDriver The data driver to read from, each fetch and decode worker derives its own
+     * @param resolution The number of vertices along each side of a tile's mesh
+     * @param fetch_threads The number of threads downloading, network bound. With virtual_io this is instead the
+     *                      number of downloads which may run at once, each on its own virtual thread.
+     * @param decode_threads The number of threads decoding images, CPU bound
+     * @param mesh_threads The number of threads building meshes, CPU bound
+     * @param queue_capacity The number of rings or tiles each queue holds before the stage feeding it blocks
+     * @param virtual_io Whether to download on virtual threads, each ring in a scope of its own which is cancelled
+     *                   as a whole. Decoding and meshing always run on the bounded platform threads.
+     * @throws InvalidParameterException If dataDriver is null or any count isn't positive
+     */
+    public TilePipeline(DataDriver dataDriver, int resolution, int fetch_threads, int decode_threads,
+                        int mesh_threads, int queue_capacity, boolean virtual_io){
+        if (dataDriver == null){
+            throw new InvalidParameterException("A tile pipeline needs a data driver!");
+        }
+        if (resolution < 2 || fetch_threads <= 0 || decode_threads <= 0 || mesh_threads <= 0 || queue_capacity <= 0){
+            throw new InvalidParameterException("A tile pipeline needs a resolution and a positive thread budget " +
+                    "and queue capacity!");
+        }
+        this.resolution = resolution;
+        this.mesher = new AdaptiveMesher(resolution);
+        this.mesh_error = -1.0f;
+        fetchQueue = new ArrayBlockingQueue<>(queue_capacity);
+        decodeQueue = new ArrayBlockingQueue<>(queue_capacity);
+        meshQueue = new ArrayBlockingQueue<>(queue_capacity);
+        readyQueue = new ArrayBlockingQueue<>(queue_capacity);
+        waitHistograms = new LatencyHistogram[STAGE_NAMES.length];
+        serviceHistograms = new LatencyHistogram[STAGE_NAMES.length];
+        ArrayBlockingQueue<?>[] queues = {fetchQueue, decodeQueue, meshQueue};
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++){
+            waitHistograms[stage] = Metrics.histogram("planesim_tile_stage_wait_seconds",
+                    "Time tile work waited in the queue in front of a pipeline stage", "stage", STAGE_NAMES[stage]);
+            serviceHistograms[stage] = Metrics.histogram("planesim_tile_stage_work_seconds",
+                    "Time a pipeline stage spent on each tile", "stage", STAGE_NAMES[stage]);
+            ArrayBlockingQueue<?> queue = queues[stage];
+            Metrics.gauge("planesim_tile_stage_queued", "Rings or tiles waiting in front of a pipeline stage",
+                    queue::size, "stage", STAGE_NAMES[stage]);
+        }
+        workers = new ArrayList<>();
+        running = true;
+        downloads = new Semaphore(fetch_threads);
+
+        if (virtual_io){
+            // The DataDriver's sources are safe to share between threads, so every ring's downloads share one
+            DataDriver driver = new DataDriver(dataDriver);
+            startWorker(FETCH, 0, () -> dispatchLoop(driver));
+        } else {
+            for (int i = 0; i < fetch_threads; i++){
+                DataDriver driver = new DataDriver(dataDriver);
+                startWorker(FETCH, i, () -> fetchLoop(driver));
+            }
+        }
+        for (int i = 0; i < decode_threads; i++){
+            DataDriver driver = new DataDriver(dataDriver);
+            startWorker(DECODE, i, () -> decodeLoop(driver));
+        }
+        for (int i = 0; i < mesh_threads; i++){
+            startWorker(MESH, i, this::meshLoop);
+        }
+    }
+
+    /**
+     * Queue a ring of tiles to be loaded, without blocking
+     * @param ring The ring to load
+     * @return True if the ring was queued, false if the fetch queue is full
+     * @throws InvalidParameterException If ring is null
+     * @throws IllegalStateException If the pipeline has been shut down
+     */
+    public boolean submit(TileRing ring){
+        if (ring == null){
+            throw new InvalidParameterException("Can't load a null ring!");
+        }
+        if (!running){
+            throw new IllegalStateException("The tile pipeline has been shut down!");
+        }
+        ring.enqueued = System.nanoTime();
+        return fetchQueue.offer(ring);
+    }
+
+    /**
+     * Take the next tile which has left the pipeline, without blocking. Taking tiles promptly keeps the mesh stage
+     * from blocking on a full ready queue.
+     * @return The tile, or null if none are waiting
+     */
+    public TileJob poll(){
+        return readyQueue.poll();
+    }
+
+    /**
+     * Set how far the meshes built from now on may be from the elevation. Heights are measured in tile widths, so
+     * the same fraction allows twice as many meters of error for each zoom level coarser, which keeps the error on
+     * screen about the same for every tile the quadtree draws.
+     * @param mesh_error The largest error as a fraction of the tile's width, negative for a uniform grid
+     */
+    public void setMeshError(float mesh_error){
+        this.mesh_error = mesh_error;
+    }
+
+    /**
+     * Stop every worker, tiles still in the pipeline are abandoned. Virtual downloads in flight finish on their own
+     * but their tiles are dropped.
+     */
+    public void shutdown(){
+        running = false;
+        for (Thread worker : workers){
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Print the latencies of every stage
+     */
+    public void printStats(){
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++){
+            System.out.printf("Tile pipeline %s: wait %s, work %s\n", STAGE_NAMES[stage], waitHistograms[stage],
+                    serviceHistograms[stage]);
+        }
+    }
+
+    /**
+     * Start a daemon worker thread for a stage
+     */
+    private void startWorker(int stage, int index, Runnable loop){
+        Thread worker = new Thread(loop, String.format("tile-%s-%d", STAGE_NAMES[stage], index));
+        worker.setDaemon(true);
+        workers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * The fetch stage on platform threads, reads each ring's elevations in one batch then each tile's image bytes
+     * one after another
+     */
+    private void fetchLoop(DataDriver driver){
+        try {
+            while (running){
+                TileRing ring = fetchQueue.take();
+                long start = System.nanoTime();
+                waitHistograms[FETCH].record(start - ring.enqueued);
+
+                float[] elevations = fetchElevations(driver, ring);
+                if (elevations == null){
+                    continue;
+                }
+                for (int i = 0; i < ring.nodes.length; i++){
+                    fetchTile(driver, ring, i, elevations);
+                }
+            }
+        } catch (InterruptedException e){
+            // Shut down
+        }
+    }
+
+    /**
+     * The fetch stage on virtual threads. Each ring is given its own executor, which is the scope of all its
+     * downloads: the elevations are read on one virtual thread, then every tile's image on a virtual thread of its
+     * own, and cancelling the ring interrupts whichever of them are still running.
+     */
+    private void dispatchLoop(DataDriver driver){
+        try {
+            while (running){
+                TileRing ring = fetchQueue.take();
+                long start = System.nanoTime();
+                waitHistograms[FETCH].record(start - ring.enqueued);
+
+                ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor();
+                ring.scope = scope;
+                if (ring.cancelled){
+                    // Cancelled before the scope was published, so cancel couldn't close it
+                    scope.shutdownNow();
+                }
+                try {
+                    scope.submit(() -> fetchRing(driver, ring, scope));
+                } catch (RejectedExecutionException e){
+                    for (TerrainNode node : ring.nodes){
+                        handOff(readyQueue, new TileJob(ring, node));
+                    }
+                }
+            }
+        } catch (InterruptedException e){
+            // Shut down
+        }
+    }
+
+    /**
+     * Read a ring's elevations then start a virtual thread for each of its images, run within the ring's scope
+     */
+    private void fetchRing(DataDriver driver, TileRing ring, ExecutorService scope){
+        float[] elevations = fetchElevations(driver, ring);
+        if (elevations == null){
+            scope.shutdown();
+            return;
+        }
+        for (int i = 0; i < ring.nodes.length; i++){
+            int tile = i;
+            try {
+                scope.submit(() -> fetchTile(driver, ring, tile, elevations));
+            } catch (RejectedExecutionException e){
+                // The ring was cancelled part way through starting its downloads
+                handOff(readyQueue, new TileJob(ring, ring.nodes[tile]));
+            }
+        }
+        // Let the downloads already started finish, the scope's threads end with them
+        scope.shutdown();
+    }
+
+    /**
+     * Read the elevations of every tile of a ring in one batch. If the ring is cancelled or the read fails, every
+     * tile of the ring is sent out of the pipeline. A batch read is one sample of the fetch stage's service time.
+     * @return The elevations, the tiles one after another, or null if the ring's tiles have been sent out
+     */
+    private float[] fetchElevations(DataDriver driver, TileRing ring){
+        TerrainNode[] nodes = ring.nodes;
+        Vector[] tiles = new Vector[nodes.length];
+        for (int i = 0; i < nodes.length; i++){
+            tiles[i] = new Vector(nodes[i].getX(), nodes[i].getY(), nodes[i].getZoom());
+        }
+
+        float[] elevations = null;
+        Throwable failure = null;
+        if (!ring.cancelled){
+            long start = System.nanoTime();
+            try {
+                downloads.acquire();
+                try {
+                    elevations = driver.getTileElevationData(tiles, resolution, ring.getPriority());
+                } finally {
+                    downloads.release();
+                }
+            } catch (InterruptedException e){
+                // Cancelled, or shut down
+            } catch (RuntimeException e){
+                failure = e;
+            }
+            if (elevations != null){
+                serviceHistograms[FETCH].record(System.nanoTime() - start);
+            }
+        }
+
+        if (elevations == null || ring.cancelled){
+            for (TerrainNode node : nodes){
+                TileJob job = new TileJob(ring, node);
+                job.failure = ring.cancelled ? null : failure;
+                handOff(readyQueue, job);
+            }
+            return null;
+        }
+        return elevations;
+    }
+
+    /**
+     * Read a tile's image bytes and hand it on to the decode stage, or out of the pipeline if the ring is cancelled
+     * or the read fails. Each tile's download is its own sample of the fetch stage's service time, from when it
+     * starts waiting for a download slot, so tiles fetched one after another don't include the ones before them.
+     */
+    private void fetchTile(DataDriver driver, TileRing ring, int index, float[] elevations){
+        TerrainNode node = ring.nodes[index];
+        TileJob job = new TileJob(ring, node);
+        int vertices = resolution * resolution;
+        long start = 0;
+
+        if (!ring.cancelled){
+            job.elevation = Arrays.copyOfRange(elevations, index * vertices, (index + 1) * vertices);
+            start = System.nanoTime();
+            try {
+                downloads.acquire();
+                try {
+                    job.image_bytes = driver.getSatalliteImageBytes(new Vector(node.getX(), node.getY(),
+                            node.getZoom()), ring.getPriority());
+                } finally {
+                    downloads.release();
+                }
+            } catch (InterruptedException e){
+                // Cancelled, or shut down
+            } catch (RuntimeException e){
+                job.failure = ring.cancelled ? null : e;
+            }
+        }
+
+        if (job.image_bytes == null || ring.cancelled){
+            handOff(readyQueue, job);
+            return;
+        }
+        serviceHistograms[FETCH].record(System.nanoTime() - start);
+        job.enqueued = System.nanoTime();
+        handOff(decodeQueue, job);
+    }
+
+    /**
+     * Put a tile into a queue even if this thread is interrupted, so a cancelled download still leaves the
+     * pipeline. Gives up only once the pipeline is shut down.
+     */
+    private void handOff(BlockingQueue<TileJob> queue, TileJob job){
+        boolean interrupted = Thread.interrupted();
+        while (running){
+            try {
+                queue.put(job);
+                break;
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if (interrupted && !running){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The decode stage, decodes each tile's image bytes
+     */
+    private void decodeLoop(DataDriver driver){
+        try {
+            while (running){
+                TileJob job = decodeQueue.take();
+                long start = System.nanoTime();
+                waitHistograms[DECODE].record(start - job.enqueued);
+                if (job.ring.cancelled){
+                    readyQueue.put(job);
+                    continue;
+                }
+
+                TerrainNode node = job.node;
+                try {
+                    job.image = driver.decodeSatalliteImage(new Vector(node.getX(), node.getY(), node.getZoom()),
+                            job.image_bytes);
+                } catch (ConfigurationException | RuntimeException | LinkageError e){
+                    // A missing native library is reported against the tile rather than killing the worker
+                    job.failure = e;
+                    readyQueue.put(job);
+                    continue;
+                }
+                job.image_bytes = null;
+                serviceHistograms[DECODE].record(System.nanoTime() - start);
+                forward(meshQueue, job);
+            }
+        } catch (InterruptedException e){
+            // Shut down
+        }
+    }
+
+    /**
+     * The mesh stage, builds each tile's heightmap. The lattice buffers belong to this worker and are reused for
+     * every tile it builds.
+     */
+    private void meshLoop(){
+        double[] latitudes = new double[resolution * resolution];
+        double[] longitudes = new double[resolution * resolution];
+        try {
+            while (running){
+                TileJob job = meshQueue.take();
+                long start = System.nanoTime();
+                waitHistograms[MESH].record(start - job.enqueued);
+                if (job.ring.cancelled){
+                    readyQueue.put(job);
+                    continue;
+                }
+
+                TerrainNode node = job.node;
+                MeshBuiltEvent event = new MeshBuiltEvent();
+                event.begin();
+                try {
+                    WorldCoordinate.tileLattice(node.getZoom(), node.getX(), node.getY(), resolution, latitudes,
+                            longitudes, 0);
+                    HeightmapMesh mesh = new HeightmapMesh(resolution);
+                    mesh.generateMesh(latitudes, job.elevation,
+                            TerrainQuadtree.WORLD_SIZE / (double) (1L << node.getZoom()));
+                    float error = mesh_error;
+                    if (error >= 0.0f){
+                        mesh.simplify(mesher, error);
+                    }
+                    job.mesh = mesh;
+                } catch (RuntimeException e){
+                    job.failure = e;
+                }
+                event.end();
+                if (job.mesh != null && event.shouldCommit()){
+                    event.setTile(node.getZoom(), node.getX(), node.getY());
+                    event.setMesh(resolution, countTriangles(job.mesh), job.mesh.isTriangles());
+                    event.commit();
+                }
+                serviceHistograms[MESH].record(System.nanoTime() - start);
+                readyQueue.put(job);
+            }
+        } catch (InterruptedException e){
+            // Shut down
+        }
+    }
+
+    /**
+     * Count the triangles a mesh draws, a simplified mesh is a list of triangles and a full one rows of strips
+     */
+    private static int countTriangles(HeightmapMesh mesh){
+        int cells = mesh.getResolution() - 1;
+        return mesh.isTriangles() ? mesh.getIndices().length / 3 : cells * cells * 2;
+    }
+
+    /**
+     * Hand a tile to the next stage, blocking while that stage's queue is full
+     */
+    private void forward(BlockingQueue<TileJob> queue, TileJob job) throws InterruptedException {
+        job.enqueued = System.nanoTime();
+        queue.put(job);
+    }
+
+    /**
+     * A group of tiles loaded together, their elevations are read in one request
+     */
+    public static class TileRing {
+        /**
+         * The nodes of the tiles in this ring
+         */
+        private final TerrainNode[] nodes;
+
+        /**
+         * Whether the tiles are being prefetched rather than needed now
+         */
+        private final boolean prefetch;
+
+        /**
+         * Set to drop this ring's tiles at the next stage they reach
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The executor this ring's virtual downloads run in, null on platform threads or until the ring is fetched
+         */
+        private volatile ExecutorService scope;
+
+        /**
+         * The number of this ring's tiles still in the pipeline, only used by the main thread
+         */
+        private int remaining;
+
+        /**
+         * When this ring was queued, in nanoseconds
+         */
+        private long enqueued;
+
+        /**
+         * Construct a ring of tiles
+         * @param nodes The nodes of the tiles to load
+         * @param prefetch Whether the tiles are being prefetched
+         * @throws InvalidParameterException If nodes is null or empty
+         */
+        public TileRing(TerrainNode[] nodes, boolean prefetch){
+            if (nodes == null || nodes.length == 0){
+                throw new InvalidParameterException("A ring needs at least one tile to load!");
+            }
+            this.nodes = nodes;
+            this.prefetch = prefetch;
+            this.cancelled = false;
+            this.remaining = nodes.length;
+        }
+
+        /**
+         * Drop this ring's tiles at the next stage they reach, they leave the pipeline without results. Any of the
+         * ring's virtual downloads still running are interrupted.
+         */
+        public void cancel(){
+            cancelled = true;
+            ExecutorService downloads = scope;
+            if (downloads != null){
+                downloads.shutdownNow();
+            }
+        }
+
+        /**
+         * Check whether this ring has been cancelled
+         * @return True if cancel has been called
+         */
+        public boolean isCancelled(){
+            return cancelled;
+        }
+
+        /**
+         * Check whether this ring was queued by the prefetcher
+         * @return True if the tiles are being prefetched
+         */
+        public boolean isPrefetch(){
+            return prefetch;
+        }
+
+        /**
+         * Get the priority this ring's requests are sent at, prefetched rings are the first dropped near the API's
+         * limits
+         * @return LOW for a prefetched ring, otherwise NORMAL
+         */
+        public RequestPriority getPriority(){
+            return prefetch ? RequestPriority.LOW : RequestPriority.NORMAL;
+        }
+
+        /**
+         * Check whether any of this ring's tiles has been selected by the quadtree since it was requested
+         * @return True if a tile of this ring is needed now
+         */
+        public boolean isNeeded(){
+            for (TerrainNode node : nodes){
+                if (node.isDemanded()){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Count one of this ring's tiles as out of the pipeline, call once for each tile taken from the pipeline
+         * @return True if every tile of this ring is out of the pipeline
+         */
+        public boolean complete(){
+            remaining--;
+            return remaining <= 0;
+        }
+
+        /**
+         * Get the nodes of this ring
+         * @return The nodes, as a pointer
+         */
+        public TerrainNode[] getNodes(){
+            return nodes;
+        }
+    }
+
+    /**
+     * A single tile as it moves through the pipeline. Each stage fills in its result, so a tile leaving the
+     * pipeline has an image and mesh unless it failed or its ring was cancelled.
+     */
+    public static class TileJob {
+        /**
+         * The ring this tile belongs to
+         */
+        private final TileRing ring;
+
+        /**
+         * The node of this tile
+         */
+        private final TerrainNode node;
+
+        /**
+         * The elevation of each of the tile's vertices, set by the fetch stage
+         */
+        private float[] elevation;
+
+        /**
+         * The encoded image, set by the fetch stage and released by the decode stage
+         */
+        private byte[] image_bytes;
+
+        /**
+         * The decoded image, set by the decode stage
+         */
+        private Image image;
+
+        /**
+         * The heightmap, set by the mesh stage
+         */
+        private HeightmapMesh mesh;
+
+        /**
+         * Why this tile failed, null if it hasn't
+         */
+        private Throwable failure;
+
+        /**
+         * When this tile was queued for its current stage, in nanoseconds
+         */
+        private long enqueued;
+
+        /**
+         * Construct a tile of a ring
+         */
+        private TileJob(TileRing ring, TerrainNode node){
+            this.ring = ring;
+            this.node = node;
+        }
+
+        /**
+         * Check whether this tile made it through every stage, a tile which finished before its ring was cancelled
+         * is still complete
+         * @return True if the tile has an image and mesh ready to upload
+         */
+        public boolean isComplete(){
+            return failure == null && image != null && mesh != null;
+        }
+
+        /**
+         * Get the ring this tile belongs to
+         * @return The ring
+         */
+        public TileRing getRing(){
+            return ring;
+        }
+
+        /**
+         * Get the node of this tile
+         * @return The node
+         */
+        public TerrainNode getNode(){
+            return node;
+        }
+
+        /**
+         * Get the decoded image of this tile
+         * @return The image, null unless the tile is complete
+         */
+        public Image getImage(){
+            return image;
+        }
+
+        /**
+         * Get the heightmap of this tile
+         * @return The mesh, null unless the tile is complete
+         */
+        public HeightmapMesh getMesh(){
+            return mesh;
+        }
+
+        /**
+         * Get why this tile failed
+         * @return The exception which stopped the tile, null if it hasn't failed
+         */
+        public Throwable getFailure(){
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package App;
+
+import Math.Vector;
+import Utils.Counter;
+import Utils.Metrics;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+
+/**
+ * This class predicts where the camera is heading and queues the tiles it'll need there before they are needed.
+ * The camera's position is projected forward along its velocity at a number of steps up to a look ahead time, and
+ * at each step the quadtree is asked which tiles it would select. The queue is only drawn from when there is room
+ * left after the visible tiles, and it is thrown away when the camera changes heading.
+ * <p>
+ * How many tiles were prefetched and how many turned out to be needed are counted in the Metrics registry, with the
+ * hit rate and accuracy as gauges over those counts, so the look ahead can be tuned while flying.
+ */
+public class TilePrefetcher {
+    /**
+     * How far ahead, in seconds, to predict the camera's position
+     */
+    private double look_ahead;
+
+    /**
+     * The number of predicted positions between now and the look ahead time
+     */
+    private int steps;
+
+    /**
+     * The cosine of the largest change in heading which keeps the queued tiles
+     */
+    private double heading_tolerance;
+
+    /**
+     * The speed, in world units per second, below which the camera is considered stopped
+     */
+    private double min_speed;
+
+    /**
+     * The heading, as a normalized direction on X and Z, the queue was built for. Null when there is no queue.
+     */
+    private Vector heading;
+
+    /**
+     * The tiles waiting to be prefetched, soonest first
+     */
+    private ArrayList<TerrainNode> queue;
+
+    /**
+     * The number of tiles handed out to be prefetched
+     */
+    private final Counter issued;
+
+    /**
+     * The number of tiles which were prefetched before they were needed
+     */
+    private final Counter hits;
+
+    /**
+     * The number of tiles which were needed before anything had requested them
+     */
+    private final Counter misses;
+
+    /**
+     * Construct this prefetcher
+     * @param look_ahead How far ahead, in seconds, to predict the camera's position
+     * @param steps The number of predicted positions to take, must be > 0
+     * @param heading_tolerance The largest change in heading, in degrees, before the queue is cancelled
+     * @param min_speed The speed, in world units per second, below which nothing is prefetched
+     * @throws InvalidParameterException If look_ahead or steps isn't positive
+     */
+    public TilePrefetcher(double look_ahead, int steps, double heading_tolerance, double min_speed){
+        if (look_ahead <= 0.0 || steps <= 0){
+            throw new InvalidParameterException("The prefetcher must look ahead by a positive time and step count");
+        }
+        this.look_ahead = look_ahead;
+        this.steps = steps;
+        this.heading_tolerance = Math.cos(Math.toRadians(heading_tolerance));
+        this.min_speed = min_speed;
+        this.heading = null;
+        this.queue = new ArrayList<>();
+        String outcome_help = "Tiles prefetched, and tiles needed which had or hadn't been prefetched";
+        Counter issued = Metrics.counter("planesim_prefetch_tiles_total", outcome_help, "outcome", "issued");
+        Counter hits = Metrics.counter("planesim_prefetch_tiles_total", outcome_help, "outcome", "hit");
+        Counter misses = Metrics.counter("planesim_prefetch_tiles_total", outcome_help, "outcome", "miss");
+        this.issued = issued;
+        this.hits = hits;
+        this.misses = misses;
+        // The counters are safe to read from the exporting thread, so the ratios are worked out from them
+        Metrics.gauge("planesim_prefetch_hit_ratio", "Fraction of needed tiles which had been prefetched",
+                () -> ratio(hits.get(), hits.get() + misses.get()));
+        Metrics.gauge("planesim_prefetch_accuracy_ratio", "Fraction of prefetched tiles which ended up needed",
+                () -> ratio(hits.get(), issued.get()));
+    }
+
+    /**
+     * Rebuild the queue from the camera's position and velocity. This must be called after the quadtree is updated.
+     * @param quadtree The quadtree to predict tiles from
+     * @param position The current position of the camera
+     * @param velocity The recent velocity of the camera, in world units per second
+     * @param projection_factor The height of the viewport divided by 2 * tan(fov / 2)
+     * @return True if the heading changed or the camera stopped, so any prefetches in flight should be cancelled
+     * @throws InvalidParameterException If any parameter is null
+     */
+    public boolean update(TerrainQuadtree quadtree, Vector position, Vector velocity, double projection_factor){
+        if (quadtree == null || position == null || velocity == null){
+            throw new InvalidParameterException("The prefetcher needs a quadtree, position and velocity!");
+        }
+
+        queue.clear();
+
+        Vector direction = new Vector(velocity.getX(), 0.0, velocity.getZ());
+        double speed = direction.getLength();
+        if (speed < min_speed){
+            boolean cancelled = heading != null;
+            heading = null;
+            return cancelled;
+        }
+        direction.normalize();
+
+        // Compare the heading to the one the last prefetches were made for
+        boolean cancelled = false;
+        if (heading != null){
+            double alignment = (heading.getX() * direction.getX()) + (heading.getZ() * direction.getZ());
+            cancelled = alignment < heading_tolerance;
+        }
+        if (heading == null || cancelled){
+            heading = direction;
+        }
+
+        // Predict the tiles needed along the path, the nearest positions first
+        for (int step = 1; step <= steps; step++){
+            double time = look_ahead * ((double) step / (double) steps);
+            Vector predicted = position.plus(velocity.mul((float) time));
+
+            for (TerrainNode node : quadtree.predict(predicted, projection_factor)){
+                if (!queue.contains(node)){
+                    queue.add(node);
+                }
+            }
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Take tiles off the front of the queue to be loaded, these are marked as prefetched
+     * @param max The most tiles to take
+     * @return The tiles to load, may be empty
+     */
+    public ArrayList<TerrainNode> takeRequests(int max){
+        ArrayList<TerrainNode> requests = new ArrayList<>();
+        while (!queue.isEmpty() && requests.size() < max){
+            TerrainNode node = queue.remove(0);
+            node.setPrefetched(true);
+            requests.add(node);
+        }
+        issued.add(requests.size());
+        return requests;
+    }
+
+    /**
+     * Record that the quadtree selected a tile, counting a hit if it was prefetched or a miss if nothing has
+     * requested it yet. Each tile is only counted the first time it's selected after loading.
+     * @param node The selected tile
+     */
+    public void recordDemand(TerrainNode node){
+        if (node.isDemanded()){
+            return;
+        }
+        node.setDemanded(true);
+
+        if (node.isPrefetched()){
+            hits.increment();
+        } else if (!node.isLoaded() && !node.isRequested()){
+            misses.increment();
+        }
+    }
+
+    /**
+     * Get the fraction of needed tiles which had been prefetched
+     * @return The hit rate between 0 and 1, 0 if nothing has been needed yet
+     */
+    public double getHitRate(){
+        long hit = hits.get();
+        return ratio(hit, hit + misses.get());
+    }
+
+    /**
+     * Get the fraction of prefetched tiles which ended up being needed, low values mean the look ahead is too far
+     * @return The accuracy between 0 and 1, 0 if nothing has been prefetched yet
+     */
+    public double getAccuracy(){
+        return ratio(hits.get(), issued.get());
+    }
+
+    /**
+     * Print how many tiles were prefetched and how many of those and the tiles needed were hits
+     */
+    public void printStats(){
+        System.out.printf("Tile prefetcher: %d issued, %d hits, %d misses, hit rate %.2f, accuracy %.2f\n",
+                issued.get(), hits.get(), misses.get(), getHitRate(), getAccuracy());
+    }
+
+    /**
+     * Divide two counts, 0 if there's nothing to divide by
+     */
+    private static double ratio(long count, long total){
+        return total == 0 ? 0.0 : (double) count / (double) total;
+    }
+}
@@ -1,24 +1,41 @@
 package App;
 
-import Data.DataDriver;
 import Data.WorldCoordinate;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
+import Graphics.GLResources;
+import Graphics.GLShader;
+import Graphics.GLTexture;
+import Graphics.GLTile;
 import Graphics.GLTransform;
 import Graphics.GraphicsDriver;
-import Math.Image;
+import Graphics.VertexLayout;
 import Math.Transform;
 import Math.Vector;
+import Utils.Counter;
+import Utils.Gauge;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.Events.GpuUploadEvent;
+import Utils.Events.TileRequestedEvent;
 
 
-import javax.naming.ConfigurationException;
-
 /**
- * This process manages the loading of satellite data based on the camera position. Uniquely, this process will
- * spawn threads from an implemented Runner child class.
+ * This process manages the loading of satellite data based on the camera position. Tiles are loaded in rings
+ * through a TilePipeline, whose threads download, decode and mesh them, then uploaded here on the render thread.
+ * <p>
+ * The quadtree and everything deciding which tiles to load, draw and unload belongs to the simulation thread. The
+ * render thread owns the uploaded tiles and their meshes: it uploads finished tiles and hands them back through a
+ * queue, draws the tiles of each snapshot and stitches their edges, and destroys unloaded tiles once it has drawn a
+ * snapshot from the tick they were unloaded in, so a tile is never destroyed while an older snapshot still draws it.
  */
 public class WorldProcess implements AppProcess{
     /**
@@ -37,19 +54,225 @@ public class WorldProcess implements AppProcess{
     private int zoom_out;
 
     /**
-     * A list holding tile locations and their WorldGenerationThread
-     * If no key exist, it hasn't loaded
-     * If the key exist and the thread isn't running, it is ready
-     * If the key exist and the thread is running then the data is still being parsed
+     * The quadtree which decides which tiles, of which zoom, are drawn around the camera
+     */
+    private TerrainQuadtree quadtree;
+
+    /**
+     * The pipeline the tiles are loaded through
+     */
+    private TilePipeline pipeline;
+
+    /**
+     * The rings of tiles in the pipeline
+     */
+    private ArrayList<TilePipeline.TileRing> rings;
+
+    /**
+     * The maximum number of rings in the pipeline at once, which depends on how the pipeline downloads
+     */
+    private int max_rings;
+
+    /**
+     * The nodes drawn by the last tick, written to its snapshot. Simulation thread only.
+     */
+    private ArrayList<TerrainNode> drawnNodes;
+
+    /**
+     * The tiles unloaded by the last tick, queued for the render thread along with the snapshot. Simulation thread
+     * only.
+     */
+    private ArrayList<GLTile> evictedTiles;
+
+    /**
+     * The finished tiles waiting to be uploaded, from the simulation thread to the render thread
+     */
+    private final ConcurrentLinkedQueue<TilePipeline.TileJob> uploads;
+
+    /**
+     * The uploaded tiles waiting to be given to their nodes, from the render thread to the simulation thread
+     */
+    private final ConcurrentLinkedQueue<UploadedTile> uploaded;
+
+    /**
+     * The unloaded tiles waiting to be destroyed, from the simulation thread to the render thread in tick order
+     */
+    private final ConcurrentLinkedQueue<EvictedTile> evictions;
+
+    /**
+     * The tiles shown by the last snapshot drawn, used to hide the ones which are no longer drawn. Render thread
+     * only.
+     */
+    private ArrayList<GLTile> visibleTiles;
+
+    /**
+     * Scratch space for the neighbour levels of a tile being stitched. Render thread only.
+     */
+    private final int[] stitch_levels;
+
+    /**
+     * Queues the tiles along the camera's path so they're loaded before they're needed
+     */
+    private TilePrefetcher prefetcher;
+
+    /**
+     * Whether tiles are uploaded as packed heights, VertexLayout.PACKED_HEIGHT, and drawn with the terrain shader
+     */
+    private boolean packed_vertices;
+
+    /**
+     * The tiles requested from the pipeline because they're drawn or prefetched, and how they came out of it
+     */
+    private final Counter tiles_requested;
+    private final Counter tiles_prefetched;
+    private final Counter tiles_failed;
+    private final Counter tiles_cancelled;
+
+    /**
+     * The tiles uploaded to the GPU and unloaded from it
+     */
+    private final Counter tiles_uploaded;
+    private final Counter tiles_evicted;
+
+    /**
+     * The tiles requested which haven't come out of the pipeline yet, counted on the simulation thread and published
+     * through tiles_in_flight_gauge
+     */
+    private int tiles_in_flight;
+    private final Gauge tiles_in_flight_gauge;
+
+    /**
+     * The time taken to upload each tile on the render thread
+     */
+    private final LatencyHistogram upload_time;
+
+    /**
+     * The number of vertices along each side of a tile's mesh. This is a power of two plus one so the vertices of a
+     * tile line up with the vertices of the tiles of neighbouring zoom levels
+     */
+    public static final int TILE_RESOLUTION = 9;
+
+    /**
+     * The number of lowest zoom tiles to keep loaded in each direction around the camera
+     */
+    private static final int ROOT_RADIUS = 1;
+
+    /**
+     * The maximum number of tiles selected by the quadtree at once
+     */
+    private static final int MAX_TILES = 64;
+
+    /**
+     * The screen space error, in pixels, above which a tile is replaced by its four children
+     */
+    private static final double ERROR_THRESHOLD = 2.0;
+
+    /**
+     * The maximum number of rings in the pipeline at once
+     */
+    private static final int MAX_RINGS = 8;
+
+    /**
+     * The maximum number of rings in the pipeline at once when downloading on virtual threads, where a waiting
+     * download costs almost nothing so many more rings can be in flight when zoomed out
+     */
+    private static final int MAX_VIRTUAL_RINGS = 32;
+
+    /**
+     * The maximum number of downloads running at once when downloading on virtual threads
+     */
+    private static final int MAX_VIRTUAL_DOWNLOADS = 128;
+
+    /**
+     * The system property which, when "true", downloads tiles on virtual threads
+     */
+    public static final String VIRTUAL_IO_PROPERTY = "planesim.io.virtual";
+
+    /**
+     * The system property which, when "true", uploads tiles as full float vertices rather than packed heights
+     */
+    public static final String FLOAT_VERTICES_PROPERTY = "planesim.mesh.float";
+
+    /**
+     * The furthest a tile's adaptive mesh may be from its elevation, as a fraction of the tile's width. This is
+     * about 5 meters at zoom 13 and doubles for each zoom level coarser.
+     */
+    private static final float MESH_ERROR = 0.001f;
+
+    /**
+     * The system property which replaces MESH_ERROR, a negative error meshes every tile as a uniform grid
+     */
+    public static final String MESH_ERROR_PROPERTY = "planesim.mesh.error";
+
+    /**
+     * The maximum number of tiles in a ring, the elevations of a ring are read in one request
+     */
+    private static final int RING_SIZE = 9;
+
+    /**
+     * The number of threads downloading tiles, these mostly wait on the network
+     */
+    private static final int FETCH_THREADS = 4;
+
+    /**
+     * The number of threads decoding images
+     */
+    private static final int DECODE_THREADS = 1;
+
+    /**
+     * The number of threads building meshes
+     */
+    private static final int MESH_THREADS = 2;
+
+    /**
+     * The number of rings or tiles each queue of the pipeline holds before the stage feeding it waits
+     */
+    private static final int PIPELINE_QUEUE_CAPACITY = 2 * RING_SIZE;
+
+    /**
+     * The nanoseconds to wait before requesting a tile which failed to load, doubled each time it fails in a row
      */
-    //private HashMap<Map.Entry<Integer, Integer>, WorldGenerationThread> coordinateThreads;
-            // Zoom level, Y offset, X offset, Thread
-    private HashMap<Integer, HashMap<Integer, HashMap<Integer, WorldGenerationThread>>> coordinateThreads;
+    private static final long TILE_RETRY_DELAY = 1_000_000_000L;
 
     /**
-     * TODO FIX OR FIND BETTER SOLUTION!
+     * The most nanoseconds to wait before requesting a failed tile again
      */
-    private HashMap<WorldCoordinate, Float> globalElevations;
+    private static final long MAX_TILE_RETRY_DELAY = 60_000_000_000L;
+
+    /**
+     * The number of ticks a tile may go unused before it's unloaded
+     */
+    private static final long EVICTION_TICKS = 600;
+
+    /**
+     * The estimated GPU memory, in bytes, above which every tile not drawn this tick is unloaded
+     */
+    private static final long GPU_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    /**
+     * How far ahead, in seconds, tiles are prefetched along the camera's path
+     */
+    private static final double PREFETCH_LOOK_AHEAD = 4.0;
+
+    /**
+     * The number of positions along the camera's path tiles are prefetched for
+     */
+    private static final int PREFETCH_STEPS = 4;
+
+    /**
+     * The change in heading, in degrees, which cancels the prefetches in flight
+     */
+    private static final double PREFETCH_HEADING_TOLERANCE = 30.0;
+
+    /**
+     * The speed, in world units per second, below which nothing is prefetched
+     */
+    private static final double PREFETCH_MIN_SPEED = 1.0;
+
+    /**
+     * The maximum number of the rings which may be prefetching, so visible tiles always have room
+     */
+    private static final int MAX_PREFETCH_RINGS = 1;
 
     /**
      * Construct this WorldProcess with a provided base location
@@ -65,141 +288,158 @@ public class WorldProcess implements AppProcess{
         this.initial = initial;
         this.zoom = zoom;
         this.zoom_out = zoom_out;
-        coordinateThreads = new HashMap<>();
-
-        // TODO: REMOVE ME
-        globalElevations = new HashMap<>();
+        rings = new ArrayList<>();
+        drawnNodes = new ArrayList<>();
+        evictedTiles = new ArrayList<>();
+        uploads = new ConcurrentLinkedQueue<>();
+        uploaded = new ConcurrentLinkedQueue<>();
+        evictions = new ConcurrentLinkedQueue<>();
+        visibleTiles = new ArrayList<>();
+        stitch_levels = new int[4];
+
+        String requested_help = "Tiles requested from the tile pipeline";
+        tiles_requested = Metrics.counter("planesim_tiles_requested_total", requested_help, "kind", "visible");
+        tiles_prefetched = Metrics.counter("planesim_tiles_requested_total", requested_help, "kind", "prefetch");
+        String finished_help = "Tiles which came out of the tile pipeline without loading";
+        tiles_failed = Metrics.counter("planesim_tiles_dropped_total", finished_help, "reason", "failed");
+        tiles_cancelled = Metrics.counter("planesim_tiles_dropped_total", finished_help, "reason", "cancelled");
+        tiles_uploaded = Metrics.counter("planesim_tiles_uploaded_total", "Tiles uploaded to the GPU");
+        tiles_evicted = Metrics.counter("planesim_tiles_evicted_total", "Tiles unloaded to free the GPU");
+        tiles_in_flight = 0;
+        tiles_in_flight_gauge = Metrics.gauge("planesim_tiles_in_flight",
+                "Tiles requested which haven't come out of the tile pipeline yet");
+        upload_time = Metrics.histogram("planesim_tile_upload_seconds", "Time to upload a tile to the GPU");
     }
 
     // App Process related methods
 
     /**
-     * Empty as there is nothing to initialize
-     * @param context Unused
-     * @throws InvalidParameterException Never
+     * Construct the quadtree of tiles, from zoom - zoom_out around the camera to zoom nearest to it, and start the
+     * pipeline which loads them
+     * @param context The context to take the data driver from
+     * @throws InvalidParameterException If context is null
      */
     @Override
     public void init(AppContext context) throws InvalidParameterException {
-        WorldCoordinate initial_15 = new WorldCoordinate(initial.getWorldCoordinate().getX(),
-                initial.getWorldCoordinate().getY(), 256, zoom);
-        WorldCoordinate initial_14 = new WorldCoordinate(initial.getWorldCoordinate().getX(),
-                initial.getWorldCoordinate().getY(), 256, zoom-1);
-        WorldCoordinate initial_13 = new WorldCoordinate(initial.getWorldCoordinate().getX(),
-                initial.getWorldCoordinate().getY(), 256, zoom-2);
-        WorldCoordinate initial_12 = new WorldCoordinate(initial.getWorldCoordinate().getX(),
-                initial.getWorldCoordinate().getY(), 256, zoom-3);
-
-
-        for (int x = 0; x <= 0; x++){
-            for (int y = 0; y <= 0; y++){
-                spawnMesh(context.getDataDriver(), initial_15, new Vector(x ,y ,0), zoom);
+        if (context == null){
+            throw new InvalidParameterException("Provided Context to WorldProcess is null!");
+        }
+        quadtree = new TerrainQuadtree(initial, Math.max(0, zoom - zoom_out), zoom, ROOT_RADIUS, MAX_TILES,
+                ERROR_THRESHOLD);
+        prefetcher = new TilePrefetcher(PREFETCH_LOOK_AHEAD, PREFETCH_STEPS, PREFETCH_HEADING_TOLERANCE,
+                PREFETCH_MIN_SPEED);
+        boolean virtual_io = Boolean.getBoolean(VIRTUAL_IO_PROPERTY);
+        pipeline = new TilePipeline(context.getDataDriver(), TILE_RESOLUTION,
+                virtual_io ? MAX_VIRTUAL_DOWNLOADS : FETCH_THREADS, DECODE_THREADS, MESH_THREADS,
+                PIPELINE_QUEUE_CAPACITY, virtual_io);
+        max_rings = virtual_io ? MAX_VIRTUAL_RINGS : MAX_RINGS;
+        pipeline.setMeshError(Float.parseFloat(System.getProperty(MESH_ERROR_PROPERTY, Float.toString(MESH_ERROR))));
+
+        // Packed tiles are drawn by a shader which rebuilds each vertex from its index and height, every tile is
+        // pushed after it so it's bound for all of them
+        packed_vertices = !Boolean.getBoolean(FLOAT_VERTICES_PROPERTY);
+        if (packed_vertices){
+            try {
+                GLShader terrain_shader = new GLShader();
+                terrain_shader.createProgram(
+                        Files.readString(Paths.get("shaders/vertex_terrain.glsl")),
+                        Files.readString(Paths.get("shaders/fragment.glsl"))
+                );
+
+                context.getGraphicsDriver().pushObject(terrain_shader);
+            } catch (IOException e) {
+                throw new RuntimeException("Terrain shader not found, working directory likely incorrect!", e);
             }
         }
-        //spawnMesh(context.getDataDriver(), initial_14, new Vector(0,0,0), zoom-1);
-        //spawnMesh(context.getDataDriver(), initial_13, new Vector(0,0,0), zoom-2);
-        //spawnMesh(context.getDataDriver(), initial_12, new Vector(0,0,0), zoom - 3);
     }
 
     /**
-     * A private method to load a mesh from a ready thread
-     * @param gDriver The graphics driver to push the mesh to
-     * @param thread The target thread to load from
-     * @param zoom The zoom level of this mesh
-     * @throws InvalidParameterException If the thread is null or not ready
+     * A private method to upload a tile which made it through the pipeline, on the render thread. The node isn't
+     * touched here, the tile is handed back to the simulation thread to give to it.
+     * @param gDriver The graphics driver to push the tile to
+     * @param job The finished tile
+     * @return The uploaded tile, already pushed to the graphics stack
+     * @throws InvalidParameterException If the tile is null or not complete
      */
-    private void loadMesh(GraphicsDriver gDriver, WorldGenerationThread thread, int zoom){
-        if (thread == null || !thread.isReady){
-            throw new InvalidParameterException("Provided thread for throwing mesh is either null or not-ready!");
+    private GLTile loadTile(GraphicsDriver gDriver, TilePipeline.TileJob job){
+        if (job == null || !job.isComplete()){
+            throw new InvalidParameterException("Provided tile for uploading is either null or not complete!");
         }
-        Vector thread_offset = thread.getOffset();
-
-        WorldGenerationThread.HeightmapMesh[] meshes = thread.result_meshes;
-        Image[] images = thread.result_image;
-
-        int mesh_resolution = (int) Math.sqrt((double) Math.min(meshes.length, images.length));
-
-        int mesh_res_range = (int) Math.floor((double) mesh_resolution / 2.0);
-        for (int y = -mesh_res_range; y <= mesh_res_range; y++) {
-            for (int x = -mesh_res_range; x <= mesh_res_range; x++) {
-                int index = ((y + mesh_res_range) * mesh_resolution) + (x+mesh_res_range);
-                Image img = images[index];
-                WorldGenerationThread.HeightmapMesh mesh = meshes[index];
-
-                WorldCoordinate point = thread.generateAdjacentTiles()[((mesh_res_range) * mesh_resolution) + mesh_res_range];
-
-                gDriver.pushTexture(img);
-
-                Graphics.GLHeightmap test_mesh = new Graphics.GLHeightmap(10);
 
-                test_mesh.bindElementsForUse();
+        TerrainNode node = job.getNode();
+        HeightmapMesh mesh = job.getMesh();
 
-                test_mesh.uploadVertices(mesh.vertices);
+        GLTexture texture = gDriver.createTexture(job.getImage());
 
-                test_mesh.uploadElements(mesh.indices);
+        Graphics.GLHeightmap heightmap = new Graphics.GLHeightmap(TILE_RESOLUTION);
+        heightmap.setTriangleList(mesh.isTriangles());
 
-                test_mesh.configureVertexArray();
+        heightmap.bindElementsForUse();
 
-                // Scale this transform and move it down by the zoom level
-
-                int zoom_offset = this.zoom - zoom;
-                int zoom_scale2 = (int) Math.pow(2, 16 - zoom);
-
-                Transform transform = new Transform();
+        if (packed_vertices){
+            heightmap.uploadVertices(mesh.getPackedHeights());
+            heightmap.setHeightRange(mesh.getHeightOffset(), mesh.getHeightScale());
+        } else {
+            heightmap.uploadVertices(mesh.getVertices());
+        }
 
+        heightmap.uploadElements(mesh.getIndices());
 
+        heightmap.configureVertexArray(packed_vertices ? VertexLayout.PACKED_HEIGHT
+                : VertexLayout.POSITION_TEXTURE);
 
-                transform.getPos().setX((((thread_offset.getX()  + (x)))));
-                transform.getPos().setZ((((thread_offset.getY()  + (y)))));
+        // The mesh spans -0.5 to 0.5 so it is scaled by the size of the tile, the translation is applied
+        // within the scaled space so the center is divided by the size
+        double tile_size = quadtree.getTileSize(node.getZoom());
+        Vector center = quadtree.getTileCenter(node);
 
-                transform.getScale().setScalar(zoom_scale2*10);
+        Transform transform = new Transform();
 
-                //transform.getScale().setY(((zoom_scale * 10 * 4) - (zoom_offset)) * 0.3);
+        transform.getPos().setX(center.getX() / tile_size);
+        transform.getPos().setZ(center.getZ() / tile_size);
 
-                transform.getPos().setY(-0.2);
+        transform.getScale().setScalar(tile_size);
 
-                GLTransform glTransform = new GLTransform(transform);
+        GLTile tile = new GLTile(texture, new GLTransform(transform), heightmap);
 
-                gDriver.pushObject(glTransform);
+        gDriver.pushObject(tile);
 
-                gDriver.pushObject(test_mesh);
-            }
-        }
-
-        thread.isFinished = true;
+        return tile;
     }
 
     /**
-     * This method spawns a thread at a position with zoom
-     * @param dDriver The data driver to pass to copy to the thread
-     * @param location A vector based offset.
-     * @param zoom The zoom to create a tile from
+     * Queue a ring of tiles in the pipeline
+     * @param nodes The nodes of the tiles to load
+     * @param prefetch Whether the tiles are being prefetched rather than needed now
+     * @return True if the ring was queued, false if the pipeline is full
      */
-    private void spawnMesh(DataDriver dDriver, WorldCoordinate location, Vector offset, int zoom){
-        if (!coordinateThreads.containsKey(zoom)){
-            coordinateThreads.put(zoom, new HashMap<>());
+    private boolean startRing(List<TerrainNode> nodes, boolean prefetch){
+        TilePipeline.TileRing ring = new TilePipeline.TileRing(nodes.toArray(new TerrainNode[0]), prefetch);
+        if (!pipeline.submit(ring)){
+            return false;
         }
 
-        HashMap<Integer, HashMap<Integer, WorldGenerationThread>> zoom_group = coordinateThreads.get(zoom);
+        for (TerrainNode node : nodes){
+            node.setRequested(true);
+            quadtree.touch(node);
 
-        if (!zoom_group.containsKey((int) offset.getX())){
-            zoom_group.put((int) offset.getX(), new HashMap<>());
+            TileRequestedEvent event = new TileRequestedEvent();
+            if (event.isEnabled()){
+                event.setTile(node.getZoom(), node.getX(), node.getY());
+                event.setPrefetch(prefetch);
+                event.commit();
+            }
         }
-        HashMap<Integer, WorldGenerationThread> horizontal_lines = zoom_group.get((int) offset.getX());
-
-        WorldGenerationThread thread = new WorldGenerationThread(dDriver);
-
-        Vector initial_pos = location.getTile();
-        thread.setLocation(new WorldCoordinate((int) initial_pos.getX(), (int)initial_pos.getY(), zoom),
-                new Vector(offset.getX(), offset.getY(), 0), zoom ,2);
-        thread.start();
+        (prefetch ? tiles_prefetched : tiles_requested).add(nodes.size());
+        tiles_in_flight += nodes.size();
 
-        horizontal_lines.put((int) offset.getY(), thread);
+        rings.add(ring);
+        return true;
     }
 
-
-
     /**
-     * Read the camera's position and load in new tiles as needed
+     * Read the camera's position, select the tiles to draw from the quadtree and load in new tiles as needed. This
+     * runs on the simulation thread, everything which needs OpenGL is left to render.
      * @param dt The time, in seconds, since the last call (Delta Time)
      * @param context The current app context this process is running in
      * @throws InvalidParameterException If context is null
@@ -216,394 +456,267 @@ public class WorldProcess implements AppProcess{
             throw new IllegalStateException("No Camera in provided app process list!");
         }
 
+        // Give the tiles the render thread uploaded since the last tick to their nodes
+        UploadedTile upload;
+        while ((upload = uploaded.poll()) != null){
+            upload.node.setMesh(upload.mesh);
+            upload.node.setTile(upload.tile);
+            // Prefetched tiles haven't been selected yet, so they'd otherwise look long unused
+            quadtree.touch(upload.node);
+        }
 
-        // Iterate through each zoom level, determine the offset
-        //for (int z = zoom; z >= (zoom - zoom_out); z--){
-            int scale = (int) Math.pow(2, zoom / 2.0);
-
-            int x_offset = (int) ((cam.getGLCamera().getTransform().getPos().getX() / scale));
-            int y_offset = (int) ((cam.getGLCamera().getTransform().getPos().getZ() / scale));
-
-            //System.out.printf("Z: %d X: %d Y: %d\n", z, x_offset, y_offset);
-
-        WorldCoordinate initial_12 = new WorldCoordinate(initial.getWorldCoordinate().getX(),
-                initial.getWorldCoordinate().getY(), 256, zoom);
+        // Converts sizes at a distance of one into pixels, used for the screen space error of each tile
+        double projection_factor = context.getGraphicsDriver().getWindowHeight()
+                / (2.0 * Math.tan(Math.toRadians(cam.getGLCamera().getFov()) / 2.0));
 
-        for (int x = -1; x <= 1; x++) {
-            for (int y = -1; y <= 1; y++) {
-                int x_o = x_offset + x;
-                int y_o = y_offset + y;
-                if (!coordinateThreads.get(zoom).containsKey(x_o) ||
-                                !coordinateThreads.get(zoom).get(x_o).containsKey(y_o)) {
+        Vector position = cam.getTransform().getPos();
 
-                    WorldCoordinate initial_wc = new WorldCoordinate(
-                            initial_12.getTile().getX() + x_o,
-                            initial_12.getTile().getY() + y_o,
-                            (double) zoom);
+        ArrayList<TerrainNode> drawn = quadtree.update(position, projection_factor);
 
+        // Count which of the selected tiles the prefetcher got to first
+        for (TerrainNode node : quadtree.getLeaves()){
+            prefetcher.recordDemand(node);
+        }
 
-                    spawnMesh(context.getDataDriver(), initial_wc, new Vector(x_o, y_o, 0), zoom);
+        // Start loading the tiles we're missing, a ring at a time
+        ArrayList<TerrainNode> pending = quadtree.getPendingNodes();
+        int offset = 0;
+        while (offset < pending.size() && rings.size() < max_rings){
+            int end = Math.min(pending.size(), offset + RING_SIZE);
+            if (!startRing(pending.subList(offset, end), false)){
+                break;
+            }
+            offset = end;
+        }
 
+        // Prefetch along the camera's path with whatever room the visible tiles left
+        if (prefetcher.update(quadtree, position, cam.getVelocity(), projection_factor)){
+            for (TilePipeline.TileRing ring : rings){
+                if (ring.isPrefetch() && !ring.isNeeded()){
+                    ring.cancel();
                 }
             }
         }
-
-
-
-        for (Map.Entry<Integer, HashMap<Integer, HashMap<Integer, WorldGenerationThread>>> zoom_layer : coordinateThreads.entrySet()) {
-            for (HashMap<Integer, WorldGenerationThread> horizontal_rows : zoom_layer.getValue().values()) {
-                for (WorldGenerationThread thread : horizontal_rows.values()) {
-                    if (thread.isReady && !thread.isFinished) {
-                        loadMesh(context.getGraphicsDriver(), thread, zoom_layer.getKey());
-                    }
+        while (rings.size() < max_rings && countPrefetchRings() < MAX_PREFETCH_RINGS){
+            ArrayList<TerrainNode> requests = prefetcher.takeRequests(RING_SIZE);
+            if (requests.isEmpty() || !startRing(requests, true)){
+                for (TerrainNode node : requests){
+                    node.setPrefetched(false);
                 }
+                break;
             }
         }
-    }
 
-    @Override
-    public void destroy() {
+        // Send the tiles which came out of the pipeline to be uploaded, they stay requested until they're given back,
+        // and release the ones which failed or were cancelled so they can be requested again
+        TilePipeline.TileJob job;
+        while ((job = pipeline.poll()) != null){
+            TerrainNode node = job.getNode();
+            tiles_in_flight--;
+            if (job.isComplete()){
+                uploads.add(job);
+            } else if (job.getFailure() != null){
+                // Try the tile again later, backing off further each time it fails
+                long delay = retryDelay(node.getFailures());
+                System.out.printf("Failed to load tile %d/%d/%d, retrying in %.1fs: %s\n", node.getZoom(),
+                        node.getX(), node.getY(), delay / 1e9, job.getFailure().getMessage());
+                node.recordFailure(System.nanoTime() + delay);
+                node.setPrefetched(false);
+                tiles_failed.increment();
+            } else {
+                tiles_cancelled.increment();
+                node.setRequested(false);
+                node.setPrefetched(false);
+            }
+            if (job.getRing().complete()){
+                rings.remove(job.getRing());
+            }
+        }
+
+        tiles_in_flight_gauge.set(tiles_in_flight);
+
+        drawnNodes = drawn;
 
+        // Unload tiles which haven't been used for a while, or every unused tile if we're over the GPU budget. The
+        // render thread destroys them once it's past this tick.
+        long max_age = GLResources.getTotalBytes() > GPU_MEMORY_BUDGET ? 0 : EVICTION_TICKS;
+        int evicted_before = evictedTiles.size();
+        evictedTiles.addAll(quadtree.evict(max_age));
+        tiles_evicted.add(evictedTiles.size() - evicted_before);
     }
 
     /**
-     * A class which implements threading for loading in world data
+     * Write the tiles drawn this tick to its snapshot, and queue the tiles unloaded this tick to be destroyed once
+     * the render thread reaches it
+     * @param snapshot The snapshot of this tick
      */
-    private class WorldGenerationThread extends Thread {
-
-        /**
-         * A derived DataDriver from the host app, it needs to be derived as to not potentially break the main
-         * thread.
-         */
-        private DataDriver dataDriver;
-
-        /**
-         * The world coordinate to read our data from
-         */
-        private WorldCoordinate location;
-
-        /**
-         * The zoom for our location's tile
-         */
-        private int zoom;
-
-        /**
-         * The resolution of our elevation coordinates
-         */
-        private int elevation_res;
-
-        /**
-         * Our resultant elevations, should only be used after the thread finishes
-         */
-        private HashMap<WorldCoordinate, Float> result_elevation;
-
-        /**
-         * Our resultant image, should only be used after the thread finishes
-         */
-        private Image[] result_image;
-
-        /**
-         * Our resultant meshes, should only be used after the thread finishes
-         */
-        private HeightmapMesh[] result_meshes;
+    @Override
+    public void snapshot(SceneSnapshot snapshot){
+        for (TerrainNode node : drawnNodes){
+            snapshot.addTile(node.getTile(), node.getMesh(), node.getNeighbourLevels());
+        }
+        for (GLTile tile : evictedTiles){
+            evictions.add(new EvictedTile(snapshot.getTick(), tile));
+        }
+        evictedTiles.clear();
+    }
 
-        /**
-         * A simple flag to check whether or not this thread is reasy
-         * false always except when run is finished
-         */
-        private boolean isReady;
+    /**
+     * Upload the tiles which came out of the pipeline, then draw the latest snapshot's tiles: hide the ones no longer
+     * drawn, destroy the ones unloaded up to its tick and stitch the edges of the rest to any coarser neighbours
+     * @param snapshot The newest snapshot
+     * @param fresh Whether this snapshot is new since the last frame
+     * @param alpha How far the frame is through the snapshot's tick, tiles don't move so it isn't used
+     * @param context The current app context this process is running in
+     */
+    @Override
+    public void render(SceneSnapshot snapshot, boolean fresh, double alpha, AppContext context){
+        TilePipeline.TileJob job;
+        while ((job = uploads.poll()) != null){
+            GpuUploadEvent event = new GpuUploadEvent();
+            event.begin();
+            long start = System.nanoTime();
+            GLTile tile = loadTile(context.getGraphicsDriver(), job);
+            upload_time.record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()){
+                TerrainNode node = job.getNode();
+                HeightmapMesh mesh = job.getMesh();
+                event.setTile(node.getZoom(), node.getX(), node.getY());
+                long vertex_bytes = packed_vertices ? (long) mesh.getPackedHeights().length * Short.BYTES
+                        : (long) mesh.getVertices().length * Float.BYTES;
+                event.setBytes(job.getImage().getDataSize(), vertex_bytes,
+                        (long) mesh.getIndices().length * Integer.BYTES);
+                event.commit();
+            }
+            tiles_uploaded.increment();
+            uploaded.add(new UploadedTile(job.getNode(), job.getMesh(), tile));
+        }
 
-        /**
-         * Another flag to indicate whether or not this thread has been used
-         * false, to be set by the WorldProcess
-         */
-        private boolean isFinished;
+        if (!fresh){
+            return;
+        }
 
-        /**
-         * The vector to offset by
-         */
-        private Vector offset;
+        // Swap which tiles are drawn
+        for (GLTile tile : visibleTiles){
+            tile.setVisible(false);
+        }
+        visibleTiles.clear();
 
-        /**
-         * Construct this process from a provided data driver (this'll generate a derivative data driver and not
-         * copy it)
-         * @param dataDriver The data driver to derive from
-         */
-        public WorldGenerationThread(DataDriver dataDriver) {
-            super();
-            this.dataDriver = new DataDriver(dataDriver);
-            isReady = false;
-            isFinished = false;
-            result_image = new Image[9];
-            result_meshes = new HeightmapMesh[9];
-            result_elevation = new HashMap<>();
+        EvictedTile evicted;
+        while ((evicted = evictions.peek()) != null && evicted.tick <= snapshot.getTick()){
+            evictions.poll();
+            context.getGraphicsDriver().removeObject(evicted.tile);
         }
 
-        /**
-         * Start reading the data from the Google API. Finished when data is read and interpreted
-         * @throws IllegalStateException If location is null, zoom is zero, or elevation_res is <= 0
-         * (likely due to the thread's parameters not being set)
-         */
-        @Override
-        public void run() {
-            WorldCoordinate[] tiles = generateAdjacentTiles();
-
-            for (int i = 0; i < tiles.length; i++){
-                // Append the tile's elevation to the list
-                queryWorldElevation(tiles[i]);
-
-                try{
-                    // Append the coordinate's satellite images
-                    result_image[i] = dataDriver.getSatalliteImage(tiles[i], zoom);
-                } catch (ConfigurationException e) {
-                    throw new IllegalStateException("Failed to load a tile's satellite image!");
+        // Stitch the edges of drawn tiles to any coarser neighbours so there are no cracks between zooms
+        for (int i = 0; i < snapshot.getTileCount(); i++){
+            GLTile tile = snapshot.getTile(i);
+            HeightmapMesh mesh = snapshot.getMesh(i);
+            tile.setVisible(true);
+            visibleTiles.add(tile);
+
+            snapshot.getNeighbourLevels(i, stitch_levels);
+            if (mesh.stitch(stitch_levels)){
+                if (packed_vertices){
+                    tile.getMesh().updateVertices(mesh.getPackedHeights());
+                } else {
+                    tile.getMesh().updateVertices(mesh.getVertices());
                 }
             }
+        }
+    }
 
-            for (int i = 0; i < tiles.length; i++){
-                // Append the tile's elevation to the list
-                result_meshes[i] = new HeightmapMesh(10, tiles[i]);
+    /**
+     * Pick how long to wait before requesting a failed tile again, doubling with each failure in a row up to a
+     * limit with jitter so the tiles of a failed ring don't all retry together
+     * @param failures The number of times the tile failed before this one
+     * @return The delay, in nanoseconds
+     */
+    private static long retryDelay(int failures){
+        long ceiling = Math.min(MAX_TILE_RETRY_DELAY, TILE_RETRY_DELAY << Math.min(failures, 16));
+        return (ceiling / 2) + ThreadLocalRandom.current().nextLong((ceiling / 2) + 1);
+    }
 
-                result_meshes[i].generateMesh(result_elevation.entrySet());
+    /**
+     * Count the rings in the pipeline which are prefetching
+     * @return The number of prefetch rings which haven't been cancelled
+     */
+    private int countPrefetchRings(){
+        int count = 0;
+        for (TilePipeline.TileRing ring : rings){
+            if (ring.isPrefetch() && !ring.isCancelled()){
+                count++;
             }
+        }
+        return count;
+    }
 
-            isReady = true;
+    /**
+     * Stop the pipeline, any tiles still loading are abandoned, and print how well tiles were prefetched and what the
+     * scene held on the GPU
+     */
+    @Override
+    public void destroy() {
+        if (prefetcher != null){
+            prefetcher.printStats();
         }
+        if (pipeline != null){
+            pipeline.printStats();
+            pipeline.shutdown();
+        }
+        GLResources.printUsage();
+    }
 
+    /**
+     * A tile uploaded on the render thread, waiting to be given to its node on the simulation thread
+     */
+    private static class UploadedTile {
         /**
-         * A private method to generate 2x2 adjacent locations from the center location
-         * @return An array of four coordinates in the 4 tiles adjacent from the center
+         * The node the tile was loaded for
          */
-        private WorldCoordinate[] generateAdjacentTiles(){
-            WorldCoordinate[] offsets = new WorldCoordinate[9];
-            Vector base_location = this.location.getTile().plus(offset);
-
-            for (int y = 0; y < 3; y++){
-                for (int x = 0; x < 3; x++){
-                    offsets[(y*3)+(x)] = new WorldCoordinate( base_location.getX() - (x-1),
-                            base_location.getY() + (y-1), zoom);
-                }
-            }
-
-            return offsets;
-        }
+        private final TerrainNode node;
 
         /**
-         * A private method to query then append to the elevation list for a specific world coordinate
-         * @param cord The world coordinate to query
-         * @throws InvalidParameterException If cord is null
+         * The CPU mesh of the tile
          */
-        private void queryWorldElevation(WorldCoordinate cord){
-            if (cord == null){
-                throw new InvalidParameterException("Provided coordinate for elevation is null!");
-            }
-
-            // Find the base tile location
-            Vector base_loc = cord.getTile();
-            WorldCoordinate up = new WorldCoordinate(base_loc.getX(), base_loc.getY() + 1, zoom);
-            WorldCoordinate down = new WorldCoordinate(base_loc.getX(), base_loc.getY() - 1, zoom);
-            WorldCoordinate left = new WorldCoordinate(base_loc.getX() - 1, base_loc.getY(), zoom);
-            WorldCoordinate right = new WorldCoordinate(base_loc.getX() + 1, base_loc.getY(), zoom);
-
-            double max_long = up.getWorldCoordinate().getY();
-            double min_long = down.getWorldCoordinate().getY();
-            double max_lat = right.getWorldCoordinate().getX();
-            double min_lat = left.getWorldCoordinate().getX();
-
-            double base_lat = cord.getWorldCoordinate().getX();
-            double base_long = cord.getWorldCoordinate().getY();
-
-            double delta_lat = (max_lat - min_lat)  / 2.0;
-            double delta_lon = (max_long - min_long) / 2.0;
-
-            // Calculate our needed coordinates
-            ArrayList<WorldCoordinate> cords = new ArrayList<>();
-
-            for (int x = -elevation_res; x < elevation_res; x++){
-                for (int y = -elevation_res; y < elevation_res; y++){
-                    double lat_p = ((double) x * delta_lat / (double) elevation_res) + base_lat;
-                    double lng_p = ((double) y * delta_lon / (double) elevation_res) + base_long;
-                    cords.add(
-                            new WorldCoordinate(lat_p, lng_p)
-                    );
-                }
-            }
-
-            result_elevation.putAll(dataDriver.getElevationData(cords));
-        }
+        private final HeightmapMesh mesh;
 
         /**
-         * Sets this thread's coordinate and zoom
-         * @param location A WorldCoordinate which represents our location
-         * @param offset A 2d vector for the offset in the X-Y
-         * @param zoom A zoom for our satellite data
-         * @param elevation_res The resolution for our elevation data, should be  < 3 but not enforced
-         * @throws java.security.InvalidParameterException If zoom is < 1, if location is null, if offset is null, or if elevation_res is <= 0
+         * The uploaded tile
          */
-        public void setLocation(WorldCoordinate location, Vector offset, int zoom, int elevation_res) {
-            if (zoom < 1 || location == null || offset == null || elevation_res <= 0) {
-                throw new InvalidParameterException("Zoom must be greater than zero, location and offset cannot be null, and elevation resolution must be > 0");
-            }
-            this.offset = offset;
-            Vector loc_point = location.getTile();
-            this.location = new WorldCoordinate(loc_point.getX(), loc_point.getY(), zoom);
-            this.zoom = zoom;
-            this.elevation_res = elevation_res;
-        }
+        private final GLTile tile;
 
         /**
-         * Return our current image, may be null, may be invalid. But wont be either if the thread has run
-         * 0 = bottom left
-         * 1 = bottom right
-         * 2 = top left
-         * 3 = top right
-         * @return An Image from the satellite API
+         * Construct an uploaded tile
          */
-        public Image[] getImages(){
-            return result_image;
+        private UploadedTile(TerrainNode node, HeightmapMesh mesh, GLTile tile){
+            this.node = node;
+            this.mesh = mesh;
+            this.tile = tile;
         }
+    }
 
+    /**
+     * A tile unloaded on the simulation thread, waiting to be destroyed on the render thread
+     */
+    private static class EvictedTile {
         /**
-         * Return the world coordinates which have elevation data. May be null or invalid but wont be either if the
-         * thread has run.
-         * @return A hashmap of world coordinates and their respective elevation
+         * The tick the tile was unloaded in, it's destroyed once a snapshot of this tick or later is drawn
          */
-        public HashMap<WorldCoordinate, Float> getElevations(){
-            return result_elevation;
-        }
+        private final long tick;
 
         /**
-         * Get the assigned offset
-         * @return A Vector that was the offset set for this thread
+         * The unloaded tile
          */
-        public Vector getOffset(){
-            return offset;
-        }
+        private final GLTile tile;
 
         /**
-         * A class holding a heightmap mesh
+         * Construct an unloaded tile
          */
-        private class HeightmapMesh{
-            /**
-             * Our buffer of vertices
-             */
-            private float[] vertices;
-
-            /**
-             * Our indices for our heightmaps
-             */
-            private int[] indices;
-
-            /**
-             * The resolution of the height map
-             */
-            private int resolution;
-
-            /**
-             * The base world coordinate for this mesh
-             */
-            private WorldCoordinate base;
-
-            /**
-             * Constructor to initialize our heightmap with a specific resolution
-             * @param res The resolution of the heightmap, determines the length of vertices and indices
-             * @param location The base location of this mesh
-             */
-            public HeightmapMesh(int res, WorldCoordinate location){
-                this.resolution = res;
-                this.base = location;
-                this.indices = new int[(res - 1) * res * 2];
-                this.vertices = new float[res * res * 5];
-            }
-
-            /**
-             * Generate this mesh using a list of elevations, derived from the hash map of elevations for all adjacent
-             * tiles
-             * @param elevations A Set of WorldCoordinates and Elevations
-             */
-            public void generateMesh(Set<Map.Entry<WorldCoordinate, Float>> elevations){
-                initializeElements();
-
-                double elevation_min = 0.0;
-                double elevation_max = 0.0;
-
-                if (!elevations.stream().findFirst().isEmpty()) {
-                    elevation_min = elevations.stream().findFirst().get().getValue();
-                    elevation_max = elevation_min;
-
-                    for (Map.Entry<WorldCoordinate, Float> cord : elevations) {
-                        elevation_min = Math.min(elevation_min, cord.getValue());
-                        elevation_max = Math.max(elevation_max, cord.getValue());
-                    }
-                }
-
-                int index = 0;
-                for (int i = 0; i < resolution; i++) {
-                    for (int j = 0; j < resolution; j++) {
-                        vertices[index] = (float) (-resolution / 2.0 + i) / (float) (resolution -1);
-
-                        double result_y = 0.0;
-
-                        // Radius of our own location
-                        Vector location_bounds = base.findBounds();
-                        Vector world_location = base.getWorldCoordinate();
-
-                        double constant_factor = 0.1;
-                        double dist_factor = 100.0;
-
-                        // First, find the position of this tile, relative to itself (i.e., 0,0 is the center)
-
-                        double radius_x = (((-resolution / 2.0 + i) / resolution) - 0.5) * 2.0;
-                        double radius_y = (((-resolution / 2.0 + j) / resolution) - 0.5) * 2.0;
-
-                        double lat_offset = radius_x * Math.abs(location_bounds.getX());
-                        double lng_offset = radius_y * Math.abs(location_bounds.getY());
-
-                        double latitude = world_location.getX() + (lat_offset);
-                        double longitude = world_location.getY() + (lng_offset);
-
-
-                        // Construct the latitude and longitude
-                        Vector latlng = new Vector(latitude,
-                                longitude, 0);
-
-                        for (Map.Entry<WorldCoordinate, Float> cord : elevations) {
-                            double dist = latlng.getDistance(cord.getKey().getWorldCoordinate());
-
-                            double final_dist = constant_factor *
-                                    (Math.abs((elevation_max - cord.getValue()) / (elevation_max - elevation_min))
-                                            * (1 / Math.max(1.0, Math.pow(dist_factor * dist,2))));
-
-                            result_y += final_dist;
-                        }
-
-                        vertices[index+1] = (float) (result_y / (double) elevation_res);
-                        vertices[index+2] = (float) (-resolution / 2.0 + j) / (float) (resolution -1);
-
-                        vertices[index+3] = (float) (-((float) (-resolution / 2.0 + i)
-                                + (resolution / 2.0)) / (float) (resolution -1));
-                        vertices[index+4] = (float) -((float) (-resolution / 2.0 + j)
-                                + (resolution / 2.0)) / (float) (resolution -1);
-
-                        index += 5;
-                    }
-                }
-            }
-
-            /**
-             * Create the list of elements for this heightmap
-             */
-            private void initializeElements(){
-                for (int i = 0; i < resolution - 1; i++) {
-                    for (int j = 0; j < resolution; j++) {
-                        for (int k = 0; k < 2; k++) {
-                            indices[(i * resolution * 2) + (j * 2) + k] = (j + resolution * (i + k));
-                        }
-                    }
-                }
-            }
+        private EvictedTile(long tick, GLTile tile){
+            this.tick = tick;
+            this.tile = tile;
         }
     }
-
-
 }
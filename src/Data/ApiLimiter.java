@@ -0,0 +1,233 @@
+package Data;
+
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Guards the Google APIs with a token bucket for the rate of each and a QuotaLedger for its daily quota. Every
+ * request is passed through acquire before it's sent. Normal requests wait for the rate limit, while low priority
+ * requests are dropped once the bucket is half empty or only the last tenth of the daily quota is left, so the
+ * tiles the user is waiting on get what remains.
+ */
+public class ApiLimiter {
+    /**
+     * The file the shared limiter's ledger is saved to, next to the API key file
+     */
+    public static final String DEFAULT_LEDGER_PATH = ".api_quota";
+
+    /**
+     * The system property which moves the shared limiter's ledger
+     */
+    public static final String LEDGER_PATH_PROPERTY = "planesim.quota";
+
+    /**
+     * The system properties which override the shared limiter's daily quota, requests each second and burst size of
+     * an API, formatted with the API's key, e.g. planesim.quota.tiles, planesim.quota.tiles.rate
+     */
+    public static final String QUOTA_PROPERTY = "planesim.quota.%s";
+    public static final String RATE_PROPERTY = "planesim.quota.%s.rate";
+    public static final String BURST_PROPERTY = "planesim.quota.%s.burst";
+
+    /**
+     * The requests each second, burst size and daily quota of each API, indexed by QuotaLedger.Api.ordinal().
+     * These are the project defaults of the Map Tiles and Elevation APIs, a project with other quotas should set
+     * them with QUOTA_PROPERTY, RATE_PROPERTY and BURST_PROPERTY.
+     */
+    private static final double[] DEFAULT_RATES = {100.0, 50.0, 1.0};
+    private static final int[] DEFAULT_BURSTS = {100, 50, 5};
+    private static final long[] DEFAULT_QUOTAS = {100_000, 40_000, 10_000};
+
+    /**
+     * The share of the rate limiter's burst low priority requests leave for normal ones
+     */
+    private static final double LOW_PRIORITY_BURST_RESERVE = 0.5;
+
+    /**
+     * The share of the daily quota low priority requests leave for normal ones
+     */
+    private static final double LOW_PRIORITY_QUOTA_RESERVE = 0.1;
+
+    /**
+     * The number of charged requests after which the ledger is saved
+     */
+    private static final long FLUSH_EVERY = 50;
+
+    /**
+     * The limiter shared by every InternetDriver, created when first used
+     */
+    private static ApiLimiter shared;
+
+    /**
+     * The daily quota of each API
+     */
+    private final QuotaLedger ledger;
+
+    /**
+     * The rate limit of each API, indexed by QuotaLedger.Api.ordinal()
+     */
+    private final TokenBucket[] buckets;
+
+    /**
+     * The low priority requests dropped for each API, indexed by QuotaLedger.Api.ordinal()
+     */
+    private final AtomicLongArray dropped;
+
+    /**
+     * Set while a thread saves the ledger, so the others carry on rather than wait for it
+     */
+    private final AtomicBoolean flushing;
+
+    /**
+     * Construct a limiter
+     * @param ledger The daily quota of each API
+     * @param rates The requests allowed each second for each API, indexed by QuotaLedger.Api.ordinal()
+     * @param bursts The requests allowed at once for each API, indexed by QuotaLedger.Api.ordinal()
+     * @throws InvalidParameterException If ledger is null or there isn't a rate and burst for every API
+     */
+    public ApiLimiter(QuotaLedger ledger, double[] rates, int[] bursts){
+        int apis = QuotaLedger.Api.values().length;
+        if (ledger == null || rates == null || bursts == null || rates.length != apis || bursts.length != apis){
+            throw new InvalidParameterException("An API limiter needs a ledger and a rate and burst for every API!");
+        }
+        this.ledger = ledger;
+        this.buckets = new TokenBucket[apis];
+        for (int i = 0; i < apis; i++){
+            buckets[i] = new TokenBucket(rates[i], bursts[i]);
+        }
+        this.dropped = new AtomicLongArray(apis);
+        this.flushing = new AtomicBoolean(false);
+    }
+
+    /**
+     * Get the limiter shared by every InternetDriver, whose ledger is saved to DEFAULT_LEDGER_PATH or the file
+     * named by LEDGER_PATH_PROPERTY and saved again when the program exits. Each API's limits are the defaults
+     * unless overridden by QUOTA_PROPERTY, RATE_PROPERTY or BURST_PROPERTY.
+     * @return The shared limiter
+     * @throws InvalidParameterException If a limit property isn't a number
+     */
+    public static synchronized ApiLimiter getShared(){
+        if (shared == null){
+            QuotaLedger.Api[] apis = QuotaLedger.Api.values();
+            double[] rates = new double[apis.length];
+            int[] bursts = new int[apis.length];
+            long[] quotas = new long[apis.length];
+            for (QuotaLedger.Api api : apis){
+                int i = api.ordinal();
+                rates[i] = readRate(api, DEFAULT_RATES[i]);
+                bursts[i] = (int) readCount(BURST_PROPERTY, api, DEFAULT_BURSTS[i], Integer.MAX_VALUE);
+                quotas[i] = readCount(QUOTA_PROPERTY, api, DEFAULT_QUOTAS[i], Long.MAX_VALUE);
+            }
+
+            Path path = Path.of(System.getProperty(LEDGER_PATH_PROPERTY, DEFAULT_LEDGER_PATH));
+            ApiLimiter limiter = new ApiLimiter(new QuotaLedger(path, quotas), rates, bursts);
+            Runtime.getRuntime().addShutdownHook(new Thread(limiter.ledger::flush, "quota-ledger-flush"));
+            shared = limiter;
+        }
+        return shared;
+    }
+
+    /**
+     * Read the requests each second allowed for an API from RATE_PROPERTY
+     * @throws InvalidParameterException If the property isn't a positive number
+     */
+    private static double readRate(QuotaLedger.Api api, double fallback){
+        String name = String.format(RATE_PROPERTY, api.getKey());
+        String value = System.getProperty(name);
+        if (value == null){
+            return fallback;
+        }
+        try {
+            double rate = Double.parseDouble(value.trim());
+            if (rate > 0.0 && Double.isFinite(rate)){
+                return rate;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new InvalidParameterException(String.format("%s must be a positive number of requests a second, " +
+                "not %s", name, value));
+    }
+
+    /**
+     * Read a count of requests allowed for an API from QUOTA_PROPERTY or BURST_PROPERTY
+     * @throws InvalidParameterException If the property isn't a whole number from 0 to max
+     */
+    private static long readCount(String property, QuotaLedger.Api api, long fallback, long max){
+        String name = String.format(property, api.getKey());
+        String value = System.getProperty(name);
+        if (value == null){
+            return fallback;
+        }
+        try {
+            long count = Long.parseLong(value.trim().replace("_", ""));
+            if (count >= 0 && count <= max){
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new InvalidParameterException(String.format("%s must be a whole number of requests, not %s", name,
+                value));
+    }
+
+    /**
+     * Wait for permission to send a request, charging it to the API's quota
+     * @param api The API the request is for
+     * @param priority How much the request matters
+     * @throws RequestDroppedException If the request is low priority and the API is close to its limits
+     * @throws IllegalStateException If the daily quota is used up, or if the thread was interrupted while waiting
+     */
+    public void acquire(QuotaLedger.Api api, RequestPriority priority){
+        TokenBucket bucket = buckets[api.ordinal()];
+        if (priority == RequestPriority.LOW){
+            long headroom = (long) Math.ceil(ledger.getLimit(api) * LOW_PRIORITY_QUOTA_RESERVE);
+            int keep = (int) Math.ceil(bucket.getBurst() * LOW_PRIORITY_BURST_RESERVE);
+            if (!bucket.tryAcquire(keep) || !ledger.tryCharge(api, headroom)){
+                dropped.incrementAndGet(api.ordinal());
+                throw new RequestDroppedException(String.format("Dropped a low priority %s request, the API is " +
+                        "close to its limits", api.getKey()));
+            }
+        } else {
+            if (!ledger.tryCharge(api, 0)){
+                throw new IllegalStateException(String.format("The daily %s quota of %d requests is used up",
+                        api.getKey(), ledger.getLimit(api)));
+            }
+            long wait = bucket.reserve();
+            if (wait > 0){
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the rate limit", e);
+                }
+            }
+        }
+
+        if (ledger.getUnsaved() >= FLUSH_EVERY && flushing.compareAndSet(false, true)){
+            try {
+                ledger.flush();
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Get the number of low priority requests dropped for an API
+     * @param api The API
+     * @return The number of dropped requests
+     */
+    public long getDropped(QuotaLedger.Api api){
+        return dropped.get(api.ordinal());
+    }
+
+    /**
+     * Get the daily quota of each API
+     * @return The quota ledger
+     */
+    public QuotaLedger getLedger(){
+        return ledger;
+    }
+}
@@ -6,8 +6,6 @@
 
 package Data;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.lwjgl.stb.STBImage;
 
 import javax.imageio.ImageIO;
@@ -18,39 +16,129 @@ import java.nio.ByteBuffer;
 import java.rmi.UnexpectedException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import Math.Image;
-import org.lwjgl.system.MemoryUtil;
+import Math.Vector;
+import Utils.NativeMemory;
+import Utils.Events.TileDecodedEvent;
+import Utils.Events.TileFetchedEvent;
 
 /**
- * This class exposes an API for retrieving data from various online sources in a friendly way
+ * This class exposes an API for retrieving data from various online sources in a friendly way. Imagery and elevation
+ * come from a TileSource and ElevationSource, Google by default, with a TileStore on disk checked first.
  */
 public class DataDriver {
     /**
-     * An instance of the InternetDriver used for communication
+     * The source all imagery is read from
      */
-    private InternetDriver inetDriver;
+    private TileSource tileSource;
 
     /**
-     * Construct the DataDriver with some usable defaults
-     * @throws ConfigurationException If there is no Google API key
+     * The source all elevation is read from
+     */
+    private ElevationSource elevationSource;
+
+    /**
+     * The on-disk store read before going to the sources. May be null.
+     */
+    private TileStore tileStore;
+
+    /**
+     * Whether tiles read from the sources are written back to the tile store. The store has no size limit, so the
+     * app only reads it unless STORE_WRITE_PROPERTY asks otherwise, while the RegionSeeder writes to fill it.
+     */
+    private boolean write_back;
+
+    /**
+     * The directory of the tile store used by default, this is where the RegionSeeder writes to by default
+     */
+    public static final String DEFAULT_TILE_STORE = "tile_store";
+
+    /**
+     * System properties which replace the Google provider with local files. TILE_DIRECTORY_PROPERTY names a z/x/y
+     * directory of imagery, TILE_TMS_PROPERTY set to true reads it with rows numbered south to north and
+     * ELEVATION_DIRECTORY_PROPERTY names a directory of SRTM .hgt rasters.
+     */
+    public static final String TILE_DIRECTORY_PROPERTY = "planesim.tiles";
+    public static final String TILE_TMS_PROPERTY = "planesim.tiles.tms";
+    public static final String ELEVATION_DIRECTORY_PROPERTY = "planesim.elevation";
+
+    /**
+     * The system property which, when "true", makes the default DataDriver write every tile it reads back to the
+     * tile store. Off by default, as nothing ever removes tiles from the store.
+     */
+    public static final String STORE_WRITE_PROPERTY = "planesim.store.write";
+
+    /**
+     * Construct the DataDriver with some usable defaults. Imagery and elevation come from local files if their
+     * system properties are set, otherwise from Google. Tiles seeded into DEFAULT_TILE_STORE are read first, and
+     * only written to it if STORE_WRITE_PROPERTY is set.
+     * @throws ConfigurationException If Google is needed and there is no Google API key
      */
     public DataDriver() throws ConfigurationException {
-        // Construct the internet driver with the default constructor to use the provided API key
-        try {
-            inetDriver = new InternetDriver();
+        String tile_directory = System.getProperty(TILE_DIRECTORY_PROPERTY);
+        String elevation_directory = System.getProperty(ELEVATION_DIRECTORY_PROPERTY);
+
+        GoogleSource google = null;
+        if (tile_directory == null || elevation_directory == null){
+            // Construct the internet driver with the default constructor to use the provided API key
+            try {
+                InternetDriver inetDriver = new InternetDriver();
+
+                inetDriver.initializeTileSession();
 
-            inetDriver.initializeTileSession();
-        } catch (ConfigurationException | FileNotFoundException e) {
-            throw new ConfigurationException("No API key provided for Google Cloud");
+                google = new GoogleSource(inetDriver);
+            } catch (ConfigurationException | FileNotFoundException e) {
+                throw new ConfigurationException("No API key provided for Google Cloud");
+            }
         }
+
+        tileSource = tile_directory != null
+                ? new LocalTileSource(tile_directory, Boolean.getBoolean(TILE_TMS_PROPERTY))
+                : google;
+        elevationSource = elevation_directory != null ? new HgtElevationSource(elevation_directory) : google;
+        tileStore = new TileStore(DEFAULT_TILE_STORE);
+        write_back = Boolean.getBoolean(STORE_WRITE_PROPERTY);
+
+        System.out.printf("Reading imagery from %s and elevation from %s\n", tileSource.getName(),
+                elevationSource.getName());
     }
 
     /**
-     * Construct a DataDriver from an existing one with a derived internet driver
+     * Construct a DataDriver reading from the given sources
+     * @param tileSource The source to read imagery from
+     * @param elevationSource The source to read elevation from
+     * @param tileStore The store to read before the sources and write everything read from them to, may be null for
+     *                  none
+     * @throws InvalidParameterException If either source is null
+     */
+    public DataDriver(TileSource tileSource, ElevationSource elevationSource, TileStore tileStore){
+        if (tileSource == null || elevationSource == null){
+            throw new InvalidParameterException("A DataDriver needs a tile and elevation source!");
+        }
+        this.tileSource = tileSource;
+        this.elevationSource = elevationSource;
+        this.tileStore = tileStore;
+        this.write_back = true;
+    }
+
+    /**
+     * Construct a DataDriver reading everything from Google through an existing internet driver, its tile session
+     * must already be initialized
+     * @param inetDriver The internet driver to make requests with
+     * @param tileStore The store to read before the network and write downloads to, may be null for none
+     * @throws InvalidParameterException If inetDriver is null
+     */
+    public DataDriver(InternetDriver inetDriver, TileStore tileStore){
+        this(new GoogleSource(inetDriver), new GoogleSource(inetDriver), tileStore);
+    }
+
+    /**
+     * Construct a DataDriver from an existing one, reading from the same sources
      * @param dataDriver The old driver to copy from
      * @throws java.security.InvalidParameterException If dataDriver is null
      */
@@ -58,56 +146,269 @@ public class DataDriver {
         if (dataDriver == null){
             throw new InvalidParameterException("Provided DataDriver for cloning was null!");
         }
-        // Constrict a new internet driver from the old driver
-        inetDriver = new InternetDriver(dataDriver.inetDriver);
+        // The sources are safe to share between threads
+        tileSource = dataDriver.tileSource;
+        elevationSource = dataDriver.elevationSource;
+        tileStore = dataDriver.tileStore;
+        write_back = dataDriver.write_back;
     }
 
     /**
-     * Using a list of coordinates, grab elevation data using Google's API.
+     * Fill a regular lattice of elevation from the elevation source, the points are read in a single batch
+     * @param south The latitude of the first row
+     * @param west The longitude of the first column
+     * @param lat_spacing The degrees of latitude between rows
+     * @param lng_spacing The degrees of longitude between columns
+     * @param rows The number of rows
+     * @param columns The number of columns
+     * @return The filled grid
+     * @throws InvalidParameterException If the spacing or size isn't positive
+     * @throws IllegalStateException If the source failed to read the elevations
+     */
+    public ElevationGrid getElevationGrid(double south, double west, double lat_spacing, double lng_spacing,
+                                          int rows, int columns){
+        ElevationGrid grid = new ElevationGrid(south, west, lat_spacing, lng_spacing, rows, columns);
+
+        double[] latitudes = new double[rows * columns];
+        double[] longitudes = new double[rows * columns];
+        grid.getPoints(latitudes, longitudes);
+
+        sampleElevation(latitudes, longitudes, grid.getData());
+        return grid;
+    }
+
+    /**
+     * Using a list of coordinates, grab elevation data from the elevation source while keeping the order of the
+     * request. Unlike getElevationData, the result is read back by the position of each coordinate in the list.
      * @param coordinates A list, of any type, of coordinates to query.
-     * @return A map where a desired coordinate maps to the relevant elevation returned by the API.
-     */
-    public HashMap<WorldCoordinate, Float> getElevationData(List<WorldCoordinate> coordinates){
-        // Our output, to be built throughout this method
-        HashMap<WorldCoordinate, Float> data = new HashMap<>();
-        // Begin converting our coordinates to strings usable by the Google API
-        // The Google API only accepts lists of 512 or less, split up the list into groups of 512 for the most efficiency
-        for (int i = 0; i <= (coordinates.size() / 512); i++){
-            // Establish our raw coordinates
-            ArrayList<String> rawCoordinates = new ArrayList<>();
-
-            // Generate out raw coordinates
-            for (int j = (512*i); j < (coordinates.size() - (512 * i)); j++){
-                WorldCoordinate coordinate = coordinates.get(j + (512 * i));
-
-                rawCoordinates.add(String.format("%.7f", coordinate.getWorldCoordinate().getX()));
-                rawCoordinates.add(String.format("%.7f", coordinate.getWorldCoordinate().getY()));
+     * @return An array of elevations, in meters, where index i is the elevation at coordinates.get(i)
+     * @throws InvalidParameterException If coordinates is null
+     * @throws IllegalStateException If the source failed to read the elevations
+     */
+    public float[] getOrderedElevationData(List<WorldCoordinate> coordinates){
+        if (coordinates == null){
+            throw new InvalidParameterException("Provided coordinates for elevation are null!");
+        }
+        return elevationSource.readElevations(coordinates);
+    }
+
+    /**
+     * Sample the elevation at a set of latitudes and longitudes, such as a dense grid, straight into an array. With
+     * a local elevation source this doesn't touch the network or allocate per point.
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @throws InvalidParameterException If any array is null or they aren't the same length
+     * @throws IllegalStateException If the source failed to read the elevations
+     */
+    public void sampleElevation(double[] latitudes, double[] longitudes, float[] out){
+        sampleElevation(latitudes, longitudes, out, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Sample the elevation at a set of latitudes and longitudes at a request priority, see sampleElevation
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @param priority How much the request matters to a rate limited source
+     * @throws InvalidParameterException If any array is null or they aren't the same length
+     * @throws IllegalStateException If the source failed to read the elevations or dropped the request
+     */
+    public void sampleElevation(double[] latitudes, double[] longitudes, float[] out, RequestPriority priority){
+        if (latitudes == null || longitudes == null || out == null){
+            throw new InvalidParameterException("Provided points for elevation are null!");
+        }
+        elevationSource.readElevations(latitudes, longitudes, out, priority);
+    }
+
+    /**
+     * Get the elevation of every point of the lattices of a group of tiles, see WorldCoordinate.tileLattice. Tiles
+     * in the tile store are read from disk, the rest are requested together then written to the store.
+     * @param tiles The tiles, x and y are the tile and z is the zoom
+     * @param resolution The number of lattice points along each side of a tile
+     * @return The elevations, in meters, of each tile's lattice one after the other in the order of tiles
+     * @throws InvalidParameterException If tiles is null
+     * @throws IllegalStateException If the API returned a different number of results than requested
+     */
+    public float[] getTileElevationData(Vector[] tiles, int resolution){
+        return getTileElevationData(tiles, resolution, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Get the elevation of every point of the lattices of a group of tiles at a request priority, see
+     * getTileElevationData. Only the tiles missing from the tile store are requested at that priority.
+     * @param tiles The tiles, x and y are the tile and z is the zoom
+     * @param resolution The number of lattice points along each side of a tile
+     * @param priority How much the request matters to a rate limited source
+     * @return The elevations, in meters, of each tile's lattice one after the other in the order of tiles
+     * @throws InvalidParameterException If tiles is null
+     * @throws IllegalStateException If the API returned a different number of results than requested, or the
+     * request was dropped
+     */
+    public float[] getTileElevationData(Vector[] tiles, int resolution, RequestPriority priority){
+        if (tiles == null){
+            throw new InvalidParameterException("Provided tiles for elevation are null!");
+        }
+        int points = resolution * resolution;
+        float[] data = new float[tiles.length * points];
+
+        // Read what we can from disk, the rest is collected into one request
+        ArrayList<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < tiles.length; i++){
+            float[] stored = tileStore == null ? null : tileStore.readElevation((int) tiles[i].getZ(),
+                    (int) tiles[i].getX(), (int) tiles[i].getY(), resolution);
+            if (stored != null){
+                System.arraycopy(stored, 0, data, i * points, points);
+            } else {
+                missing.add(i);
             }
+        }
 
-            // Send and parse the result
-            HashMap<WorldCoordinate, Float> parsed_elevation = parseElevation(inetDriver.getElevation(rawCoordinates));
+        if (missing.isEmpty()){
+            return data;
+        }
+
+        double[] latitudes = new double[missing.size() * points];
+        double[] longitudes = new double[missing.size() * points];
+        for (int m = 0; m < missing.size(); m++){
+            Vector tile = tiles[missing.get(m)];
+            WorldCoordinate.tileLattice((int) tile.getZ(), (int) tile.getX(), (int) tile.getY(), resolution,
+                    latitudes, longitudes, m * points);
+        }
+
+        // Neighbouring tiles share the points along their edges, so each distinct point is only requested once
+        HashMap<SpatialKey, Integer> unique = new HashMap<>();
+        int[] sources = new int[latitudes.length];
+        double[] unique_latitudes = new double[latitudes.length];
+        double[] unique_longitudes = new double[latitudes.length];
+        for (int p = 0; p < latitudes.length; p++){
+            SpatialKey key = new SpatialKey(latitudes[p], longitudes[p], SpatialKey.MAX_BITS);
+            Integer source = unique.putIfAbsent(key, unique.size());
+            if (source == null){
+                source = unique.size() - 1;
+                unique_latitudes[source] = latitudes[p];
+                unique_longitudes[source] = longitudes[p];
+            }
+            sources[p] = source;
+        }
 
-            data.putAll(parsed_elevation);
+        float[] sampled = new float[unique.size()];
+        sampleElevation(Arrays.copyOf(unique_latitudes, sampled.length),
+                Arrays.copyOf(unique_longitudes, sampled.length), sampled, priority);
+        float[] fetched = new float[latitudes.length];
+        for (int p = 0; p < fetched.length; p++){
+            fetched[p] = sampled[sources[p]];
+        }
+        for (int m = 0; m < missing.size(); m++){
+            int i = missing.get(m);
+            System.arraycopy(fetched, m * points, data, i * points, points);
+
+            if (tileStore != null && write_back){
+                tileStore.writeElevation((int) tiles[i].getZ(), (int) tiles[i].getX(), (int) tiles[i].getY(),
+                        resolution, Arrays.copyOfRange(fetched, m * points, (m + 1) * points));
+            }
         }
 
         return data;
     }
 
+    /**
+     * Get the raw bytes of a tile's satellite image, from the tile store if it's there otherwise from the tile source
+     * @param tile The tile, x and y are the tile and z is the zoom
+     * @return The encoded image bytes
+     * @throws IllegalStateException If the tile source failed or doesn't have the tile
+     */
+    public byte[] getSatalliteImageBytes(Vector tile){
+        return getSatalliteImageBytes(tile, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Get the raw bytes of a tile's satellite image at a request priority, see getSatalliteImageBytes. Tiles in the
+     * tile store are returned whatever the priority.
+     * @param tile The tile, x and y are the tile and z is the zoom
+     * @param priority How much the request matters to a rate limited source
+     * @return The encoded image bytes
+     * @throws IllegalStateException If the tile source failed, doesn't have the tile or dropped the request
+     */
+    public byte[] getSatalliteImageBytes(Vector tile, RequestPriority priority){
+        int zoom = (int) tile.getZ();
+        int x = (int) tile.getX();
+        int y = (int) tile.getY();
+
+        // Emitted whether or not the fetch succeeds, so a slow failure still shows up in a recording
+        TileFetchedEvent event = new TileFetchedEvent();
+        event.begin();
+        byte[] image = tileStore == null ? null : tileStore.readImagery(zoom, x, y);
+        boolean stored = image != null;
+        try {
+            if (!stored){
+                image = tileSource.readTile(zoom, x, y, priority);
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()){
+                event.setTile(zoom, x, y);
+                event.setFetch(image == null ? 0 : image.length, stored, tileSource.getName());
+                event.commit();
+            }
+        }
+
+        if (image == null){
+            throw new IllegalStateException(String.format("%s doesn't have the tile %d/%d/%d",
+                    tileSource.getName(), zoom, x, y));
+        }
+        return image;
+    }
+
     /**
      * Using a provided coordinate and zoom, return a decoded image of the satallite view
      * @param coordinate The coordinate of the requested location
      * @param zoom The zoom at the coord
      * @return A byte array of a decoded image
-     * @throws ConfigurationException Should the API and Session not properly be configured
+     * @throws ConfigurationException Should the tile source fail, such as the API and Session not being configured
      */
     public Image getSatalliteImage(WorldCoordinate coordinate, double zoom) throws ConfigurationException{
+        Vector tile = coordinate.getTile();
+        byte[] jpeg_bytes;
         try {
-            byte[] jpeg_bytes = inetDriver.getSatalliteImage(coordinate.getTile());
+            jpeg_bytes = getSatalliteImageBytes(tile);
+        } catch (IllegalStateException e) {
+            System.out.printf("Failed to get satallite image from %s: %s\n", tileSource.getName(), e.getMessage());
+            throw new ConfigurationException("Tile source misconfiguration!");
+        }
+        return decodeSatalliteImage(tile, jpeg_bytes);
+    }
 
+    /**
+     * Decode the raw bytes of a tile's satellite image, see getSatalliteImageBytes. Images which decode are written
+     * to the tile store if they aren't already there and this driver writes back to it.
+     * @param tile The tile, x and y are the tile and z is the zoom
+     * @param jpeg_bytes The encoded image bytes
+     * @return The decoded image
+     * @throws ConfigurationException If the image couldn't be decoded or stored
+     */
+    public Image decodeSatalliteImage(Vector tile, byte[] jpeg_bytes) throws ConfigurationException{
+        try {
             try {
-                return decodeImage(jpeg_bytes);
+                TileDecodedEvent event = new TileDecodedEvent();
+                event.begin();
+                Image image = decodeImage(jpeg_bytes);
+                event.end();
+                if (event.shouldCommit()){
+                    event.setTile((int) tile.getZ(), (int) tile.getX(), (int) tile.getY());
+                    event.setImage(jpeg_bytes.length, image.getWidth(), image.getHeight());
+                    event.commit();
+                }
+
+                // Only keep images which decoded, so the store never holds an error page
+                if (tileStore != null && write_back && !tileStore.hasImagery((int) tile.getZ(), (int) tile.getX(),
+                        (int) tile.getY())){
+                    tileStore.writeImagery((int) tile.getZ(), (int) tile.getX(), (int) tile.getY(), jpeg_bytes);
+                }
+
+                return image;
             } catch (UnexpectedException e) {
-                System.out.println("Google failed to provide a valid image!");
+                System.out.printf("%s failed to provide a valid image!\n", tileSource.getName());
 
                 FileWriter error_image = new FileWriter(String.format("error_result_%d", System.currentTimeMillis()));
 
@@ -119,14 +420,40 @@ public class DataDriver {
 
                 error_image.write(raw_chars);
 
-                throw new RuntimeException("Google API returned an invalid image!");
+                throw new RuntimeException(String.format("%s returned an invalid image!", tileSource.getName()));
             }
-        } catch (ConfigurationException | IOException e) {
-            System.out.println("Failed to get satallite image, probably an API key issue!");
-            throw new ConfigurationException("API or Session Key misconfiguration!");
+        } catch (IllegalStateException | IOException e) {
+            System.out.printf("Failed to get satallite image from %s: %s\n", tileSource.getName(), e.getMessage());
+            throw new ConfigurationException("Tile source misconfiguration!");
         }
     }
 
+    /**
+     * Check whether a tile's image bytes decode, for anything storing images without decoding them. Only images which
+     * decode are stored, so the store never holds an error page.
+     * @param jpeg_bytes The encoded image bytes
+     * @return True if the bytes decode as an image
+     */
+    public boolean isDecodable(byte[] jpeg_bytes){
+        if (jpeg_bytes == null || jpeg_bytes.length == 0){
+            return false;
+        }
+        try {
+            decodeImage(jpeg_bytes);
+            return true;
+        } catch (UnexpectedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the tile store this driver reads from
+     * @return The tile store, null if there is none
+     */
+    public TileStore getTileStore(){
+        return tileStore;
+    }
+
     /**
      * Given a provided, arbitrary image compatible with stb, return a decoded image
      * @param jpeg_image The bytes for a jpeg (which is preferred) image
@@ -140,8 +467,9 @@ public class DataDriver {
         int[] y_output = new int[1];
         int[] channel_output = new int[1];
 
-        try {
-            ByteBuffer img_buffer = MemoryUtil.memAlloc(jpeg_image.length);
+        // The encoded image only has to live while stb reads it
+        try (NativeMemory.Scope scope = NativeMemory.scope("DataDriver.decodeImage")) {
+            ByteBuffer img_buffer = scope.bytes(jpeg_image.length);
 
             img_buffer.put(jpeg_image).flip();
 
@@ -154,46 +482,19 @@ public class DataDriver {
                 throw new UnexpectedException("Image failed to decode!");
             }
 
-            byte[] result_buffer = new byte[x_output[0] * y_output[0] * 3];
+            try {
+                byte[] result_buffer = new byte[x_output[0] * y_output[0] * 3];
+                decoded.get(result_buffer);
 
-            for (int i = 0; i < result_buffer.length; i++){
-                result_buffer[i] = (byte) decoded.get();
+                return new Image(x_output[0], y_output[0], 3, 3, result_buffer);
+            } finally {
+                // stb allocated the pixels itself, so they go back through stb
+                STBImage.stbi_image_free(decoded);
             }
-
-            return new Image(x_output[0], y_output[0], 3, 3, result_buffer);
         } catch (IOException e) {
             e.printStackTrace();
             System.out.println("FAILED TO DECODE IMAGE!");
             throw new UnexpectedException("Invalid image!");
         }
     }
-
-    /**
-     * A method for parsing the elevation specific JSON. Not resistant to changes within the Google API
-     * @param rawJson The raw JSON provided by the API
-     * @return A list of elevations and their relevant world coordinates
-     */
-    private HashMap<WorldCoordinate, Float> parseElevation(String rawJson){
-        HashMap<WorldCoordinate, Float> data = new HashMap<>();
-
-        // Begin reading the JSON through a hard coded pattern
-        JSONObject root_json = new JSONObject(rawJson);
-
-        JSONArray result_array = root_json.getJSONArray("results");
-
-        for (int i = 0; i < result_array.length(); i++){
-            JSONObject elevation = result_array.getJSONObject(i);
-
-            float raw_elevation = elevation.getFloat("elevation");
-
-            JSONObject query_loc = elevation.getJSONObject("location");
-
-            float lat = query_loc.getFloat("lat");
-            float lng = query_loc.getFloat("lng");
-
-            data.put(new WorldCoordinate(lat, lng), raw_elevation);
-        }
-
-        return data;
-    }
 }
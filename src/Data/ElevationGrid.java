@@ -0,0 +1,290 @@
+package Data;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A regular lattice of elevations over latitude and longitude. The lattice starts at its south west corner and
+ * steps north by lat_spacing for each row and east by lng_spacing for each column, the elevation of every point is
+ * kept in a single float array, rows one after the other. At 4 bytes a point this replaces maps of WorldCoordinate
+ * to Float, which cost around 150 bytes a point, and it can be sampled between points.
+ */
+public class ElevationGrid {
+    /**
+     * The latitude of the first row and the longitude of the first column
+     */
+    private double south;
+    private double west;
+
+    /**
+     * The distance, in degrees, between rows and between columns
+     */
+    private double lat_spacing;
+    private double lng_spacing;
+
+    /**
+     * The number of rows (going north) and columns (going east)
+     */
+    private int rows;
+    private int columns;
+
+    /**
+     * The elevation, in meters, of each point. Point (row, column) is at index row * columns + column.
+     */
+    private float[] data;
+
+    /**
+     * Construct a grid with every elevation at zero
+     * @param south The latitude of the first row
+     * @param west The longitude of the first column
+     * @param lat_spacing The degrees of latitude between rows, must be > 0
+     * @param lng_spacing The degrees of longitude between columns, must be > 0
+     * @param rows The number of rows, must be > 0
+     * @param columns The number of columns, must be > 0
+     * @throws InvalidParameterException If the spacing or size isn't positive
+     */
+    public ElevationGrid(double south, double west, double lat_spacing, double lng_spacing, int rows, int columns){
+        this(south, west, lat_spacing, lng_spacing, rows, columns, new float[Math.max(rows, 0) * Math.max(columns, 0)]);
+    }
+
+    /**
+     * Construct a grid around existing elevations
+     * @param south The latitude of the first row
+     * @param west The longitude of the first column
+     * @param lat_spacing The degrees of latitude between rows, must be > 0
+     * @param lng_spacing The degrees of longitude between columns, must be > 0
+     * @param rows The number of rows, must be > 0
+     * @param columns The number of columns, must be > 0
+     * @param data The elevation of each point, rows one after the other. This is kept, not copied.
+     * @throws InvalidParameterException If the spacing or size isn't positive or data is the wrong length
+     */
+    public ElevationGrid(double south, double west, double lat_spacing, double lng_spacing, int rows, int columns,
+                         float[] data){
+        if (lat_spacing <= 0.0 || lng_spacing <= 0.0 || rows <= 0 || columns <= 0){
+            throw new InvalidParameterException("An elevation grid needs a positive spacing and size!");
+        }
+        if (data == null || data.length != rows * columns){
+            throw new InvalidParameterException("An elevation grid needs an elevation for every point!");
+        }
+        this.south = south;
+        this.west = west;
+        this.lat_spacing = lat_spacing;
+        this.lng_spacing = lng_spacing;
+        this.rows = rows;
+        this.columns = columns;
+        this.data = data;
+    }
+
+    /**
+     * Write the latitude and longitude of every point, in the order of the data, so the grid can be filled from a
+     * source in one batch
+     * @param latitudes The array to write the latitudes to, at least rows * columns long
+     * @param longitudes The array to write the longitudes to, at least rows * columns long
+     * @throws InvalidParameterException If either array is too short
+     */
+    public void getPoints(double[] latitudes, double[] longitudes){
+        if (latitudes.length < data.length || longitudes.length < data.length){
+            throw new InvalidParameterException("The arrays for the grid's points are too short!");
+        }
+        int index = 0;
+        for (int row = 0; row < rows; row++){
+            double latitude = getLatitude(row);
+            for (int column = 0; column < columns; column++){
+                latitudes[index] = latitude;
+                longitudes[index] = getLongitude(column);
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Sample the elevation at any location within the grid, interpolated between the four nearest points
+     * @param latitude The latitude to sample
+     * @param longitude The longitude to sample
+     * @return The elevation, in meters, NaN if the location is outside the grid
+     */
+    public float sample(double latitude, double longitude){
+        double row = (latitude - south) / lat_spacing;
+        double column = (longitude - west) / lng_spacing;
+        if (row < 0.0 || column < 0.0 || row > rows - 1 || column > columns - 1){
+            return Float.NaN;
+        }
+
+        int r = Math.min((int) row, Math.max(rows - 2, 0));
+        int c = Math.min((int) column, Math.max(columns - 2, 0));
+        int r1 = Math.min(r + 1, rows - 1);
+        int c1 = Math.min(c + 1, columns - 1);
+        float fr = (float) (row - r);
+        float fc = (float) (column - c);
+
+        float bottom = get(r, c) + ((get(r, c1) - get(r, c)) * fc);
+        float top = get(r1, c) + ((get(r1, c1) - get(r1, c)) * fc);
+        return bottom + ((top - bottom) * fr);
+    }
+
+    /**
+     * Sample the elevation at many locations, see sample
+     * @param latitudes The latitude of each location
+     * @param longitudes The longitude of each location
+     * @param out The array to write the elevations to, NaN for locations outside the grid
+     * @throws InvalidParameterException If the arrays aren't the same length
+     */
+    public void sample(double[] latitudes, double[] longitudes, float[] out){
+        if (latitudes.length != longitudes.length || out.length < latitudes.length){
+            throw new InvalidParameterException("Every latitude needs a longitude and somewhere to write to!");
+        }
+        for (int i = 0; i < latitudes.length; i++){
+            out[i] = sample(latitudes[i], longitudes[i]);
+        }
+    }
+
+    /**
+     * Copy a rectangle of this grid into a new grid
+     * @param row The first row to copy
+     * @param column The first column to copy
+     * @param rows The number of rows to copy
+     * @param columns The number of columns to copy
+     * @return A new grid of the points in the rectangle
+     * @throws InvalidParameterException If the rectangle isn't within this grid
+     */
+    public ElevationGrid subRegion(int row, int column, int rows, int columns){
+        if (row < 0 || column < 0 || rows <= 0 || columns <= 0 || row + rows > this.rows
+                || column + columns > this.columns){
+            throw new InvalidParameterException("The sub region must be within the grid!");
+        }
+        float[] region = new float[rows * columns];
+        for (int r = 0; r < rows; r++){
+            System.arraycopy(data, ((row + r) * this.columns) + column, region, r * columns, columns);
+        }
+        return new ElevationGrid(getLatitude(row), getLongitude(column), lat_spacing, lng_spacing, rows, columns,
+                region);
+    }
+
+    /**
+     * Copy the elevations of another grid into this one. Every point of this grid which lies within the other is
+     * replaced by the other's elevation there, interpolated if the lattices don't line up.
+     * @param other The grid to merge in
+     * @return The number of points which were replaced
+     * @throws InvalidParameterException If other is null
+     */
+    public int merge(ElevationGrid other){
+        if (other == null){
+            throw new InvalidParameterException("Can't merge a null elevation grid!");
+        }
+        int merged = 0;
+        int first_row = Math.max(0, (int) Math.ceil((other.south - south) / lat_spacing));
+        int first_column = Math.max(0, (int) Math.ceil((other.west - west) / lng_spacing));
+
+        for (int row = first_row; row < rows; row++){
+            double latitude = getLatitude(row);
+            if (latitude > other.getNorth()){
+                break;
+            }
+            for (int column = first_column; column < columns; column++){
+                double longitude = getLongitude(column);
+                if (longitude > other.getEast()){
+                    break;
+                }
+                float elevation = other.sample(latitude, longitude);
+                if (!Float.isNaN(elevation)){
+                    data[(row * columns) + column] = elevation;
+                    merged++;
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Get the elevation of a single point
+     * @param row The row of the point
+     * @param column The column of the point
+     * @return The elevation, in meters
+     */
+    public float get(int row, int column){
+        return data[(row * columns) + column];
+    }
+
+    /**
+     * Set the elevation of a single point
+     * @param row The row of the point
+     * @param column The column of the point
+     * @param elevation The elevation, in meters
+     */
+    public void set(int row, int column, float elevation){
+        data[(row * columns) + column] = elevation;
+    }
+
+    /**
+     * Get the latitude of a row
+     * @param row The row
+     * @return The latitude of every point in the row
+     */
+    public double getLatitude(int row){
+        return south + (row * lat_spacing);
+    }
+
+    /**
+     * Get the longitude of a column
+     * @param column The column
+     * @return The longitude of every point in the column
+     */
+    public double getLongitude(int column){
+        return west + (column * lng_spacing);
+    }
+
+    /**
+     * Get the latitude of the first row
+     * @return The southern edge of the grid
+     */
+    public double getSouth(){
+        return south;
+    }
+
+    /**
+     * Get the longitude of the first column
+     * @return The western edge of the grid
+     */
+    public double getWest(){
+        return west;
+    }
+
+    /**
+     * Get the latitude of the last row
+     * @return The northern edge of the grid
+     */
+    public double getNorth(){
+        return getLatitude(rows - 1);
+    }
+
+    /**
+     * Get the longitude of the last column
+     * @return The eastern edge of the grid
+     */
+    public double getEast(){
+        return getLongitude(columns - 1);
+    }
+
+    /**
+     * Get the number of rows
+     * @return The number of rows
+     */
+    public int getRows(){
+        return rows;
+    }
+
+    /**
+     * Get the number of columns
+     * @return The number of columns
+     */
+    public int getColumns(){
+        return columns;
+    }
+
+    /**
+     * Get the elevation of every point, rows one after the other
+     * @return The elevations, as a pointer
+     */
+    public float[] getData(){
+        return data;
+    }
+}
@@ -0,0 +1,356 @@
+package Data;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A streaming parser for the JSON returned by the Google Elevation API. Rather than building a JSONObject tree, the
+ * response is read once from front to back and each result is written straight into an ElevationResult at its
+ * position in the request. Keys are compared in place and numbers are parsed without creating strings, so nothing
+ * is allocated per sample. The response looks like:
+ * {"results": [{"elevation": 1608.6, "location": {"lat": 39.73, "lng": -104.98}, "resolution": 4.77}, ...],
+ *  "status": "OK"}
+ * Unknown keys are skipped so additions to the API don't break parsing.
+ */
+public class ElevationParser {
+    /**
+     * The text being parsed
+     */
+    private String json;
+
+    /**
+     * The index of the next character to read
+     */
+    private int pos;
+
+    /**
+     * Powers of ten which are exact as doubles, used to parse numbers without rounding twice
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest mantissa which is exact as a double, 2^53
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * A private constructor, parsing goes through parse
+     */
+    private ElevationParser(String json){
+        this.json = json;
+        this.pos = 0;
+    }
+
+    /**
+     * Parse an elevation response into a result
+     * @param json The raw JSON returned by the API
+     * @param out The result to write into
+     * @param offset The position in out of the first location of this response, for requests sent in chunks
+     * @return The number of results which were read
+     * @throws InvalidParameterException If json or out is null
+     * @throws IllegalStateException If the response is malformed, isn't OK or has more results than fit in out
+     */
+    public static int parse(String json, ElevationResult out, int offset){
+        if (json == null || out == null){
+            throw new InvalidParameterException("Can't parse a null elevation response!");
+        }
+        return new ElevationParser(json).parseResponse(out, offset);
+    }
+
+    /**
+     * Parse the top level object of the response
+     */
+    private int parseResponse(ElevationResult out, int offset){
+        int count = -1;
+        boolean ok = true;
+        int message_start = -1;
+        int message_end = -1;
+
+        expect('{');
+        if (!consume('}')){
+            do {
+                int key = readStringStart();
+                int key_end = skipStringBody();
+                expect(':');
+
+                if (keyEquals(key, key_end, "results")){
+                    count = parseResults(out, offset);
+                } else if (keyEquals(key, key_end, "status")){
+                    int value = readStringStart();
+                    int value_end = skipStringBody();
+                    ok = keyEquals(value, value_end, "OK");
+                } else if (keyEquals(key, key_end, "error_message")){
+                    message_start = readStringStart();
+                    message_end = skipStringBody();
+                } else {
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+
+        if (!ok || count < 0){
+            String message = message_start >= 0 ? json.substring(message_start, message_end) : "no results";
+            throw new IllegalStateException(String.format("The elevation API failed: %s", message));
+        }
+        return count;
+    }
+
+    /**
+     * Parse the array of results
+     */
+    private int parseResults(ElevationResult out, int offset){
+        int count = 0;
+        expect('[');
+        if (consume(']')){
+            return 0;
+        }
+        do {
+            if (offset + count >= out.size()){
+                throw new IllegalStateException(String.format("The elevation API returned more than %d results!",
+                        out.size() - offset));
+            }
+            parseResult(out, offset + count);
+            count++;
+        } while (consume(','));
+        expect(']');
+        return count;
+    }
+
+    /**
+     * Parse a single result into its position
+     */
+    private void parseResult(ElevationResult out, int index){
+        double elevation = Double.NaN;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double resolution = Double.NaN;
+
+        expect('{');
+        if (!consume('}')){
+            do {
+                int key = readStringStart();
+                int key_end = skipStringBody();
+                expect(':');
+
+                if (keyEquals(key, key_end, "elevation")){
+                    elevation = readNumber();
+                } else if (keyEquals(key, key_end, "resolution")){
+                    resolution = readNumber();
+                } else if (keyEquals(key, key_end, "location")){
+                    expect('{');
+                    if (!consume('}')){
+                        do {
+                            int inner = readStringStart();
+                            int inner_end = skipStringBody();
+                            expect(':');
+
+                            if (keyEquals(inner, inner_end, "lat")){
+                                latitude = readNumber();
+                            } else if (keyEquals(inner, inner_end, "lng")){
+                                longitude = readNumber();
+                            } else {
+                                skipValue();
+                            }
+                        } while (consume(','));
+                        expect('}');
+                    }
+                } else {
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+
+        if (Double.isNaN(elevation)){
+            throw new IllegalStateException(String.format("Elevation result %d has no elevation!", index));
+        }
+        out.set(index, latitude, longitude, (float) elevation, (float) resolution);
+    }
+
+    /**
+     * Skip any whitespace
+     */
+    private void skipWhitespace(){
+        while (pos < json.length()){
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t'){
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Read a character which must be next
+     * @throws IllegalStateException If the next character is anything else
+     */
+    private void expect(char c){
+        if (!consume(c)){
+            throw error(String.format("expected '%c'", c));
+        }
+    }
+
+    /**
+     * Read a character if it's next
+     * @return True if the character was next and has been read
+     */
+    private boolean consume(char c){
+        skipWhitespace();
+        if (pos < json.length() && json.charAt(pos) == c){
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read the opening quote of a string
+     * @return The index of the first character of the string
+     */
+    private int readStringStart(){
+        expect('"');
+        return pos;
+    }
+
+    /**
+     * Skip to the end of a string whose opening quote has been read
+     * @return The index of the closing quote
+     */
+    private int skipStringBody(){
+        while (pos < json.length()){
+            char c = json.charAt(pos);
+            if (c == '\\'){
+                pos += 2;
+            } else if (c == '"'){
+                return pos++;
+            } else {
+                pos++;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    /**
+     * Compare a string in the response to a key without creating it. Keys with escapes never match.
+     */
+    private boolean keyEquals(int start, int end, String key){
+        return end - start == key.length() && json.regionMatches(start, key, 0, key.length());
+    }
+
+    /**
+     * Read a number. Numbers with up to 15 significant digits and small exponents, which is every number the API
+     * returns, are parsed directly and exactly. Anything else falls back to Double.parseDouble.
+     * @return The number read
+     * @throws IllegalStateException If there isn't a number next
+     */
+    private double readNumber(){
+        skipWhitespace();
+        int start = pos;
+
+        boolean negative = false;
+        if (pos < json.length() && json.charAt(pos) == '-'){
+            negative = true;
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        while (pos < json.length() && Character.isDigit(json.charAt(pos))){
+            if (mantissa < MAX_EXACT_MANTISSA / 10){
+                mantissa = (mantissa * 10) + (json.charAt(pos) - '0');
+            } else {
+                exact = false;
+            }
+            digits++;
+            pos++;
+        }
+        if (pos < json.length() && json.charAt(pos) == '.'){
+            pos++;
+            while (pos < json.length() && Character.isDigit(json.charAt(pos))){
+                if (mantissa < MAX_EXACT_MANTISSA / 10){
+                    mantissa = (mantissa * 10) + (json.charAt(pos) - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                digits++;
+                pos++;
+            }
+        }
+        if (digits == 0){
+            throw error("expected a number");
+        }
+        if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')){
+            // Exponents are rare enough to leave to the JDK
+            exact = false;
+            pos++;
+            if (pos < json.length() && (json.charAt(pos) == '+' || json.charAt(pos) == '-')){
+                pos++;
+            }
+            while (pos < json.length() && Character.isDigit(json.charAt(pos))){
+                pos++;
+            }
+        }
+
+        if (!exact || -exponent >= POWERS_OF_TEN.length){
+            return Double.parseDouble(json.substring(start, pos));
+        }
+
+        // Both the mantissa and the power of ten are exact, so the division rounds once
+        double value = (double) mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Skip over any value
+     */
+    private void skipValue(){
+        skipWhitespace();
+        if (pos >= json.length()){
+            throw error("expected a value");
+        }
+        char c = json.charAt(pos);
+        if (c == '"'){
+            pos++;
+            skipStringBody();
+        } else if (c == '{' || c == '['){
+            char close = c == '{' ? '}' : ']';
+            pos++;
+            if (consume(close)){
+                return;
+            }
+            do {
+                if (c == '{'){
+                    readStringStart();
+                    skipStringBody();
+                    expect(':');
+                }
+                skipValue();
+            } while (consume(','));
+            expect(close);
+        } else if (c == '-' || Character.isDigit(c)){
+            readNumber();
+        } else if (json.startsWith("true", pos)){
+            pos += 4;
+        } else if (json.startsWith("false", pos)){
+            pos += 5;
+        } else if (json.startsWith("null", pos)){
+            pos += 4;
+        } else {
+            throw error("unexpected character");
+        }
+    }
+
+    /**
+     * Create an exception for malformed JSON at the current position
+     */
+    private IllegalStateException error(String problem){
+        return new IllegalStateException(String.format("Malformed elevation response at %d: %s", pos, problem));
+    }
+}
@@ -0,0 +1,126 @@
+package Data;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * The result of an elevation request, kept as parallel primitive arrays in the order the locations were requested.
+ * Index i of every array belongs to the i-th requested location, so results are read back by position instead of
+ * looked up by coordinate.
+ */
+public class ElevationResult {
+    /**
+     * The latitude and longitude of each sample, as returned by the source
+     */
+    private double[] latitudes;
+    private double[] longitudes;
+
+    /**
+     * The elevation, in meters, of each sample
+     */
+    private float[] elevations;
+
+    /**
+     * The distance, in meters, between the points the elevation was interpolated from. NaN if the source didn't say.
+     */
+    private float[] resolutions;
+
+    /**
+     * Construct an empty result for a number of locations
+     * @param size The number of locations requested
+     * @throws InvalidParameterException If size is negative
+     */
+    public ElevationResult(int size){
+        if (size < 0){
+            throw new InvalidParameterException("An elevation result can't have a negative size!");
+        }
+        latitudes = new double[size];
+        longitudes = new double[size];
+        elevations = new float[size];
+        resolutions = new float[size];
+        Arrays.fill(resolutions, Float.NaN);
+    }
+
+    /**
+     * Set a single sample
+     * @param index The position of the location in the request
+     * @param latitude The latitude of the sample
+     * @param longitude The longitude of the sample
+     * @param elevation The elevation, in meters
+     * @param resolution The resolution, in meters, or NaN if unknown
+     */
+    public void set(int index, double latitude, double longitude, float elevation, float resolution){
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        elevations[index] = elevation;
+        resolutions[index] = resolution;
+    }
+
+    /**
+     * Get the number of locations in this result
+     * @return The number of locations
+     */
+    public int size(){
+        return elevations.length;
+    }
+
+    /**
+     * Get the elevation of a single location
+     * @param index The position of the location in the request
+     * @return The elevation, in meters
+     */
+    public float getElevation(int index){
+        return elevations[index];
+    }
+
+    /**
+     * Get the latitude of a single sample
+     * @param index The position of the location in the request
+     * @return The latitude as returned by the source
+     */
+    public double getLatitude(int index){
+        return latitudes[index];
+    }
+
+    /**
+     * Get the longitude of a single sample
+     * @param index The position of the location in the request
+     * @return The longitude as returned by the source
+     */
+    public double getLongitude(int index){
+        return longitudes[index];
+    }
+
+    /**
+     * Get the resolution of a single sample
+     * @param index The position of the location in the request
+     * @return The resolution, in meters, NaN if the source didn't give one
+     */
+    public float getResolution(int index){
+        return resolutions[index];
+    }
+
+    /**
+     * Get every elevation in the order of the request
+     * @return The elevations, as a pointer
+     */
+    public float[] getElevations(){
+        return elevations;
+    }
+
+    /**
+     * Get every latitude in the order of the request
+     * @return The latitudes, as a pointer
+     */
+    public double[] getLatitudes(){
+        return latitudes;
+    }
+
+    /**
+     * Get every longitude in the order of the request
+     * @return The longitudes, as a pointer
+     */
+    public double[] getLongitudes(){
+        return longitudes;
+    }
+}
@@ -0,0 +1,60 @@
+package Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A source of elevation at arbitrary latitudes and longitudes. The DataDriver reads all of its elevation through one
+ * of these, so it doesn't matter whether the heights come from Google or from rasters on disk.
+ * Implementations are shared by the TilePipeline's fetch workers, platform or virtual threads, so they must be safe
+ * to use from many threads.
+ */
+public interface ElevationSource {
+    /**
+     * Read the elevation at each of a list of coordinates, keeping the order of the list
+     * @param coordinates The coordinates to read
+     * @return An array of elevations, in meters, where index i is the elevation at coordinates.get(i)
+     * @throws IllegalStateException If the source failed to read the elevations
+     */
+    float[] readElevations(List<WorldCoordinate> coordinates);
+
+    /**
+     * Read the elevation at each of a set of latitudes and longitudes into an existing array. Sources which can
+     * answer without building coordinates, such as local rasters, should override this.
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @throws java.security.InvalidParameterException If the arrays aren't the same length
+     * @throws IllegalStateException If the source failed to read the elevations
+     */
+    default void readElevations(double[] latitudes, double[] longitudes, float[] out){
+        if (latitudes.length != longitudes.length || out.length < latitudes.length){
+            throw new java.security.InvalidParameterException("Every latitude needs a longitude and an output!");
+        }
+        ArrayList<WorldCoordinate> coordinates = new ArrayList<>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++){
+            coordinates.add(new WorldCoordinate(latitudes[i], longitudes[i]));
+        }
+        System.arraycopy(readElevations(coordinates), 0, out, 0, latitudes.length);
+    }
+
+    /**
+     * Read the elevation at each of a set of latitudes and longitudes at a request priority. Sources behind a rate
+     * limited API should override this, local sources have no limits and ignore the priority.
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @param priority How much the request matters
+     * @throws java.security.InvalidParameterException If the arrays aren't the same length
+     * @throws IllegalStateException If the source failed to read the elevations, or dropped a low priority request
+     */
+    default void readElevations(double[] latitudes, double[] longitudes, float[] out, RequestPriority priority){
+        readElevations(latitudes, longitudes, out);
+    }
+
+    /**
+     * Get a name for this source, for logging
+     * @return A short description of this source
+     */
+    String getName();
+}
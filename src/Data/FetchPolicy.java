@@ -0,0 +1,164 @@
+package Data;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The settings which decide how hard a ResilientHttp client tries before a request is given up on: how long to wait
+ * for a connection and a response, how many attempts to make and how long to back off between them, how many
+ * requests may be sent to one host at once and how long to wait on a slow request before hedging it with a second.
+ */
+public class FetchPolicy {
+    /**
+     * The policy used when none is given. Hedging is off, as it can double the requests billed by an API.
+     */
+    public static final FetchPolicy DEFAULT = new FetchPolicy(5000, 15000, 4, 250, 8000, 16, 0);
+
+    /**
+     * The milliseconds to wait for a connection to open
+     */
+    private final long connect_timeout;
+
+    /**
+     * The milliseconds to wait for a response after sending a request
+     */
+    private final long request_timeout;
+
+    /**
+     * The most attempts made at a single request, including the first
+     */
+    private final int max_attempts;
+
+    /**
+     * The milliseconds of backoff after the first failure, doubled after each failure after that
+     */
+    private final long base_backoff;
+
+    /**
+     * The most milliseconds to back off between attempts
+     */
+    private final long max_backoff;
+
+    /**
+     * The most requests sent to a single host at once
+     */
+    private final int max_per_host;
+
+    /**
+     * The milliseconds to wait on a request before sending a second copy and taking whichever answers first,
+     * zero or less to never hedge
+     */
+    private final long hedge_delay;
+
+    /**
+     * Construct a policy
+     * @param connect_timeout The milliseconds to wait for a connection to open, must be > 0
+     * @param request_timeout The milliseconds to wait for a response, must be > 0
+     * @param max_attempts The most attempts at a single request, must be > 0
+     * @param base_backoff The milliseconds of backoff after the first failure, must be >= 0
+     * @param max_backoff The most milliseconds to back off between attempts, must be >= base_backoff
+     * @param max_per_host The most requests sent to a single host at once, must be > 0
+     * @param hedge_delay The milliseconds to wait before hedging a request, zero or less to never hedge
+     * @throws InvalidParameterException If any setting is out of range
+     */
+    public FetchPolicy(long connect_timeout, long request_timeout, int max_attempts, long base_backoff,
+                       long max_backoff, int max_per_host, long hedge_delay){
+        if (connect_timeout <= 0 || request_timeout <= 0){
+            throw new InvalidParameterException("Fetch timeouts must be positive!");
+        }
+        if (max_attempts <= 0 || max_per_host <= 0){
+            throw new InvalidParameterException("A fetch needs at least one attempt and one request per host!");
+        }
+        if (base_backoff < 0 || max_backoff < base_backoff){
+            throw new InvalidParameterException("Fetch backoff must be positive and no more than its maximum!");
+        }
+        this.connect_timeout = connect_timeout;
+        this.request_timeout = request_timeout;
+        this.max_attempts = max_attempts;
+        this.base_backoff = base_backoff;
+        this.max_backoff = max_backoff;
+        this.max_per_host = max_per_host;
+        this.hedge_delay = hedge_delay;
+    }
+
+    /**
+     * Copy this policy with a different number of attempts
+     * @param max_attempts The most attempts at a single request, must be > 0
+     * @return The new policy
+     * @throws InvalidParameterException If max_attempts isn't positive
+     */
+    public FetchPolicy withMaxAttempts(int max_attempts){
+        return new FetchPolicy(connect_timeout, request_timeout, max_attempts, base_backoff, max_backoff,
+                max_per_host, hedge_delay);
+    }
+
+    /**
+     * Copy this policy with a different hedge delay
+     * @param hedge_delay The milliseconds to wait before hedging a request, zero or less to never hedge
+     * @return The new policy
+     */
+    public FetchPolicy withHedgeDelay(long hedge_delay){
+        return new FetchPolicy(connect_timeout, request_timeout, max_attempts, base_backoff, max_backoff,
+                max_per_host, hedge_delay);
+    }
+
+    /**
+     * Pick how long to back off before an attempt. The delay is uniformly random up to the exponential backoff
+     * ("full jitter"), so clients which failed together don't all retry together.
+     * @param failures The number of attempts which have failed so far, at least 1
+     * @return The milliseconds to wait
+     */
+    public long backoff(int failures){
+        long ceiling = base_backoff << Math.min(Math.max(failures - 1, 0), 20);
+        ceiling = Math.min(max_backoff, ceiling);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Get the milliseconds to wait for a connection to open
+     * @return The connect timeout
+     */
+    public long getConnectTimeout(){
+        return connect_timeout;
+    }
+
+    /**
+     * Get the milliseconds to wait for a response
+     * @return The request timeout
+     */
+    public long getRequestTimeout(){
+        return request_timeout;
+    }
+
+    /**
+     * Get the most attempts at a single request
+     * @return The maximum attempts, including the first
+     */
+    public int getMaxAttempts(){
+        return max_attempts;
+    }
+
+    /**
+     * Get the most milliseconds to back off between attempts
+     * @return The maximum backoff
+     */
+    public long getMaxBackoff(){
+        return max_backoff;
+    }
+
+    /**
+     * Get the most requests sent to a single host at once
+     * @return The per host limit
+     */
+    public int getMaxPerHost(){
+        return max_per_host;
+    }
+
+    /**
+     * Get the milliseconds to wait before hedging a request
+     * @return The hedge delay, zero or less if requests are never hedged
+     */
+    public long getHedgeDelay(){
+        return hedge_delay;
+    }
+}
@@ -0,0 +1,184 @@
+package Data;
+
+import Math.Vector;
+
+import javax.naming.ConfigurationException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Google provider of imagery and elevation, reading tiles from the 2D Tile API and heights from the Elevation
+ * API through an InternetDriver.
+ */
+public class GoogleSource implements TileSource, ElevationSource {
+    /**
+     * The internet driver the requests are made with, its tile session must be initialized
+     */
+    private InternetDriver inetDriver;
+
+    /**
+     * The Google Elevation API accepts at most 512 strings per request, which is 256 latitude and longitude pairs
+     */
+    public static final int MAX_ELEVATION_POINTS = 256;
+
+    /**
+     * Construct this source around an internet driver
+     * @param inetDriver The internet driver to make requests with, its tile session must already be initialized
+     * @throws InvalidParameterException If inetDriver is null
+     */
+    public GoogleSource(InternetDriver inetDriver){
+        if (inetDriver == null){
+            throw new InvalidParameterException("The Google source needs an internet driver!");
+        }
+        this.inetDriver = inetDriver;
+    }
+
+    /**
+     * Download a tile from the 2D Tile API
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @return The encoded image bytes
+     * @throws IllegalStateException If the tile session isn't initialized
+     */
+    @Override
+    public byte[] readTile(int zoom, int x, int y) {
+        return readTile(zoom, x, y, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Read a tile from the Map Tiles API, charged to the tile quota at a priority
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param priority How much the request matters
+     * @return The encoded image bytes
+     * @throws IllegalStateException If the tile session isn't initialized or the request was dropped
+     */
+    @Override
+    public byte[] readTile(int zoom, int x, int y, RequestPriority priority) {
+        try {
+            return inetDriver.getSatalliteImage(new Vector(x, y, zoom), priority);
+        } catch (ConfigurationException e) {
+            throw new IllegalStateException("The Google tile session isn't initialized!", e);
+        }
+    }
+
+    /**
+     * Read elevations from the Elevation API, split into as few requests as the API allows
+     * @param coordinates The coordinates to read
+     * @return An array of elevations, in meters, where index i is the elevation at coordinates.get(i)
+     * @throws InvalidParameterException If coordinates is null
+     * @throws IllegalStateException If the API failed or returned a different number of results than requested
+     */
+    @Override
+    public float[] readElevations(List<WorldCoordinate> coordinates) {
+        if (coordinates == null){
+            throw new InvalidParameterException("Provided coordinates for elevation are null!");
+        }
+        double[] latitudes = new double[coordinates.size()];
+        double[] longitudes = new double[coordinates.size()];
+        for (int i = 0; i < coordinates.size(); i++){
+            latitudes[i] = coordinates.get(i).getWorldCoordinate().getX();
+            longitudes[i] = coordinates.get(i).getWorldCoordinate().getY();
+        }
+
+        return readElevationResult(latitudes, longitudes).getElevations();
+    }
+
+    /**
+     * Read elevations from the Elevation API into an existing array
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @throws InvalidParameterException If the arrays aren't the same length
+     * @throws IllegalStateException If the API failed or returned a different number of results than requested
+     */
+    @Override
+    public void readElevations(double[] latitudes, double[] longitudes, float[] out) {
+        if (out.length < latitudes.length){
+            throw new InvalidParameterException("Every latitude needs somewhere to write to!");
+        }
+        readElevations(latitudes, longitudes, out, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Read elevations from the Elevation API into an existing array, charged to the elevation quota at a priority
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @param priority How much the request matters
+     * @throws InvalidParameterException If the arrays aren't the same length
+     * @throws IllegalStateException If the API failed, returned a different number of results than requested or
+     * the request was dropped
+     */
+    @Override
+    public void readElevations(double[] latitudes, double[] longitudes, float[] out, RequestPriority priority) {
+        if (out.length < latitudes.length){
+            throw new InvalidParameterException("Every latitude needs somewhere to write to!");
+        }
+        System.arraycopy(readElevationResult(latitudes, longitudes, priority).getElevations(), 0, out, 0,
+                latitudes.length);
+    }
+
+    /**
+     * Read the full result of the Elevation API, including the location and resolution of each sample. Requests
+     * are split into as few as the API allows and each response is parsed straight into the result.
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @return The result, indexed by the position of each point
+     * @throws InvalidParameterException If the arrays are null or aren't the same length
+     * @throws IllegalStateException If the API failed or returned a different number of results than requested
+     */
+    public ElevationResult readElevationResult(double[] latitudes, double[] longitudes){
+        return readElevationResult(latitudes, longitudes, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Read the full result of the Elevation API at a request priority, each request it's split into is charged to
+     * the elevation quota
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param priority How much the requests matter
+     * @return The result, indexed by the position of each point
+     * @throws InvalidParameterException If the arrays are null or aren't the same length
+     * @throws IllegalStateException If the API failed, returned a different number of results than requested or a
+     * request was dropped
+     */
+    public ElevationResult readElevationResult(double[] latitudes, double[] longitudes, RequestPriority priority){
+        if (latitudes == null || longitudes == null || latitudes.length != longitudes.length){
+            throw new InvalidParameterException("Every latitude needs a longitude!");
+        }
+        ElevationResult result = new ElevationResult(latitudes.length);
+
+        // Split the points into groups the API will accept, the results come back in the order they were sent
+        for (int start = 0; start < latitudes.length; start += MAX_ELEVATION_POINTS){
+            int end = Math.min(latitudes.length, start + MAX_ELEVATION_POINTS);
+
+            ArrayList<String> rawCoordinates = new ArrayList<>();
+            for (int j = start; j < end; j++){
+                rawCoordinates.add(String.format("%.7f", latitudes[j]));
+                rawCoordinates.add(String.format("%.7f", longitudes[j]));
+            }
+
+            int count = ElevationParser.parse(inetDriver.getElevation(rawCoordinates, priority), result, start);
+
+            if (count != end - start){
+                throw new IllegalStateException(String.format("Google returned %d elevations for %d locations!",
+                        count, end - start));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the name of this source
+     * @return "Google"
+     */
+    @Override
+    public String getName() {
+        return "Google";
+    }
+}
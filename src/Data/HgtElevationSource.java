@@ -0,0 +1,248 @@
+package Data;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A provider of elevation from a directory of SRTM .hgt rasters. Each file covers one degree of latitude and
+ * longitude and is named after its south west corner, such as N39W105.hgt. The file is a square grid of big endian
+ * 16 bit heights in meters, rows going north to south, 1201 samples wide for 3 arc second data and 3601 for 1 arc
+ * second data. The edges of neighbouring files repeat the same samples.
+ * Rasters are memory mapped rather than read, so only the pages which are sampled are ever loaded, and at most
+ * max_rasters of them are kept mapped at once. Locations without a file, such as the ocean, and void samples read
+ * as sea level.
+ */
+public class HgtElevationSource implements ElevationSource {
+    /**
+     * The directory of the rasters
+     */
+    private Path root;
+
+    /**
+     * The mapped rasters, by the key of their south west corner, least recently used first. A null value means the
+     * file doesn't exist.
+     */
+    private LinkedHashMap<Integer, Raster> rasters;
+
+    /**
+     * The number of rasters kept mapped at once
+     */
+    private int max_rasters;
+
+    /**
+     * The number of rasters mapped by default, about 460MB of address space for 1 arc second data
+     */
+    public static final int DEFAULT_MAX_RASTERS = 16;
+
+    /**
+     * The value SRTM uses for samples without data
+     */
+    private static final short VOID = -32768;
+
+    /**
+     * A single mapped raster
+     */
+    private static class Raster {
+        /**
+         * The samples of the raster, read with absolute gets so it can be shared between threads
+         */
+        private final ShortBuffer samples;
+
+        /**
+         * The number of samples along each side
+         */
+        private final int size;
+
+        /**
+         * Construct a raster from its mapped file
+         * @param samples The samples of the file
+         * @param size The number of samples along each side
+         */
+        private Raster(ShortBuffer samples, int size){
+            this.samples = samples;
+            this.size = size;
+        }
+
+        /**
+         * Read a single sample, voids read as sea level
+         */
+        private float sample(int row, int column){
+            short height = samples.get((row * size) + column);
+            return height == VOID ? 0.0f : height;
+        }
+    }
+
+    /**
+     * Construct a source from a directory of rasters, keeping the default number of rasters mapped
+     * @param root The directory holding the .hgt files
+     * @throws InvalidParameterException If root isn't a directory
+     */
+    public HgtElevationSource(String root){
+        this(root, DEFAULT_MAX_RASTERS);
+    }
+
+    /**
+     * Construct a source from a directory of rasters
+     * @param root The directory holding the .hgt files
+     * @param max_rasters The number of rasters kept mapped at once, must be > 0
+     * @throws InvalidParameterException If root isn't a directory or max_rasters isn't positive
+     */
+    public HgtElevationSource(String root, int max_rasters){
+        if (root == null || !Files.isDirectory(Paths.get(root))){
+            throw new InvalidParameterException(String.format("The elevation directory %s doesn't exist!", root));
+        }
+        if (max_rasters <= 0){
+            throw new InvalidParameterException("At least one raster must be kept mapped!");
+        }
+        this.root = Paths.get(root);
+        this.max_rasters = max_rasters;
+        this.rasters = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Raster> eldest) {
+                // The mapping is released once the buffer is collected, nothing else holds onto it
+                return size() > HgtElevationSource.this.max_rasters;
+            }
+        };
+    }
+
+    /**
+     * Read the elevation at each coordinate, interpolated between the four nearest samples
+     * @param coordinates The coordinates to read
+     * @return An array of elevations, in meters, where index i is the elevation at coordinates.get(i)
+     * @throws InvalidParameterException If coordinates is null
+     * @throws IllegalStateException If a raster couldn't be mapped
+     */
+    @Override
+    public float[] readElevations(List<WorldCoordinate> coordinates) {
+        if (coordinates == null){
+            throw new InvalidParameterException("Provided coordinates for elevation are null!");
+        }
+        double[] latitudes = new double[coordinates.size()];
+        double[] longitudes = new double[coordinates.size()];
+        for (int i = 0; i < coordinates.size(); i++){
+            latitudes[i] = coordinates.get(i).getWorldCoordinate().getX();
+            longitudes[i] = coordinates.get(i).getWorldCoordinate().getY();
+        }
+
+        float[] data = new float[coordinates.size()];
+        readElevations(latitudes, longitudes, data);
+        return data;
+    }
+
+    /**
+     * Read the elevation at each latitude and longitude, interpolated between the four nearest samples. Nothing is
+     * allocated unless a new raster has to be mapped, and neighbouring points reuse the raster of the one before.
+     * @param latitudes The latitude of each point
+     * @param longitudes The longitude of each point
+     * @param out The array to write the elevations, in meters, to. Index i is the elevation of point i.
+     * @throws InvalidParameterException If the arrays aren't the same length
+     * @throws IllegalStateException If a raster couldn't be mapped
+     */
+    @Override
+    public void readElevations(double[] latitudes, double[] longitudes, float[] out) {
+        if (latitudes.length != longitudes.length || out.length < latitudes.length){
+            throw new InvalidParameterException("Every latitude needs a longitude and somewhere to write to!");
+        }
+
+        int last_key = Integer.MIN_VALUE;
+        Raster raster = null;
+
+        for (int i = 0; i < latitudes.length; i++){
+            double lat = latitudes[i];
+            double lng = longitudes[i];
+
+            int south = (int) Math.floor(lat);
+            int west = (int) Math.floor(lng);
+
+            int key = rasterKey(south, west);
+            if (key != last_key){
+                raster = getRaster(south, west);
+                last_key = key;
+            }
+            if (raster == null){
+                out[i] = 0.0f;
+                continue;
+            }
+            int last = raster.size - 1;
+
+            // Rows run from the north edge down, columns from the west edge across
+            double row = (south + 1 - lat) * last;
+            double column = (lng - west) * last;
+
+            int r = Math.min((int) row, last - 1);
+            int c = Math.min((int) column, last - 1);
+            float fr = (float) (row - r);
+            float fc = (float) (column - c);
+
+            float top = raster.sample(r, c) + ((raster.sample(r, c + 1) - raster.sample(r, c)) * fc);
+            float bottom = raster.sample(r + 1, c) + ((raster.sample(r + 1, c + 1) - raster.sample(r + 1, c)) * fc);
+
+            out[i] = top + ((bottom - top) * fr);
+        }
+    }
+
+    /**
+     * Pack the south west corner of a raster into a single key
+     */
+    private static int rasterKey(int south, int west){
+        return (south * 1000) + west;
+    }
+
+    /**
+     * Get the raster covering a degree square, mapping it if it isn't mapped yet
+     * @param south The latitude of the south edge
+     * @param west The longitude of the west edge
+     * @return The raster, null if there is no file for it
+     * @throws IllegalStateException If the file exists but couldn't be mapped or isn't square
+     */
+    private synchronized Raster getRaster(int south, int west){
+        int key = rasterKey(south, west);
+        if (rasters.containsKey(key)){
+            return rasters.get(key);
+        }
+
+        String name = String.format("%s%02d%s%03d.hgt", south < 0 ? "S" : "N", Math.abs(south),
+                west < 0 ? "W" : "E", Math.abs(west));
+        Path path = root.resolve(name);
+
+        Raster raster = null;
+        if (Files.isRegularFile(path)){
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long length = channel.size();
+                int size = (int) Math.round(Math.sqrt(length / 2.0));
+                if (size < 2 || (long) size * size * 2 != length){
+                    throw new IllegalStateException(String.format("%s isn't a square SRTM raster!", path));
+                }
+
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                raster = new Raster(mapped.order(ByteOrder.BIG_ENDIAN).asShortBuffer(), size);
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Failed to map elevation raster %s", path), e);
+            }
+        }
+
+        rasters.put(key, raster);
+        return raster;
+    }
+
+    /**
+     * Get the name of this source
+     * @return The directory of this source
+     */
+    @Override
+    public String getName() {
+        return String.format("SRTM rasters %s", root);
+    }
+}
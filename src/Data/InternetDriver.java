@@ -15,22 +15,83 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.util.*;
 
 import Math.Vector;
+import Utils.Counter;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
 
 /**
  * This class is used for retrieving data from online sources, notably by storing relevant API keys and making requests
  */
 public class InternetDriver {
     /**
-     * Our primary HttpClient for reading from servers
+     * The metrics of requests to one endpoint, shared by every driver: how many were sent and failed, the bytes
+     * read and the latency of each including retries
      */
-    private HttpClient httpClient;
+    private static class Endpoint {
+        /**
+         * The requests sent and how many of them failed
+         */
+        private final Counter requests;
+        private final Counter errors;
+
+        /**
+         * The bytes of response bodies read
+         */
+        private final Counter bytes;
+
+        /**
+         * The time from sending each request to its response, in nanoseconds
+         */
+        private final LatencyHistogram latency;
+
+        /**
+         * Register the metrics of an endpoint
+         * @param name The endpoint's label
+         */
+        private Endpoint(String name){
+            requests = Metrics.counter("planesim_http_requests_total", "HTTP requests sent", "endpoint", name);
+            errors = Metrics.counter("planesim_http_errors_total", "HTTP requests which failed or weren't 200",
+                    "endpoint", name);
+            bytes = Metrics.counter("planesim_http_received_bytes_total", "Bytes of HTTP response bodies read",
+                    "endpoint", name);
+            latency = Metrics.histogram("planesim_http_request_seconds",
+                    "Time to get an HTTP response, including retries", "endpoint", name);
+        }
+
+        /**
+         * Record a request
+         * @param start When the request was sent, System.nanoTime
+         * @param status The response's status code, 0 if there was no response
+         * @param received The bytes of the response's body
+         */
+        private void record(long start, int status, long received){
+            latency.record(System.nanoTime() - start);
+            requests.increment();
+            bytes.add(received);
+            if (status != 200){
+                errors.increment();
+            }
+        }
+    }
+
+    /**
+     * The endpoints requests are counted under
+     */
+    private static final Endpoint TILES = new Endpoint("tiles");
+    private static final Endpoint ELEVATION = new Endpoint("elevation");
+    private static final Endpoint SESSION = new Endpoint("session");
+
+    /**
+     * Our primary client for reading from servers, it retries, limits and hedges requests by its fetch policy
+     */
+    private ResilientHttp http;
 
     /**
      * Our Google API key, should only be accessed with this class, hense the private modifier
@@ -51,36 +112,80 @@ public class InternetDriver {
     private int tileHeight;
 
     /**
-     * A special embedded constant, for debugging, to stop the program should the number of queries exceed a reasonable amount
+     * The base URLs of the tile and elevation APIs, these can be pointed at a local server for testing
      */
-    private final static int MAX_ELEVATION_QUERIES = 100;
+    private String tile_url;
+    private String elevation_url;
+
+    /**
+     * The base URLs of Google's tile and elevation APIs
+     */
+    public final static String GOOGLE_TILE_URL = "https://tile.googleapis.com";
+    public final static String GOOGLE_ELEVATION_URL = "https://maps.googleapis.com";
+
     /**
-     * A special debugging value to inform a programmer how many queries they used in elevation
+     * The rate limits and daily quotas every request is charged to, shared by every driver of this program
      */
-    private static int num_queries_elevation = 0;
+    private ApiLimiter limiter;
 
     /**
      * Construct this class using a provided Google API key from somewhere else in the program
      * @param google_key Our Google Cloud API Key
      */
     public InternetDriver(String google_key){
-        httpClient = HttpClient.newHttpClient();
+        this(google_key, GOOGLE_TILE_URL, GOOGLE_ELEVATION_URL);
+    }
+
+    /**
+     * Construct this class using a provided API key and the servers to send requests to, with the default fetch
+     * policy
+     * @param google_key Our Google Cloud API Key
+     * @param tile_url The base URL of the tile API, without a trailing slash
+     * @param elevation_url The base URL of the elevation API, without a trailing slash
+     * @throws InvalidParameterException If either URL is null
+     */
+    public InternetDriver(String google_key, String tile_url, String elevation_url){
+        this(google_key, tile_url, elevation_url, FetchPolicy.DEFAULT);
+    }
+
+    /**
+     * Construct this class using a provided API key and the servers to send requests to, such as a stub server
+     * @param google_key Our Google Cloud API Key
+     * @param tile_url The base URL of the tile API, without a trailing slash
+     * @param elevation_url The base URL of the elevation API, without a trailing slash
+     * @param policy How hard to try before giving up on a request, such as a local fault injecting server
+     * @throws InvalidParameterException If either URL or the policy is null
+     */
+    public InternetDriver(String google_key, String tile_url, String elevation_url, FetchPolicy policy){
+        if (tile_url == null || elevation_url == null){
+            throw new InvalidParameterException("The tile and elevation URLs must not be null!");
+        }
+        http = new ResilientHttp(policy);
+        limiter = ApiLimiter.getShared();
         google_api_tile_session = null;
         google_api_key = google_key;
+        this.tile_url = tile_url;
+        this.elevation_url = elevation_url;
     }
 
     /**
-     * Construct an internet driver from an existing one but with a new HTTP Client
+     * Construct an internet driver from an existing one but with a new HTTP Client, using the same fetch policy
      * @param inetDriver The initial internet driver
      * @throws InvalidParameterException If the provided inetDriver is null
      */
     public InternetDriver(InternetDriver inetDriver){
-        this.httpClient = HttpClient.newHttpClient();
+        if (inetDriver == null){
+            throw new InvalidParameterException("Provided InternetDriver for cloning was null!");
+        }
+        this.http = new ResilientHttp(inetDriver.http.getPolicy());
+        this.limiter = inetDriver.limiter;
 
         google_api_tile_session = inetDriver.google_api_tile_session;
         google_api_key = inetDriver.google_api_key;
         tileWidth = inetDriver.tileWidth;
         tileHeight = inetDriver.tileHeight;
+        tile_url = inetDriver.tile_url;
+        elevation_url = inetDriver.elevation_url;
     }
 
 
@@ -104,7 +209,10 @@ public class InternetDriver {
 
         google_api_key = google_key;
         google_api_tile_session = null;
-        httpClient = HttpClient.newHttpClient();
+        http = new ResilientHttp(FetchPolicy.DEFAULT);
+        limiter = ApiLimiter.getShared();
+        tile_url = GOOGLE_TILE_URL;
+        elevation_url = GOOGLE_ELEVATION_URL;
     }
 
     /**
@@ -123,8 +231,9 @@ public class InternetDriver {
         jsonQuery.put("region", "US");
         jsonQuery.put("imageFormat", "png");
 
+        limiter.acquire(QuotaLedger.Api.SESSION, RequestPriority.NORMAL);
         String read_session = PostJSONRequest(
-                String.format("https://tile.googleapis.com/v1/createSession?key=%s", google_api_key),
+                String.format("%s/v1/createSession?key=%s", tile_url, google_api_key),
                 jsonQuery
         );
 
@@ -155,15 +264,28 @@ public class InternetDriver {
      * @throws ConfigurationException If the Google API session token doesn't exist
      */
     public byte[] getSatalliteImage(Vector coords) throws ConfigurationException {
+        return getSatalliteImage(coords, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Download a satalight image from Google's Tile API, charged to the tile quota at a priority
+     * initializeTileSession() must be called before this
+     * @param coords The tile, x and y are the tile and z is the zoom
+     * @param priority How much the request matters, low priority requests are dropped near the API's limits
+     * @return A byte array from the URL
+     * @throws ConfigurationException If the Google API session token doesn't exist
+     * @throws IllegalStateException If the request was dropped by the rate limiter
+     */
+    public byte[] getSatalliteImage(Vector coords, RequestPriority priority) throws ConfigurationException {
         if (google_api_tile_session == null){
             throw new ConfigurationException("Google Tile API session not initialized!");
         }
 
-        System.out.printf("Reading satellite: %f %f\n", coords.getX(), coords.getY());
+        limiter.acquire(QuotaLedger.Api.TILES, priority);
 
         return ReadBinaryFromURL(
                 String.format(
-                        "https://tile.googleapis.com/v1/2dtiles/%d/%d/%d?session=%s&key=%s",
+                        "%s/v1/2dtiles/%d/%d/%d?session=%s&key=%s", tile_url,
                         (int) coords.getZ(), (int) coords.getX(), (int) coords.getY(), google_api_tile_session, google_api_key
                 )
         );
@@ -179,6 +301,18 @@ public class InternetDriver {
      * @throws java.security.InvalidParameterException Thrown if cords has more than 512 key value pairs (A limit from Google's API)
      */
     public String getElevation(ArrayList<String> cords){
+        return getElevation(cords, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Read the raw JSON output from the Google Elevation API, charged to the elevation quota at a priority
+     * @param cords A list of latitudes and longitudes, one after the other (Must have less than 512 values)
+     * @param priority How much the request matters, low priority requests are dropped near the API's limits
+     * @return The raw JSON from Google's server
+     * @throws java.security.InvalidParameterException Thrown if cords has more than 512 values
+     * @throws IllegalStateException If the request was dropped by the rate limiter
+     */
+    public String getElevation(ArrayList<String> cords, RequestPriority priority){
         if (cords.size() > 512){
             throw new InvalidParameterException("Too many coordinates provided!");
         }
@@ -186,13 +320,8 @@ public class InternetDriver {
             throw new InvalidParameterException("Coordinates not valid (not divisible by 2)");
         }
 
-        System.out.printf("Reading: %d cords\n", cords.size());
+        limiter.acquire(QuotaLedger.Api.ELEVATION, priority);
 
-        if (num_queries_elevation + cords.size() > MAX_ELEVATION_QUERIES){
-            System.out.printf("[WARNING!!!!!!!!] There has been %d elevation queries from a limit of %d which, " +
-                    "after this call will become %d queries!!!!!\n",
-                    num_queries_elevation, MAX_ELEVATION_QUERIES, num_queries_elevation + cords.size());
-        }
         // Google defines a list of cords as "[Lat1],[Long1]|[Lat2],[Long2]|...[LatN],[LongN}"
         StringJoiner parameter_generation = new StringJoiner("%7C");
         for (int i = 0; i < cords.size(); i+=2){
@@ -200,8 +329,8 @@ public class InternetDriver {
         }
 
         // Construct the RESTful API request
-        String built_url = String.format("https://maps.googleapis.com/maps/api/elevation/json?locations=%s&key=%s",
-                parameter_generation.toString(), google_api_key);
+        String built_url = String.format("%s/maps/api/elevation/json?locations=%s&key=%s",
+                elevation_url, parameter_generation.toString(), google_api_key);
 
         return ReadFromUrl(built_url);
     }
@@ -227,18 +356,19 @@ public class InternetDriver {
                 .GET()
                 .build();
 
-        // Send the request
-        HttpResponse<String> response = null;
+        // Send the request, retrying as the fetch policy allows
+        HttpResponse<byte[]> response = null;
+        long start = System.nanoTime();
         try {
-            response = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-
-            System.out.printf("Response code: %d\n", response.statusCode());
-        } catch (UncheckedIOException | InterruptedException | IOException e) {
+            response = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (UncheckedIOException e) {
+            ELEVATION.record(start, 0, 0);
             System.out.println("Failed to read HTTP response");
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
         }
+        ELEVATION.record(start, response.statusCode(), response.body().length);
 
-        return response.body();
+        return new String(response.body(), StandardCharsets.UTF_8);
     }
 
     /**
@@ -262,15 +392,25 @@ public class InternetDriver {
                 .GET()
                 .build();
 
-        // Send the request
-        HttpResponse<InputStream> response = null;
+        // Send the request, retrying as the fetch policy allows
+        HttpResponse<byte[]> response = null;
+        long start = System.nanoTime();
         try {
-            response = httpClient.send(req, HttpResponse.BodyHandlers.ofInputStream());
-            return response.body().readAllBytes();
-        } catch (UncheckedIOException | InterruptedException | IOException e) {
+            response = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (UncheckedIOException e) {
+            TILES.record(start, 0, 0);
             System.out.println("Failed to read HTTP response");
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
         }
+        TILES.record(start, response.statusCode(), response.body().length);
+
+        // Anything but a success is an error page, not the data that was asked for
+        if (response.statusCode() != 200){
+            System.out.printf("Response code: %d\n", response.statusCode());
+            throw new RuntimeException(String.format("Server responded with %d", response.statusCode()));
+        }
+
+        return response.body();
     }
 
     /**
@@ -296,16 +436,35 @@ public class InternetDriver {
                 .POST(HttpRequest.BodyPublishers.ofString(targetJSON.toString()))
                 .build();
 
-        // Send the request
-        HttpResponse<String> response;
+        // Send the request, retrying as the fetch policy allows
+        HttpResponse<byte[]> response;
+        long start = System.nanoTime();
         try {
-            response = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-        } catch (UncheckedIOException | InterruptedException | IOException e) {
+            response = http.send(req, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (UncheckedIOException e) {
+            SESSION.record(start, 0, 0);
             System.out.println("Failed to read HTTP response");
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
         }
+        SESSION.record(start, response.statusCode(), response.body().length);
 
-        return response.body();
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the limiter requests are charged to, for its quota usage
+     * @return The API limiter
+     */
+    public ApiLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Get the client requests are sent with, for its retry and hedge counts
+     * @return The resilient HTTP client
+     */
+    public ResilientHttp getHttp() {
+        return http;
     }
 
     /**
@@ -0,0 +1,78 @@
+package Data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.InvalidParameterException;
+
+/**
+ * A provider of imagery from a z/x/y directory tree on disk, the layout most tile tools export to:
+ * root/zoom/x/y.png (or .jpg or .jpeg). Rows are numbered north to south as with Google's tiles, a tree in the TMS
+ * layout (south to north) can be read by setting tms.
+ */
+public class LocalTileSource implements TileSource {
+    /**
+     * The directory of the tree
+     */
+    private Path root;
+
+    /**
+     * Whether the rows of the tree are numbered south to north
+     */
+    private boolean tms;
+
+    /**
+     * The file extensions tried for each tile, in order
+     */
+    private static final String[] EXTENSIONS = {"png", "jpg", "jpeg"};
+
+    /**
+     * Construct a source from a directory tree
+     * @param root The directory holding the zoom directories
+     * @param tms True if the rows are numbered south to north
+     * @throws InvalidParameterException If root isn't a directory
+     */
+    public LocalTileSource(String root, boolean tms){
+        if (root == null || !Files.isDirectory(Paths.get(root))){
+            throw new InvalidParameterException(String.format("The tile directory %s doesn't exist!", root));
+        }
+        this.root = Paths.get(root);
+        this.tms = tms;
+    }
+
+    /**
+     * Read a tile from the tree
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile, north to south
+     * @return The encoded image bytes, null if the tree doesn't have the tile
+     * @throws IllegalStateException If the tile's file couldn't be read
+     */
+    @Override
+    public byte[] readTile(int zoom, int x, int y) {
+        int row = tms ? ((1 << zoom) - 1 - y) : y;
+        Path directory = root.resolve(Integer.toString(zoom)).resolve(Integer.toString(x));
+
+        for (String extension : EXTENSIONS){
+            Path path = directory.resolve(String.format("%d.%s", row, extension));
+            if (Files.isRegularFile(path)){
+                try {
+                    return Files.readAllBytes(path);
+                } catch (IOException e) {
+                    throw new IllegalStateException(String.format("Failed to read tile %s", path), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the name of this source
+     * @return The directory of this source
+     */
+    @Override
+    public String getName() {
+        return String.format("Local tiles %s", root);
+    }
+}
@@ -0,0 +1,238 @@
+package Data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the requests made to each API against its daily quota. The counts are kept in lock free counters, so any
+ * thread may charge a request, and saved to a small properties file so a quota used up by one run is still used up
+ * in the next. The counts reset when the UTC day changes.
+ */
+public class QuotaLedger {
+    /**
+     * The APIs with a quota
+     */
+    public enum Api {
+        /**
+         * Requests for 2D tile images
+         */
+        TILES("tiles"),
+
+        /**
+         * Requests to the Elevation API, however many locations each holds
+         */
+        ELEVATION("elevation"),
+
+        /**
+         * Requests for a tile session
+         */
+        SESSION("session");
+
+        /**
+         * The key of the API in the ledger file
+         */
+        private final String key;
+
+        Api(String key){
+            this.key = key;
+        }
+
+        /**
+         * Get the key of this API in the ledger file
+         * @return The key
+         */
+        public String getKey(){
+            return key;
+        }
+    }
+
+    /**
+     * The key of the day the counts are for in the ledger file
+     */
+    private static final String DAY_KEY = "day";
+
+    /**
+     * The file the ledger is saved to, null to never save
+     */
+    private final Path path;
+
+    /**
+     * The daily quota of each API, indexed by Api.ordinal()
+     */
+    private final long[] limits;
+
+    /**
+     * The requests made to each API today, indexed by Api.ordinal()
+     */
+    private final AtomicLongArray used;
+
+    /**
+     * The UTC epoch day the counts are for
+     */
+    private final AtomicLong day;
+
+    /**
+     * The number of requests charged since the ledger was last saved
+     */
+    private final AtomicLong unsaved;
+
+    /**
+     * Construct a ledger, loading today's counts from its file if there is one
+     * @param path The file to load from and save to, null to keep the ledger in memory
+     * @param limits The daily quota of each API, indexed by Api.ordinal()
+     * @throws InvalidParameterException If there isn't a non negative limit for every API
+     */
+    public QuotaLedger(Path path, long[] limits){
+        if (limits == null || limits.length != Api.values().length){
+            throw new InvalidParameterException("A quota ledger needs a limit for every API!");
+        }
+        for (long limit : limits){
+            if (limit < 0){
+                throw new InvalidParameterException("A quota can't be negative!");
+            }
+        }
+        this.path = path;
+        this.limits = limits.clone();
+        this.used = new AtomicLongArray(limits.length);
+        this.day = new AtomicLong(today());
+        this.unsaved = new AtomicLong();
+        load();
+    }
+
+    /**
+     * Charge a request to an API, if the quota allows it
+     * @param api The API the request is for
+     * @param headroom The requests to leave in the quota for others, 0 to allow the last request
+     * @return True if the request was charged, false if it would leave less than headroom of the quota
+     */
+    public boolean tryCharge(Api api, long headroom){
+        rollOver();
+        int index = api.ordinal();
+        while (true){
+            long current = used.get(index);
+            if (current + 1 > limits[index] - headroom){
+                return false;
+            }
+            if (used.compareAndSet(index, current, current + 1)){
+                unsaved.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the requests made to an API today
+     * @param api The API
+     * @return The number of requests charged
+     */
+    public long getUsed(Api api){
+        rollOver();
+        return used.get(api.ordinal());
+    }
+
+    /**
+     * Get the daily quota of an API
+     * @param api The API
+     * @return The number of requests allowed each day
+     */
+    public long getLimit(Api api){
+        return limits[api.ordinal()];
+    }
+
+    /**
+     * Get the number of requests charged since the ledger was last saved
+     * @return The unsaved requests
+     */
+    public long getUnsaved(){
+        return unsaved.get();
+    }
+
+    /**
+     * Save the ledger to its file, replacing it atomically so a crash never leaves half a ledger
+     */
+    public synchronized void flush(){
+        if (path == null){
+            return;
+        }
+        long saving = unsaved.get();
+        Properties properties = new Properties();
+        properties.setProperty(DAY_KEY, LocalDate.ofEpochDay(day.get()).toString());
+        for (Api api : Api.values()){
+            properties.setProperty(api.getKey(), Long.toString(used.get(api.ordinal())));
+        }
+
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, ".quota", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "Requests made to each API today, reset each UTC day");
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            unsaved.addAndGet(-saving);
+        } catch (IOException e) {
+            System.out.printf("Failed to save the quota ledger to %s: %s\n", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Print today's usage of every API
+     */
+    public void printUsage(){
+        for (Api api : Api.values()){
+            System.out.printf("%s: %d of %d requests today\n", api.getKey(), getUsed(api), getLimit(api));
+        }
+    }
+
+    /**
+     * Load today's counts from the ledger file, counts from another day are ignored
+     */
+    private void load(){
+        if (path == null || !Files.exists(path)){
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            if (LocalDate.parse(properties.getProperty(DAY_KEY, "")).toEpochDay() != day.get()){
+                return;
+            }
+            for (Api api : Api.values()){
+                used.set(api.ordinal(), Long.parseLong(properties.getProperty(api.getKey(), "0")));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.printf("Ignoring the unreadable quota ledger %s: %s\n", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Reset the counts if the day has changed since they were last touched, only one thread does the reset
+     */
+    private void rollOver(){
+        long current = day.get();
+        long now = today();
+        if (current != now && day.compareAndSet(current, now)){
+            for (int i = 0; i < used.length(); i++){
+                used.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * The current UTC epoch day
+     */
+    private static long today(){
+        return LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    }
+}
@@ -0,0 +1,321 @@
+package Data;
+
+import Math.Vector;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class downloads the imagery and elevation of every tile in a region into a TileStore ahead of time, so the
+ * app never has to touch the network while flying over it. Tiles already in the store are skipped, so an
+ * interrupted run picks up where it left off when it's run again.
+ * <p>
+ * Every request is sent at low priority, so a large region can't use up the quota the app needs while flying.
+ * Requests dropped near the API's limits are counted as failed tiles, which the next run retries.
+ */
+public class RegionSeeder {
+    /**
+     * The data driver to download with, it must write to the same store as this seeder
+     */
+    private DataDriver dataDriver;
+
+    /**
+     * The store being seeded
+     */
+    private TileStore tileStore;
+
+    /**
+     * The number of tiles downloaded at once
+     */
+    private int concurrency;
+
+    /**
+     * The number of elevation lattice points along each side of a tile, this must match the app's mesh resolution
+     */
+    private int resolution;
+
+    /**
+     * The number of tiles whose elevation is requested together
+     */
+    private int batch_size;
+
+    /**
+     * Counters for reporting progress, these are updated by every worker
+     */
+    private AtomicLong tiles_seeded;
+    private AtomicLong tiles_skipped;
+    private AtomicLong tiles_failed;
+    private AtomicLong tiles_dropped;
+    private AtomicLong image_bytes;
+    private AtomicLong elevation_points;
+
+    /**
+     * The number of tiles in the region being seeded
+     */
+    private long tiles_total;
+
+    /**
+     * The time, from System.nanoTime, the current seeding started
+     */
+    private long start_time;
+
+    /**
+     * The elevation API limits a request to 256 locations, so a batch holds as many tiles as fit in that
+     */
+    private static final int MAX_ELEVATION_POINTS = 256;
+
+    /**
+     * The number of seconds between progress reports
+     */
+    private static final long REPORT_PERIOD = 1;
+
+    /**
+     * Construct this seeder
+     * @param dataDriver The data driver to download with, constructed with tileStore so downloads are written to it.
+     *                   It's shared between the workers.
+     * @param tileStore The store to seed
+     * @param concurrency The number of tiles to download at once, must be > 0
+     * @param resolution The number of elevation points along each side of a tile, must be at least 2
+     * @throws InvalidParameterException If anything is null or out of range
+     */
+    public RegionSeeder(DataDriver dataDriver, TileStore tileStore, int concurrency, int resolution){
+        if (dataDriver == null || tileStore == null){
+            throw new InvalidParameterException("A region seeder needs a data driver and a tile store!");
+        }
+        if (dataDriver.getTileStore() != tileStore){
+            throw new InvalidParameterException("The seeder's data driver must write to the store being seeded!");
+        }
+        if (concurrency <= 0 || resolution < 2){
+            throw new InvalidParameterException("A region seeder needs at least one worker and a resolution of 2");
+        }
+        this.dataDriver = dataDriver;
+        this.tileStore = tileStore;
+        this.concurrency = concurrency;
+        this.resolution = resolution;
+        this.batch_size = Math.max(1, MAX_ELEVATION_POINTS / (resolution * resolution));
+        tiles_seeded = new AtomicLong();
+        tiles_skipped = new AtomicLong();
+        tiles_failed = new AtomicLong();
+        tiles_dropped = new AtomicLong();
+        image_bytes = new AtomicLong();
+        elevation_points = new AtomicLong();
+    }
+
+    /**
+     * Find the range of tiles of a zoom which cover a bounding box
+     * @param min_lat The southern edge of the box
+     * @param min_lng The western edge of the box
+     * @param max_lat The northern edge of the box
+     * @param max_lng The eastern edge of the box
+     * @param zoom The zoom of the tiles
+     * @return An array of {min x, min y, max x, max y}, inclusive
+     * @throws InvalidParameterException If the box is outside of the world
+     */
+    public static int[] findTileRange(double min_lat, double min_lng, double max_lat, double max_lng, int zoom){
+        // Web Mercator doesn't reach the poles, the edges are clamped to the last row of tiles
+        long north_west = WorldCoordinate.tileAt(max_lat, min_lng, zoom);
+        long south_east = WorldCoordinate.tileAt(min_lat, max_lng, zoom);
+
+        return new int[]{
+                WorldCoordinate.packedX(north_west),
+                WorldCoordinate.packedY(north_west),
+                WorldCoordinate.packedX(south_east),
+                WorldCoordinate.packedY(south_east)
+        };
+    }
+
+    /**
+     * Download every tile of a bounding box over a range of zooms. This blocks until the region is done, reporting
+     * progress as it goes. Tiles which fail, including those whose requests were dropped near the API's limits, are
+     * counted and left out of the store so another run retries them.
+     * @param min_lat The southern edge of the box
+     * @param min_lng The western edge of the box
+     * @param max_lat The northern edge of the box
+     * @param max_lng The eastern edge of the box
+     * @param min_zoom The lowest zoom to download
+     * @param max_zoom The highest zoom to download
+     * @return The number of tiles which failed
+     * @throws InvalidParameterException If the box or zoom range is empty
+     * @throws InterruptedException If interrupted while waiting for the workers
+     */
+    public long seed(double min_lat, double min_lng, double max_lat, double max_lng, int min_zoom, int max_zoom)
+            throws InterruptedException {
+        if (min_lat > max_lat || min_lng > max_lng || min_zoom > max_zoom || min_zoom < 0 || max_zoom > 29){
+            throw new InvalidParameterException("The region to seed is empty or the zooms are out of range!");
+        }
+
+        tiles_seeded.set(0);
+        tiles_skipped.set(0);
+        tiles_failed.set(0);
+        tiles_dropped.set(0);
+        image_bytes.set(0);
+        elevation_points.set(0);
+
+        tiles_total = 0;
+        for (int zoom = min_zoom; zoom <= max_zoom; zoom++){
+            int[] range = findTileRange(min_lat, min_lng, max_lat, max_lng, zoom);
+            tiles_total += (long) (range[2] - range[0] + 1) * (long) (range[3] - range[1] + 1);
+        }
+        System.out.printf("Seeding %d tiles from zoom %d to %d into %s\n", tiles_total, min_zoom, max_zoom,
+                tileStore.getRoot());
+
+        // The queue is bounded and the caller runs work when it's full, so enumerating a huge region doesn't queue
+        // every tile in memory at once
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(concurrency * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        start_time = System.nanoTime();
+        reporter.scheduleAtFixedRate(this::report, REPORT_PERIOD, REPORT_PERIOD, TimeUnit.SECONDS);
+
+        try {
+            ArrayList<Vector> batch = new ArrayList<>();
+            for (int zoom = min_zoom; zoom <= max_zoom; zoom++){
+                int[] range = findTileRange(min_lat, min_lng, max_lat, max_lng, zoom);
+
+                for (int x = range[0]; x <= range[2]; x++){
+                    for (int y = range[1]; y <= range[3]; y++){
+                        if (tileStore.hasImagery(zoom, x, y) && tileStore.hasElevation(zoom, x, y, resolution)){
+                            tiles_skipped.incrementAndGet();
+                            continue;
+                        }
+
+                        batch.add(new Vector(x, y, zoom));
+                        if (batch.size() == batch_size){
+                            submit(workers, batch);
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+            }
+            if (!batch.isEmpty()){
+                submit(workers, batch);
+            }
+
+            workers.shutdown();
+            while (!workers.awaitTermination(REPORT_PERIOD, TimeUnit.SECONDS)){
+                // Keep waiting, the reporter shows progress in the meantime
+            }
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+        }
+
+        report();
+        return tiles_failed.get();
+    }
+
+    /**
+     * Hand a batch of tiles to the workers
+     * @param workers The pool of workers
+     * @param batch The tiles to download, x and y are the tile and z is the zoom
+     */
+    private void submit(ThreadPoolExecutor workers, ArrayList<Vector> batch){
+        workers.execute(() -> seedBatch(batch));
+    }
+
+    /**
+     * Download the missing imagery and elevation of a batch of tiles, run on a worker
+     * @param batch The tiles to download, x and y are the tile and z is the zoom
+     */
+    private void seedBatch(ArrayList<Vector> batch){
+        ArrayList<Vector> needs_elevation = new ArrayList<>();
+        ArrayList<Vector> downloaded = new ArrayList<>();
+
+        for (Vector tile : batch){
+            int zoom = (int) tile.getZ();
+            int x = (int) tile.getX();
+            int y = (int) tile.getY();
+
+            try {
+                if (!tileStore.hasImagery(zoom, x, y)){
+                    byte[] image = dataDriver.getSatalliteImageBytes(tile, RequestPriority.LOW);
+                    if (image.length == 0){
+                        throw new IllegalStateException("The tile API returned an empty image");
+                    }
+                    // Only store images which decode, like DataDriver, so the store never holds an error page
+                    if (!dataDriver.isDecodable(image)){
+                        throw new IllegalStateException("The tile API returned an image which doesn't decode");
+                    }
+                    tileStore.writeImagery(zoom, x, y, image);
+                    image_bytes.addAndGet(image.length);
+                }
+                if (tileStore.hasElevation(zoom, x, y, resolution)){
+                    downloaded.add(tile);
+                } else {
+                    needs_elevation.add(tile);
+                }
+            } catch (RequestDroppedException e) {
+                // Dropped tiles aren't logged one by one, near the limits every remaining tile is dropped
+                tiles_dropped.incrementAndGet();
+                tiles_failed.incrementAndGet();
+            } catch (RuntimeException e) {
+                System.out.printf("Failed to seed the imagery of %d/%d/%d: %s\n", zoom, x, y, e.getMessage());
+                tiles_failed.incrementAndGet();
+            }
+        }
+
+        if (!needs_elevation.isEmpty()){
+            try {
+                // The data driver writes the elevation to the store as it's downloaded
+                dataDriver.getTileElevationData(needs_elevation.toArray(new Vector[0]), resolution,
+                        RequestPriority.LOW);
+                elevation_points.addAndGet((long) needs_elevation.size() * resolution * resolution);
+                downloaded.addAll(needs_elevation);
+            } catch (RequestDroppedException e) {
+                tiles_dropped.addAndGet(needs_elevation.size());
+                tiles_failed.addAndGet(needs_elevation.size());
+            } catch (RuntimeException e) {
+                System.out.printf("Failed to seed the elevation of %d tiles: %s\n", needs_elevation.size(),
+                        e.getMessage());
+                tiles_failed.addAndGet(needs_elevation.size());
+            }
+        }
+
+        tiles_seeded.addAndGet(downloaded.size());
+    }
+
+    /**
+     * Print the progress and throughput of the current seeding
+     */
+    private void report(){
+        double seconds = Math.max((System.nanoTime() - start_time) / 1e9, 1e-9);
+        long seeded = tiles_seeded.get();
+        long done = seeded + tiles_skipped.get() + tiles_failed.get();
+
+        System.out.printf("Seeded %d/%d tiles (%d skipped, %d failed of which %d dropped near the API's limits) in " +
+                        "%.1fs: %.1f tiles/s, %.1f KB/s imagery, %.0f elevation points/s\n",
+                done, tiles_total, tiles_skipped.get(), tiles_failed.get(), tiles_dropped.get(), seconds,
+                seeded / seconds, image_bytes.get() / 1024.0 / seconds, elevation_points.get() / seconds);
+    }
+
+    /**
+     * Get the number of tiles downloaded by the last seeding
+     * @return The number of tiles seeded
+     */
+    public long getTilesSeeded(){
+        return tiles_seeded.get();
+    }
+
+    /**
+     * Get the number of tiles skipped by the last seeding because they were already stored
+     * @return The number of tiles skipped
+     */
+    public long getTilesSkipped(){
+        return tiles_skipped.get();
+    }
+
+    /**
+     * Get the number of tiles which failed in the last seeding
+     * @return The number of tiles failed
+     */
+    public long getTilesFailed(){
+        return tiles_failed.get();
+    }
+}
@@ -0,0 +1,16 @@
+package Data;
+
+/**
+ * Thrown when the ApiLimiter drops a low priority request because its API is close to its rate or daily quota.
+ * Nothing was sent, so the request can be tried again later. This is an IllegalStateException like every other
+ * failure of a request, so callers which don't care why a request failed don't have to catch it separately.
+ */
+public class RequestDroppedException extends IllegalStateException {
+    /**
+     * Construct the exception
+     * @param message Which request was dropped and why
+     */
+    public RequestDroppedException(String message){
+        super(message);
+    }
+}
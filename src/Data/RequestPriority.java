@@ -0,0 +1,18 @@
+package Data;
+
+/**
+ * How much a request to a rate limited API matters. Low priority requests, such as prefetching and seeding, are
+ * dropped with a RequestDroppedException rather than waited for once an API is close to its rate or daily quota,
+ * leaving what's left for requests the user is waiting on.
+ */
+public enum RequestPriority {
+    /**
+     * Needed now, waits for the rate limit and only fails once the daily quota is used up
+     */
+    NORMAL,
+
+    /**
+     * Nice to have, dropped first when an API is close to its limits
+     */
+    LOW
+}
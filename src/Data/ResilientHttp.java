@@ -0,0 +1,284 @@
+package Data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An HTTP client which keeps trying when a server is slow or failing. Every request is given a timeout, requests
+ * which time out, can't connect or get a 408, 429 or 5xx response are tried again after an exponential backoff with
+ * jitter, and the number of requests sent to each host at once is limited. GET requests still waiting after the
+ * policy's hedge delay are sent a second time and whichever answers first is used, which cuts off the slowest
+ * responses. Anything else is returned as is for the caller to handle.
+ */
+public class ResilientHttp {
+    /**
+     * The client requests are sent with
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * How hard to try before giving up on a request
+     */
+    private final FetchPolicy policy;
+
+    /**
+     * The permits of each host, limiting the requests sent to it at once
+     */
+    private final ConcurrentHashMap<String, Semaphore> hosts;
+
+    /**
+     * The number of attempts made after a first one failed
+     */
+    private final AtomicLong retries;
+
+    /**
+     * The number of hedge requests sent, and the number of them which answered first
+     */
+    private final AtomicLong hedges;
+    private final AtomicLong hedge_wins;
+
+    /**
+     * The number of requests given up on
+     */
+    private final AtomicLong failures;
+
+    /**
+     * Construct a client
+     * @param policy How hard to try before giving up on a request
+     * @throws InvalidParameterException If policy is null
+     */
+    public ResilientHttp(FetchPolicy policy){
+        if (policy == null){
+            throw new InvalidParameterException("A resilient HTTP client needs a fetch policy!");
+        }
+        this.policy = policy;
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(policy.getConnectTimeout()))
+                .build();
+        hosts = new ConcurrentHashMap<>();
+        retries = new AtomicLong();
+        hedges = new AtomicLong();
+        hedge_wins = new AtomicLong();
+        failures = new AtomicLong();
+    }
+
+    /**
+     * Send a request, trying again as the policy allows
+     * @param request The request to send, its timeout is replaced by the policy's
+     * @param handler How to read the body of the response
+     * @return The first response which wasn't a failure worth retrying, or the last response if every attempt
+     * failed with a retryable status
+     * @throws UncheckedIOException If every attempt failed to get a response, or the thread was interrupted
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler){
+        HttpRequest timed = HttpRequest.newBuilder(request, (name, value) -> true)
+                .timeout(Duration.ofMillis(policy.getRequestTimeout()))
+                .build();
+        Semaphore limit = hosts.computeIfAbsent(hostOf(request.uri()),
+                host -> new Semaphore(policy.getMaxPerHost()));
+
+        IOException last = null;
+        HttpResponse<T> last_response = null;
+        long retry_after = 0;
+        try {
+            for (int attempt = 1; attempt <= policy.getMaxAttempts(); attempt++){
+                if (attempt > 1){
+                    retries.incrementAndGet();
+                    Thread.sleep(Math.max(policy.backoff(attempt - 1), retry_after));
+                }
+
+                try {
+                    last_response = attempt(timed, handler, limit);
+                } catch (IOException e){
+                    last = e;
+                    retry_after = 0;
+                    System.out.printf("Request to %s failed (attempt %d of %d): %s\n", describe(request.uri()),
+                            attempt, policy.getMaxAttempts(), e);
+                    continue;
+                }
+
+                if (!isRetryable(last_response.statusCode())){
+                    return last_response;
+                }
+                last = new IOException(String.format("Server responded with %d", last_response.statusCode()));
+                retry_after = retryAfter(last_response);
+                System.out.printf("Request to %s failed (attempt %d of %d): %s\n", describe(request.uri()),
+                        attempt, policy.getMaxAttempts(), last.getMessage());
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while requesting " +
+                    describe(request.uri())));
+        }
+
+        failures.incrementAndGet();
+        if (last_response != null){
+            // The server answered, let the caller see what it said
+            return last_response;
+        }
+        throw new UncheckedIOException(String.format("Gave up on %s after %d attempts", describe(request.uri()),
+                policy.getMaxAttempts()), last);
+    }
+
+    /**
+     * Make a single attempt at a request, hedged if it's a GET which is taking too long
+     */
+    private <T> HttpResponse<T> attempt(HttpRequest request, HttpResponse.BodyHandler<T> handler, Semaphore limit)
+            throws IOException, InterruptedException {
+        limit.acquire();
+        CompletableFuture<HttpResponse<T>> primary = httpClient.sendAsync(request, handler);
+        primary.whenComplete((response, error) -> limit.release());
+
+        CompletableFuture<HttpResponse<T>> hedge = null;
+        try {
+            CompletableFuture<HttpResponse<T>> winner = primary;
+            if (policy.getHedgeDelay() > 0 && request.method().equals("GET")){
+                try {
+                    return primary.get(policy.getHedgeDelay(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e){
+                    // Only hedge if the host has room, a hedge should never wait on a permit
+                    if (limit.tryAcquire()){
+                        hedges.incrementAndGet();
+                        hedge = httpClient.sendAsync(request, handler);
+                        hedge.whenComplete((response, error) -> limit.release());
+                        winner = firstSuccess(primary, hedge);
+                    }
+                }
+            }
+            return winner.get();
+        } catch (ExecutionException e){
+            if (e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("The request failed", e.getCause());
+        } catch (CancellationException e){
+            throw new IOException("The request was cancelled", e);
+        } finally {
+            // Stop whichever request lost, this does nothing to the one which finished
+            primary.cancel(true);
+            if (hedge != null){
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Combine a request and its hedge, completing with whichever succeeds first or failing once both have failed
+     */
+    private <T> CompletableFuture<HttpResponse<T>> firstSuccess(CompletableFuture<HttpResponse<T>> primary,
+                                                              CompletableFuture<HttpResponse<T>> hedge){
+        CompletableFuture<HttpResponse<T>> winner = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        primary.whenComplete((response, error) -> {
+            if (error == null){
+                winner.complete(response);
+            } else if (failed.incrementAndGet() == 2){
+                winner.completeExceptionally(error);
+            }
+        });
+        hedge.whenComplete((response, error) -> {
+            if (error == null){
+                if (winner.complete(response)){
+                    hedge_wins.incrementAndGet();
+                }
+            } else if (failed.incrementAndGet() == 2){
+                winner.completeExceptionally(error);
+            }
+        });
+        return winner;
+    }
+
+    /**
+     * Check whether a status is worth trying again, a timeout, rate limit or server error
+     */
+    private static boolean isRetryable(int status){
+        return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Read how long the server asked us to wait, from a Retry-After header in seconds
+     * @return The milliseconds to wait, limited to the policy's maximum backoff, 0 if the server didn't say
+     */
+    private long retryAfter(HttpResponse<?> response){
+        String header = response.headers().firstValue("Retry-After").orElse(null);
+        if (header == null){
+            return 0;
+        }
+        try {
+            return Math.min(policy.getMaxBackoff(), Math.max(0, Long.parseLong(header.trim())) * 1000);
+        } catch (NumberFormatException e){
+            // An HTTP date, which isn't worth parsing for a capped wait
+            return policy.getMaxBackoff();
+        }
+    }
+
+    /**
+     * The key requests to a host are limited by
+     */
+    private static String hostOf(URI uri){
+        return String.format("%s:%d", uri.getHost(), uri.getPort());
+    }
+
+    /**
+     * Describe a request without its query, which holds the API key
+     */
+    private static String describe(URI uri){
+        return String.format("%s://%s%s", uri.getScheme(), uri.getAuthority(), uri.getPath());
+    }
+
+    /**
+     * Get the policy of this client
+     * @return The fetch policy
+     */
+    public FetchPolicy getPolicy(){
+        return policy;
+    }
+
+    /**
+     * Get the number of attempts made after a first one failed
+     * @return The number of retries
+     */
+    public long getRetries(){
+        return retries.get();
+    }
+
+    /**
+     * Get the number of hedge requests sent
+     * @return The number of hedges
+     */
+    public long getHedges(){
+        return hedges.get();
+    }
+
+    /**
+     * Get the number of hedge requests which answered before the request they hedged
+     * @return The number of hedges which won
+     */
+    public long getHedgeWins(){
+        return hedge_wins.get();
+    }
+
+    /**
+     * Get the number of requests given up on
+     * @return The number of failures
+     */
+    public long getFailures(){
+        return failures.get();
+    }
+}
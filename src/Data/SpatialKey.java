@@ -0,0 +1,195 @@
+package Data;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A latitude and longitude quantized to a grid and packed into a single long along a Z order (Morton) curve. The
+ * bits of the latitude and longitude cells are interleaved, so points close together on Earth usually have keys
+ * close together and a key's parent at fewer bits is the cell containing it. Two points in the same cell have equal
+ * keys, which makes this the key to deduplicate points by or to look up cached values of a location with, rather
+ * than comparing doubles.
+ */
+public final class SpatialKey implements Comparable<SpatialKey> {
+    /**
+     * The most bits each of latitude and longitude can be quantized to, cells of under a centimetre
+     */
+    public static final int MAX_BITS = 31;
+
+    /**
+     * The interleaved latitude (odd bits) and longitude (even bits) cells
+     */
+    private final long code;
+
+    /**
+     * The number of bits each of latitude and longitude were quantized to
+     */
+    private final int bits;
+
+    /**
+     * Construct the key of the cell containing a latitude and longitude
+     * @param lat The latitude, clamped to -90, 90
+     * @param lng The longitude, clamped to -180, 180
+     * @param bits The bits to quantize each of latitude and longitude to, 1 to MAX_BITS. Cells are 180 / 2^bits
+     *             degrees of latitude by 360 / 2^bits degrees of longitude.
+     * @throws InvalidParameterException If bits is out of range
+     */
+    public SpatialKey(double lat, double lng, int bits){
+        this(encode(lat, lng, bits), bits);
+    }
+
+    /**
+     * Construct a key from an already encoded cell
+     */
+    private SpatialKey(long code, int bits){
+        this.code = code;
+        this.bits = bits;
+    }
+
+    /**
+     * Encode the cell containing a latitude and longitude without allocating a key, for hot loops
+     * @param lat The latitude, clamped to -90, 90
+     * @param lng The longitude, clamped to -180, 180
+     * @param bits The bits to quantize each of latitude and longitude to, 1 to MAX_BITS
+     * @return The Morton code of the cell
+     * @throws InvalidParameterException If bits is out of range
+     */
+    public static long encode(double lat, double lng, int bits){
+        if (bits < 1 || bits > MAX_BITS){
+            throw new InvalidParameterException(String.format("A spatial key needs 1 to %d bits!", MAX_BITS));
+        }
+        long row = quantize((lat + 90.0) / 180.0, bits);
+        long column = quantize((lng + 180.0) / 360.0, bits);
+        return (spread(row) << 1) | spread(column);
+    }
+
+    /**
+     * Get the key of the larger cell containing this one
+     * @param bits The bits of the parent, at most the bits of this key
+     * @return The parent key, this key if bits is the same
+     * @throws InvalidParameterException If bits is out of range
+     */
+    public SpatialKey getParent(int bits){
+        if (bits < 1 || bits > this.bits){
+            throw new InvalidParameterException(String.format("A parent key needs 1 to %d bits!", this.bits));
+        }
+        if (bits == this.bits){
+            return this;
+        }
+        return new SpatialKey(code >>> (2 * (this.bits - bits)), bits);
+    }
+
+    /**
+     * Get the latitude of the centre of this key's cell
+     * @return The latitude, in the range -90, 90
+     */
+    public double getLatitude(){
+        return ((compact(code >>> 1) + 0.5) / (double) (1L << bits) * 180.0) - 90.0;
+    }
+
+    /**
+     * Get the longitude of the centre of this key's cell
+     * @return The longitude, in the range -180, 180
+     */
+    public double getLongitude(){
+        return ((compact(code) + 0.5) / (double) (1L << bits) * 360.0) - 180.0;
+    }
+
+    /**
+     * Get the Morton code of this key's cell
+     * @return The interleaved latitude and longitude cells
+     */
+    public long getCode(){
+        return code;
+    }
+
+    /**
+     * Get the bits each of latitude and longitude were quantized to
+     * @return The precision of this key
+     */
+    public int getBits(){
+        return bits;
+    }
+
+    /**
+     * Check whether another object is the key of the same cell at the same precision
+     * @param other The object to compare against
+     * @return True if other is an equal key
+     */
+    @Override
+    public boolean equals(Object other){
+        if (this == other){
+            return true;
+        }
+        if (!(other instanceof SpatialKey)){
+            return false;
+        }
+        SpatialKey key = (SpatialKey) other;
+        return code == key.code && bits == key.bits;
+    }
+
+    /**
+     * Hash this key. Nearby cells differ only in their low bits, so the code is mixed to spread them over a map.
+     * @return A hash consistent with equals
+     */
+    @Override
+    public int hashCode(){
+        long mixed = (code ^ ((long) bits << 58)) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    /**
+     * Order keys along the Z order curve, coarser keys first when the codes are equal
+     * @param other The key to compare against
+     * @return Negative, zero or positive as this key comes before, with or after other
+     */
+    @Override
+    public int compareTo(SpatialKey other){
+        int order = Long.compareUnsigned(code << (2 * (MAX_BITS - bits)),
+                other.code << (2 * (MAX_BITS - other.bits)));
+        return order != 0 ? order : Integer.compare(bits, other.bits);
+    }
+
+    /**
+     * Describe this key, for logging
+     * @return The code, precision and centre of the cell
+     */
+    @Override
+    public String toString(){
+        return String.format("SpatialKey(%x/%d at %.7f, %.7f)", code, bits, getLatitude(), getLongitude());
+    }
+
+    /**
+     * Quantize a value in the range 0, 1 to a cell of a grid 2^bits wide, clamping it into the grid
+     */
+    private static long quantize(double value, int bits){
+        long cells = 1L << bits;
+        long cell = (long) Math.floor(value * cells);
+        return Math.max(0, Math.min(cell, cells - 1));
+    }
+
+    /**
+     * Spread the low 32 bits of a value out to the even bits of a long
+     */
+    private static long spread(long value){
+        value &= 0xFFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        value = (value | (value << 1)) & 0x5555555555555555L;
+        return value;
+    }
+
+    /**
+     * Gather the even bits of a long back into its low 32 bits, the inverse of spread
+     */
+    private static long compact(long value){
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1)) & 0x3333333333333333L;
+        value = (value | (value >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value >>> 4)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value >>> 8)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value >>> 16)) & 0x00000000FFFFFFFFL;
+        return value;
+    }
+}
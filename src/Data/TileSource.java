@@ -0,0 +1,39 @@
+package Data;
+
+/**
+ * A source of satellite imagery, addressed by the tiles of the Web Mercator pyramid. The DataDriver reads all of
+ * its imagery through one of these, so it doesn't matter whether the tiles come from Google or from disk.
+ * Implementations are shared by the TilePipeline's fetch workers, platform or virtual threads, so they must be safe
+ * to use from many threads.
+ */
+public interface TileSource {
+    /**
+     * Read the encoded image of a tile, in any format stb can decode
+     * @param zoom The zoom of the tile
+     * @param x The x (west to east) of the tile
+     * @param y The y (north to south) of the tile
+     * @return The encoded image bytes, null if this source doesn't have the tile
+     * @throws IllegalStateException If the source failed to read the tile
+     */
+    byte[] readTile(int zoom, int x, int y);
+
+    /**
+     * Read the encoded image of a tile at a request priority. Sources behind a rate limited API should override
+     * this, local sources have no limits and ignore the priority.
+     * @param zoom The zoom of the tile
+     * @param x The x (west to east) of the tile
+     * @param y The y (north to south) of the tile
+     * @param priority How much the request matters
+     * @return The encoded image bytes, null if this source doesn't have the tile
+     * @throws IllegalStateException If the source failed to read the tile, or dropped a low priority request
+     */
+    default byte[] readTile(int zoom, int x, int y, RequestPriority priority){
+        return readTile(zoom, x, y);
+    }
+
+    /**
+     * Get a name for this source, for logging
+     * @return A short description of this source
+     */
+    String getName();
+}
@@ -0,0 +1,188 @@
+package Data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
+
+/**
+ * This class is an on-disk store of satellite imagery and elevation, kept by tile. It's filled ahead of time by the
+ * RegionSeeder and read by the DataDriver before anything goes to the network.
+ * The layout under the root directory is:
+ * imagery/zoom/x/y.png = The raw image bytes as returned by the tile API
+ * elevation/resolution/zoom/x/y.bin = The elevation, in meters, of each point of the tile's lattice as little endian
+ * floats, in the order of WorldCoordinate.tileLattice
+ * Every file is written to a temporary file first then moved into place, so an interrupted write never leaves a
+ * partial tile behind.
+ */
+public class TileStore {
+    /**
+     * The directory everything is stored under
+     */
+    private Path root;
+
+    /**
+     * Construct a store in a directory, the directory is created when the first tile is written
+     * @param root The path of the directory to store the tiles in
+     * @throws InvalidParameterException If root is null
+     */
+    public TileStore(String root){
+        if (root == null){
+            throw new InvalidParameterException("A tile store needs a directory!");
+        }
+        this.root = Paths.get(root);
+    }
+
+    /**
+     * Check whether the imagery of a tile is stored
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @return True if the image is stored
+     */
+    public boolean hasImagery(int zoom, int x, int y){
+        return Files.isRegularFile(imageryPath(zoom, x, y));
+    }
+
+    /**
+     * Read the imagery of a tile
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @return The raw image bytes, null if the tile isn't stored
+     * @throws IllegalStateException If the file exists but couldn't be read
+     */
+    public byte[] readImagery(int zoom, int x, int y){
+        Path path = imageryPath(zoom, x, y);
+        if (!Files.isRegularFile(path)){
+            return null;
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to read stored imagery %s", path), e);
+        }
+    }
+
+    /**
+     * Store the imagery of a tile, replacing any stored before
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param image The raw image bytes
+     * @throws IllegalStateException If the file couldn't be written
+     */
+    public void writeImagery(int zoom, int x, int y, byte[] image){
+        write(imageryPath(zoom, x, y), image);
+    }
+
+    /**
+     * Check whether the elevation of a tile is stored
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param resolution The number of lattice points along each side of the tile
+     * @return True if the elevation is stored
+     */
+    public boolean hasElevation(int zoom, int x, int y, int resolution){
+        return Files.isRegularFile(elevationPath(zoom, x, y, resolution));
+    }
+
+    /**
+     * Read the elevation of a tile's lattice
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param resolution The number of lattice points along each side of the tile
+     * @return The elevation, in meters, of each lattice point, null if the tile isn't stored
+     * @throws IllegalStateException If the file exists but couldn't be read or is the wrong size
+     */
+    public float[] readElevation(int zoom, int x, int y, int resolution){
+        Path path = elevationPath(zoom, x, y, resolution);
+        if (!Files.isRegularFile(path)){
+            return null;
+        }
+        byte[] raw;
+        try {
+            raw = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to read stored elevation %s", path), e);
+        }
+        if (raw.length != resolution * resolution * Float.BYTES){
+            throw new IllegalStateException(String.format("Stored elevation %s is %d bytes, expected %d",
+                    path, raw.length, resolution * resolution * Float.BYTES));
+        }
+
+        float[] elevations = new float[resolution * resolution];
+        ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(elevations);
+        return elevations;
+    }
+
+    /**
+     * Store the elevation of a tile's lattice, replacing any stored before
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param resolution The number of lattice points along each side of the tile
+     * @param elevations The elevation, in meters, of each lattice point
+     * @throws InvalidParameterException If there isn't an elevation for every lattice point
+     * @throws IllegalStateException If the file couldn't be written
+     */
+    public void writeElevation(int zoom, int x, int y, int resolution, float[] elevations){
+        if (elevations == null || elevations.length != resolution * resolution){
+            throw new InvalidParameterException("A stored tile needs an elevation for every lattice point!");
+        }
+        ByteBuffer raw = ByteBuffer.allocate(elevations.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        raw.asFloatBuffer().put(elevations);
+        write(elevationPath(zoom, x, y, resolution), raw.array());
+    }
+
+    /**
+     * Get the directory this store is in
+     * @return The root directory
+     */
+    public Path getRoot(){
+        return root;
+    }
+
+    /**
+     * Find the path of a tile's imagery
+     */
+    private Path imageryPath(int zoom, int x, int y){
+        return root.resolve("imagery").resolve(Integer.toString(zoom)).resolve(Integer.toString(x))
+                .resolve(String.format("%d.png", y));
+    }
+
+    /**
+     * Find the path of a tile's elevation
+     */
+    private Path elevationPath(int zoom, int x, int y, int resolution){
+        return root.resolve("elevation").resolve(Integer.toString(resolution)).resolve(Integer.toString(zoom))
+                .resolve(Integer.toString(x)).resolve(String.format("%d.bin", y));
+    }
+
+    /**
+     * Write a file through a temporary file in the same directory, so readers only ever see a whole file
+     * @param path The final path of the file
+     * @param data The contents of the file
+     * @throws IllegalStateException If the file couldn't be written
+     */
+    private void write(Path path, byte[] data){
+        try {
+            Files.createDirectories(path.getParent());
+            Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, data);
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Failed to write %s to the tile store", path), e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package Data;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket. Tokens refill at a steady rate up to the burst size and each request takes one.
+ * Rather than counting tokens the bucket keeps the single time at which it will next be full (the "generic cell
+ * rate algorithm"), so taking a token is one compare and swap and nothing has to refill it on a timer.
+ */
+public class TokenBucket {
+    /**
+     * The nanoseconds it takes to refill one token
+     */
+    private final long interval;
+
+    /**
+     * The number of tokens the bucket holds when full
+     */
+    private final int burst;
+
+    /**
+     * The System.nanoTime at which the bucket will be full again, in the past while it's full
+     */
+    private final AtomicLong full_at;
+
+    /**
+     * Construct a full bucket
+     * @param rate The tokens refilled each second, must be > 0
+     * @param burst The tokens the bucket holds when full, must be > 0
+     * @throws InvalidParameterException If rate or burst isn't positive
+     */
+    public TokenBucket(double rate, int burst){
+        if (rate <= 0.0 || burst <= 0){
+            throw new InvalidParameterException("A token bucket needs a positive rate and burst!");
+        }
+        this.interval = Math.max(1, (long) (1e9 / rate));
+        this.burst = burst;
+        this.full_at = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take a token, waiting for one if the bucket is empty. The token is reserved straight away so concurrent
+     * callers queue up behind each other.
+     * @return The nanoseconds the caller must wait before using the token, 0 if it can be used now
+     */
+    public long reserve(){
+        while (true){
+            long now = System.nanoTime();
+            long current = full_at.get();
+            long backlog = Math.max(0, current - now);
+            if (full_at.compareAndSet(current, now + backlog + interval)){
+                return Math.max(0, backlog + interval - (burst * interval));
+            }
+        }
+    }
+
+    /**
+     * Take a token only if one is available now and at least keep tokens would be left afterwards
+     * @param keep The tokens to leave in the bucket for others, 0 to take the last token
+     * @return True if a token was taken
+     */
+    public boolean tryAcquire(int keep){
+        while (true){
+            long now = System.nanoTime();
+            long current = full_at.get();
+            long backlog = Math.max(0, current - now);
+            if (backlog + interval > (long) (burst - keep) * interval){
+                return false;
+            }
+            if (full_at.compareAndSet(current, now + backlog + interval)){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the number of tokens in the bucket now
+     * @return The tokens available, possibly fractional
+     */
+    public double getAvailable(){
+        long backlog = Math.max(0, full_at.get() - System.nanoTime());
+        return Math.max(0.0, burst - ((double) backlog / (double) interval));
+    }
+
+    /**
+     * Get the number of tokens the bucket holds when full
+     * @return The burst size
+     */
+    public int getBurst(){
+        return burst;
+    }
+}
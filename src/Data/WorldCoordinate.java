@@ -7,6 +7,9 @@
 package Data;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import Math.BatchTransform;
 import Math.Vector;
 
 /**
@@ -83,6 +86,231 @@ public class WorldCoordinate {
         this(39.7391536, -104.9847034, 256, 15);
     }
 
+    /**
+     * The bits of a packed tile given to the zoom, x and y, see packTile
+     */
+    private static final int PACKED_ZOOM_SHIFT = 58;
+    private static final int PACKED_X_SHIFT = 29;
+    private static final long PACKED_MASK = (1L << 29) - 1;
+
+    /**
+     * The latitude Web Mercator is cut off at, so the world is square
+     */
+    public static final double MAX_LATITUDE = 85.05112877980659;
+
+    /**
+     * Project a latitude and longitude to a fractional tile of a zoom level. This doesn't allocate.
+     * @param lat The latitude, in the range -90, 90
+     * @param lng The longitude, in the range -180, 180
+     * @param zoom The zoom level, 0 to 30
+     * @param out The array to write the tile x to at offset and the tile y to at offset + 1
+     * @param offset The index in out to write to
+     */
+    public static void projectToTile(double lat, double lng, int zoom, double[] out, int offset){
+        double scale = (double) (1L << zoom);
+        out[offset] = genericX(lng) * scale;
+        out[offset + 1] = genericY(lat) * scale;
+    }
+
+    /**
+     * Project a latitude and longitude to a pixel of a zoom level, that is a tile multiplied by the tile size
+     * @param lat The latitude, in the range -90, 90
+     * @param lng The longitude, in the range -180, 180
+     * @param zoom The zoom level, 0 to 30
+     * @param tile_size The number of pixels along each side of a tile, usually 256
+     * @param out The array to write the pixel x to at offset and the pixel y to at offset + 1
+     * @param offset The index in out to write to
+     */
+    public static void projectToPixel(double lat, double lng, int zoom, int tile_size, double[] out, int offset){
+        double scale = (double) (1L << zoom) * tile_size;
+        out[offset] = genericX(lng) * scale;
+        out[offset + 1] = genericY(lat) * scale;
+    }
+
+    /**
+     * Unproject a fractional tile of a zoom level back to a latitude and longitude. This doesn't allocate.
+     * @param x The tile x, 0 is the west edge of the world
+     * @param y The tile y, 0 is the north edge of the world
+     * @param zoom The zoom level, 0 to 30
+     * @param out The array to write the latitude to at offset and the longitude to at offset + 1
+     * @param offset The index in out to write to
+     */
+    public static void unprojectTile(double x, double y, int zoom, double[] out, int offset){
+        double inverse = 1.0 / (double) (1L << zoom);
+        out[offset] = genericLatitude(y * inverse);
+        out[offset + 1] = genericLongitude(x * inverse);
+    }
+
+    /**
+     * Unproject many fractional tiles of a zoom level to latitudes and longitudes at once, see BatchTransform
+     * @param xs The tile x of each point
+     * @param ys The tile y of each point
+     * @param zoom The zoom level, 0 to 30
+     * @param lats The array to write the latitude of each point to
+     * @param lngs The array to write the longitude of each point to
+     * @param count The number of points
+     */
+    public static void unprojectTiles(double[] xs, double[] ys, int zoom, double[] lats, double[] lngs, int count){
+        BatchTransform.unproject(xs, ys, (double) (1L << zoom), lats, lngs, count);
+    }
+
+    /**
+     * Find the tile of a zoom level containing a latitude and longitude, packed into a long
+     * @param lat The latitude, clamped to the edge of Web Mercator
+     * @param lng The longitude, in the range -180, 180
+     * @param zoom The zoom level, 0 to 29
+     * @return The packed tile, see packTile
+     */
+    public static long tileAt(double lat, double lng, int zoom){
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        int last = (1 << zoom) - 1;
+        int x = (int) Math.floor(genericX(lng) * (1 << zoom));
+        int y = (int) Math.floor(genericY(clamped) * (1 << zoom));
+        return packTile(zoom, Math.max(0, Math.min(x, last)), Math.max(0, Math.min(y, last)));
+    }
+
+    /**
+     * Pack a tile into a single long, zoom in the top 6 bits then 29 bits each of x and y
+     * @param zoom The zoom level, 0 to 29
+     * @param x The tile x
+     * @param y The tile y
+     * @return The packed tile
+     */
+    public static long packTile(int zoom, int x, int y){
+        return ((long) zoom << PACKED_ZOOM_SHIFT) | (((long) x & PACKED_MASK) << PACKED_X_SHIFT)
+                | ((long) y & PACKED_MASK);
+    }
+
+    /**
+     * Get the zoom of a packed tile
+     * @param packed The packed tile
+     * @return The zoom level
+     */
+    public static int packedZoom(long packed){
+        return (int) (packed >>> PACKED_ZOOM_SHIFT);
+    }
+
+    /**
+     * Get the x of a packed tile
+     * @param packed The packed tile
+     * @return The tile x
+     */
+    public static int packedX(long packed){
+        return (int) ((packed >>> PACKED_X_SHIFT) & PACKED_MASK);
+    }
+
+    /**
+     * Get the y of a packed tile
+     * @param packed The packed tile
+     * @return The tile y
+     */
+    public static int packedY(long packed){
+        return (int) (packed & PACKED_MASK);
+    }
+
+    /**
+     * Convert a longitude to a generic x, 0 at the west edge of the world and 1 at the east
+     */
+    private static double genericX(double lng){
+        return (lng / 360.0) + 0.5;
+    }
+
+    /**
+     * Convert a latitude to a generic y, 0 at the north edge of the world and 1 at the south
+     */
+    private static double genericY(double lat){
+        double mercator = -Math.log(Math.tan((0.25 + (lat / 360.0)) * Math.PI));
+        return 0.5 * (1.0 + (mercator / Math.PI));
+    }
+
+    /**
+     * Convert a generic y back to a latitude
+     */
+    private static double genericLatitude(double y){
+        double mercator = Math.PI * ((2.0 * y) - 1.0);
+        return 360.0 * ((Math.atan(Math.exp(-mercator)) / Math.PI) - 0.25);
+    }
+
+    /**
+     * Convert a generic x back to a longitude
+     */
+    private static double genericLongitude(double x){
+        return (x - 0.5) * 360.0;
+    }
+
+    /**
+     * Construct a world coordinate from a "generic" point, that is a tile coordinate divided by 2^zoom such that the
+     * whole world fits within 0 to 1 on both axes. X follows longitude (west is 0) and Y follows latitude (north is 0).
+     * @param x The generic x, in the range 0, 1
+     * @param y The generic y, in the range 0, 1
+     * @return A new world coordinate at that point, its tile is the generic point
+     * @throws InvalidParameterException If the point is outside of the world
+     */
+    public static WorldCoordinate fromGenericPoint(double x, double y){
+        return new WorldCoordinate(genericLatitude(y), genericLongitude(x));
+    }
+
+    /**
+     * Generate the lattice of points across a tile, the corners of the tile included. This is the same lattice a tile's
+     * mesh has vertices at, so elevation fetched for it can be stored and reused by tile.
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param resolution The number of points along each side, must be at least 2
+     * @return The coordinates of the points, going south then east
+     * @throws InvalidParameterException If resolution is less than 2
+     */
+    public static ArrayList<WorldCoordinate> tileLattice(int zoom, int x, int y, int resolution){
+        double[] latitudes = new double[resolution * resolution];
+        double[] longitudes = new double[resolution * resolution];
+        tileLattice(zoom, x, y, resolution, latitudes, longitudes, 0);
+
+        ArrayList<WorldCoordinate> lattice = new ArrayList<>(resolution * resolution);
+        for (int i = 0; i < latitudes.length; i++){
+            lattice.add(new WorldCoordinate(latitudes[i], longitudes[i]));
+        }
+
+        return lattice;
+    }
+
+    /**
+     * Generate the lattice of points across a tile straight into arrays, see tileLattice. Every point of a column
+     * shares a longitude and every point of a row shares a latitude, so only the points along the tile's north and
+     * west edges are unprojected, in one batch through unprojectTiles, and copied across the lattice.
+     * @param zoom The zoom of the tile
+     * @param x The x of the tile
+     * @param y The y of the tile
+     * @param resolution The number of points along each side, must be at least 2
+     * @param latitudes The array to write the latitude of each point to
+     * @param longitudes The array to write the longitude of each point to
+     * @param offset The index in the arrays to write the first point to
+     * @throws InvalidParameterException If resolution is less than 2
+     */
+    public static void tileLattice(int zoom, int x, int y, int resolution, double[] latitudes, double[] longitudes,
+                                   int offset){
+        if (resolution < 2){
+            throw new InvalidParameterException("A tile lattice needs at least 2 points along each side!");
+        }
+        double step = 1.0 / (double) (resolution - 1);
+
+        // Point k of the batch is column k's x and row k's y, so it unprojects to both their coordinates at once
+        double[] edge_x = new double[resolution];
+        double[] edge_y = new double[resolution];
+        for (int k = 0; k < resolution; k++){
+            edge_x[k] = x + (k * step);
+            edge_y[k] = y + (k * step);
+        }
+        double[] row_latitudes = new double[resolution];
+        double[] column_longitudes = new double[resolution];
+        unprojectTiles(edge_x, edge_y, zoom, row_latitudes, column_longitudes, resolution);
+
+        for (int i = 0; i < resolution; i++){
+            int column = offset + (i * resolution);
+            System.arraycopy(row_latitudes, 0, latitudes, column, resolution);
+            Arrays.fill(longitudes, column, column + resolution, column_longitudes[i]);
+        }
+    }
+
     /**
      * Convert the tile coordinate, interpreted as a generic point when only latitude and longitude are provided,
      * to a proper 2d tile
@@ -99,10 +327,7 @@ public class WorldCoordinate {
      * @throws InvalidParameterException If lat or lng are not within valid ranges
      */
     private static Vector convertWorldToGenericPoint(double lat, double lng){
-        double mercator = -Math.log(Math.tan((0.25 + lat / 360.0) * Math.PI));
-        double x = 1 * (lng / 360.0 + 0.5);
-        double y = (1.0 / 2.0) * (1 + mercator / Math.PI);
-        return new Vector(x, y,0);
+        return new Vector(genericX(lng), genericY(lat), 0);
     }
 
     /**
@@ -113,16 +338,10 @@ public class WorldCoordinate {
      * @return A vector for the specific tile, Z is zoom
      */
     private static Vector convertGenericPointToTile(Vector point, int tile_size, int zoom){
-        Vector out_point = new Vector(point.getX(), point.getY(), point.getZ());
-        out_point.setX(point.getX() * tile_size);
-        out_point.setY(point.getY() * tile_size);
+        // The tile size cancels out, a generic point is already in units of whole tiles at zoom 0
+        double scale = (double) (1L << zoom);
 
-        double scale = Math.pow(2, zoom);
-
-        double x = ((out_point.getX() * scale) / tile_size);
-        double y = ((out_point.getY() * scale) / tile_size);
-
-        return new Vector(x,y,zoom);
+        return new Vector(point.getX() * scale, point.getY() * scale, zoom);
     }
 
     /**
@@ -132,13 +351,10 @@ public class WorldCoordinate {
      * @return The latitude and longitude, z is zero
      */
     private static Vector convertTileToWorld(Vector tile){
-        double s = Math.pow(2.0, tile.getZ());
-
-        double latitude =
-                360 * (-0.25 + ((1/Math.PI) * (Math.atan(Math.pow(Math.E, -(Math.PI * (((tile.getX()*2)/s)-1)))))));
+        int zoom = (int) tile.getZ();
 
-        double longitude =
-                360 * (-0.5 + (tile.getY()/s));
+        double latitude = tileLatitude(tile.getX(), zoom);
+        double longitude = tileLongitude(tile.getY(), zoom);
 
         if (latitude < -90.0 || latitude > 90.0){
             throw new InvalidParameterException("Generated Tile doesn't exist in the X axis!");
@@ -150,6 +366,20 @@ public class WorldCoordinate {
         return new Vector(latitude, longitude, 0);
     }
 
+    /**
+     * The latitude of a tile as given to the tile constructor, whose X is read as the latitude axis
+     */
+    private static double tileLatitude(double tile_x, int zoom){
+        return genericLatitude(tile_x / (double) (1L << zoom));
+    }
+
+    /**
+     * The longitude of a tile as given to the tile constructor, whose Y is read as the longitude axis
+     */
+    private static double tileLongitude(double tile_y, int zoom){
+        return genericLongitude(tile_y / (double) (1L << zoom));
+    }
+
     /**
      * Find the bounds of this tile, this will throw nonsense values if this coordinate doesn't have a tile
      * configured with a zoom.
@@ -158,13 +388,11 @@ public class WorldCoordinate {
      */
     public Vector findBounds(){
         Vector tile = getTile();
-        Vector world_coordinate = getWorldCoordinate();
+        int zoom = (int) tile.getZ();
         // The difference between the center latitudes of this and the right adjacent tile, divided by 2 to get radius
-        double lat = (convertTileToWorld(new Vector(tile.getX() + 1, tile.getY(), tile.getZ())).getX()
-                - world_coordinate.getX()) / 2.0;
+        double lat = (tileLatitude(tile.getX() + 1, zoom) - latlng.getX()) / 2.0;
 
-        double lng = (convertTileToWorld(new Vector(tile.getX(), tile.getY()+1, tile.getZ())).getY()
-                - world_coordinate.getY()) / 2.0;
+        double lng = (tileLongitude(tile.getY() + 1, zoom) - latlng.getY()) / 2.0;
 
         return new Vector(lat, lng, 0);
     }
@@ -195,36 +423,27 @@ public class WorldCoordinate {
      */
     public Vector determineZoomOffset(Vector current_offset, int max_zoom, int current_zoom){
         Vector offset = new Vector();
-        System.out.printf("Zooms: %d %d\n", max_zoom, current_zoom);
         if (max_zoom < current_zoom){
-            System.out.printf("Zoom diff: %d\n", current_zoom - max_zoom);
             //if (Math.abs(current_zoom - max_zoom) == 1){
-                WorldCoordinate high_res = new WorldCoordinate(
-                        latlng.getX(),
-                        latlng.getY(),
-                        256, current_zoom
-                );
-
-                WorldCoordinate low_res = new WorldCoordinate(
-                        latlng.getX(),
-                        latlng.getY(),
-                        256, max_zoom
-                );
+                // The tile of this coordinate at both zooms, high then low
+                double[] tiles = new double[4];
+                projectToTile(latlng.getX(), latlng.getY(), current_zoom, tiles, 0);
+                projectToTile(latlng.getX(), latlng.getY(), max_zoom, tiles, 2);
 
                 Vector offset_hi = new Vector(
-                        high_res.getTile().getX() % 256,
-                        high_res.getTile().getY() % 256,
+                        tiles[0] % 256,
+                        tiles[1] % 256,
                         0.0
                 );
 
 
                 Vector offset_lw = new Vector(
-                        low_res.getTile().getX() % 256,
-                        low_res.getTile().getY() % 256,
+                        tiles[2] % 256,
+                        tiles[3] % 256,
                         0.0
                 );
 
-                double scale = Math.pow(2, max_zoom);
+                double scale = (double) (1L << max_zoom);
 
                 Vector offset_lw_in_hr = new Vector(
                         offset_lw.getX()  / scale,
@@ -272,4 +491,41 @@ public class WorldCoordinate {
     public Vector getTile(){
         return coordinates;
     }
+
+    /**
+     * Get the key of the cell of a grid containing this coordinate, for deduplicating coordinates or caching by
+     * location at a chosen precision
+     * @param bits The bits to quantize each of latitude and longitude to, 1 to SpatialKey.MAX_BITS
+     * @return The spatial key of this coordinate
+     * @throws InvalidParameterException If bits is out of range
+     */
+    public SpatialKey getSpatialKey(int bits){
+        return new SpatialKey(latlng.getX(), latlng.getY(), bits);
+    }
+
+    /**
+     * Check whether another object is a world coordinate at exactly the same latitude and longitude. The tile is
+     * derived from the latitude and longitude, so it isn't compared.
+     * @param other The object to compare against
+     * @return True if other is at the same place
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other){
+            return true;
+        }
+        if (!(other instanceof WorldCoordinate)){
+            return false;
+        }
+        return latlng.equals(((WorldCoordinate) other).latlng);
+    }
+
+    /**
+     * Hash this coordinate by its latitude and longitude
+     * @return A hash consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        return latlng.hashCode();
+    }
 }
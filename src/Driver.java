@@ -9,6 +9,12 @@ import Launcher.*;
 
 public class Driver {
     public static void main(String[] args){
+        // The seeder runs without any windows
+        if (args.length > 0 && args[0].equals("seed")){
+            Seeder.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         Launcher launcher = new Launcher(800,800);
 
         launcher.init();
@@ -23,6 +23,11 @@ public class GLCamera extends GLObject{
      */
     private Matrix projection;
 
+    /**
+     * The vertical field of view of the projection, in degrees
+     */
+    private float fov;
+
     /**
      * Construct this camera with provided projection parameters and transform vector
      * @param transform The transform to assign to this camera
@@ -34,6 +39,7 @@ public class GLCamera extends GLObject{
     public GLCamera(Transform transform, float fov, float aspect, float zNear, float zFar) {
         this.transform = transform;
         this.projection = new Matrix(fov, aspect, zNear, zFar);
+        this.fov = fov;
     }
 
     /**
@@ -67,6 +73,13 @@ public class GLCamera extends GLObject{
         this.transform = transform;
     }
 
+    /**
+     * Get the vertical field of view of this camera
+     * @return The field of view, in degrees
+     */
+    public float getFov(){
+        return fov;
+    }
 
     /**
      * Do nothing as we don't use the handle
@@ -107,6 +120,9 @@ public class GLCamera extends GLObject{
         // Set the view and projection matrix
         context.getShader().setMatrixUniform(proj_loc, projection.getRawMatrix());
         context.getShader().setMatrixUniform(view_loc, view.getRawMatrix());
+
+        // Remember ourselves so shaders bound after us get our matrices too
+        context.setCamera(this);
     }
 
     /**
@@ -114,9 +130,16 @@ public class GLCamera extends GLObject{
      * @return A normalized vector for the forward of this camera
      */
     public Vector getForward(){
-        // BASED ON : https://learnopengl.com/Getting-started/Camera
-        Vector rotation = transform.getRotation();
+        return getForward(transform.getRotation());
+    }
 
+    /**
+     * Calculate the forward vector of a camera rotated by some euler angles, for cameras moved off the render thread
+     * @param rotation The pitch and yaw of the camera, in degrees
+     * @return A normalized vector for the forward of the camera
+     */
+    public static Vector getForward(Vector rotation){
+        // BASED ON : https://learnopengl.com/Getting-started/Camera
         // Extract the pitch
         double pitch = rotation.getX();
 
@@ -14,12 +14,57 @@ public class GLHeightmap extends GLVertexArray{
      */
     private int resolution;
 
+    /**
+     * Whether the vertices are packed heights, VertexLayout.PACKED_HEIGHT, which shaders/vertex_terrain.glsl
+     * rebuilds into full vertices
+     */
+    private boolean packed;
+
+    /**
+     * The height a packed height of 0 is and the height a packed height of 65535 adds to it
+     */
+    private float[] height_range;
+
+    /**
+     * Whether the elements are a list of triangles rather than a triangle strip for each row
+     */
+    private boolean triangle_list;
+
+    /**
+     * The shader the packed height uniforms were looked up in, and their locations, so they're only looked up again
+     * when a different shader is bound
+     */
+    private GLShader uniform_shader;
+    private int resolution_loc;
+    private int height_range_loc;
+
     /**
      * Construct this heightmap with a provided resolution
      */
     public GLHeightmap(int resolution){
         super();
         this.resolution = resolution;
+        this.height_range = new float[2];
+    }
+
+    /**
+     * Mark this heightmap's vertices as packed heights, see HeightmapMesh.getPackedHeights, and give the range
+     * they're fractions of. The range is passed to the shader each time the heightmap is drawn.
+     * @param offset The height a packed height of 0 is
+     * @param scale The height a packed height of 65535 adds to the offset
+     */
+    public void setHeightRange(float offset, float scale){
+        packed = true;
+        height_range[0] = offset;
+        height_range[1] = scale;
+    }
+
+    /**
+     * Draw the elements as a list of triangles, such as an adaptive mesh, rather than a triangle strip for each row
+     * @param triangle_list True if the elements are a list of triangles
+     */
+    public void setTriangleList(boolean triangle_list){
+        this.triangle_list = triangle_list;
     }
 
     /**
@@ -35,18 +80,37 @@ public class GLHeightmap extends GLVertexArray{
         }
 
         useMesh();
+        context.countStateChange();
+
+        if (packed){
+            // The shader rebuilds each vertex from its index and packed height
+            GLShader shader = context.getShader();
+            if (shader != uniform_shader){
+                uniform_shader = shader;
+                resolution_loc = shader.getUniformLocation("resolution");
+                height_range_loc = shader.getUniformLocation("heightRange");
+            }
+            shader.setUniformInt(resolution_loc, resolution);
+            shader.setVec2Uniform(height_range_loc, height_range);
+        }
+
+        if (triangle_list){
+            GL33.glDrawElements(GL33.GL_TRIANGLES, getElementCount(), GL33.GL_UNSIGNED_INT, 0L);
+            context.countDrawCalls(1);
+        } else {
+            // For each row of the height map
+            for (int s = 0; s < resolution - 1; ++s) {
+                /*
+                 Draw the heightmap line, we render 20 vertices as each 3 form a triangle (but it's also a triangle
+                 strip so the previous vertex is the first of the next triangle.
 
-        // For each row of the height map
-        for (int s = 0; s < resolution - 1; ++s) {
-            /*
-             Draw the heightmap line, we render 20 vertices as each 3 form a triangle (but it's also a triangle
-             strip so the previous vertex is the first of the next triangle.
-
-             The final parameter is a pointer:
-             size of an integer times the 20 vertices rendered times the row of the height map
-             */
-            GL33.glDrawElements(GL33.GL_TRIANGLE_STRIP, resolution * 2, GL33.GL_UNSIGNED_INT,
-                    ((4 * (long) resolution * 2 * s)));
+                 The final parameter is a pointer:
+                 size of an integer times the 20 vertices rendered times the row of the height map
+                 */
+                GL33.glDrawElements(GL33.GL_TRIANGLE_STRIP, resolution * 2, GL33.GL_UNSIGNED_INT,
+                        ((4 * (long) resolution * 2 * s)));
+            }
+            context.countDrawCalls(resolution - 1);
         }
 
         // Set ourselves to the context
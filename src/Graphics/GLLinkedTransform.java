@@ -1,13 +1,13 @@
 package Graphics;
 
 import Math.Transform;
+import Math.TransformHierarchy;
 import Math.Matrix;
 
-import java.security.InvalidParameterException;
-
 /**
  * A special implementation of GLTransform which includes the ability to link to a parent allowing for a rough
- * scene graph.
+ * scene graph. Every transform linked to the same root shares one TransformHierarchy, which is updated once a frame
+ * by whichever of them is used first, each use then only uploads its cached world matrix.
  */
 public class GLLinkedTransform extends GLTransform{
     /**
@@ -15,15 +15,28 @@ public class GLLinkedTransform extends GLTransform{
      */
     private GLLinkedTransform parent;
 
+    /**
+     * The hierarchy of this transform's tree, shared with its parent
+     */
+    private final TransformHierarchy hierarchy;
+
+    /**
+     * This transform's node in the hierarchy
+     */
+    private final int node;
+
     /**
      * Construct this object with a provided transform AND parent
      * @param transform A transform object to construct this object from
      * @param parent The parent of this transform, may be null as to indicate the top.
+     * @throws java.security.InvalidParameterException If the transform is null
      */
     public GLLinkedTransform(Transform transform, GLLinkedTransform parent) {
         super(transform);
 
         this.parent = parent;
+        this.hierarchy = parent == null ? new TransformHierarchy() : parent.hierarchy;
+        this.node = hierarchy.add(transform, parent == null ? -1 : parent.node);
     }
 
     /**
@@ -42,9 +55,17 @@ public class GLLinkedTransform extends GLTransform{
         return parent != null;
     }
 
+    /**
+     * Get the hierarchy of this transform's tree
+     * @return The hierarchy, shared by every transform linked to the same root
+     */
+    public TransformHierarchy getHierarchy(){
+        return hierarchy;
+    }
+
     /**
      * A recursive method to construct a model matrix from a GLLinkedTransform and continue until the provided
-     * GLLinkedTransform
+     * GLLinkedTransform. This rebuilds every matrix up to the root, use draws from the hierarchy's cache instead.
      * @param parent The GLLinkedTransform to apply to the matrix, if null the method exits
      * @param model The model matrix to apply operations to, cannot be null
      */
@@ -59,21 +80,23 @@ public class GLLinkedTransform extends GLTransform{
     }
 
     /**
-     * Modified version of the GLTransform use method to construct the model from the parent
+     * Get the world matrix of this transform, updating the hierarchy if anything in it changed
+     * @return The raw world matrix, shared with the hierarchy so it must not be changed
+     */
+    @Override
+    public float[] getModel(){
+        hierarchy.update();
+        return hierarchy.getWorldMatrix(node);
+    }
+
+    /**
+     * Modified version of the GLTransform use method to use the world matrix cached by the hierarchy
      * @param context A context of the currently bound objects is provided to assist in preparing and execution
      * @throws java.security.InvalidParameterException If there is no shader in the context
      */
     @Override
     public void use(GraphicsContext context) {
-        if (!context.hasShader()){
-            throw new InvalidParameterException("No shader provided to GLTransform on use!");
-        }
-
-        Matrix model = new Matrix();
-
-        constructModel(this, model);
-
-        int model_loc = context.getShader().getUniformLocation("model");
-        context.getShader().setMatrixUniform(model_loc, model.getRawMatrix());
+        hierarchy.update(context.getFrame());
+        setModelUniform(context, hierarchy.getWorldMatrix(node));
     }
 }
@@ -26,4 +26,12 @@ public abstract class GLObject {
      * @param context A context of the currently bound objects is provided to assist in preparing and execution
      */
     public abstract void use(GraphicsContext context);
+
+    /**
+     * Get the estimated GPU memory held by this object, see GLResources
+     * @return The bytes of GPU memory, 0 for objects which hold none
+     */
+    public long getGPUBytes(){
+        return 0;
+    }
 }
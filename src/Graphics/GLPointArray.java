@@ -6,9 +6,9 @@ package Graphics;
  * File created on 3/24/2025
  */
 
+import Utils.NativeMemory;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL33;
-import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -36,8 +36,8 @@ public class GLPointArray extends GLObject{
      * The constructor shouldn't do anything because we don't know EXACTLY when it executes
      */
     public GLPointArray(){
-        handle = GL33.glGenVertexArrays();
-        vbo = GL33.glGenBuffers();
+        handle = GLResources.genVertexArray(getClass());
+        vbo = GLResources.genBuffer(getClass(), GLResources.Category.VERTEX_BUFFER);
     }
 
     /**
@@ -58,16 +58,19 @@ public class GLPointArray extends GLObject{
      * @param vertex_raw An array of raw bytes for these vertices, must be 5x floats per vertex
      */
     public void uploadVertices(float[] vertex_raw){
-        // Convert the float array to a float array
-        FloatBuffer fb = MemoryUtil.memAllocFloat(vertex_raw.length);
-
         // each vertex has 3 floats
         num_vertices = vertex_raw.length / 3;
 
-        fb.put(vertex_raw).flip();
+        // glBufferData copies the vertices, so the native copy only has to live for the call
+        try (NativeMemory.Scope scope = NativeMemory.scope("GLPointArray.uploadVertices")) {
+            FloatBuffer fb = scope.floats(vertex_raw.length);
+
+            fb.put(vertex_raw).flip();
 
-        // Bind the buffer then
-        GL33.glBufferData(GL33.GL_ARRAY_BUFFER, fb, GL33.GL_STATIC_DRAW);
+            // Bind the buffer then
+            GL33.glBufferData(GL33.GL_ARRAY_BUFFER, fb, GL33.GL_STATIC_DRAW);
+        }
+        GLResources.setSize(GLResources.Category.VERTEX_BUFFER, vbo, (long) vertex_raw.length * Float.BYTES);
     }
 
     /**
@@ -86,11 +89,21 @@ public class GLPointArray extends GLObject{
     }
 
     /**
-     * Destroy the Vertex Array object
+     * Destroy the Vertex Array object along with its vertex buffer
      */
     @Override
     public void destroy() {
-        GL33.glDeleteVertexArrays(handle);
+        GLResources.delete(GLResources.Category.VERTEX_ARRAY, handle);
+        GLResources.delete(GLResources.Category.VERTEX_BUFFER, vbo);
+    }
+
+    /**
+     * Get the GPU memory of the vertex buffer
+     * @return The bytes of GPU memory
+     */
+    @Override
+    public long getGPUBytes() {
+        return GLResources.getSize(GLResources.Category.VERTEX_BUFFER, vbo);
     }
 
     /**
@@ -108,5 +121,7 @@ public class GLPointArray extends GLObject{
         useMesh();
 
         GL33.glDrawArrays(GL33.GL_POINTS, 0, num_vertices);
+        context.countStateChange();
+        context.countDrawCalls(1);
     }
 }
@@ -0,0 +1,317 @@
+package Graphics;
+
+import org.lwjgl.opengl.GL33;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The registry every OpenGL handle is created and deleted through. It remembers which object owns each handle and an
+ * estimate of the GPU memory behind it, so the memory the scene uses can be read by category at any time and
+ * anything not deleted by the time the driver is destroyed can be reported. Handles are only created and deleted on
+ * the OpenGL thread but the totals may be read from any thread.
+ * <p>
+ * Owners are given by their class, which is all a report names, so objects can generate their handles in their
+ * constructors without leaking this.
+ */
+public final class GLResources {
+    /**
+     * The kinds of OpenGL object the registry tracks
+     */
+    public enum Category {
+        /**
+         * 2D textures, sized by their texels and mipmaps
+         */
+        TEXTURE("textures"),
+
+        /**
+         * Vertex buffers (VBOs), sized by the vertices uploaded to them
+         */
+        VERTEX_BUFFER("vertex buffers"),
+
+        /**
+         * Element buffers (EBOs), sized by the indices uploaded to them
+         */
+        ELEMENT_BUFFER("element buffers"),
+
+        /**
+         * Vertex array objects, which only hold state
+         */
+        VERTEX_ARRAY("vertex arrays"),
+
+        /**
+         * Linked shader programs, whose size the driver doesn't tell us
+         */
+        PROGRAM("shader programs");
+
+        /**
+         * The name of the category, for reports
+         */
+        private final String name;
+
+        Category(String name){
+            this.name = name;
+        }
+
+        /**
+         * Get the name of this category, for reports
+         * @return The name, such as "textures"
+         */
+        public String getName(){
+            return name;
+        }
+    }
+
+    /**
+     * The bytes a texel of an RGB texture takes on the GPU, drivers pad RGB8 to RGBA8
+     */
+    private static final long BYTES_PER_TEXEL = 4;
+
+    /**
+     * Every live handle, keyed by its category and handle, see key
+     */
+    private static final ConcurrentHashMap<Long, Resource> resources = new ConcurrentHashMap<>();
+
+    /**
+     * The live bytes and handles of each category, indexed by Category.ordinal()
+     */
+    private static final AtomicLongArray bytes = new AtomicLongArray(Category.values().length);
+    private static final AtomicLongArray counts = new AtomicLongArray(Category.values().length);
+
+    /**
+     * Nothing to construct, everything is static
+     */
+    private GLResources(){}
+
+    /**
+     * Generate a texture handle owned by an object
+     * @param owner The class of the object which must delete the texture
+     * @return The texture handle
+     */
+    static int genTexture(Class<? extends GLObject> owner){
+        int handle = GL33.glGenTextures();
+        register(Category.TEXTURE, handle, owner);
+        return handle;
+    }
+
+    /**
+     * Generate a buffer handle owned by an object
+     * @param owner The class of the object which must delete the buffer
+     * @param category VERTEX_BUFFER or ELEMENT_BUFFER
+     * @return The buffer handle
+     * @throws InvalidParameterException If category isn't a kind of buffer
+     */
+    static int genBuffer(Class<? extends GLObject> owner, Category category){
+        if (category != Category.VERTEX_BUFFER && category != Category.ELEMENT_BUFFER){
+            throw new InvalidParameterException("A buffer must be a vertex or element buffer!");
+        }
+        int handle = GL33.glGenBuffers();
+        register(category, handle, owner);
+        return handle;
+    }
+
+    /**
+     * Generate a vertex array handle owned by an object
+     * @param owner The class of the object which must delete the vertex array
+     * @return The vertex array handle
+     */
+    static int genVertexArray(Class<? extends GLObject> owner){
+        int handle = GL33.glGenVertexArrays();
+        register(Category.VERTEX_ARRAY, handle, owner);
+        return handle;
+    }
+
+    /**
+     * Register a linked shader program owned by an object
+     * @param owner The class of the object which must delete the program
+     * @param program The program handle
+     */
+    static void registerProgram(Class<? extends GLObject> owner, int program){
+        register(Category.PROGRAM, program, owner);
+    }
+
+    /**
+     * Record the GPU memory behind a handle, replacing what was recorded before
+     * @param category The category of the handle
+     * @param handle The handle
+     * @param size The estimated bytes of GPU memory
+     * @throws IllegalStateException If the handle isn't registered
+     */
+    static void setSize(Category category, int handle, long size){
+        Resource resource = resources.get(key(category, handle));
+        if (resource == null){
+            throw new IllegalStateException(String.format("Sized %s %d which isn't registered",
+                    category.getName(), handle));
+        }
+        long previous = resource.size;
+        resource.size = size;
+        bytes.addAndGet(category.ordinal(), size - previous);
+    }
+
+    /**
+     * Delete a handle and forget it
+     * @param category The category of the handle
+     * @param handle The handle, nothing happens if it was never created (0 or less)
+     * @throws IllegalStateException If the handle isn't registered, it was deleted twice or never created here
+     */
+    static void delete(Category category, int handle){
+        if (handle <= 0){
+            return;
+        }
+        Resource resource = resources.remove(key(category, handle));
+        if (resource == null){
+            throw new IllegalStateException(String.format("Deleted %s %d which isn't registered",
+                    category.getName(), handle));
+        }
+        bytes.addAndGet(category.ordinal(), -resource.size);
+        counts.decrementAndGet(category.ordinal());
+
+        switch (category){
+            case TEXTURE:
+                GL33.glDeleteTextures(handle);
+                break;
+            case VERTEX_BUFFER:
+            case ELEMENT_BUFFER:
+                GL33.glDeleteBuffers(handle);
+                break;
+            case VERTEX_ARRAY:
+                GL33.glDeleteVertexArrays(handle);
+                break;
+            case PROGRAM:
+                GL33.glDeleteProgram(handle);
+                break;
+        }
+    }
+
+    /**
+     * Get the recorded GPU memory behind a handle
+     * @param category The category of the handle
+     * @param handle The handle
+     * @return The estimated bytes, 0 if the handle isn't registered
+     */
+    static long getSize(Category category, int handle){
+        Resource resource = resources.get(key(category, handle));
+        return resource == null ? 0 : resource.size;
+    }
+
+    /**
+     * Estimate the GPU memory of an RGB texture
+     * @param width The width of the texture
+     * @param height The height of the texture
+     * @param mipmapped Whether the texture has a full chain of mipmaps, which adds a third
+     * @return The estimated bytes
+     */
+    public static long estimateTextureBytes(int width, int height, boolean mipmapped){
+        long base = (long) width * height * BYTES_PER_TEXEL;
+        return mipmapped ? base + (base / 3) : base;
+    }
+
+    /**
+     * Get the estimated GPU memory of every live handle of a category
+     * @param category The category
+     * @return The live bytes
+     */
+    public static long getBytes(Category category){
+        return bytes.get(category.ordinal());
+    }
+
+    /**
+     * Get the number of live handles of a category
+     * @param category The category
+     * @return The live handles
+     */
+    public static long getCount(Category category){
+        return counts.get(category.ordinal());
+    }
+
+    /**
+     * Get the estimated GPU memory of every live handle
+     * @return The live bytes
+     */
+    public static long getTotalBytes(){
+        long total = 0;
+        for (int i = 0; i < bytes.length(); i++){
+            total += bytes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Print the live handles and estimated bytes of every category
+     */
+    public static void printUsage(){
+        for (Category category : Category.values()){
+            System.out.printf("%s: %d live, %.1f MB\n", category.getName(), getCount(category),
+                    getBytes(category) / (1024.0 * 1024.0));
+        }
+        System.out.printf("Total GPU memory: %.1f MB\n", getTotalBytes() / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Report every handle which hasn't been deleted, call once everything should have been destroyed
+     * @return True if there were leaks
+     */
+    public static boolean reportLeaks(){
+        if (resources.isEmpty()){
+            System.out.println("No OpenGL objects leaked");
+            return false;
+        }
+        System.out.printf("[WARNING] %d OpenGL objects (%d bytes) were never deleted:\n", resources.size(),
+                getTotalBytes());
+        for (Resource resource : resources.values()){
+            System.out.printf("  %s %d owned by %s, %d bytes\n", resource.category.getName(), resource.handle,
+                    resource.owner, resource.size);
+        }
+        return true;
+    }
+
+    /**
+     * Remember a new handle
+     */
+    private static void register(Category category, int handle, Class<? extends GLObject> owner){
+        resources.put(key(category, handle), new Resource(category, handle, owner.getSimpleName()));
+        counts.incrementAndGet(category.ordinal());
+    }
+
+    /**
+     * The key of a handle, handles are only unique within their category
+     */
+    private static long key(Category category, int handle){
+        return ((long) category.ordinal() << 32) | (handle & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A live handle
+     */
+    private static final class Resource {
+        /**
+         * The category of the handle
+         */
+        private final Category category;
+
+        /**
+         * The handle
+         */
+        private final int handle;
+
+        /**
+         * The class of the object which owns the handle, kept as a name so the registry doesn't keep it alive
+         */
+        private final String owner;
+
+        /**
+         * The estimated bytes of GPU memory behind the handle
+         */
+        private volatile long size;
+
+        /**
+         * Construct a record of a handle with no memory behind it yet
+         */
+        private Resource(Category category, int handle, String owner){
+            this.category = category;
+            this.handle = handle;
+            this.owner = owner;
+        }
+    }
+}
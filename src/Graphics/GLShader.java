@@ -92,6 +92,7 @@ public class GLShader extends GLObject{
         GL33.glDeleteShader(fragment_id);
 
         handle = program;
+        GLResources.registerProgram(getClass(), program);
     }
 
     /**
@@ -155,6 +156,7 @@ public class GLShader extends GLObject{
         GL33.glDeleteShader(geometry_id);
 
         handle = program;
+        GLResources.registerProgram(getClass(), program);
     }
 
     /**
@@ -303,19 +305,25 @@ public class GLShader extends GLObject{
      */
     @Override
     public void destroy() {
-        GL33.glDeleteProgram(handle);
+        GLResources.delete(GLResources.Category.PROGRAM, handle);
     }
 
     /**
-     * Use this shader. We ignore context because any context is effectively destroyed when a new shader is bound.
+     * Use this shader. Anything bound to the previous shader is lost, except the camera which is bound again so
+     * shaders pushed after the camera still see through it.
      * This method binds the currently existing program
      * @param context A context of the currently bound objects is provided to assist in preparing and execution
      */
     @Override
     public void use(GraphicsContext context) {
         useProgram();
+        context.countStateChange();
 
         // Set ourselves in the context
         context.setShader(this);
+
+        if (context.hasCamera()){
+            context.getCamera().use(context);
+        }
     }
 }
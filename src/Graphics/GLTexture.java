@@ -27,7 +27,7 @@ public class GLTexture extends GLObject{
      */
     public GLTexture(){
         // Generate a texture handle
-        handle = GL33.glGenTextures();
+        handle = GLResources.genTexture(getClass());
     }
 
     /**
@@ -62,6 +62,9 @@ public class GLTexture extends GLObject{
 
         GL33.glGenerateMipmap(GL33.GL_TEXTURE_2D);
 
+        GLResources.setSize(GLResources.Category.TEXTURE, handle,
+                GLResources.estimateTextureBytes(width, height, true));
+
         GL33.glBindTexture(GL33.GL_TEXTURE_2D, 0);
     }
 
@@ -84,7 +87,16 @@ public class GLTexture extends GLObject{
      */
     @Override
     public void destroy() {
-        GL33.glDeleteTextures(handle);
+        GLResources.delete(GLResources.Category.TEXTURE, handle);
+    }
+
+    /**
+     * Get the estimated GPU memory of this texture and its mipmaps
+     * @return The bytes of GPU memory, 0 before it's uploaded
+     */
+    @Override
+    public long getGPUBytes() {
+        return GLResources.getSize(GLResources.Category.TEXTURE, handle);
     }
 
     /**
@@ -96,6 +108,7 @@ public class GLTexture extends GLObject{
     public void use(GraphicsContext context) {
         // Bind our texture to unit 0
         bindToUnit(0);
+        context.countStateChange();
 
         if (!context.hasShader()){
             throw new InvalidParameterException("Texture use() provided with a context without shader!");
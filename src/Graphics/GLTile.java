@@ -0,0 +1,110 @@
+package Graphics;
+
+import java.security.InvalidParameterException;
+
+/**
+ * A group of the objects needed to draw a single tile of terrain: its texture, its transform and its mesh. Unlike
+ * pushing each of these to the stack on their own, a tile can be hidden without being destroyed. This lets a coarser
+ * tile be drawn in place of finer tiles which are still loading and then hidden again once they are ready.
+ */
+public class GLTile extends GLObject {
+    /**
+     * The satellite texture of this tile
+     */
+    private GLTexture texture;
+
+    /**
+     * The transform which places this tile within the world
+     */
+    private GLTransform transform;
+
+    /**
+     * The mesh of this tile
+     */
+    private GLVertexArray mesh;
+
+    /**
+     * Whether this tile should be drawn, false by default
+     */
+    private boolean visible;
+
+    /**
+     * Construct this tile from already created and uploaded objects. The tile takes ownership of them and will
+     * destroy them when it's destroyed
+     * @param texture The texture to bind before drawing
+     * @param transform The transform to bind before drawing
+     * @param mesh The mesh to draw
+     * @throws InvalidParameterException If any of the objects are null
+     */
+    public GLTile(GLTexture texture, GLTransform transform, GLVertexArray mesh){
+        if (texture == null || transform == null || mesh == null){
+            throw new InvalidParameterException("A tile must have a texture, transform and mesh!");
+        }
+        this.texture = texture;
+        this.transform = transform;
+        this.mesh = mesh;
+        this.visible = false;
+    }
+
+    /**
+     * Set whether this tile should be drawn
+     * @param visible True to draw this tile
+     */
+    public void setVisible(boolean visible){
+        this.visible = visible;
+    }
+
+    /**
+     * Check whether this tile will be drawn
+     * @return True if this tile is drawn on use
+     */
+    public boolean isVisible(){
+        return visible;
+    }
+
+    /**
+     * Get the mesh of this tile
+     * @return The mesh of this tile, as a pointer
+     */
+    public GLVertexArray getMesh(){
+        return mesh;
+    }
+
+    /**
+     * Destroy the texture, transform and mesh of this tile
+     */
+    @Override
+    public void destroy() {
+        texture.destroy();
+        transform.destroy();
+        mesh.destroy();
+    }
+
+    /**
+     * Get the GPU memory of this tile's texture and mesh
+     * @return The bytes of GPU memory
+     */
+    @Override
+    public long getGPUBytes() {
+        return texture.getGPUBytes() + mesh.getGPUBytes();
+    }
+
+    /**
+     * Bind the texture and transform of this tile then draw its mesh, does nothing if this tile is hidden
+     * @param context A context of the currently bound objects is provided to assist in preparing and execution
+     * @throws InvalidParameterException If there is no shader in the context
+     */
+    @Override
+    public void use(GraphicsContext context) {
+        if (!visible){
+            return;
+        }
+        if (!context.hasShader()){
+            throw new InvalidParameterException("A tile attempted render without a bound shader!");
+        }
+
+        texture.use(context);
+        transform.use(context);
+        mesh.use(context);
+    }
+}
@@ -6,7 +6,9 @@ import Math.Matrix;
 import java.security.InvalidParameterException;
 
 /**
- * Represents a 3d transform to be pushed to the "model" uniform before rendering.
+ * Represents a 3d transform to be pushed to the "model" uniform before rendering. The model matrix is cached and
+ * only rebuilt when the transform's values change, so a transform which never moves, like a tile's, only pays for
+ * its matrix on the first frame.
  */
 public class GLTransform extends GLObject {
     /**
@@ -14,6 +16,23 @@ public class GLTransform extends GLObject {
      */
     private Transform transform;
 
+    /**
+     * The transform values the cached model was built from, see Transform.updateSnapshot
+     */
+    private final double[] snapshot = new double[9];
+
+    /**
+     * The cached model matrix, null until it's first built
+     */
+    private float[] model;
+
+    /**
+     * The shader the model location was looked up in, and the location, so it's only looked up again when a
+     * different shader is bound
+     */
+    private GLShader model_shader;
+    private int model_loc;
+
     /**
      * Construct this object with a provided transform
      */
@@ -21,6 +40,14 @@ public class GLTransform extends GLObject {
         this.transform = transform;
     }
 
+    /**
+     * Get the transform this object copies to the model uniform
+     * @return The transform, as a pointer
+     */
+    public Transform getTransform(){
+        return transform;
+    }
+
 
     /**
      * This object doesn't create any OpenGL objects and therefore does nothing in
@@ -36,29 +63,46 @@ public class GLTransform extends GLObject {
      * @return A Matrix containing this transform
      */
     public Matrix constructTransform(){
-        Matrix model = new Matrix();
-
-        model.scale(transform.getScale().getRawArray());
-        model.rotate(transform.getRotation().getRawArray());
-        model.translate(transform.getPos().getRawArray());
+        return transform.constructMatrix();
+    }
 
+    /**
+     * Get the model matrix, rebuilding it only if the transform changed since it was last built
+     * @return The raw model matrix, shared with this object so it must not be changed
+     */
+    public float[] getModel(){
+        if (transform.updateSnapshot(snapshot) || model == null){
+            model = constructTransform().getRawMatrix();
+        }
         return model;
     }
 
     /**
-     * Bind this transform to the currently bound shader's model uniform
-     * @param context A context of the currently bound objects is provided to assist in preparing and execution
+     * Set the bound shader's model uniform
+     * @param context The context holding the bound shader
+     * @param matrix The raw model matrix
      * @throws java.security.InvalidParameterException If there is no shader in the context
      */
-    @Override
-    public void use(GraphicsContext context) {
+    void setModelUniform(GraphicsContext context, float[] matrix){
         if (!context.hasShader()){
             throw new InvalidParameterException("No shader provided to GLTransform on use!");
         }
 
-        Matrix model = constructTransform();
+        GLShader shader = context.getShader();
+        if (shader != model_shader){
+            model_shader = shader;
+            model_loc = shader.getUniformLocation("model");
+        }
+        shader.setMatrixUniform(model_loc, matrix);
+    }
 
-        int model_loc = context.getShader().getUniformLocation("model");
-        context.getShader().setMatrixUniform(model_loc, model.getRawMatrix());
+    /**
+     * Bind this transform to the currently bound shader's model uniform
+     * @param context A context of the currently bound objects is provided to assist in preparing and execution
+     * @throws java.security.InvalidParameterException If there is no shader in the context
+     */
+    @Override
+    public void use(GraphicsContext context) {
+        setModelUniform(context, getModel());
     }
 }
@@ -6,12 +6,13 @@
 
 package Graphics;
 
+import Utils.NativeMemory;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL33;
-import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.security.InvalidParameterException;
 
 /**
@@ -41,23 +42,30 @@ public class GLVertexArray extends GLObject{
      * The constructor shouldn't do anything because we don't know EXACTLY when it executes
      */
     public GLVertexArray(){
-        handle = GL33.glGenVertexArrays();
-        vbo = GL33.glGenBuffers();
-        ebo = GL33.glGenBuffers();
+        handle = GLResources.genVertexArray(getClass());
+        vbo = GLResources.genBuffer(getClass(), GLResources.Category.VERTEX_BUFFER);
+        ebo = GLResources.genBuffer(getClass(), GLResources.Category.ELEMENT_BUFFER);
     }
 
     /**
-     * Configure the VAO, generateVertexArray() must be called first
-     * and preferably after uploadVertices and uploadElements
+     * Configure the VAO for vertices of 5 floats, position then texture coordinate. bindElementsForUse() must be
+     * called first and preferably after uploadVertices and uploadElements
      */
     public void configureVertexArray(){
-        // Configure the vertex pointers
-        GL33.glVertexAttribPointer(0, 3, GL33.GL_FLOAT, false, 5 * 4,  0L);
-        GL33.glVertexAttribPointer(1, 2, GL33.GL_FLOAT, false, 5 * 4, 0xC);
+        configureVertexArray(VertexLayout.POSITION_TEXTURE);
+    }
 
-        // Enable said vertex pointers
-        GL33.glEnableVertexAttribArray(0);
-        GL33.glEnableVertexAttribArray(1);
+    /**
+     * Configure the VAO for vertices of any layout, bindElementsForUse() must be called first and preferably after
+     * uploadVertices and uploadElements
+     * @param layout How the uploaded vertices are laid out
+     * @throws InvalidParameterException If layout is null
+     */
+    public void configureVertexArray(VertexLayout layout){
+        if (layout == null){
+            throw new InvalidParameterException("A vertex array needs a layout!");
+        }
+        layout.apply();
     }
 
     /**
@@ -66,13 +74,53 @@ public class GLVertexArray extends GLObject{
      * @param vertex_raw An array of raw bytes for these vertices, must be 5x floats per vertex
      */
     public void uploadVertices(float[] vertex_raw){
-        // Convert the float array to a float array
-        FloatBuffer fb = MemoryUtil.memAllocFloat(vertex_raw.length);
+        // glBufferData copies the vertices, so the native copy only has to live for the call
+        try (NativeMemory.Scope scope = NativeMemory.scope("GLVertexArray.uploadVertices")) {
+            FloatBuffer fb = scope.floats(vertex_raw.length);
+
+            fb.put(vertex_raw).flip();
+
+            // Bind the buffer then
+            GL33.glBufferData(GL33.GL_ARRAY_BUFFER, fb, GL33.GL_STATIC_DRAW);
+        }
+        GLResources.setSize(GLResources.Category.VERTEX_BUFFER, vbo, (long) vertex_raw.length * Float.BYTES);
+    }
+
+    /**
+     * Upload vertices made of 16 bit components, such as VertexLayout.PACKED_HEIGHT, to the vertex buffer.
+     * bindElementsForUse() must be called before this
+     * @param vertex_raw The raw components of the vertices, in the order of the layout they'll be configured with
+     */
+    public void uploadVertices(short[] vertex_raw){
+        // glBufferData copies the vertices, so the native copy only has to live for the call
+        try (NativeMemory.Scope scope = NativeMemory.scope("GLVertexArray.uploadVertices")) {
+            ShortBuffer sb = scope.shorts(vertex_raw.length);
+
+            sb.put(vertex_raw).flip();
+
+            GL33.glBufferData(GL33.GL_ARRAY_BUFFER, sb, GL33.GL_STATIC_DRAW);
+        }
+        GLResources.setSize(GLResources.Category.VERTEX_BUFFER, vbo, (long) vertex_raw.length * Short.BYTES);
+    }
+
+    /**
+     * Replace the vertices in the vertex buffer without reallocating it, this binds the vertex array
+     * @param vertex_raw The new vertices, must be the same length as those uploaded with uploadVertices
+     */
+    public void updateVertices(float[] vertex_raw){
+        bindElementsForUse();
+
+        GL33.glBufferSubData(GL33.GL_ARRAY_BUFFER, 0L, vertex_raw);
+    }
 
-        fb.put(vertex_raw).flip();
+    /**
+     * Replace 16 bit vertices in the vertex buffer without reallocating it, this binds the vertex array
+     * @param vertex_raw The new vertices, must be the same length as those uploaded with uploadVertices
+     */
+    public void updateVertices(short[] vertex_raw){
+        bindElementsForUse();
 
-        // Bind the buffer then
-        GL33.glBufferData(GL33.GL_ARRAY_BUFFER, fb, GL33.GL_STATIC_DRAW);
+        GL33.glBufferSubData(GL33.GL_ARRAY_BUFFER, 0L, vertex_raw);
     }
 
     /**
@@ -81,17 +129,28 @@ public class GLVertexArray extends GLObject{
      * @param elements An array of raw bytes for these vertices, must be 5x floats per vertex
      */
     public void uploadElements(int[] elements){
-        // Convert the elemnts to an int array
-        IntBuffer ib = MemoryUtil.memAllocInt(elements.length);
+        // Convert the elemnts to an int array, which only has to live for the upload
+        try (NativeMemory.Scope scope = NativeMemory.scope("GLVertexArray.uploadElements")) {
+            IntBuffer ib = scope.ints(elements.length);
 
-        ib.put(elements).flip();
+            ib.put(elements).flip();
 
-        // Bind the buffer then
-        GL33.glBufferData(GL33.GL_ELEMENT_ARRAY_BUFFER, ib, GL33.GL_STATIC_DRAW);
+            // Bind the buffer then
+            GL33.glBufferData(GL33.GL_ELEMENT_ARRAY_BUFFER, ib, GL33.GL_STATIC_DRAW);
+        }
+        GLResources.setSize(GLResources.Category.ELEMENT_BUFFER, ebo, (long) elements.length * Integer.BYTES);
 
         num_elements = elements.length;
     }
 
+    /**
+     * Get the number of elements uploaded with uploadElements
+     * @return The number of indices
+     */
+    public int getElementCount(){
+        return num_elements;
+    }
+
     /**
      * Bind the VAO so it can be used for modifications
      */
@@ -109,11 +168,23 @@ public class GLVertexArray extends GLObject{
     }
 
     /**
-     * Destroy the Vertex Array object
+     * Destroy the Vertex Array object along with its vertex and element buffers
      */
     @Override
     public void destroy() {
-        GL33.glDeleteVertexArrays(handle);
+        GLResources.delete(GLResources.Category.VERTEX_ARRAY, handle);
+        GLResources.delete(GLResources.Category.VERTEX_BUFFER, vbo);
+        GLResources.delete(GLResources.Category.ELEMENT_BUFFER, ebo);
+    }
+
+    /**
+     * Get the GPU memory of the vertex and element buffers
+     * @return The bytes of GPU memory
+     */
+    @Override
+    public long getGPUBytes() {
+        return GLResources.getSize(GLResources.Category.VERTEX_BUFFER, vbo)
+                + GLResources.getSize(GLResources.Category.ELEMENT_BUFFER, ebo);
     }
 
     /**
@@ -131,6 +202,8 @@ public class GLVertexArray extends GLObject{
         useMesh();
 
         GL33.glDrawElements(GL33.GL_TRIANGLE_STRIP, num_elements, GL33.GL_UNSIGNED_INT, 0);
+        context.countStateChange();
+        context.countDrawCalls(1);
 
         // Set ourselves to the context
         context.setMesh(this);
@@ -20,14 +20,43 @@ public class GraphicsContext {
      */
     private GLVertexArray mesh;
 
+    /**
+     * The last camera used, its matrices are given to any shader bound after it
+     */
+    private GLCamera camera;
+
+    /**
+     * The number of the frame this context draws, so objects can do per frame work once however often they're used
+     */
+    private final long frame;
+
+    /**
+     * The number of draw calls made and objects bound (shaders, textures and vertex arrays) with this context, read
+     * by the graphics driver's metrics after the frame
+     */
+    private int draw_calls;
+    private int state_changes;
+
     /**
      * An empty constructor for the graphics context. There isn't a need to set anything here as it should
      * be created, once, by the graphics driver then set everything later
      */
     public GraphicsContext(){
+        this(0);
+    }
+
+    /**
+     * Construct a graphics context for a frame, with nothing bound
+     * @param frame The number of the frame being drawn, counting up from 0
+     */
+    public GraphicsContext(long frame){
         shader = null;
         texture = null;
         mesh = null;
+        camera = null;
+        this.frame = frame;
+        draw_calls = 0;
+        state_changes = 0;
     }
 
     /**
@@ -54,6 +83,61 @@ public class GraphicsContext {
         return mesh != null;
     }
 
+    /**
+     * Check whether a camera has been used in this context
+     * @return True if there is a camera, false otherwise
+     */
+    public boolean hasCamera(){
+        return camera != null;
+    }
+
+    /**
+     * Get the last camera used
+     * @return The camera, will be null if no camera has been used
+     */
+    public GLCamera getCamera(){
+        return camera;
+    }
+
+    /**
+     * Get the number of the frame this context draws
+     * @return The frame, counting up from 0
+     */
+    public long getFrame(){
+        return frame;
+    }
+
+    /**
+     * Count draw calls made with this context
+     * @param count The number of glDraw calls made
+     */
+    public void countDrawCalls(int count){
+        draw_calls += count;
+    }
+
+    /**
+     * Count an object bound with this context, a shader, texture or vertex array
+     */
+    public void countStateChange(){
+        state_changes++;
+    }
+
+    /**
+     * Get the number of draw calls made with this context
+     * @return The number of glDraw calls
+     */
+    public int getDrawCalls(){
+        return draw_calls;
+    }
+
+    /**
+     * Get the number of objects bound with this context
+     * @return The number of shaders, textures and vertex arrays bound
+     */
+    public int getStateChanges(){
+        return state_changes;
+    }
+
     /**
      * Get the currently bound shader
      * @return The currently bound shader, will be null if we have no shader bound
@@ -102,5 +186,11 @@ public class GraphicsContext {
         this.mesh = mesh;
     }
 
-
+    /**
+     * Set the camera used in this context
+     * @param camera The new camera, may be null
+     */
+    public void setCamera(GLCamera camera){
+        this.camera = camera;
+    }
 }
@@ -6,7 +6,12 @@
 
 package Graphics;
 
+import Utils.Counter;
+import Utils.Gauge;
 import Utils.GraphicsStack;
+import Utils.LatencyHistogram;
+import Utils.Metrics;
+import Utils.NativeMemory;
 import Utils.Stack.GraphicsNode;
 import org.lwjgl.opengl.GL33;
 
@@ -14,10 +19,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.InvalidParameterException;
 import java.util.Iterator;
 
 import Math.Image;
-import org.lwjgl.system.MemoryUtil;
 
 /**
  * This is the primary API for the graphics side, this should expose the functions for
@@ -58,6 +63,32 @@ public class GraphicsDriver {
      */
     private GLShader main_shader;
 
+    /**
+     * The number of frames rendered so far, given to each frame's GraphicsContext
+     */
+    private long frame;
+
+    /**
+     * The draw calls and object binds made over every frame and in the last frame, see GraphicsContext
+     */
+    private final Counter draw_calls;
+    private final Counter state_changes;
+    private final Gauge frame_draw_calls;
+    private final Gauge frame_state_changes;
+
+    /**
+     * The time taken to clear the screen and go up the stack each frame, the CPU side of drawing
+     */
+    private final LatencyHistogram render_time;
+
+    /**
+     * The nanoseconds the last frame spent drawing the stack and swapping the buffers, and the GL work it did
+     */
+    private long last_draw_time;
+    private long last_swap_time;
+    private int last_draw_calls;
+    private int last_state_changes;
+
     /**
      * The constructor for the graphics driver. We only need one of these
      * This doesn't create any unsafe objects but rather sets parameters.
@@ -80,6 +111,17 @@ public class GraphicsDriver {
 
         // Create a stack for our objects
         stack = new GraphicsStack();
+
+        draw_calls = Metrics.counter("planesim_draw_calls_total", "OpenGL draw calls made");
+        state_changes = Metrics.counter("planesim_state_changes_total",
+                "Shaders, textures and vertex arrays bound");
+        frame_draw_calls = Metrics.gauge("planesim_frame_draw_calls", "OpenGL draw calls made in the last frame");
+        frame_state_changes = Metrics.gauge("planesim_frame_state_changes",
+                "Shaders, textures and vertex arrays bound in the last frame");
+        render_time = Metrics.histogram("planesim_render_seconds",
+                "Time to clear the screen and submit the graphics stack each frame");
+        Metrics.gauge("planesim_gpu_bytes", "Estimated GPU memory held by live OpenGL objects",
+                GLResources::getTotalBytes);
     }
 
     /**
@@ -127,6 +169,8 @@ public class GraphicsDriver {
      * This method handles rendering in the graphics driver
      */
     private void render(){
+        long start = System.nanoTime();
+
         // Clear the color buffer to black
         GL33.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
         // Clear both the depth and color buffers
@@ -134,7 +178,7 @@ public class GraphicsDriver {
 
         // Create a graphics context to then populate while going up the stack
         // We create a new context every time we go through the stack
-        GraphicsContext ctx = new GraphicsContext();
+        GraphicsContext ctx = new GraphicsContext(frame++);
         // Go up the stack and use all objects
         // It's important to follow the order of the stack such that dependencies are met
         GraphicsNode node = stack.getRoot();
@@ -144,32 +188,54 @@ public class GraphicsDriver {
             }
             node = node.next();
         }
+
+        draw_calls.add(ctx.getDrawCalls());
+        state_changes.add(ctx.getStateChanges());
+        frame_draw_calls.set(ctx.getDrawCalls());
+        frame_state_changes.set(ctx.getStateChanges());
+        last_draw_calls = ctx.getDrawCalls();
+        last_state_changes = ctx.getStateChanges();
+        last_draw_time = System.nanoTime() - start;
+        render_time.record(last_draw_time);
     }
 
     /**
-     * Adds a texture to the stack, the programmer provides the raw image data which is then decoded and turned
-     * into a GLTexture which is then pushed to the stack. The programmer has no context of how the texture
-     * actually works, all the programmer must take care of is ensuring correct order of pushing data
-     * @param data The PNG or JPG of the image we're loading from
-     * @throws java.security.InvalidParameterException If the image provided fails to decode
+     * Create and upload a texture from raw image data without adding it to the stack. The caller is responsible for
+     * either pushing it or destroying it, for example by grouping it into a GLTile.
+     * @param data The decoded image to upload
+     * @return The uploaded texture
+     * @throws java.security.InvalidParameterException If the image data is shorter than its dimensions
      */
-    public void pushTexture(Image data){
+    public GLTexture createTexture(Image data){
         GLTexture texture = new GLTexture();
 
-        ByteBuffer img_data = MemoryUtil.memAlloc(data.getDataSize());
+        // glTexImage2D copies the pixels, so the native copy only has to live for the upload
+        try (NativeMemory.Scope scope = NativeMemory.scope("GraphicsDriver.createTexture")) {
+            ByteBuffer img_data = scope.bytes(data.getDataSize());
 
-        // Copy the data to the buffer
-        for (Byte b : data.getData()) {
-            img_data.put(b);
-        }
+            // Copy the data to the buffer
+            for (Byte b : data.getData()) {
+                img_data.put(b);
+            }
 
-        img_data.flip();
+            img_data.flip();
 
-        texture.uploadTexture(img_data, data.getWidth(), data.getHeight());
+            texture.uploadTexture(img_data, data.getWidth(), data.getHeight());
+        }
 
+        return texture;
+    }
 
+    /**
+     * Adds a texture to the stack, the programmer provides the raw image data which is then decoded and turned
+     * into a GLTexture which is then pushed to the stack. The programmer has no context of how the texture
+     * actually works, all the programmer must take care of is ensuring correct order of pushing data
+     * @param data The PNG or JPG of the image we're loading from
+     * @throws java.security.InvalidParameterException If the image provided fails to decode
+     */
+    public void pushTexture(Image data){
         // Push our texture to the stack
-        stack.push(texture);
+        stack.push(createTexture(data));
     }
 
     /**
@@ -180,6 +246,17 @@ public class GraphicsDriver {
         stack.push(obj);
     }
 
+    /**
+     * Remove an object from anywhere in the stack, destroying it
+     * @param obj The object to remove
+     * @throws java.security.InvalidParameterException If the object is null or isn't in the stack
+     */
+    public void removeObject(GLObject obj){
+        if (!stack.remove(obj)){
+            throw new InvalidParameterException("Tried to remove an object which isn't in the stack!");
+        }
+    }
+
     /**
      * Loop the window, return whether this should continue
      * @return True if the driver should continue the loop
@@ -188,7 +265,50 @@ public class GraphicsDriver {
         // Render out the scene
         render();
 
-        return window.loop();
+        long start = System.nanoTime();
+        boolean open = window.loop();
+        last_swap_time = System.nanoTime() - start;
+        return open;
+    }
+
+    /**
+     * Get the number of frames rendered so far
+     * @return The number of frames, the last frame's number plus one
+     */
+    public long getFrameCount(){
+        return frame;
+    }
+
+    /**
+     * Get how long the last frame spent clearing the screen and drawing the graphics stack
+     * @return The time in nanoseconds
+     */
+    public long getLastDrawTime(){
+        return last_draw_time;
+    }
+
+    /**
+     * Get how long the last frame spent swapping the buffers and polling the window
+     * @return The time in nanoseconds
+     */
+    public long getLastSwapTime(){
+        return last_swap_time;
+    }
+
+    /**
+     * Get the number of draw calls the last frame made
+     * @return The number of draw calls
+     */
+    public int getLastDrawCalls(){
+        return last_draw_calls;
+    }
+
+    /**
+     * Get the number of shaders, textures and vertex arrays the last frame bound
+     * @return The number of binds
+     */
+    public int getLastStateChanges(){
+        return last_state_changes;
     }
 
     /**
@@ -201,6 +321,10 @@ public class GraphicsDriver {
         }
 
         window.destroy();
+
+        // Everything has been destroyed, anything still allocated was leaked
+        GLResources.reportLeaks();
+        NativeMemory.reportLeaks();
     }
 
     /**
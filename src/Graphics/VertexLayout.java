@@ -0,0 +1,165 @@
+package Graphics;
+
+import org.lwjgl.opengl.GL33;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Describes how the vertices of a vertex buffer are laid out, which attribute each part of a vertex feeds and in what
+ * format. Attributes are packed one after another in the order given, so the stride is the sum of their sizes.
+ */
+public class VertexLayout {
+    /**
+     * A position (3 floats) then a texture coordinate (2 floats), 20 bytes a vertex. This is the layout of the
+     * main shader, shaders/vertex.glsl.
+     */
+    public static final VertexLayout POSITION_TEXTURE = new VertexLayout(
+            new Attribute(0, 3, GL33.GL_FLOAT, false),
+            new Attribute(1, 2, GL33.GL_FLOAT, false));
+
+    /**
+     * A single height as a 16 bit unsigned normalized integer, 2 bytes a vertex. The rest of the vertex is rebuilt
+     * from gl_VertexID by shaders/vertex_terrain.glsl, see HeightmapMesh.getPackedHeights.
+     */
+    public static final VertexLayout PACKED_HEIGHT = new VertexLayout(
+            new Attribute(0, 1, GL33.GL_UNSIGNED_SHORT, true));
+
+    /**
+     * The attributes of a vertex, in the order they're packed
+     */
+    private final Attribute[] attributes;
+
+    /**
+     * The byte offset of each attribute within a vertex
+     */
+    private final int[] offsets;
+
+    /**
+     * The number of bytes from one vertex to the next
+     */
+    private final int stride;
+
+    /**
+     * Construct a layout from its attributes, packed one after another
+     * @param attributes The attributes of a vertex, in order
+     * @throws InvalidParameterException If there are no attributes or two share a location
+     */
+    public VertexLayout(Attribute... attributes){
+        if (attributes == null || attributes.length == 0){
+            throw new InvalidParameterException("A vertex layout needs at least one attribute!");
+        }
+        this.attributes = attributes.clone();
+        this.offsets = new int[attributes.length];
+
+        int offset = 0;
+        for (int i = 0; i < attributes.length; i++){
+            for (int j = 0; j < i; j++){
+                if (attributes[j].location == attributes[i].location){
+                    throw new InvalidParameterException("Two vertex attributes share location " +
+                            attributes[i].location);
+                }
+            }
+            offsets[i] = offset;
+            offset += attributes[i].getBytes();
+        }
+        this.stride = offset;
+    }
+
+    /**
+     * Point the bound vertex array's attributes at the bound vertex buffer and enable them
+     */
+    void apply(){
+        for (int i = 0; i < attributes.length; i++){
+            Attribute attribute = attributes[i];
+            GL33.glVertexAttribPointer(attribute.location, attribute.components, attribute.type,
+                    attribute.normalized, stride, offsets[i]);
+            GL33.glEnableVertexAttribArray(attribute.location);
+        }
+    }
+
+    /**
+     * Get the number of bytes from one vertex to the next
+     * @return The size of a vertex in bytes
+     */
+    public int getStride(){
+        return stride;
+    }
+
+    /**
+     * One attribute of a vertex
+     */
+    public static class Attribute {
+        /**
+         * The shader location the attribute feeds
+         */
+        private final int location;
+
+        /**
+         * The number of components, 1 to 4
+         */
+        private final int components;
+
+        /**
+         * The OpenGL type of each component, such as GL_FLOAT or GL_UNSIGNED_SHORT
+         */
+        private final int type;
+
+        /**
+         * Whether integer components are mapped to 0, 1 (or -1, 1 if signed) rather than read as whole numbers
+         */
+        private final boolean normalized;
+
+        /**
+         * The size of the attribute in bytes, all its components
+         */
+        private final int bytes;
+
+        /**
+         * Construct an attribute
+         * @param location The shader location the attribute feeds
+         * @param components The number of components, 1 to 4
+         * @param type The OpenGL type of each component, GL_FLOAT, GL_HALF_FLOAT, GL_(UNSIGNED_)SHORT or
+         *             GL_(UNSIGNED_)BYTE
+         * @param normalized Whether integer components are mapped to 0, 1 (or -1, 1 if signed)
+         * @throws InvalidParameterException If the location, component count or type isn't valid
+         */
+        public Attribute(int location, int components, int type, boolean normalized){
+            if (location < 0 || components < 1 || components > 4){
+                throw new InvalidParameterException("A vertex attribute needs a location and 1 to 4 components!");
+            }
+            this.location = location;
+            this.components = components;
+            this.type = type;
+            this.normalized = normalized;
+            this.bytes = componentBytes(type) * components;
+        }
+
+        /**
+         * Get the size of this attribute in bytes
+         * @return The bytes of all its components
+         */
+        public int getBytes(){
+            return bytes;
+        }
+
+        /**
+         * Find the size of one component of a type
+         * @throws InvalidParameterException If the type isn't one listed in the constructor
+         */
+        private static int componentBytes(int type){
+            switch (type){
+                case GL33.GL_FLOAT:
+                    return 4;
+                case GL33.GL_HALF_FLOAT:
+                case GL33.GL_SHORT:
+                case GL33.GL_UNSIGNED_SHORT:
+                    return 2;
+                case GL33.GL_BYTE:
+                case GL33.GL_UNSIGNED_BYTE:
+                    return 1;
+                default:
+                    throw new InvalidParameterException("Unsupported vertex attribute type " + type);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ package Graphics;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.lwjgl.*;
 import org.lwjgl.glfw.GLFW;
@@ -50,6 +51,12 @@ public class Window implements GLFWKeyCallbackI {
      */
     private ArrayList<Integer> key_list;
 
+    /**
+     * The keys held down right now. The array is replaced rather than changed whenever a key is pressed or released,
+     * so other threads can read it without locking.
+     */
+    private volatile int[] keys_down;
+
     /**
      * The constructor for the window, sets parameters and nothing else.
      * @param window_width Window/Viewport width, must be < 1 but realistically should be a reasonable size but also
@@ -82,6 +89,7 @@ public class Window implements GLFWKeyCallbackI {
         // Construct a key list for every possible key. 256 because we're probably not dealing with any more than the
         // number of ASCII keys
         key_list = new ArrayList<>(256);
+        keys_down = new int[0];
     }
 
     /**
@@ -172,6 +180,11 @@ public class Window implements GLFWKeyCallbackI {
     @Override
     public void invoke(long window, int key, int scancode, int action, int mods) {
         key_list.add(key);
+        if (action == GLFW.GLFW_PRESS){
+            setKeyDown(key, true);
+        } else if (action == GLFW.GLFW_RELEASE){
+            setKeyDown(key, false);
+        }
         switch (key){
             case GLFW.GLFW_KEY_ESCAPE:
                 GLFW.glfwSetWindowShouldClose(window, true);
@@ -189,4 +202,37 @@ public class Window implements GLFWKeyCallbackI {
     public ArrayList<Integer> getKeyList(){
         return key_list;
     }
+
+    /**
+     * Get the keys held down right now, safe to call from any thread
+     * @return The held keys, which must not be changed
+     */
+    public int[] getKeysDown(){
+        return keys_down;
+    }
+
+    /**
+     * Add or remove a key from the held keys, replacing the array
+     * @param key The key
+     * @param down True if it was pressed, false if it was released
+     */
+    private void setKeyDown(int key, boolean down){
+        int[] keys = keys_down;
+        int index = -1;
+        for (int i = 0; i < keys.length; i++){
+            if (keys[i] == key){
+                index = i;
+            }
+        }
+        if (down && index < 0){
+            int[] added = Arrays.copyOf(keys, keys.length + 1);
+            added[keys.length] = key;
+            keys_down = added;
+        } else if (!down && index >= 0){
+            int[] removed = new int[keys.length - 1];
+            System.arraycopy(keys, 0, removed, 0, index);
+            System.arraycopy(keys, index + 1, removed, index, keys.length - index - 1);
+            keys_down = removed;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package Math;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Batch transforms from Web Mercator to latitude and longitude, and from meters to world units, over structure of
+ * arrays buffers, one array per component. When the JVM is started with --add-modules jdk.incubator.vector the
+ * transcendental heavy unprojection runs through VectorBatchTransform using the JDK Vector API, otherwise it runs
+ * through the scalar loop here. Both give the same results to within rounding.
+ * Mercator points are "generic", 0 to 1 across the world with x going east and y going south, multiplied by scale.
+ */
+public class BatchTransform {
+    /**
+     * Whether the Vector API is available to this run, VectorBatchTransform is never loaded without it
+     */
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * A private constructor, this class only has static methods
+     */
+    private BatchTransform(){
+
+    }
+
+    /**
+     * Check whether the batch transforms are using the Vector API
+     * @return True if the Vector API is in use
+     */
+    public static boolean isVectorized(){
+        return VECTORIZED;
+    }
+
+    /**
+     * Unproject Web Mercator points back to latitudes and longitudes
+     * @param xs The mercator x of each point
+     * @param ys The mercator y of each point
+     * @param scale The scale of the input, 2^zoom for tiles of that zoom
+     * @param lats The array to write the latitude of each point to
+     * @param lngs The array to write the longitude of each point to
+     * @param count The number of points
+     * @throws InvalidParameterException If any array is shorter than count
+     */
+    public static void unproject(double[] xs, double[] ys, double scale, double[] lats, double[] lngs, int count){
+        checkLengths(count, xs, ys, lats, lngs);
+        if (VECTORIZED){
+            VectorBatchTransform.unproject(xs, ys, scale, lats, lngs, count);
+        } else {
+            unprojectScalar(xs, ys, scale, lats, lngs, 0, count);
+        }
+    }
+
+    /**
+     * Convert heights in meters to world units. Web Mercator stretches the ground by 1 / cos(latitude) so heights
+     * are stretched the same amount.
+     * @param meters The height of each point in meters
+     * @param lats The latitude of each point
+     * @param units_per_meter The world units per meter at the equator
+     * @param out The array to write the heights in world units to
+     * @param count The number of points
+     * @throws InvalidParameterException If any array is shorter than count
+     */
+    public static void metersToWorld(float[] meters, double[] lats, double units_per_meter, float[] out, int count){
+        if (meters.length < count || lats.length < count || out.length < count){
+            throw new InvalidParameterException("Every buffer of a batch transform must hold count points!");
+        }
+        for (int i = 0; i < count; i++){
+            out[i] = (float) (meters[i] * units_per_meter / Math.cos(Math.toRadians(lats[i])));
+        }
+    }
+
+    /**
+     * The scalar unprojection, also used for the tail of the vectorized one
+     */
+    static void unprojectScalar(double[] xs, double[] ys, double scale, double[] lats, double[] lngs, int start,
+                                int end){
+        double inverse = 1.0 / scale;
+        for (int i = start; i < end; i++){
+            double mercator = Math.PI * ((2.0 * ys[i] * inverse) - 1.0);
+            lats[i] = 360.0 * ((Math.atan(Math.exp(-mercator)) / Math.PI) - 0.25);
+            lngs[i] = ((xs[i] * inverse) - 0.5) * 360.0;
+        }
+    }
+
+    /**
+     * Check every buffer can hold count points
+     */
+    private static void checkLengths(int count, double[] a, double[] b, double[] c, double[] d){
+        if (count < 0 || a.length < count || b.length < count || c.length < count || d.length < count){
+            throw new InvalidParameterException("Every buffer of a batch transform must hold count points!");
+        }
+    }
+}
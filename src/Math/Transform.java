@@ -84,4 +84,51 @@ public class Transform {
     public Vector getScale(){
         return scale;
     }
+
+    /**
+     * Construct the matrix of this transform alone: scale, then rotate, then translate
+     * @return A new Matrix of this transform
+     */
+    public Matrix constructMatrix(){
+        Matrix model = new Matrix();
+
+        model.scale(scale.getRawArray());
+        model.rotate(rotation.getRawArray());
+        model.translate(pos.getRawArray());
+
+        return model;
+    }
+
+    /**
+     * Compare this transform against a snapshot of its values and refresh the snapshot. The vectors are returned as
+     * pointers and may be changed in place, so comparing values is the only way to notice every change.
+     * @param snapshot The position, rotation and scale from the last call, 9 doubles
+     * @return True if any value differs from the snapshot
+     * @throws InvalidParameterException If the snapshot isn't 9 doubles long
+     */
+    public boolean updateSnapshot(double[] snapshot){
+        if (snapshot == null || snapshot.length != 9){
+            throw new InvalidParameterException("A transform snapshot must be 9 doubles long");
+        }
+        boolean changed = swap(snapshot, 0, pos);
+        changed |= swap(snapshot, 3, rotation);
+        changed |= swap(snapshot, 6, scale);
+        return changed;
+    }
+
+    /**
+     * Store a vector in a snapshot
+     * @return True if it differs from the values stored before
+     */
+    private static boolean swap(double[] snapshot, int index, Vector vector){
+        if (Double.compare(snapshot[index], vector.getX()) == 0
+                && Double.compare(snapshot[index + 1], vector.getY()) == 0
+                && Double.compare(snapshot[index + 2], vector.getZ()) == 0){
+            return false;
+        }
+        snapshot[index] = vector.getX();
+        snapshot[index + 1] = vector.getY();
+        snapshot[index + 2] = vector.getZ();
+        return true;
+    }
 }
@@ -0,0 +1,263 @@
+package Math;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+
+/**
+ * A tree of transforms kept as flat arrays, with each node's local and world matrix cached. A node can only be
+ * added under a node which already exists, so the order nodes were added in is already topological: one pass from
+ * the first node to the last sees every parent before its children, with no recursion and no sorting.
+ * <p>
+ * Each update compares every node's transform against a snapshot of it (see Transform.updateSnapshot). Only
+ * changed nodes rebuild their local matrix, and only they and their descendants rebuild their world matrix, so
+ * static transforms cost a few comparisons after their first update. World matrices compose the same way
+ * Graphics.GLLinkedTransform always has: a node's local matrix, then its parent's, up to the root.
+ * <p>
+ * This class isn't thread safe, it's updated and read from the render thread.
+ */
+public class TransformHierarchy {
+    /**
+     * The number of nodes to make room for when none is given
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The transform of each node
+     */
+    private Transform[] transforms;
+
+    /**
+     * The parent of each node, -1 for roots. A parent's index is always smaller than its children's.
+     */
+    private int[] parents;
+
+    /**
+     * The transform values each node's local matrix was built from, 9 doubles each, see Transform.updateSnapshot
+     */
+    private double[][] snapshots;
+
+    /**
+     * Each node's local and world matrix, null until its first update
+     */
+    private Matrix[] locals;
+    private Matrix[] worlds;
+
+    /**
+     * Each node's world matrix as the raw array uploaded to shaders
+     */
+    private float[][] world_arrays;
+
+    /**
+     * Whether each node must rebuild its local matrix on the next update whether or not its transform changed
+     */
+    private boolean[] dirty;
+
+    /**
+     * Whether each node's world matrix was rebuilt during the current update, read by its children
+     */
+    private boolean[] rebuilt;
+
+    /**
+     * The number of nodes
+     */
+    private int size;
+
+    /**
+     * The frame of the last update, see update(long)
+     */
+    private long last_frame;
+
+    /**
+     * The number of world matrices the last update rebuilt
+     */
+    private int last_rebuilt;
+
+    /**
+     * Construct an empty hierarchy
+     */
+    public TransformHierarchy(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an empty hierarchy with room for a number of nodes before it grows
+     * @param capacity The number of nodes to make room for
+     * @throws InvalidParameterException If capacity isn't positive
+     */
+    public TransformHierarchy(int capacity){
+        if (capacity <= 0){
+            throw new InvalidParameterException("A transform hierarchy needs a positive capacity!");
+        }
+        transforms = new Transform[capacity];
+        parents = new int[capacity];
+        snapshots = new double[capacity][];
+        locals = new Matrix[capacity];
+        worlds = new Matrix[capacity];
+        world_arrays = new float[capacity][];
+        dirty = new boolean[capacity];
+        rebuilt = new boolean[capacity];
+        size = 0;
+        last_frame = -1;
+    }
+
+    /**
+     * Add a node to the hierarchy
+     * @param transform The transform of the node, kept as a pointer and checked for changes on every update
+     * @param parent The node to add it under, -1 to add a root
+     * @return The new node
+     * @throws InvalidParameterException If the transform is null or the parent isn't a node of this hierarchy
+     */
+    public int add(Transform transform, int parent){
+        if (transform == null){
+            throw new InvalidParameterException("A transform hierarchy node needs a transform!");
+        }
+        if (parent < -1 || parent >= size){
+            throw new InvalidParameterException(String.format("Parent %d isn't a node of this hierarchy", parent));
+        }
+        if (size == transforms.length){
+            grow();
+        }
+
+        int node = size++;
+        transforms[node] = transform;
+        parents[node] = parent;
+        snapshots[node] = new double[9];
+        dirty[node] = true;
+        return node;
+    }
+
+    /**
+     * Force a node to rebuild its matrices on the next update even if its transform hasn't changed
+     * @param node The node
+     * @throws InvalidParameterException If the node isn't in this hierarchy
+     */
+    public void markDirty(int node){
+        checkNode(node);
+        dirty[node] = true;
+    }
+
+    /**
+     * Update the hierarchy once for a frame, nothing happens if it was already updated for this frame. Every node
+     * drawn in a frame can call this and only the first pays for the pass.
+     * @param frame The number of the frame being drawn
+     * @return True if this call ran the update
+     */
+    public boolean update(long frame){
+        if (frame == last_frame){
+            return false;
+        }
+        last_frame = frame;
+        update();
+        return true;
+    }
+
+    /**
+     * Rebuild the matrices of every node whose transform changed and of all their descendants
+     * @return The number of world matrices rebuilt
+     */
+    public int update(){
+        int count = 0;
+        for (int node = 0; node < size; node++){
+            boolean changed = transforms[node].updateSnapshot(snapshots[node]) || dirty[node];
+            if (changed){
+                locals[node] = transforms[node].constructMatrix();
+                dirty[node] = false;
+            }
+
+            int parent = parents[node];
+            rebuilt[node] = changed || (parent >= 0 && rebuilt[parent]);
+            if (rebuilt[node]){
+                if (parent < 0){
+                    worlds[node] = locals[node];
+                } else {
+                    Matrix world = new Matrix();
+                    world.multiply(locals[node]);
+                    world.multiply(worlds[parent]);
+                    worlds[node] = world;
+                }
+                world_arrays[node] = worlds[node].getRawMatrix();
+                count++;
+            }
+        }
+        last_rebuilt = count;
+        return count;
+    }
+
+    /**
+     * Get the world matrix of a node as of the last update
+     * @param node The node
+     * @return The raw world matrix, shared with the hierarchy so it must not be changed
+     * @throws InvalidParameterException If the node isn't in this hierarchy
+     * @throws IllegalStateException If the node hasn't been updated since it was added
+     */
+    public float[] getWorldMatrix(int node){
+        checkNode(node);
+        if (world_arrays[node] == null){
+            throw new IllegalStateException(String.format("Node %d hasn't been updated yet", node));
+        }
+        return world_arrays[node];
+    }
+
+    /**
+     * Get the parent of a node
+     * @param node The node
+     * @return The parent, -1 for a root
+     * @throws InvalidParameterException If the node isn't in this hierarchy
+     */
+    public int getParent(int node){
+        checkNode(node);
+        return parents[node];
+    }
+
+    /**
+     * Get the transform of a node
+     * @param node The node
+     * @return The transform, as a pointer
+     * @throws InvalidParameterException If the node isn't in this hierarchy
+     */
+    public Transform getTransform(int node){
+        checkNode(node);
+        return transforms[node];
+    }
+
+    /**
+     * Get the number of nodes
+     * @return The number of nodes added
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * Get the number of world matrices the last update rebuilt, 0 when nothing moved
+     * @return The number rebuilt
+     */
+    public int getLastRebuilt(){
+        return last_rebuilt;
+    }
+
+    /**
+     * Double the room for nodes
+     */
+    private void grow(){
+        int capacity = transforms.length * 2;
+        transforms = Arrays.copyOf(transforms, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        snapshots = Arrays.copyOf(snapshots, capacity);
+        locals = Arrays.copyOf(locals, capacity);
+        worlds = Arrays.copyOf(worlds, capacity);
+        world_arrays = Arrays.copyOf(world_arrays, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        rebuilt = Arrays.copyOf(rebuilt, capacity);
+    }
+
+    /**
+     * Check a node is in this hierarchy
+     * @throws InvalidParameterException If it isn't
+     */
+    private void checkNode(int node){
+        if (node < 0 || node >= size){
+            throw new InvalidParameterException(String.format("Node %d isn't in this hierarchy", node));
+        }
+    }
+}
@@ -214,17 +214,43 @@ public class Vector {
     }
 
     /**
-     * Hash this vector
-     * @return
+     * Check whether another object is a vector with exactly the same coordinates. Coordinates are compared like
+     * Double.equals, so NaN equals NaN and 0.0 doesn't equal -0.0, which keeps equals consistent with hashCode.
+     * Vectors are mutable, so a vector must not be changed while it's a key of a map or a member of a set.
+     * @param other The object to compare against
+     * @return True if other is a vector with the same x, y and z
      */
     @Override
-    public int hashCode() {
-        short discard_factor = 0x3FF;
+    public boolean equals(Object other) {
+        if (this == other){
+            return true;
+        }
+        if (!(other instanceof Vector)){
+            return false;
+        }
+        Vector vector = (Vector) other;
+        return Double.compare(x, vector.x) == 0 && Double.compare(y, vector.y) == 0
+                && Double.compare(z, vector.z) == 0;
+    }
 
-        short element_1 = (short) (Double.doubleToRawLongBits(x) & discard_factor);
-        short element_2 = (short) (Double.doubleToRawLongBits(y) & discard_factor);
-        short element_3 = (short) (Double.doubleToRawLongBits(z) & discard_factor);
+    /**
+     * Hash this vector from all the bits of each coordinate
+     * @return A hash consistent with equals
+     */
+    @Override
+    public int hashCode() {
+        int hash = Double.hashCode(x);
+        hash = (31 * hash) + Double.hashCode(y);
+        hash = (31 * hash) + Double.hashCode(z);
+        return hash;
+    }
 
-        return (element_1 << 20) & (element_2 << 10) & element_3;
+    /**
+     * Describe this vector, for logging
+     * @return The coordinates as (x, y, z)
+     */
+    @Override
+    public String toString() {
+        return String.format("(%f, %f, %f)", x, y, z);
     }
-}
\ No newline at end of file
+}
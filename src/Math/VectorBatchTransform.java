@@ -0,0 +1,47 @@
+package Math;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API implementation of BatchTransform. This class needs the jdk.incubator.vector module both to compile
+ * and to load, BatchTransform only touches it when the module is present. Each loop runs a full vector of points
+ * at a time and hands the remainder to the scalar loop.
+ */
+class VectorBatchTransform {
+    /**
+     * The widest vector of doubles this CPU handles well
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * A private constructor, this class only has static methods
+     */
+    private VectorBatchTransform(){
+
+    }
+
+    /**
+     * Unproject Web Mercator points back to latitudes and longitudes, see BatchTransform.unproject
+     */
+    static void unproject(double[] xs, double[] ys, double scale, double[] lats, double[] lngs, int count){
+        double inverse = 1.0 / scale;
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()){
+            DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            x.mul(360.0 * inverse).sub(180.0).intoArray(lngs, i);
+
+            // lat = 360 * (atan(exp(-pi * (2y - 1))) / pi - 0.25)
+            DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+            y.mul(-2.0 * Math.PI * inverse).add(Math.PI)
+                    .lanewise(VectorOperators.EXP)
+                    .lanewise(VectorOperators.ATAN)
+                    .mul(360.0 / Math.PI)
+                    .sub(90.0)
+                    .intoArray(lats, i);
+        }
+        BatchTransform.unprojectScalar(xs, ys, scale, lats, lngs, i, count);
+    }
+}
@@ -0,0 +1,149 @@
+import App.WorldProcess;
+import Data.DataDriver;
+import Data.FetchPolicy;
+import Data.InternetDriver;
+import Data.RegionSeeder;
+import Data.TileStore;
+
+import javax.naming.ConfigurationException;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.Scanner;
+
+/**
+ * The headless command line mode of PlaneSimulator3d, this downloads a region into the tile store before a flight
+ * so the app doesn't need the network over it. Run with "seed" as the first argument to Driver:
+ * seed min_lat min_lng max_lat max_lng min_zoom max_zoom [--store dir] [--threads n] [--key key]
+ *      [--tile-url url] [--elevation-url url] [--retries n] [--hedge ms]
+ * The URLs default to Google's and can be pointed at a local stub server for testing, which needs to answer
+ * /v1/createSession, /v1/2dtiles/z/x/y and /maps/api/elevation/json the way Google does. A stub which injects
+ * errors and delays shows the retries and hedging of the fetch policy at work.
+ */
+public class Seeder {
+    /**
+     * The number of tiles downloaded at once unless --threads is given
+     */
+    private static final int DEFAULT_THREADS = 8;
+
+    /**
+     * Parse the arguments and seed the region
+     * @param args The arguments after "seed"
+     */
+    public static void main(String[] args){
+        if (args.length < 6){
+            printUsage();
+            System.exit(1);
+        }
+
+        String store = DataDriver.DEFAULT_TILE_STORE;
+        int threads = DEFAULT_THREADS;
+        String key = null;
+        String tile_url = InternetDriver.GOOGLE_TILE_URL;
+        String elevation_url = InternetDriver.GOOGLE_ELEVATION_URL;
+        FetchPolicy policy = FetchPolicy.DEFAULT;
+
+        double min_lat, min_lng, max_lat, max_lng;
+        int min_zoom, max_zoom;
+        try {
+            min_lat = Double.parseDouble(args[0]);
+            min_lng = Double.parseDouble(args[1]);
+            max_lat = Double.parseDouble(args[2]);
+            max_lng = Double.parseDouble(args[3]);
+            min_zoom = Integer.parseInt(args[4]);
+            max_zoom = Integer.parseInt(args[5]);
+
+            for (int i = 6; i < args.length; i += 2){
+                if (i + 1 >= args.length){
+                    throw new IllegalArgumentException(String.format("%s needs a value", args[i]));
+                }
+                switch (args[i]){
+                    case "--store": {
+                        store = args[i + 1];
+                        break;
+                    }
+                    case "--threads": {
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    }
+                    case "--key": {
+                        key = args[i + 1];
+                        break;
+                    }
+                    case "--tile-url": {
+                        tile_url = args[i + 1];
+                        break;
+                    }
+                    case "--elevation-url": {
+                        elevation_url = args[i + 1];
+                        break;
+                    }
+                    case "--retries": {
+                        policy = policy.withMaxAttempts(Integer.parseInt(args[i + 1]) + 1);
+                        break;
+                    }
+                    case "--hedge": {
+                        policy = policy.withHedgeDelay(Long.parseLong(args[i + 1]));
+                        break;
+                    }
+                    default: {
+                        throw new IllegalArgumentException(String.format("Unknown option %s", args[i]));
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        try {
+            // Without a key on the command line, read it from the same file the app uses
+            InternetDriver inetDriver = new InternetDriver(key != null ? key : readKey(), tile_url, elevation_url,
+                    policy);
+            inetDriver.initializeTileSession();
+
+            TileStore tileStore = new TileStore(store);
+            RegionSeeder seeder = new RegionSeeder(new DataDriver(inetDriver, tileStore), tileStore, threads,
+                    WorldProcess.TILE_RESOLUTION);
+
+            long failed = seeder.seed(min_lat, min_lng, max_lat, max_lng, min_zoom, max_zoom);
+            System.out.printf("%d retries, %d hedged requests of which %d answered first\n",
+                    inetDriver.getHttp().getRetries(), inetDriver.getHttp().getHedges(),
+                    inetDriver.getHttp().getHedgeWins());
+            inetDriver.getLimiter().getLedger().printUsage();
+            if (failed > 0){
+                System.out.printf("%d tiles failed, run again to retry them\n", failed);
+                System.exit(2);
+            }
+        } catch (ConfigurationException | FileNotFoundException e) {
+            System.out.println("Failed to start a tile session, is the API key valid?");
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.out.println("Seeding was interrupted, run again to resume");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read the API key from the .google_api_key file
+     * @return The API key
+     * @throws FileNotFoundException If the file doesn't exist or the key isn't reasonable
+     */
+    private static String readKey() throws FileNotFoundException {
+        Scanner scanner = new Scanner(new FileReader(".google_api_key"));
+        String google_key = scanner.next();
+        if (google_key.length() < 8){
+            throw new FileNotFoundException("Found key was not a reasonable length");
+        }
+        return google_key;
+    }
+
+    /**
+     * Print how to use the seeder
+     */
+    private static void printUsage(){
+        System.out.println("Usage: seed min_lat min_lng max_lat max_lng min_zoom max_zoom [--store dir] " +
+                "[--threads n] [--key key] [--tile-url url] [--elevation-url url] [--retries n] [--hedge ms]");
+    }
+}
@@ -0,0 +1,19 @@
+package Utils;
+
+/**
+ * A source of time for anything which runs on a schedule, so it can be driven by a fake clock instead of the real
+ * one. Implementations must be safe to read from any thread.
+ */
+public interface Clock {
+    /**
+     * The system's monotonic high resolution clock, System.nanoTime
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * Read the clock
+     * @return The time in nanoseconds from some fixed but arbitrary origin, only differences between readings mean
+     * anything
+     */
+    long nanoTime();
+}
@@ -0,0 +1,46 @@
+package Utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count which only goes up, such as requests made or bytes read. Increments are spread across cells by a LongAdder
+ * so threads counting at once don't fight over one atomic, reading sums the cells.
+ */
+public class Counter {
+    /**
+     * The count
+     */
+    private final LongAdder count;
+
+    /**
+     * Construct a counter at zero
+     */
+    public Counter(){
+        count = new LongAdder();
+    }
+
+    /**
+     * Add one to the count
+     */
+    public void increment(){
+        count.increment();
+    }
+
+    /**
+     * Add to the count
+     * @param amount The amount to add, negative amounts are ignored so the count never goes down
+     */
+    public void add(long amount){
+        if (amount > 0){
+            count.add(amount);
+        }
+    }
+
+    /**
+     * Get the count
+     * @return The count, a snapshot which may miss increments made while reading
+     */
+    public long get(){
+        return count.sum();
+    }
+}
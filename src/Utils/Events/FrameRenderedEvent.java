@@ -0,0 +1,97 @@
+package Utils.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A frame was drawn on the render thread. The event's duration is the whole frame, split into its phases: applying
+ * the snapshot (which includes uploading tiles), drawing the graphics stack and swapping the buffers, which is
+ * where waiting on vsync or the GPU shows up. A long frame can then be matched to the phase, GC pause or upload
+ * behind it.
+ * <p>
+ * Emitted once a frame, so like the tile events it's guarded by shouldCommit and has no stack trace.
+ */
+@Name("planesim.FrameRendered")
+@Label("Frame Rendered")
+@Category({"PlaneSimulator", "Rendering"})
+@Description("A frame was applied, drawn and swapped on the render thread")
+@StackTrace(false)
+public class FrameRenderedEvent extends Event {
+    /**
+     * The frame's number, counting up from 0
+     */
+    @Label("Frame")
+    private long frame;
+
+    /**
+     * The simulation tick of the snapshot drawn, and whether it was new this frame
+     */
+    @Label("Tick")
+    private long tick;
+
+    @Label("Fresh Snapshot")
+    private boolean fresh;
+
+    /**
+     * How long each phase took, in nanoseconds
+     */
+    @Label("Apply")
+    @Timespan(Timespan.NANOSECONDS)
+    private long apply;
+
+    @Label("Draw")
+    @Timespan(Timespan.NANOSECONDS)
+    private long draw;
+
+    @Label("Swap")
+    @Timespan(Timespan.NANOSECONDS)
+    private long swap;
+
+    /**
+     * The draw calls made and objects bound while drawing
+     */
+    @Label("Draw Calls")
+    private int draw_calls;
+
+    @Label("State Changes")
+    private int state_changes;
+
+    /**
+     * Set which frame this was
+     * @param frame The frame's number
+     * @param tick The simulation tick of the snapshot drawn
+     * @param fresh True if the snapshot was new this frame
+     */
+    public void setFrame(long frame, long tick, boolean fresh){
+        this.frame = frame;
+        this.tick = tick;
+        this.fresh = fresh;
+    }
+
+    /**
+     * Set how long each phase of the frame took
+     * @param apply Nanoseconds applying the snapshot to every process
+     * @param draw Nanoseconds drawing the graphics stack
+     * @param swap Nanoseconds swapping the buffers and polling the window
+     */
+    public void setPhases(long apply, long draw, long swap){
+        this.apply = apply;
+        this.draw = draw;
+        this.swap = swap;
+    }
+
+    /**
+     * Set the work the frame gave OpenGL
+     * @param draw_calls The draw calls made
+     * @param state_changes The shaders, textures and vertex arrays bound
+     */
+    public void setWork(int draw_calls, int state_changes){
+        this.draw_calls = draw_calls;
+        this.state_changes = state_changes;
+    }
+}
@@ -0,0 +1,42 @@
+package Utils.Events;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A tile was uploaded to the GPU on the render thread. The event's duration is the upload, which the frame it's in
+ * waits on.
+ */
+@Name("planesim.GpuUpload")
+@Label("GPU Upload")
+@Description("A tile's texture and mesh were uploaded to the GPU")
+public class GpuUploadEvent extends TileEvent {
+    /**
+     * The bytes given to OpenGL for the texture, vertices and indices
+     */
+    @Label("Texture Bytes")
+    @DataAmount
+    private long texture_bytes;
+
+    @Label("Vertex Bytes")
+    @DataAmount
+    private long vertex_bytes;
+
+    @Label("Index Bytes")
+    @DataAmount
+    private long index_bytes;
+
+    /**
+     * Set what was uploaded
+     * @param texture_bytes The bytes of the texture's pixels
+     * @param vertex_bytes The bytes of the vertices
+     * @param index_bytes The bytes of the indices
+     */
+    public void setBytes(long texture_bytes, long vertex_bytes, long index_bytes){
+        this.texture_bytes = texture_bytes;
+        this.vertex_bytes = vertex_bytes;
+        this.index_bytes = index_bytes;
+    }
+}
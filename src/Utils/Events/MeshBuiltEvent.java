@@ -0,0 +1,44 @@
+package Utils.Events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A tile's heightmap mesh was built from its elevations. The event's duration covers generating the grid and
+ * simplifying it.
+ */
+@Name("planesim.MeshBuilt")
+@Label("Mesh Built")
+@Description("A tile's heightmap mesh was built and simplified")
+public class MeshBuiltEvent extends TileEvent {
+    /**
+     * The number of vertices along each side of the mesh
+     */
+    @Label("Resolution")
+    private int resolution;
+
+    /**
+     * The number of triangles drawn
+     */
+    @Label("Triangles")
+    private int triangles;
+
+    /**
+     * Whether the mesh was simplified adaptively rather than kept as the full grid
+     */
+    @Label("Simplified")
+    private boolean simplified;
+
+    /**
+     * Set what was built
+     * @param resolution The number of vertices along each side
+     * @param triangles The number of triangles drawn
+     * @param simplified True if the mesh was simplified adaptively
+     */
+    public void setMesh(int resolution, int triangles, boolean simplified){
+        this.resolution = resolution;
+        this.triangles = triangles;
+        this.simplified = simplified;
+    }
+}
@@ -0,0 +1,42 @@
+package Utils.Events;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A tile's image was decoded. The event's duration is the decode, without writing the image to the tile store.
+ */
+@Name("planesim.TileDecoded")
+@Label("Tile Decoded")
+@Description("A tile's image was decoded")
+public class TileDecodedEvent extends TileEvent {
+    /**
+     * The size of the encoded image
+     */
+    @Label("Encoded Bytes")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * The size of the decoded image, in pixels
+     */
+    @Label("Width")
+    private int width;
+
+    @Label("Height")
+    private int height;
+
+    /**
+     * Set what was decoded
+     * @param bytes The size of the encoded image
+     * @param width The decoded image's width, in pixels
+     * @param height The decoded image's height, in pixels
+     */
+    public void setImage(long bytes, int width, int height){
+        this.bytes = bytes;
+        this.width = width;
+        this.height = height;
+    }
+}
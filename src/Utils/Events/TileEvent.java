@@ -0,0 +1,44 @@
+package Utils.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields every tile event shares, the tile it's about. Tile events are emitted on whichever thread does the
+ * work, so a recording lines each tile's fetch, decode, mesh and upload up against GC and the app's threads.
+ * <p>
+ * Events are only worth anything if they cost nothing when no recording wants them, so every event is emitted
+ * behind isEnabled or shouldCommit and fills its fields inside the guard. When nothing is recording, JFR makes those
+ * calls constant false and the JIT removes the event entirely. Stack traces are left off, they'd cost more than the
+ * work most of these events time.
+ */
+@Category({"PlaneSimulator", "Tiles"})
+@StackTrace(false)
+public abstract class TileEvent extends Event {
+    /**
+     * The tile, zoom level then x and y in tiles. Protected because JFR doesn't record the private fields of an
+     * event's superclasses.
+     */
+    @Label("Zoom")
+    protected int zoom;
+
+    @Label("X")
+    protected int x;
+
+    @Label("Y")
+    protected int y;
+
+    /**
+     * Set the tile this event is about
+     * @param zoom The tile's zoom level
+     * @param x The tile's x, in tiles
+     * @param y The tile's y, in tiles
+     */
+    public void setTile(int zoom, int x, int y){
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+    }
+}
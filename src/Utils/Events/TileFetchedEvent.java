@@ -0,0 +1,47 @@
+package Utils.Events;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A tile's image bytes were read, from the tile store or the tile source. The event's duration is the fetch's
+ * latency, including waiting on the source's rate limits and retries. Fetches which fail are emitted too, with no
+ * bytes, so a stall waiting on a dead server still shows up.
+ */
+@Name("planesim.TileFetched")
+@Label("Tile Fetched")
+@Description("A tile's image was read from the tile store or the tile source")
+public class TileFetchedEvent extends TileEvent {
+    /**
+     * The size of the encoded image, 0 if the fetch failed
+     */
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * Whether the image came from the tile store rather than the source
+     */
+    @Label("Stored")
+    private boolean stored;
+
+    /**
+     * The name of the source asked, see TileSource.getName
+     */
+    @Label("Source")
+    private String source;
+
+    /**
+     * Set what was fetched
+     * @param bytes The size of the encoded image, 0 if the fetch failed
+     * @param stored True if the image came from the tile store
+     * @param source The name of the source asked
+     */
+    public void setFetch(long bytes, boolean stored, String source){
+        this.bytes = bytes;
+        this.stored = stored;
+        this.source = source;
+    }
+}
@@ -0,0 +1,28 @@
+package Utils.Events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A tile was requested from the tile pipeline, the start of its lifecycle. An instant event, emit it behind
+ * isEnabled.
+ */
+@Name("planesim.TileRequested")
+@Label("Tile Requested")
+@Description("A tile was requested from the tile pipeline")
+public class TileRequestedEvent extends TileEvent {
+    /**
+     * Whether the tile was prefetched rather than needed to draw now
+     */
+    @Label("Prefetch")
+    private boolean prefetch;
+
+    /**
+     * Set why the tile was requested
+     * @param prefetch True if the tile was prefetched along the camera's path
+     */
+    public void setPrefetch(boolean prefetch){
+        this.prefetch = prefetch;
+    }
+}
@@ -0,0 +1,166 @@
+package Utils;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Turns the time passing on a clock into a whole number of fixed length ticks. Elapsed time is added to an
+ * accumulator each update and every full tick's worth is taken out again as a tick to run, so the simulation always
+ * steps by the same dt however unevenly it's called. The remainder carries over to the next update.
+ * <p>
+ * If the simulation falls more than maxCatchUp ticks behind, say after a long stall, the extra ticks are dropped
+ * rather than run. Otherwise every slow tick would add to the backlog the next update has to run and the simulation
+ * would never catch up (the spiral of death). Dropped ticks are counted, and the simulated time skips forward past
+ * them.
+ * <p>
+ * Each tick has a time on the clock, the moment the state after it is current. Something drawing the simulation
+ * between ticks can blend from the previous tick's state to the latest one by getInterpolation.
+ * <p>
+ * update and nextTick must be called from one thread, getInterpolation only reads the clock and may be called from
+ * any thread.
+ */
+public class FixedTimestep {
+    /**
+     * The clock time passes on
+     */
+    private final Clock clock;
+
+    /**
+     * The length of a tick in nanoseconds
+     */
+    private final long step_nanos;
+
+    /**
+     * The most ticks a single update may leave to run
+     */
+    private final int max_catch_up;
+
+    /**
+     * The clock's time at the last update
+     */
+    private long last_time;
+
+    /**
+     * The time passed which hasn't been taken out as ticks, in nanoseconds
+     */
+    private long accumulator;
+
+    /**
+     * The clock time of the last tick taken
+     */
+    private long tick_time;
+
+    /**
+     * The number of ticks taken, and dropped to catch up
+     */
+    private long ticks;
+    private long dropped;
+
+    /**
+     * Construct a timestep starting now, its first tick is due one tick from now
+     * @param clock The clock time passes on
+     * @param tick_rate The number of ticks a second, 1 to 1,000,000,000
+     * @param max_catch_up The most ticks an update may leave to run, at least 1
+     * @throws InvalidParameterException If the clock is null or the rate or catch up are out of range
+     */
+    public FixedTimestep(Clock clock, int tick_rate, int max_catch_up){
+        if (clock == null){
+            throw new InvalidParameterException("A fixed timestep needs a clock!");
+        }
+        if (tick_rate <= 0 || tick_rate > 1_000_000_000 || max_catch_up < 1){
+            throw new InvalidParameterException("A fixed timestep needs a positive tick rate and catch up!");
+        }
+        this.clock = clock;
+        this.step_nanos = 1_000_000_000L / tick_rate;
+        this.max_catch_up = max_catch_up;
+        this.last_time = clock.nanoTime();
+        this.accumulator = 0;
+        this.tick_time = last_time;
+        this.ticks = 0;
+        this.dropped = 0;
+    }
+
+    /**
+     * Add the time passed since the last update, dropping any backlog past the catch up limit
+     * @return The number of ticks now due, at most the catch up limit
+     */
+    public int update(){
+        long now = clock.nanoTime();
+        accumulator += Math.max(0, now - last_time);
+        last_time = now;
+
+        long due = accumulator / step_nanos;
+        if (due > max_catch_up){
+            long skipped = due - max_catch_up;
+            accumulator -= skipped * step_nanos;
+            tick_time += skipped * step_nanos;
+            dropped += skipped;
+            due = max_catch_up;
+        }
+        return (int) due;
+    }
+
+    /**
+     * Take the next due tick, if there is one. Run the simulation once for each time this returns true.
+     * @return True if a tick was due
+     */
+    public boolean nextTick(){
+        if (accumulator < step_nanos){
+            return false;
+        }
+        accumulator -= step_nanos;
+        tick_time += step_nanos;
+        ticks++;
+        return true;
+    }
+
+    /**
+     * Get the nanoseconds left until the next tick is due, as of the last update
+     * @return The nanoseconds to wait, 0 if a tick is already due
+     */
+    public long getNanosUntilNextTick(){
+        return Math.max(0, step_nanos - accumulator - (clock.nanoTime() - last_time));
+    }
+
+    /**
+     * Get how far the clock is past a tick, as a fraction of a tick. Blending from the state before that tick to the
+     * state after it by this fraction draws the simulation smoothly, one tick behind.
+     * @param tick_time The clock time of the tick, see getTickTime
+     * @return The fraction, clamped to 0, 1
+     */
+    public double getInterpolation(long tick_time){
+        double alpha = (clock.nanoTime() - tick_time) / (double) step_nanos;
+        return Math.max(0.0, Math.min(1.0, alpha));
+    }
+
+    /**
+     * Get the clock time of the last tick taken, the moment the state after it is current
+     * @return The clock time in nanoseconds
+     */
+    public long getTickTime(){
+        return tick_time;
+    }
+
+    /**
+     * Get the number of ticks taken
+     * @return The ticks taken by nextTick
+     */
+    public long getTicks(){
+        return ticks;
+    }
+
+    /**
+     * Get the number of ticks dropped because the simulation fell too far behind
+     * @return The ticks dropped
+     */
+    public long getDroppedTicks(){
+        return dropped;
+    }
+
+    /**
+     * Get the length of a tick
+     * @return The dt of every tick, in seconds
+     */
+    public double getStep(){
+        return step_nanos / 1e9;
+    }
+}
@@ -0,0 +1,79 @@
+package Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value which can go up and down, such as tiles in flight. A gauge either holds a value which is set or is read
+ * from a supplier whenever it's exported, for values something else already keeps track of.
+ */
+public class Gauge {
+    /**
+     * The value's bits, see Double.doubleToRawLongBits, kept in an AtomicLong so add is lock free
+     */
+    private final AtomicLong bits;
+
+    /**
+     * The supplier the value is read from, null if the value is set
+     */
+    private final DoubleSupplier supplier;
+
+    /**
+     * Construct a gauge which is set, starting at zero
+     */
+    public Gauge(){
+        this(null);
+    }
+
+    /**
+     * Construct a gauge read from a supplier
+     * @param supplier The supplier of the value, called from whichever thread exports it so it must be thread safe,
+     *                 null for a gauge which is set
+     */
+    public Gauge(DoubleSupplier supplier){
+        this.bits = new AtomicLong(Double.doubleToRawLongBits(0.0));
+        this.supplier = supplier;
+    }
+
+    /**
+     * Set the value
+     * @param value The new value
+     * @throws IllegalStateException If the gauge is read from a supplier
+     */
+    public void set(double value){
+        checkSettable();
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Add to the value
+     * @param amount The amount to add, negative to take away
+     * @throws IllegalStateException If the gauge is read from a supplier
+     */
+    public void add(double amount){
+        checkSettable();
+        long current;
+        do {
+            current = bits.get();
+        } while (!bits.compareAndSet(current,
+                Double.doubleToRawLongBits(Double.longBitsToDouble(current) + amount)));
+    }
+
+    /**
+     * Get the value
+     * @return The value set, or read from the supplier now
+     */
+    public double get(){
+        return supplier == null ? Double.longBitsToDouble(bits.get()) : supplier.getAsDouble();
+    }
+
+    /**
+     * Check this gauge is set rather than read from a supplier
+     * @throws IllegalStateException If it's read from a supplier
+     */
+    private void checkSettable(){
+        if (supplier != null){
+            throw new IllegalStateException("A gauge read from a supplier can't be set!");
+        }
+    }
+}
@@ -131,6 +131,45 @@ public class GraphicsStack {
         return node;
     }
 
+    /**
+     * Remove a specific object from anywhere within the stack, this WILL call destroy on it.
+     * This is O(n) as the stack must be walked to find the node before it.
+     * @param glObject The object to remove, should NOT be null
+     * @return True if the object was found and removed, false if it isn't in this stack
+     * @throws java.security.InvalidParameterException If glObject is null
+     */
+    public boolean remove(GLObject glObject){
+        if (glObject == null){
+            throw new InvalidParameterException("The provided object is null!");
+        }
+
+        GraphicsNode node = root;
+        GraphicsNode prev = null;
+        while (node != null){
+            if (node.hasElement() && node.getElement() == glObject){
+                // Link the node before this one to the node after this one
+                if (prev != null){
+                    prev.setNext(node.next());
+                } else{
+                    root = node.next();
+                }
+
+                // If we removed the top then the node before it is the new top
+                if (node == top){
+                    top = prev;
+                }
+
+                node.setNext(null);
+                glObject.destroy();
+                return true;
+            }
+            prev = node;
+            node = node.next();
+        }
+
+        return false;
+    }
+
     /**
      * Return the root node, may be null
      * @return Root node, may be null
@@ -0,0 +1,176 @@
+package Utils;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies in nanoseconds, laid out like an HDR histogram. Latencies are grouped by their
+ * highest set bit and each group is split into SUB_BUCKETS linear buckets, so every bucket is at most 1 / SUB_BUCKETS
+ * of its latencies wide and percentiles are accurate to about 3% from nanoseconds up to centuries, in under 2000
+ * buckets. Any thread may record while any other reads, the readings are a snapshot which may be mid update.
+ */
+public class LatencyHistogram {
+    /**
+     * The bits of each latency below its highest set bit which pick its bucket within its group
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * The number of buckets each power of two is split into
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The number of buckets, enough for every positive long
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of latencies in each bucket
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of latencies recorded
+     */
+    private final AtomicLong count;
+
+    /**
+     * The sum of every latency recorded, in nanoseconds
+     */
+    private final AtomicLong total;
+
+    /**
+     * The longest latency recorded, in nanoseconds
+     */
+    private final AtomicLong max;
+
+    /**
+     * Construct an empty histogram
+     */
+    public LatencyHistogram(){
+        buckets = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record a latency
+     * @param nanos The latency, in nanoseconds, negative latencies are counted as zero
+     */
+    public void record(long nanos){
+        long latency = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(latency));
+        count.incrementAndGet();
+        total.addAndGet(latency);
+        max.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Get the number of latencies recorded
+     * @return The number of latencies
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Get the mean latency
+     * @return The mean latency, in nanoseconds, 0 if nothing has been recorded
+     */
+    public double getMean(){
+        long recorded = count.get();
+        return recorded == 0 ? 0.0 : (double) total.get() / (double) recorded;
+    }
+
+    /**
+     * Get the sum of every latency recorded
+     * @return The total, in nanoseconds
+     */
+    public long getTotal(){
+        return total.get();
+    }
+
+    /**
+     * Get the longest latency
+     * @return The longest latency, in nanoseconds
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Get a percentile of the latencies, as the upper edge of the bucket it falls in
+     * @param percentile The percentile, 0 to 100
+     * @return The latency, in nanoseconds, which percentile percent of latencies are at or below, 0 if nothing has
+     * been recorded
+     * @throws InvalidParameterException If percentile isn't within 0 to 100
+     */
+    public long getPercentile(double percentile){
+        if (percentile < 0.0 || percentile > 100.0){
+            throw new InvalidParameterException("A percentile must be within 0 and 100!");
+        }
+        long recorded = count.get();
+        if (recorded == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(recorded * (percentile / 100.0)));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++){
+            seen += buckets.get(b);
+            if (seen >= target){
+                return Math.min(upperEdge(b), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget every latency recorded
+     */
+    public void reset(){
+        for (int b = 0; b < BUCKETS; b++){
+            buckets.set(b, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summarise this histogram in milliseconds
+     * @return The count, mean, median, 99th percentile and max
+     */
+    @Override
+    public String toString(){
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", getCount(), getMean() / 1e6,
+                getPercentile(50.0) / 1e6, getPercentile(99.0) / 1e6, getMax() / 1e6);
+    }
+
+    /**
+     * Find the bucket of a latency. Latencies below SUB_BUCKETS have a bucket each, above that the group is picked by
+     * the highest set bit and the bucket within it by the SUB_BITS bits below it.
+     */
+    private static int bucketOf(long nanos){
+        if (nanos < SUB_BUCKETS){
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return ((shift + 1) * SUB_BUCKETS) + (int) ((nanos >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Find the largest latency a bucket holds
+     */
+    private static long upperEdge(int bucket){
+        if (bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = (bucket / SUB_BUCKETS) - 1;
+        long top = SUB_BUCKETS + (bucket % SUB_BUCKETS) + 1;
+        // The top bucket's edge is 2^63 which wraps, so minus one it's Long.MAX_VALUE
+        return (top << shift) - 1;
+    }
+}
@@ -0,0 +1,383 @@
+package Utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * The registry of every metric the app keeps: counters, gauges and latency histograms, each found by its name and
+ * labels. Asking for a metric which doesn't exist yet creates it, so any class can get its metrics where it needs
+ * them without setting anything up first. Lookups go through a ConcurrentHashMap, so hot paths should look their
+ * metrics up once and keep them; updating a metric is lock free.
+ * <p>
+ * Names and labels follow Prometheus: names are snake_case with the unit last (_total for counters, _seconds for
+ * histograms), and labels are given as pairs of key and value. Every metric of a name must be the same type, a name
+ * may have any number of label sets. Histograms record nanoseconds and are exported in seconds, as a Prometheus
+ * summary with the quantiles in QUANTILES.
+ * <p>
+ * The registry can be exported as Prometheus text or JSON from any thread, see MetricsExporter to write it out.
+ */
+public final class Metrics {
+    /**
+     * The quantiles exported for each histogram
+     */
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * The characters allowed in a metric's name and a label's key
+     */
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    /**
+     * The kinds of metric, named as Prometheus types them
+     */
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        SUMMARY("summary");
+
+        /**
+         * The Prometheus type
+         */
+        private final String exported;
+
+        /**
+         * Construct a type
+         * @param exported The Prometheus type
+         */
+        Type(String exported){
+            this.exported = exported;
+        }
+    }
+
+    /**
+     * A registered metric with its name, labels and value
+     */
+    private static class Metric {
+        /**
+         * The name, the help text and type shared by every metric of the name
+         */
+        private final String name;
+        private final String help;
+        private final Type type;
+
+        /**
+         * The labels as key, value pairs
+         */
+        private final String[] labels;
+
+        /**
+         * The Counter, Gauge or LatencyHistogram
+         */
+        private final Object value;
+
+        /**
+         * Construct a registered metric
+         */
+        private Metric(String name, String help, Type type, String[] labels, Object value){
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labels = labels;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Every registered metric, keyed by its name and labels
+     */
+    private static final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * The type of each name, so a name can't be registered as two types
+     */
+    private static final ConcurrentHashMap<String, Type> types = new ConcurrentHashMap<>();
+
+    /**
+     * The registry is only used statically
+     */
+    private Metrics(){}
+
+    /**
+     * Get a counter, creating it if it doesn't exist
+     * @param name The name, ending in _total
+     * @param help What is counted, only the first registration's help is kept
+     * @param labels Pairs of label key and value
+     * @return The counter
+     * @throws InvalidParameterException If the name or labels are malformed
+     * @throws IllegalStateException If the name is already registered as a different type
+     */
+    public static Counter counter(String name, String help, String... labels){
+        return (Counter) register(name, help, Type.COUNTER, labels, null).value;
+    }
+
+    /**
+     * Get a gauge which is set, creating it if it doesn't exist
+     * @param name The name
+     * @param help What is measured, only the first registration's help is kept
+     * @param labels Pairs of label key and value
+     * @return The gauge
+     * @throws InvalidParameterException If the name or labels are malformed
+     * @throws IllegalStateException If the name is already registered as a different type
+     */
+    public static Gauge gauge(String name, String help, String... labels){
+        return (Gauge) register(name, help, Type.GAUGE, labels, null).value;
+    }
+
+    /**
+     * Register a gauge read from a supplier whenever it's exported. A supplier gauge replaces any gauge of the same
+     * name and labels, so whatever registered last is what's read.
+     * @param name The name
+     * @param help What is measured
+     * @param supplier The supplier of the value, called from the exporting thread so it must be thread safe
+     * @param labels Pairs of label key and value
+     * @return The gauge
+     * @throws InvalidParameterException If the supplier is null or the name or labels are malformed
+     * @throws IllegalStateException If the name is already registered as a different type
+     */
+    public static Gauge gauge(String name, String help, DoubleSupplier supplier, String... labels){
+        if (supplier == null){
+            throw new InvalidParameterException("A supplier gauge needs a supplier!");
+        }
+        return (Gauge) register(name, help, Type.GAUGE, labels, new Gauge(supplier)).value;
+    }
+
+    /**
+     * Get a latency histogram, creating it if it doesn't exist
+     * @param name The name, ending in _seconds
+     * @param help What is timed, only the first registration's help is kept
+     * @param labels Pairs of label key and value
+     * @return The histogram, which records nanoseconds
+     * @throws InvalidParameterException If the name or labels are malformed
+     * @throws IllegalStateException If the name is already registered as a different type
+     */
+    public static LatencyHistogram histogram(String name, String help, String... labels){
+        return (LatencyHistogram) register(name, help, Type.SUMMARY, labels, null).value;
+    }
+
+    /**
+     * Write every metric in the Prometheus text format, version 0.0.4
+     * @return The metrics, grouped by name and sorted
+     */
+    public static String toPrometheus(){
+        StringBuilder text = new StringBuilder();
+        String last_name = null;
+        for (Metric metric : sorted()){
+            if (!metric.name.equals(last_name)){
+                last_name = metric.name;
+                text.append("# HELP ").append(metric.name).append(' ')
+                        .append(metric.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+                text.append("# TYPE ").append(metric.name).append(' ').append(metric.type.exported).append('\n');
+            }
+
+            switch (metric.type){
+                case COUNTER:
+                    appendSample(text, metric.name, metric.labels, null, ((Counter) metric.value).get());
+                    break;
+                case GAUGE:
+                    appendSample(text, metric.name, metric.labels, null, ((Gauge) metric.value).get());
+                    break;
+                case SUMMARY:
+                    LatencyHistogram histogram = (LatencyHistogram) metric.value;
+                    for (double quantile : QUANTILES){
+                        appendSample(text, metric.name, metric.labels, Double.toString(quantile),
+                                histogram.getPercentile(quantile * 100.0) / 1e9);
+                    }
+                    appendSample(text, metric.name + "_sum", metric.labels, null, histogram.getTotal() / 1e9);
+                    appendSample(text, metric.name + "_count", metric.labels, null, histogram.getCount());
+                    break;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Write every metric as JSON: an object with the time written and an array of metrics, each with its name, type,
+     * help and labels. Counters and gauges have a value, histograms a count, sum, mean, max and each quantile as
+     * p50 and so on, all in seconds.
+     * @return The metrics, grouped by name and sorted
+     */
+    public static JSONObject toJson(){
+        JSONArray array = new JSONArray();
+        for (Metric metric : sorted()){
+            JSONObject object = new JSONObject();
+            object.put("name", metric.name);
+            object.put("type", metric.type.exported);
+            object.put("help", metric.help);
+
+            JSONObject labels = new JSONObject();
+            for (int i = 0; i < metric.labels.length; i += 2){
+                labels.put(metric.labels[i], metric.labels[i + 1]);
+            }
+            object.put("labels", labels);
+
+            switch (metric.type){
+                case COUNTER:
+                    object.put("value", ((Counter) metric.value).get());
+                    break;
+                case GAUGE:
+                    object.put("value", finite(((Gauge) metric.value).get()));
+                    break;
+                case SUMMARY:
+                    LatencyHistogram histogram = (LatencyHistogram) metric.value;
+                    object.put("count", histogram.getCount());
+                    object.put("sum", histogram.getTotal() / 1e9);
+                    object.put("mean", histogram.getMean() / 1e9);
+                    object.put("max", histogram.getMax() / 1e9);
+                    for (double quantile : QUANTILES){
+                        object.put(String.format(Locale.ROOT, "p%s", quantileKey(quantile)),
+                                histogram.getPercentile(quantile * 100.0) / 1e9);
+                    }
+                    break;
+            }
+            array.put(object);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("metrics", array);
+        return json;
+    }
+
+    /**
+     * Find or create a metric
+     * @param replacement A value to replace any existing metric with, null to keep an existing metric or create one
+     */
+    private static Metric register(String name, String help, Type type, String[] labels, Object replacement){
+        if (name == null || !NAME.matcher(name).matches()){
+            throw new InvalidParameterException(String.format("%s isn't a valid metric name", name));
+        }
+        if (labels == null || labels.length % 2 != 0){
+            throw new InvalidParameterException("A metric's labels must be pairs of key and value!");
+        }
+        for (int i = 0; i < labels.length; i += 2){
+            if (labels[i] == null || !LABEL.matcher(labels[i]).matches() || labels[i + 1] == null){
+                throw new InvalidParameterException(String.format("%s=%s isn't a valid label of %s", labels[i],
+                        labels[i + 1], name));
+            }
+        }
+        Type registered = types.putIfAbsent(name, type);
+        if (registered != null && registered != type){
+            throw new IllegalStateException(String.format("Metric %s is already a %s", name, registered.exported));
+        }
+
+        String key = key(name, labels);
+        String[] copied = labels.clone();
+        String described = help == null ? "" : help;
+        if (replacement != null){
+            Metric metric = new Metric(name, described, type, copied, replacement);
+            metrics.put(key, metric);
+            return metric;
+        }
+        return metrics.computeIfAbsent(key, k -> new Metric(name, described, type, copied, create(type)));
+    }
+
+    /**
+     * Create the value of a new metric
+     */
+    private static Object create(Type type){
+        switch (type){
+            case COUNTER:
+                return new Counter();
+            case GAUGE:
+                return new Gauge();
+            default:
+                return new LatencyHistogram();
+        }
+    }
+
+    /**
+     * The key of a metric in the registry, its name and labels as they're exported
+     */
+    private static String key(String name, String[] labels){
+        StringBuilder key = new StringBuilder(name);
+        appendLabels(key, labels, null);
+        return key.toString();
+    }
+
+    /**
+     * Every metric sorted by name then labels, so each name's metrics are exported together
+     */
+    private static ArrayList<Metric> sorted(){
+        ArrayList<Metric> list = new ArrayList<>(metrics.values());
+        list.sort(Comparator.comparing((Metric metric) -> metric.name)
+                .thenComparing(metric -> key(metric.name, metric.labels)));
+        return list;
+    }
+
+    /**
+     * Write one Prometheus sample line
+     * @param quantile The quantile label to add, null for none
+     */
+    private static void appendSample(StringBuilder text, String name, String[] labels, String quantile,
+                                     double value){
+        text.append(name);
+        appendLabels(text, labels, quantile);
+        text.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    /**
+     * Write a set of labels in braces, nothing if there are none
+     * @param quantile The quantile label to add, null for none
+     */
+    private static void appendLabels(StringBuilder text, String[] labels, String quantile){
+        if (labels.length == 0 && quantile == null){
+            return;
+        }
+        text.append('{');
+        for (int i = 0; i < labels.length; i += 2){
+            if (i > 0){
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\")
+                    .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        if (quantile != null){
+            if (labels.length > 0){
+                text.append(',');
+            }
+            text.append("quantile=\"").append(quantile).append('"');
+        }
+        text.append('}');
+    }
+
+    /**
+     * Format a sample's value, whole numbers without a fraction and the non finite values as Prometheus spells them
+     */
+    private static String formatValue(double value){
+        if (Double.isNaN(value)){
+            return "NaN";
+        }
+        if (Double.isInfinite(value)){
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15){
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Turn a quantile into its JSON key, 0.5 is 50 and 0.99 is 99
+     */
+    private static String quantileKey(double quantile){
+        double percentile = quantile * 100.0;
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile)
+                : Double.toString(percentile).replace('.', '_');
+    }
+
+    /**
+     * JSON has no NaN or infinity, so those are written as null
+     */
+    private static Object finite(double value){
+        return Double.isFinite(value) ? value : JSONObject.NULL;
+    }
+}
@@ -0,0 +1,222 @@
+package Utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the Metrics registry while the app runs, to a file rewritten every few seconds and once more on close,
+ * and/or over HTTP on localhost so Prometheus or curl can scrape it. Files ending in .json are written as JSON,
+ * anything else as Prometheus text. The server serves /metrics as Prometheus text and /metrics.json as JSON, and
+ * only listens on the loopback address.
+ * <p>
+ * Both are off unless asked for with the system properties FILE_PROPERTY and PORT_PROPERTY, so by default the
+ * metrics are only kept in memory.
+ */
+public class MetricsExporter implements AutoCloseable {
+    /**
+     * The system property naming the file to write the metrics to
+     */
+    public static final String FILE_PROPERTY = "planesim.metrics.file";
+
+    /**
+     * The system property giving the localhost port to serve the metrics on
+     */
+    public static final String PORT_PROPERTY = "planesim.metrics.port";
+
+    /**
+     * The system property giving the seconds between writes of the file
+     */
+    public static final String INTERVAL_PROPERTY = "planesim.metrics.interval";
+
+    /**
+     * The seconds between writes of the file when INTERVAL_PROPERTY isn't set
+     */
+    public static final int INTERVAL = 5;
+
+    /**
+     * The file written to, null if none
+     */
+    private final Path file;
+
+    /**
+     * The port served on, 0 if none
+     */
+    private final int port;
+
+    /**
+     * The seconds between writes of the file
+     */
+    private final int interval;
+
+    /**
+     * The server, null until started or if there's no port
+     */
+    private HttpServer server;
+
+    /**
+     * The thread writing the file, null until started or if there's no file
+     */
+    private ScheduledExecutorService writer;
+
+    /**
+     * Construct an exporter configured by the system properties
+     * @return The exporter, which does nothing if neither property is set
+     * @throws InvalidParameterException If a property is malformed
+     */
+    public static MetricsExporter fromProperties(){
+        String file = System.getProperty(FILE_PROPERTY);
+        return new MetricsExporter(file == null || file.isBlank() ? null : Paths.get(file),
+                Integer.getInteger(PORT_PROPERTY, 0), Integer.getInteger(INTERVAL_PROPERTY, INTERVAL));
+    }
+
+    /**
+     * Construct an exporter
+     * @param file The file to write to, null for none
+     * @param port The localhost port to serve on, 0 for none
+     * @param interval The seconds between writes of the file, at least 1
+     * @throws InvalidParameterException If the port isn't 0 to 65535 or the interval isn't positive
+     */
+    public MetricsExporter(Path file, int port, int interval){
+        if (port < 0 || port > 65535){
+            throw new InvalidParameterException(String.format("%d isn't a port metrics can be served on", port));
+        }
+        if (interval < 1){
+            throw new InvalidParameterException("Metrics must be written at least a second apart!");
+        }
+        this.file = file;
+        this.port = port;
+        this.interval = interval;
+    }
+
+    /**
+     * Start serving and writing the metrics, whichever is configured
+     * @throws IOException If the server couldn't be bound
+     * @throws IllegalStateException If the exporter was already started
+     */
+    public void start() throws IOException {
+        if (server != null || writer != null){
+            throw new IllegalStateException("The metrics exporter was already started!");
+        }
+        if (port != 0){
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> respond(exchange, false));
+            server.createContext("/metrics.json", exchange -> respond(exchange, true));
+            server.setExecutor(null);
+            server.start();
+            System.out.printf("Serving metrics on http://localhost:%d/metrics\n", port);
+        }
+        if (file != null){
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Metrics writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleWithFixedDelay(this::writeQuietly, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Write the metrics to the file now. The metrics are written beside it and moved over it, so anything reading
+     * the file never sees half of it.
+     * @throws IOException If the file couldn't be written
+     * @throws IllegalStateException If there's no file configured
+     */
+    public void write() throws IOException {
+        if (file == null){
+            throw new IllegalStateException("The metrics exporter has no file to write!");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporary, render(isJson(file)), StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stop serving and writing, and write the file one last time
+     */
+    @Override
+    public void close(){
+        if (writer != null){
+            writer.shutdownNow();
+            writer = null;
+        }
+        if (file != null){
+            writeQuietly();
+        }
+        if (server != null){
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Get the port served on
+     * @return The port, 0 if the metrics aren't served
+     */
+    public int getPort(){
+        return server == null ? 0 : server.getAddress().getPort();
+    }
+
+    /**
+     * Write the file, logging rather than throwing if it can't be, for the writer thread
+     */
+    private void writeQuietly(){
+        try {
+            write();
+        } catch (IOException e) {
+            System.out.printf("Failed to write metrics to %s: %s\n", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Answer a request to the server
+     */
+    private static void respond(HttpExchange exchange, boolean json) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")){
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // Contexts match by prefix, so /metrics would otherwise also answer /metricsanything
+            String path = exchange.getRequestURI().getPath();
+            if (!path.equals(json ? "/metrics.json" : "/metrics")){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = render(json).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    json ? "application/json" : "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Export the registry as JSON or Prometheus text
+     */
+    private static String render(boolean json){
+        return json ? Metrics.toJson().toString(2) : Metrics.toPrometheus();
+    }
+
+    /**
+     * Check whether a file should be written as JSON
+     */
+    private static boolean isJson(Path path){
+        return path.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+}
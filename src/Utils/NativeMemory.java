@@ -0,0 +1,440 @@
+package Utils;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every native (off heap) allocation made through LWJGL should go through here. Each allocation is charged to a
+ * named call site, so the bytes each part of the program holds can be seen, and is remembered until it's freed so
+ * anything still allocated when the program shuts down can be reported as a leak. With DEBUG_PROPERTY set the stack
+ * trace of each allocation is kept too, so the report shows exactly where each leak came from.
+ * <p>
+ * Buffers which only live for a single call, such as the copy of a mesh handed to glBufferData, should come from a
+ * Scope instead. Small ones are carved from the thread's LWJGL MemoryStack and larger ones are tracked allocations,
+ * and either way they're all freed when the scope closes.
+ */
+public final class NativeMemory {
+    /**
+     * The system property which, set to true, keeps the stack trace of every allocation for the leak report
+     */
+    public static final String DEBUG_PROPERTY = "planesim.memdebug";
+
+    /**
+     * The largest allocation a scope makes on the thread's MemoryStack, larger ones are tracked allocations
+     */
+    public static final int STACK_LIMIT = 16 * 1024;
+
+    /**
+     * Whether the stack trace of each allocation is kept
+     */
+    private static final boolean DEBUG = Boolean.getBoolean(DEBUG_PROPERTY);
+
+    /**
+     * The most leaks the report prints in full
+     */
+    private static final int MAX_REPORTED_LEAKS = 16;
+
+    /**
+     * The counters of each call site, by name
+     */
+    private static final ConcurrentHashMap<String, CallSite> sites = new ConcurrentHashMap<>();
+
+    /**
+     * Every allocation which hasn't been freed, by address
+     */
+    private static final ConcurrentHashMap<Long, Allocation> live = new ConcurrentHashMap<>();
+
+    /**
+     * Nothing to construct, everything is static
+     */
+    private NativeMemory(){}
+
+    /**
+     * Allocate native memory, which must be passed to free once it's no longer needed
+     * @param site The name of the call site to charge, such as "GLTexture.upload"
+     * @param bytes The number of bytes to allocate
+     * @return The uninitialized buffer
+     * @throws InvalidParameterException If bytes is negative
+     * @throws OutOfMemoryError If the allocation failed
+     */
+    public static ByteBuffer alloc(String site, int bytes){
+        if (bytes < 0){
+            throw new InvalidParameterException("Can't allocate a negative number of bytes!");
+        }
+        ByteBuffer buffer = MemoryUtil.memAlloc(bytes);
+        track(site, MemoryUtil.memAddress0(buffer), bytes);
+        return buffer;
+    }
+
+    /**
+     * Allocate native memory for floats, see alloc
+     * @param site The name of the call site to charge
+     * @param count The number of floats to allocate
+     * @return The uninitialized buffer
+     */
+    public static FloatBuffer allocFloat(String site, int count){
+        if (count < 0){
+            throw new InvalidParameterException("Can't allocate a negative number of floats!");
+        }
+        FloatBuffer buffer = MemoryUtil.memAllocFloat(count);
+        track(site, MemoryUtil.memAddress0(buffer), (long) count * Float.BYTES);
+        return buffer;
+    }
+
+    /**
+     * Allocate native memory for shorts, see alloc
+     * @param site The name of the call site to charge
+     * @param count The number of shorts to allocate
+     * @return The uninitialized buffer
+     */
+    public static ShortBuffer allocShort(String site, int count){
+        if (count < 0){
+            throw new InvalidParameterException("Can't allocate a negative number of shorts!");
+        }
+        ShortBuffer buffer = MemoryUtil.memAllocShort(count);
+        track(site, MemoryUtil.memAddress0(buffer), (long) count * Short.BYTES);
+        return buffer;
+    }
+
+    /**
+     * Allocate native memory for ints, see alloc
+     * @param site The name of the call site to charge
+     * @param count The number of ints to allocate
+     * @return The uninitialized buffer
+     */
+    public static IntBuffer allocInt(String site, int count){
+        if (count < 0){
+            throw new InvalidParameterException("Can't allocate a negative number of ints!");
+        }
+        IntBuffer buffer = MemoryUtil.memAllocInt(count);
+        track(site, MemoryUtil.memAddress0(buffer), (long) count * Integer.BYTES);
+        return buffer;
+    }
+
+    /**
+     * Free a buffer allocated by alloc, allocFloat or allocInt
+     * @param buffer The buffer to free, nothing happens if it's null
+     * @throws InvalidParameterException If the buffer wasn't allocated here or was already freed
+     */
+    public static void free(Buffer buffer){
+        if (buffer == null){
+            return;
+        }
+        long address = MemoryUtil.memAddress0(buffer);
+        if (address == MemoryUtil.NULL){
+            return;
+        }
+        Allocation allocation = live.remove(address);
+        if (allocation == null){
+            throw new InvalidParameterException(String.format("Freed native memory at 0x%x which isn't tracked, " +
+                    "it was freed twice or not allocated by NativeMemory", address));
+        }
+        allocation.site.release(allocation.bytes);
+        MemoryUtil.nmemFree(address);
+    }
+
+    /**
+     * Open a scope for buffers which only live until it's closed, use with try with resources. A scope belongs to
+     * the thread which opened it.
+     * @param site The name of the call site to charge the scope's larger allocations to
+     * @return The scope
+     */
+    public static Scope scope(String site){
+        return new Scope(site);
+    }
+
+    /**
+     * Get the number of bytes allocated and not yet freed, across every call site
+     * @return The live bytes
+     */
+    public static long getLiveBytes(){
+        long bytes = 0;
+        for (CallSite site : sites.values()){
+            bytes += site.live_bytes.get();
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the number of bytes a call site has allocated and not yet freed
+     * @param site The name of the call site
+     * @return The live bytes, 0 if the site has never allocated
+     */
+    public static long getLiveBytes(String site){
+        CallSite counters = sites.get(site);
+        return counters == null ? 0 : counters.live_bytes.get();
+    }
+
+    /**
+     * Get the number of allocations not yet freed
+     * @return The live allocations
+     */
+    public static int getLiveAllocations(){
+        return live.size();
+    }
+
+    /**
+     * Check whether the stack trace of each allocation is kept
+     * @return True if DEBUG_PROPERTY is set
+     */
+    public static boolean isDebug(){
+        return DEBUG;
+    }
+
+    /**
+     * Print the live, peak and total bytes of every call site
+     */
+    public static void printUsage(){
+        // Sorted so the output is stable between runs
+        for (Map.Entry<String, CallSite> entry : new TreeMap<>(sites).entrySet()){
+            CallSite site = entry.getValue();
+            System.out.printf("%s: %d bytes live in %d allocations, %d bytes at peak, %d allocations made\n",
+                    entry.getKey(), site.live_bytes.get(), site.live_count.get(), site.peak_bytes.get(),
+                    site.allocations.get());
+        }
+    }
+
+    /**
+     * Report every allocation which hasn't been freed, call once everything should have been freed
+     * @return True if there were leaks
+     */
+    public static boolean reportLeaks(){
+        if (live.isEmpty()){
+            System.out.println("No native memory leaked");
+            return false;
+        }
+
+        System.out.printf("[WARNING] %d native allocations (%d bytes) were never freed:\n", live.size(),
+                getLiveBytes());
+        printUsage();
+
+        ArrayList<Allocation> leaks = new ArrayList<>(live.values());
+        for (int i = 0; i < Math.min(leaks.size(), MAX_REPORTED_LEAKS); i++){
+            Allocation leak = leaks.get(i);
+            System.out.printf("  %d bytes from %s\n", leak.bytes, leak.site.name);
+            if (leak.origin != null){
+                for (StackTraceElement frame : leak.origin.getStackTrace()){
+                    System.out.printf("    at %s\n", frame);
+                }
+            }
+        }
+        if (leaks.size() > MAX_REPORTED_LEAKS){
+            System.out.printf("  ...and %d more\n", leaks.size() - MAX_REPORTED_LEAKS);
+        }
+        if (!DEBUG){
+            System.out.printf("Run with -D%s=true to see where each leak was allocated\n", DEBUG_PROPERTY);
+        }
+        return true;
+    }
+
+    /**
+     * Remember an allocation and charge it to its call site
+     */
+    private static void track(String site, long address, long bytes){
+        if (address == MemoryUtil.NULL){
+            // An empty allocation, there's nothing to free
+            return;
+        }
+        CallSite counters = sites.computeIfAbsent(site, CallSite::new);
+        counters.charge(bytes);
+        live.put(address, new Allocation(counters, bytes, DEBUG ? new Throwable("Allocated here") : null));
+    }
+
+    /**
+     * Buffers which are all freed together when the scope closes. Small buffers are carved from the thread's
+     * MemoryStack, so they cost nothing to allocate or free, larger ones are tracked allocations.
+     */
+    public static final class Scope implements AutoCloseable {
+        /**
+         * The call site larger allocations are charged to
+         */
+        private final String site;
+
+        /**
+         * The thread's MemoryStack, pushed when the scope opened
+         */
+        private final MemoryStack stack;
+
+        /**
+         * The tracked allocations to free when the scope closes
+         */
+        private final ArrayList<Buffer> allocations;
+
+        /**
+         * Open a scope, pushing a frame onto the thread's MemoryStack
+         */
+        private Scope(String site){
+            this.site = site;
+            this.stack = MemoryStack.stackPush();
+            this.allocations = new ArrayList<>();
+        }
+
+        /**
+         * Allocate a buffer which is freed when the scope closes
+         * @param bytes The number of bytes to allocate
+         * @return The uninitialized buffer
+         */
+        public ByteBuffer bytes(int bytes){
+            if (fitsStack(bytes)){
+                return stack.malloc(bytes);
+            }
+            ByteBuffer buffer = alloc(site, bytes);
+            allocations.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Allocate a buffer of floats which is freed when the scope closes
+         * @param count The number of floats to allocate
+         * @return The uninitialized buffer
+         */
+        public FloatBuffer floats(int count){
+            if (fitsStack((long) count * Float.BYTES)){
+                return stack.mallocFloat(count);
+            }
+            FloatBuffer buffer = allocFloat(site, count);
+            allocations.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Allocate a buffer of shorts which is freed when the scope closes
+         * @param count The number of shorts to allocate
+         * @return The uninitialized buffer
+         */
+        public ShortBuffer shorts(int count){
+            if (fitsStack((long) count * Short.BYTES)){
+                return stack.mallocShort(count);
+            }
+            ShortBuffer buffer = allocShort(site, count);
+            allocations.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Allocate a buffer of ints which is freed when the scope closes
+         * @param count The number of ints to allocate
+         * @return The uninitialized buffer
+         */
+        public IntBuffer ints(int count){
+            if (fitsStack((long) count * Integer.BYTES)){
+                return stack.mallocInt(count);
+            }
+            IntBuffer buffer = allocInt(site, count);
+            allocations.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Free everything allocated in this scope and pop its frame from the MemoryStack
+         */
+        @Override
+        public void close(){
+            for (Buffer buffer : allocations){
+                free(buffer);
+            }
+            allocations.clear();
+            stack.pop();
+        }
+
+        /**
+         * Check whether an allocation is small enough for the stack and there's room left for it
+         */
+        private boolean fitsStack(long bytes){
+            // Leave room for the alignment of the allocation
+            return bytes <= STACK_LIMIT && bytes + 64 <= stack.getPointer();
+        }
+    }
+
+    /**
+     * The counters of one call site
+     */
+    private static final class CallSite {
+        /**
+         * The name of the call site
+         */
+        private final String name;
+
+        /**
+         * The bytes and allocations not yet freed
+         */
+        private final AtomicLong live_bytes = new AtomicLong();
+        private final AtomicLong live_count = new AtomicLong();
+
+        /**
+         * The most bytes ever live at once
+         */
+        private final AtomicLong peak_bytes = new AtomicLong();
+
+        /**
+         * The number of allocations ever made
+         */
+        private final AtomicLong allocations = new AtomicLong();
+
+        /**
+         * Construct the counters of a call site
+         */
+        private CallSite(String name){
+            this.name = name;
+        }
+
+        /**
+         * Count an allocation
+         */
+        private void charge(long bytes){
+            long now = live_bytes.addAndGet(bytes);
+            live_count.incrementAndGet();
+            allocations.incrementAndGet();
+            peak_bytes.accumulateAndGet(now, Math::max);
+        }
+
+        /**
+         * Count a free
+         */
+        private void release(long bytes){
+            live_bytes.addAndGet(-bytes);
+            live_count.decrementAndGet();
+        }
+    }
+
+    /**
+     * An allocation which hasn't been freed
+     */
+    private static final class Allocation {
+        /**
+         * The call site it was charged to
+         */
+        private final CallSite site;
+
+        /**
+         * The size of the allocation
+         */
+        private final long bytes;
+
+        /**
+         * Where it was allocated, null unless DEBUG is set
+         */
+        private final Throwable origin;
+
+        /**
+         * Construct a record of an allocation
+         */
+        private Allocation(CallSite site, long bytes, Throwable origin){
+            this.site = site;
+            this.bytes = bytes;
+            this.origin = origin;
+        }
+    }
+}
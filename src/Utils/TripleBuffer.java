@@ -0,0 +1,100 @@
+package Utils;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands the latest state from one writer thread to one reader thread without either waiting on the other. There
+ * are three copies of the state: the writer fills the back copy while the reader reads the front copy, and the third
+ * sits in the middle holding the newest finished state. Publishing swaps the back and middle copies, acquiring swaps
+ * the front and middle copies if anything new was published, both with a single atomic swap.
+ * <p>
+ * The copies are reused, so the writer must rewrite everything in the back copy before publishing it. If the writer
+ * publishes faster than the reader acquires, the states in between are skipped.
+ * @param <T> The type of the state
+ */
+public class TripleBuffer<T> {
+    /**
+     * The bit of state set when the middle copy hasn't been acquired yet, the low bits are the middle copy's index
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The index of the middle copy and whether it's fresh
+     */
+    private final AtomicInteger middle;
+
+    /**
+     * The three copies of the state
+     */
+    private final Object[] copies;
+
+    /**
+     * The index of the copy only the writer uses
+     */
+    private int back;
+
+    /**
+     * The index of the copy only the reader uses
+     */
+    private int front;
+
+    /**
+     * Construct a triple buffer
+     * @param factory Creates each of the three copies of the state
+     * @throws InvalidParameterException If the factory is null or creates null
+     */
+    public TripleBuffer(Supplier<T> factory){
+        if (factory == null){
+            throw new InvalidParameterException("A triple buffer needs a factory for its state!");
+        }
+        copies = new Object[3];
+        for (int i = 0; i < 3; i++){
+            copies[i] = factory.get();
+            if (copies[i] == null){
+                throw new InvalidParameterException("A triple buffer's factory created a null state!");
+            }
+        }
+        front = 0;
+        middle = new AtomicInteger(1);
+        back = 2;
+    }
+
+    /**
+     * Get the copy the writer fills, only call from the writer thread
+     * @return The back copy
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack(){
+        return (T) copies[back];
+    }
+
+    /**
+     * Publish the back copy as the newest state and take another copy to write to, only call from the writer thread
+     */
+    public void publish(){
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Take the newest published state as the front copy if there is one, only call from the reader thread
+     * @return True if the front copy changed
+     */
+    public boolean acquire(){
+        if ((middle.get() & FRESH) == 0){
+            return false;
+        }
+        front = middle.getAndSet(front) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * Get the copy the reader reads, only call from the reader thread
+     * @return The front copy, the last state acquired or an untouched copy if nothing has been acquired yet
+     */
+    @SuppressWarnings("unchecked")
+    public T getFront(){
+        return (T) copies[front];
+    }
+}